@@ -149,6 +149,14 @@ public class StyleReference {
         return _matcher.isHoverStyled(e);
     }
 
+    /**
+     * Returns true if the following siblings of the element are styled by
+     * its dynamic pseudo-classes, e.g. by <code>a:hover + span</code>.
+     */
+    public boolean isSiblingStyled(Element e) {
+        return _matcher.isSiblingStyled(e);
+    }
+
     /**
      * Returns a Map keyed by CSS property names (e.g. 'border-width'), and the
      * assigned value as a SAC CSSValue instance. The properties should have
@@ -204,6 +212,18 @@ public class StyleReference {
         return _matcher.getCascadedStyle(e, restyle);
     }
     
+    /**
+     * Matches an element again after the state of one of its dynamic
+     * pseudo-classes changed (see {@link org.xhtmlrenderer.css.newmatch.Matcher#rematch(Object, java.util.Set)}).
+     *
+     * @param e                 The element
+     * @param changedProperties Receives the {@link CSSName}s whose cascaded values changed
+     * @return Whether the descendants of the element must be matched again
+     */
+    public boolean rematch(Element e, java.util.Set changedProperties) {
+        return _matcher.rematch(e, changedProperties);
+    }
+
     public PageInfo getPageStyle(String pageName, String pseudoPage) {
         return _matcher.getPageCascadedStyle(pageName, pseudoPage);
     }
@@ -20,8 +20,11 @@
  */
 package org.xhtmlrenderer.css.constants;
 
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 
 import org.xhtmlrenderer.css.parser.CSSErrorHandler;
@@ -1637,6 +1640,26 @@ public final class CSSName implements Comparable {
                     CSSName.BORDER_BOTTOM_COLOR,
                     CSSName.BORDER_LEFT_COLOR);
 
+    /**
+     * Properties which only affect how a box is painted, not its size or
+     * position.
+     */
+    private static final Set PAINT_ONLY_PROPERTIES = new HashSet(Arrays.asList(new CSSName[] {
+            COLOR,
+            BACKGROUND_COLOR,
+            BACKGROUND_IMAGE,
+            BACKGROUND_REPEAT,
+            BACKGROUND_ATTACHMENT,
+            BACKGROUND_POSITION,
+            BACKGROUND_SIZE,
+            BORDER_TOP_COLOR,
+            BORDER_RIGHT_COLOR,
+            BORDER_BOTTOM_COLOR,
+            BORDER_LEFT_COLOR,
+            OUTLINE_COLOR,
+            CURSOR,
+            VISIBILITY }));
+
 
     /**
      * Constructor for the CSSName object
@@ -1729,6 +1752,14 @@ public final class CSSName implements Comparable {
         return cssName.initialValue;
     }
 
+    /**
+     * Returns true if a change of the named property can be shown by
+     * repainting the affected boxes, without laying them out again.
+     */
+    public static boolean isPaintOnly(CSSName cssName) {
+        return PAINT_ONLY_PROPERTIES.contains(cssName);
+    }
+
     public static FSDerivedValue initialDerivedValue(CSSName cssName) {
         return cssName.initialDerivedValue;
     }
@@ -24,6 +24,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -36,6 +37,7 @@ import org.xhtmlrenderer.css.extend.StylesheetFactory;
 import org.xhtmlrenderer.css.extend.TreeResolver;
 import org.xhtmlrenderer.css.sheet.MediaRule;
 import org.xhtmlrenderer.css.sheet.PageRule;
+import org.xhtmlrenderer.css.sheet.PropertyDeclaration;
 import org.xhtmlrenderer.css.sheet.Ruleset;
 import org.xhtmlrenderer.css.sheet.Stylesheet;
 import org.xhtmlrenderer.util.XRLog;
@@ -43,6 +45,11 @@ import org.xhtmlrenderer.util.Util;
 
 
 /**
+ * Matches the elements of a document against its style sheets.  Matching
+ * locks the matcher rather than the elements: its mappers are shared by many
+ * elements, and the elements and style sheets may be used by other renderers
+ * at the same time.
+ *
  * @author Torbjoern Gannholm
  */
 public class Matcher {
@@ -59,6 +66,7 @@ public class Matcher {
     private Set _activeElements;
     private Set _focusElements;
     private Set _visitElements;
+    private Set _siblingStyledElements;
     
     private List _pageRules;
     private List _fontFaceRules;
@@ -80,7 +88,7 @@ public class Matcher {
     }
 
     public CascadedStyle getCascadedStyle(Object e, boolean restyle) {
-        synchronized (e) {
+        synchronized (this) {
             Mapper em;
             if (!restyle) {
                 em = getMapper(e);
@@ -91,12 +99,74 @@ public class Matcher {
         }
     }
 
+    /**
+     * Matches <code>e</code> again after one of its dynamic pseudo-classes
+     * (:hover, :active or :focus) changed state.  The properties whose
+     * cascaded values changed for the element or one of its pseudo-elements
+     * are added to <code>changedProperties</code>.
+     *
+     * @return <code>true</code> if the selectors passed on to the descendants
+     * of <code>e</code> changed too, i.e. if they must be matched again
+     */
+    public boolean rematch(Object e, Set changedProperties) {
+        synchronized (this) {
+            Mapper before = (Mapper) _map.get(e);
+            Mapper after = matchElement(e);
+            if (before == after) {
+                return false;
+            } else if (before == null) {
+                return true;
+            }
+
+            collectChanges(
+                    before.getCascadedStyle(e), after.getCascadedStyle(e), changedProperties);
+
+            Set pseudoElements = new HashSet(before.pseudoSelectors.keySet());
+            pseudoElements.addAll(after.pseudoSelectors.keySet());
+            for (Iterator i = pseudoElements.iterator(); i.hasNext(); ) {
+                String pseudoElement = (String) i.next();
+                collectChanges(
+                        before.getPECascadedStyle(e, pseudoElement),
+                        after.getPECascadedStyle(e, pseudoElement),
+                        changedProperties);
+            }
+
+            return ! before.axes.equals(after.axes);
+        }
+    }
+
+    private void collectChanges(CascadedStyle before, CascadedStyle after, Set changedProperties) {
+        if (before == null) {
+            before = CascadedStyle.emptyCascadedStyle;
+        }
+        if (after == null) {
+            after = CascadedStyle.emptyCascadedStyle;
+        }
+        if (before == after) {
+            return;
+        }
+
+        for (Iterator i = before.getCascadedPropertyDeclarations(); i.hasNext(); ) {
+            PropertyDeclaration pd = (PropertyDeclaration) i.next();
+            PropertyDeclaration other = after.propertyByName(pd.getCSSName());
+            if (other == null || ! other.getFingerprint().equals(pd.getFingerprint())) {
+                changedProperties.add(pd.getCSSName());
+            }
+        }
+        for (Iterator i = after.getCascadedPropertyDeclarations(); i.hasNext(); ) {
+            PropertyDeclaration pd = (PropertyDeclaration) i.next();
+            if (! before.hasProperty(pd.getCSSName())) {
+                changedProperties.add(pd.getCSSName());
+            }
+        }
+    }
+
     /**
      * May return null.
      * We assume that restyle has already been done by a getCascadedStyle if necessary.
      */
     public CascadedStyle getPECascadedStyle(Object e, String pseudoElement) {
-        synchronized (e) {
+        synchronized (this) {
             Mapper em = getMapper(e);
             return em.getPECascadedStyle(e, pseudoElement);
         }
@@ -145,8 +215,36 @@ public class Matcher {
         return _focusElements.contains(e);
     }
 
+    /**
+     * Returns true if the following siblings of <code>e</code> (or their
+     * descendants) are styled by a dynamic pseudo-class of <code>e</code>,
+     * e.g. by <code>a:hover + span</code>.
+     */
+    public boolean isSiblingStyled(Object e) {
+        return _siblingStyledElements.contains(e);
+    }
+
+    private void addDynamicSiblings(Selector sel, Object e) {
+        Object sibling = e;
+        for (Selector s = sel.getSiblingSelector(); s != null; s = s.getSiblingSelector()) {
+            sibling = s.getAppropriateSibling(sibling, _treeRes);
+            if (s.isPseudoClass(Selector.ACTIVE_PSEUDOCLASS)) {
+                _activeElements.add(sibling);
+                _siblingStyledElements.add(sibling);
+            }
+            if (s.isPseudoClass(Selector.HOVER_PSEUDOCLASS)) {
+                _hoverElements.add(sibling);
+                _siblingStyledElements.add(sibling);
+            }
+            if (s.isPseudoClass(Selector.FOCUS_PSEUDOCLASS)) {
+                _focusElements.add(sibling);
+                _siblingStyledElements.add(sibling);
+            }
+        }
+    }
+
     protected Mapper matchElement(Object e) {
-        synchronized (e) {
+        synchronized (this) {
             Object parent = _treeRes.getParentElement(e);
             Mapper child;
             if (parent != null) {
@@ -169,6 +267,9 @@ public class Matcher {
     private void addAllStylesheets(List stylesheets, TreeMap sorter, String medium) {
         int count = 0;
         int pCount = 0;
+        // The positions of the page rules, which can't be stored in the
+        // (possibly shared) rules themselves
+        final Map pagePositions = new HashMap();
         for (Iterator i = stylesheets.iterator(); i.hasNext(); ) {
             Stylesheet stylesheet = (Stylesheet)i.next();
             for (Iterator j = stylesheet.getContents().iterator(); j.hasNext(); ) {
@@ -176,11 +277,10 @@ public class Matcher {
                 if (obj instanceof Ruleset) {
                     for (Iterator k = ((Ruleset)obj).getFSSelectors().iterator(); k.hasNext(); ) {
                         Selector selector = (Selector)k.next();
-                        selector.setPos(++count);
-                        sorter.put(selector.getOrder(), selector);
+                        sorter.put(selector.getOrder(++count), selector);
                     }
                 } else if (obj instanceof PageRule) {
-                    ((PageRule)obj).setPos(++pCount);
+                    pagePositions.put(obj, Integer.valueOf(++pCount));
                     _pageRules.add(obj);
                 } else if (obj instanceof MediaRule) {
                     MediaRule mediaRule = (MediaRule)obj;
@@ -189,8 +289,7 @@ public class Matcher {
                             Ruleset ruleset = (Ruleset)k.next();
                             for (Iterator l = ruleset.getFSSelectors().iterator(); l.hasNext(); ) {
                                 Selector selector = (Selector)l.next();
-                                selector.setPos(++count);
-                                sorter.put(selector.getOrder(), selector);
+                                sorter.put(selector.getOrder(++count), selector);
                             }
                         }
                     }
@@ -202,12 +301,12 @@ public class Matcher {
         
         Collections.sort(_pageRules, new Comparator() {
             public int compare(Object o1, Object o2) {
-                PageRule p1 = (PageRule)o1;
-                PageRule p2 = (PageRule)o2;
+                long order1 = ((PageRule)o1).getOrder(((Integer)pagePositions.get(o1)).intValue());
+                long order2 = ((PageRule)o2).getOrder(((Integer)pagePositions.get(o2)).intValue());
                 
-                if (p1.getOrder() - p2.getOrder() < 0) {
+                if (order1 - order2 < 0) {
                     return -1;
-                } else if (p1.getOrder() == p2.getOrder()) {
+                } else if (order1 == order2) {
                     return 0;
                 } else {
                     return 1;
@@ -226,6 +325,7 @@ public class Matcher {
         _activeElements = Collections.synchronizedSet(new java.util.HashSet());
         _focusElements = Collections.synchronizedSet(new java.util.HashSet());
         _visitElements = Collections.synchronizedSet(new java.util.HashSet());
+        _siblingStyledElements = Collections.synchronizedSet(new java.util.HashSet());
     }
 
     private Mapper getMapper(Object e) {
@@ -285,7 +385,7 @@ public class Matcher {
     }
 
     private org.xhtmlrenderer.css.sheet.Ruleset getElementStyle(Object e) {
-        synchronized (e) {
+        synchronized (this) {
             if (_attRes == null || _styleFactory == null) {
                 return null;
             }
@@ -300,7 +400,7 @@ public class Matcher {
     }
 
     private org.xhtmlrenderer.css.sheet.Ruleset getNonCssStyle(Object e) {
-        synchronized (e) {
+        synchronized (this) {
             if (_attRes == null || _styleFactory == null) {
                 return null;
             }
@@ -356,6 +456,9 @@ public class Matcher {
                 if (!sel.matches(e, _attRes, _treeRes)) {
                     continue;
                 }
+                if (sel.getSiblingSelector() != null) {
+                    addDynamicSiblings(sel, e);
+                }
                 //Assumption: if it is a pseudo-element, it does not also have dynamic pseudo-class
                 String pseudoElement = sel.getPseudoElement();
                 if (pseudoElement != null) {
@@ -408,7 +511,7 @@ public class Matcher {
 
         CascadedStyle getCascadedStyle(Object e) {
             CascadedStyle result;
-            synchronized (e) {
+            synchronized (Matcher.this) {
                 CascadedStyle cs = null;
                 org.xhtmlrenderer.css.sheet.Ruleset elementStyling = getElementStyle(e);
                 org.xhtmlrenderer.css.sheet.Ruleset nonCssStyling = getNonCssStyle(e);
@@ -336,6 +336,14 @@ public class Selector {
         return chainedSelector;
     }
 
+    /**
+     * Returns the selector a preceding sibling must match, e.g.
+     * <code>a:hover</code> for <code>a:hover + span</code>.
+     */
+    public Selector getSiblingSelector() {
+        return siblingSelector;
+    }
+
     /**
      * get the Ruleset that this Selector is part of
      *
@@ -385,13 +393,22 @@ public class Selector {
      * @return The order value
      */
     String getOrder() {
+        return getOrder(_pos);
+    }
+
+    /**
+     * Like {@link #getOrder()}, but for the selector at position
+     * <code>pos</code> in the style sheets.  Style sheets may be shared by
+     * several matchers, so the selector itself isn't changed.
+     */
+    String getOrder(int pos) {
         if (chainedSelector != null) {
-            return chainedSelector.getOrder();
+            return chainedSelector.getOrder(pos);
         }//only "deepest" value is correct
         String b = "000" + getSpecificityB();
         String c = "000" + getSpecificityC();
         String d = "000" + getSpecificityD();
-        String p = "00000" + _pos;
+        String p = "00000" + pos;
         return "0" + b.substring(b.length() - 3) + c.substring(c.length() - 3) + d.substring(d.length() - 3) + p.substring(p.length() - 5);
     }
 
@@ -448,6 +465,12 @@ public class Selector {
         _specificityD++;
     }
     
+    /**
+     * @deprecated Selectors may be shared by several matchers, so they
+     * mustn't be changed while matching.  The position is passed to
+     * {@link #getOrder(int)} instead.
+     */
+    @Deprecated
     public void setPos(int pos) {
         _pos = pos;
         if (siblingSelector != null) {
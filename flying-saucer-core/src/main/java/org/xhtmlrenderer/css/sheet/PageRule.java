@@ -100,13 +100,27 @@ public class PageRule implements RulesetContainer {
         return _marginBoxes;
     }
     
+    /**
+     * @deprecated Matchers don't set the position of shared rules anymore,
+     * use {@link #getOrder(int)}.
+     */
+    @Deprecated
     public long getOrder() {
+        return getOrder(_pos);
+    }
+
+    /**
+     * Like {@link #getOrder()}, but for the rule at position <code>pos</code>
+     * in the style sheets.  Style sheets may be shared by several matchers,
+     * so the rule itself isn't changed.
+     */
+    public long getOrder(int pos) {
         long result = 0;
         
         result |= (long)_specificityF << 32;
         result |= (long)_specificityG << 24;
         result |= (long)_specificityH << 16;
-        result |= _pos;
+        result |= pos;
         
         return result;
     }
@@ -128,10 +142,21 @@ public class PageRule implements RulesetContainer {
         return false;
     }
 
+    /**
+     * @deprecated Rules don't know their position anymore since they may be
+     * shared by several matchers.
+     */
+    @Deprecated
     public int getPos() {
         return _pos;
     }
 
+    /**
+     * @deprecated Rules may be shared by several matchers, so they mustn't
+     * be changed while matching.  The position is passed to
+     * {@link #getOrder(int)} instead.
+     */
+    @Deprecated
     public void setPos(int pos) {
         _pos = pos;
     }
@@ -72,21 +72,28 @@ public class CalculatedStyle {
      */
     private CalculatedStyle _parent;
 
-    private BorderPropertySet _border;
-    private RectPropertySet _margin;
-    private RectPropertySet _padding;
+    /*
+     * The values below are resolved lazily.  Styles are shared by many
+     * boxes, whose min/max widths may be calculated on several threads at
+     * once (see ConcurrentMinMaxWidth), so a value is only assigned once it
+     * is complete, through a volatile field.  Another thread either resolves
+     * the same value again or sees all of it.
+     */
+    private volatile BorderPropertySet _border;
+    private volatile ResolvedRect _margin;
+    private volatile ResolvedRect _padding;
 
     private float _lineHeight;
-    private boolean _lineHeightResolved;
+    private volatile boolean _lineHeightResolved;
 
-    private FSFont _FSFont;
-    private FSFontMetrics _FSFontMetrics;
+    private volatile FSFont _FSFont;
+    private volatile FSFontMetrics _FSFontMetrics;
 
     private boolean _marginsAllowed = true;
     private boolean _paddingAllowed = true;
     private boolean _bordersAllowed = true;
 
-    private BackgroundSize _backgroundSize;
+    private volatile BackgroundSize _backgroundSize;
 
     /**
      * Cache child styles of this style that have the same cascaded properties
@@ -102,14 +109,16 @@ public class CalculatedStyle {
 
     /**
      * Our main array of property values defined in this style, keyed
-     * by the CSSName assigned ID.
+     * by the CSSName assigned ID.  Unassigned entries are filled in lazily
+     * with values of the parent style or initial values, which were created
+     * before any thread could see this style.
      */
     private final FSDerivedValue[] _derivedValuesById;
 
     /**
      * The derived Font for this style
      */
-    private FontSpecification _font;
+    private volatile FontSpecification _font;
 
 
     /**
@@ -301,11 +310,13 @@ public class CalculatedStyle {
     }
 
     public BackgroundSize getBackgroundSize() {
-        if (_backgroundSize == null) {
-            _backgroundSize = createBackgroundSize();
+        BackgroundSize result = _backgroundSize;
+        if (result == null) {
+            result = createBackgroundSize();
+            _backgroundSize = result;
         }
 
-        return _backgroundSize;
+        return result;
     }
 
     private BackgroundSize createBackgroundSize() {
@@ -371,33 +382,36 @@ public class CalculatedStyle {
     }
 
     public FontSpecification getFont(CssContext ctx) {
-        if (_font == null) {
-            _font = new FontSpecification();
+        FontSpecification font = _font;
+        if (font == null) {
+            font = new FontSpecification();
 
-            _font.families = valueByName(CSSName.FONT_FAMILY).asStringArray();
+            font.families = valueByName(CSSName.FONT_FAMILY).asStringArray();
 
             FSDerivedValue fontSize = valueByName(CSSName.FONT_SIZE);
             if (fontSize instanceof IdentValue) {
                 PropertyValue replacement;
                 IdentValue resolved = resolveAbsoluteFontSize();
                 if (resolved != null) {
-                    replacement = FontSizeHelper.resolveAbsoluteFontSize(resolved, _font.families);
+                    replacement = FontSizeHelper.resolveAbsoluteFontSize(resolved, font.families);
                 } else {
                     replacement = FontSizeHelper.getDefaultRelativeFontSize((IdentValue) fontSize);
                 }
-                _font.size = LengthValue.calcFloatProportionalValue(
+                font.size = LengthValue.calcFloatProportionalValue(
                         this, CSSName.FONT_SIZE, replacement.getCssText(),
                         replacement.getFloatValue(), replacement.getPrimitiveType(), 0, ctx);
             } else {
-                _font.size = getFloatPropertyProportionalTo(CSSName.FONT_SIZE, 0, ctx);
+                font.size = getFloatPropertyProportionalTo(CSSName.FONT_SIZE, 0, ctx);
             }
 
-            _font.fontWeight = getIdent(CSSName.FONT_WEIGHT);
+            font.fontWeight = getIdent(CSSName.FONT_WEIGHT);
+
+            font.fontStyle = getIdent(CSSName.FONT_STYLE);
+            font.variant = getIdent(CSSName.FONT_VARIANT);
 
-            _font.fontStyle = getIdent(CSSName.FONT_STYLE);
-            _font.variant = getIdent(CSSName.FONT_VARIANT);
+            _font = font;
         }
-        return _font;
+        return font;
     }
 
     public FontSpecification getFontSpecification() {
@@ -452,20 +466,24 @@ public class CalculatedStyle {
 
     public float getLineHeight(CssContext ctx) {
         if (! _lineHeightResolved) {
+            float lineHeight;
             if (isIdent(CSSName.LINE_HEIGHT, IdentValue.NORMAL)) {
                 float lineHeight1 = getFont(ctx).size * 1.1f;
                 // Make sure rasterized characters will (probably) fit inside
                 // the line box
                 FSFontMetrics metrics = getFSFontMetrics(ctx);
                 float lineHeight2 = (float)Math.ceil(metrics.getDescent() + metrics.getAscent());
-                _lineHeight = Math.max(lineHeight1, lineHeight2);
+                lineHeight = Math.max(lineHeight1, lineHeight2);
             } else if (isLength(CSSName.LINE_HEIGHT)) {
                 //could be more elegant, I suppose
-                _lineHeight = getFloatPropertyProportionalHeight(CSSName.LINE_HEIGHT, 0, ctx);
+                lineHeight = getFloatPropertyProportionalHeight(CSSName.LINE_HEIGHT, 0, ctx);
             } else {
                 //must be a number
-                _lineHeight = getFont(ctx).size * valueByName(CSSName.LINE_HEIGHT).asFloat();
+                lineHeight = getFont(ctx).size * valueByName(CSSName.LINE_HEIGHT).asFloat();
             }
+            // Written before the volatile flag, so seeing the flag set
+            // means seeing the line height too
+            _lineHeight = lineHeight;
             _lineHeightResolved = true;
         }
         return _lineHeight;
@@ -629,18 +647,20 @@ public class CalculatedStyle {
     }
 
     public RectPropertySet getCachedPadding() {
-        if (_padding == null) {
+        ResolvedRect padding = _padding;
+        if (padding == null) {
             throw new XRRuntimeException("No padding property cached yet; should have called getPropertyRect() at least once before.");
         } else {
-            return _padding;
+            return padding.rect;
         }
     }
 
     public RectPropertySet getCachedMargin() {
-        if (_margin == null) {
+        ResolvedRect margin = _margin;
+        if (margin == null) {
             throw new XRRuntimeException("No margin property cached yet; should have called getMarginRect() at least once before.");
         } else {
-            return _margin;
+            return margin.rect;
         }
     }
 
@@ -653,22 +673,22 @@ public class CalculatedStyle {
         if (! useCache) {
             return newRectInstance(style, shorthandProp, sides, cbWidth, ctx);
         } else {
-            if (style._padding == null) {
+            ResolvedRect cached = style._padding;
+            if (cached == null || ! cached.isValidFor(cbWidth)) {
                 RectPropertySet result = newRectInstance(style, shorthandProp, sides, cbWidth, ctx);
                 boolean allZeros = result.isAllZeros();
 
                 if (allZeros) {
                     result = RectPropertySet.ALL_ZEROS;
+                } else if (result.hasNegativeValues()) {
+                    result.resetNegativeValues();
                 }
 
-                style._padding = result;
-
-                if (! allZeros && style._padding.hasNegativeValues()) {
-                    style._padding.resetNegativeValues();
-                }
+                cached = new ResolvedRect(result, cbWidth, isProportional(style, sides));
+                style._padding = cached;
             }
 
-            return style._padding;
+            return cached.rect;
         }
     }
 
@@ -681,15 +701,48 @@ public class CalculatedStyle {
         if (! useCache) {
             return newRectInstance(style, shorthandProp, sides, cbWidth, ctx);
         } else {
-            if (style._margin == null) {
+            ResolvedRect cached = style._margin;
+            if (cached == null || ! cached.isValidFor(cbWidth)) {
                 RectPropertySet result = newRectInstance(style, shorthandProp, sides, cbWidth, ctx);
                 if (result.isAllZeros()) {
                     result = RectPropertySet.ALL_ZEROS;
                 }
-                style._margin = result;
+                cached = new ResolvedRect(result, cbWidth, isProportional(style, sides));
+                style._margin = cached;
             }
 
-            return style._margin;
+            return cached.rect;
+        }
+    }
+
+    private static boolean isProportional(CalculatedStyle style, CSSName.CSSSideProperties sides) {
+        return isProportional(style, sides.top) || isProportional(style, sides.right) ||
+                isProportional(style, sides.bottom) || isProportional(style, sides.left);
+    }
+
+    private static boolean isProportional(CalculatedStyle style, CSSName cssName) {
+        return style.isLength(cssName) && ! style.hasAbsoluteUnit(cssName);
+    }
+
+    /**
+     * A margin or padding rect and the containing block width it was
+     * resolved against.  Percentages are resolved again if the style is
+     * used with another containing block width (e.g. after a resize or in
+     * another table column).
+     */
+    private static final class ResolvedRect {
+        private final RectPropertySet rect;
+        private final float cbWidth;
+        private final boolean proportional;
+
+        public ResolvedRect(RectPropertySet rect, float cbWidth, boolean proportional) {
+            this.rect = rect;
+            this.cbWidth = cbWidth;
+            this.proportional = proportional;
+        }
+
+        public boolean isValidFor(float cbWidth) {
+            return ! proportional || this.cbWidth == cbWidth;
         }
     }
 
@@ -709,21 +762,20 @@ public class CalculatedStyle {
 
     private static BorderPropertySet getBorderProperty(CalculatedStyle style,
                                                        CssContext ctx) {
-        if (style._border == null) {
-            BorderPropertySet result = BorderPropertySet.newInstance(style, ctx);
+        BorderPropertySet result = style._border;
+        if (result == null) {
+            result = BorderPropertySet.newInstance(style, ctx);
 
             boolean allZeros = result.isAllZeros();
             if (allZeros && ! result.hasHidden() && !result.hasBorderRadius()) {
                 result = BorderPropertySet.EMPTY_BORDER;
+            } else if (! allZeros && result.hasNegativeValues()) {
+                result.resetNegativeValues();
             }
 
             style._border = result;
-
-            if (! allZeros && style._border.hasNegativeValues()) {
-                style._border.resetNegativeValues();
-            }
         }
-        return style._border;
+        return result;
     }
 
     public static final int LEFT = 1;
@@ -757,17 +809,21 @@ public class CalculatedStyle {
     }
 
     public FSFont getFSFont(CssContext cssContext) {
-        if (_FSFont == null) {
-            _FSFont = cssContext.getFont(getFont(cssContext));
+        FSFont result = _FSFont;
+        if (result == null) {
+            result = cssContext.getFont(getFont(cssContext));
+            _FSFont = result;
         }
-        return _FSFont;
+        return result;
     }
 
     public FSFontMetrics getFSFontMetrics(CssContext c) {
-        if (_FSFontMetrics == null) {
-            _FSFontMetrics = c.getFSFontMetrics(getFSFont(c));
+        FSFontMetrics result = _FSFontMetrics;
+        if (result == null) {
+            result = c.getFSFontMetrics(getFSFont(c));
+            _FSFontMetrics = result;
         }
-        return _FSFontMetrics;
+        return result;
     }
 
     public IdentValue getWordWrap() {
@@ -0,0 +1,41 @@
+/*
+ * {{{ header & license
+ * Copyright (c) 2026 xhtmlrenderer.dev.java.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.event;
+
+/**
+ * Receives notifications about the progress of a layout, e.g. to show it to
+ * the user while a long document is laid out.  Notifications are sent on the
+ * thread running the layout (which is not the Event Dispatch Thread if the
+ * layout runs in the background) each time a block or line box has been laid
+ * out, so implementations should return quickly.
+ *
+ * @see org.xhtmlrenderer.layout.SharedContext#setLayoutProgressListener(LayoutProgressListener)
+ */
+public interface LayoutProgressListener {
+    /**
+     * Called when another box has been laid out.
+     *
+     * @param boxesCompleted the number of block and line boxes laid out so
+     * far in this layout
+     * @param pagesCompleted the number of pages started so far when laying
+     * out for print, otherwise zero
+     */
+    void layoutProgress(int boxesCompleted, int pagesCompleted);
+}
@@ -0,0 +1,40 @@
+/*
+ * {{{ header & license
+ * Copyright (c) 2026 xhtmlrenderer.dev.java.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.extend;
+
+/**
+ * A {@link FontContext} which allows text to be measured on several threads
+ * at the same time, by giving each thread its own copy.  Font contexts which
+ * hold no state may return themselves.
+ */
+public interface CopyableFontContext extends FontContext {
+    /**
+     * Returns a font context measuring text exactly like this one which may
+     * be used on another thread.  The copy must be given back with
+     * {@link #dispose()} once that thread is done with it.
+     */
+    public CopyableFontContext copy();
+
+    /**
+     * Releases whatever a copy returned by {@link #copy()} holds.  Does
+     * nothing if this font context isn't a copy.
+     */
+    public void dispose();
+}
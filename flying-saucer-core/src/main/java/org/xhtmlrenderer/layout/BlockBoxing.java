@@ -69,6 +69,8 @@ public class BlockBoxing {
             BlockBox child = (BlockBox) i.next();
             offset++;
 
+            c.checkCancelled();
+
             RelayoutData relayoutData = null;
 
             boolean mayCheckKeepTogether = false;
@@ -87,9 +89,21 @@ public class BlockBoxing {
                 }
             }
 
-            layoutBlockChild(
-                    c, block, child, false, childOffset, NO_PAGE_TRIM,
-                    relayoutData == null ? null : relayoutData.getLayoutState());
+            boolean reused = false;
+            if (c.isIncrementalLayout() && child.isLayoutValid()) {
+                reused = child.reuseLayout(c, block, childOffset);
+                if (! reused) {
+                    // Its children may still be reusable
+                    child.setLayoutValid(false);
+                    child.resetInvalidLayout(c);
+                }
+            }
+
+            if (! reused) {
+                layoutBlockChild(
+                        c, block, child, false, childOffset, NO_PAGE_TRIM,
+                        relayoutData == null ? null : relayoutData.getLayoutState());
+            }
 
             if (c.isPrint()) {
                 boolean needPageClear = child.isNeedPageClear();
@@ -150,6 +164,8 @@ public class BlockBoxing {
             }
 
             previousChildBox = child;
+
+            c.boxCompleted();
         }
     }
 
@@ -175,11 +191,11 @@ public class BlockBoxing {
                 int runStart = relayoutDataList.getRunStart(runEnd);
                 if ( isPageBreakBetweenChildBoxes(relayoutDataList, runStart, runEnd, c, block) ) {
                     result.setChanged(true);
-                    block.resetChildren(c, runStart, offset);
+                    resetRun(c, localChildren, relayoutDataList, runStart, offset);
                     result.setChildOffset(relayoutRun(c, localChildren, block,
                             relayoutDataList, runStart, offset, true));
                     if ( isPageBreakBetweenChildBoxes(relayoutDataList, runStart, runEnd, c, block) ) {
-                        block.resetChildren(c, runStart, offset);
+                        resetRun(c, localChildren, relayoutDataList, runStart, offset);
                         result.setChildOffset(relayoutRun(c, localChildren, block,
                                 relayoutDataList, runStart, offset, false));
                     }
@@ -215,11 +231,34 @@ public class BlockBoxing {
         return null;
     }
 
+    /**
+     * Resets the boxes of a run before it is laid out again.  Boxes whose
+     * layout may just be moved to their new position are left alone,
+     * {@link #relayoutRun} decides what to do with them once their new
+     * position is known.
+     */
+    private static void resetRun(
+            LayoutContext c, List localChildren,
+            RelayoutDataList relayoutDataList, int start, int end) {
+        for (int i = start; i <= end; i++) {
+            BlockBox child = (BlockBox) localChildren.get(i);
+            boolean movable = child.isLayoutMovable(c);
+            relayoutDataList.get(i).setLayoutMovable(movable);
+            if (! movable) {
+                child.reset(c);
+            }
+        }
+    }
+
     private static int relayoutRun(
             LayoutContext c, List localChildren, BlockBox block,
             RelayoutDataList relayoutDataList, int start, int end, boolean onNewPage) {
         int childOffset = relayoutDataList.get(start).getChildOffset();
 
+        // Floats of boxes in the run could have intruded where a box was
+        // before, so its layout may only be moved if there are none
+        int runOffset = childOffset;
+
         if (onNewPage) {
             Box startBox = (Box) localChildren.get(start);
             PageBox startPageBox = c.getRootLayer().getFirstPage(c, startBox);
@@ -247,8 +286,16 @@ public class BlockBoxing {
                 mayCheckKeepTogether = true;
                 c.setMayCheckKeepTogether(false);
             }
-            layoutBlockChild(
-                    c, block, child, false, childOffset, NO_PAGE_TRIM, relayoutData.getLayoutState());
+
+            boolean moved = relayoutData.isLayoutMovable() &&
+                    BlockBox.isFloatFree(c, runOffset) && child.moveLayout(c, block, childOffset);
+            if (! moved) {
+                if (relayoutData.isLayoutMovable()) {
+                    child.reset(c);
+                }
+                layoutBlockChild(
+                        c, block, child, false, childOffset, NO_PAGE_TRIM, relayoutData.getLayoutState());
+            }
 
             if (mayCheckKeepTogether) {
                 c.setMayCheckKeepTogether(true);
@@ -439,9 +486,19 @@ public class BlockBoxing {
 
         private int _childOffset;
 
+        private boolean _layoutMovable;
+
         public RelayoutData() {
         }
 
+        public boolean isLayoutMovable() {
+            return _layoutMovable;
+        }
+
+        public void setLayoutMovable(boolean layoutMovable) {
+            _layoutMovable = layoutMovable;
+        }
+
         public boolean isEndsRun() {
             return _endsRun;
         }
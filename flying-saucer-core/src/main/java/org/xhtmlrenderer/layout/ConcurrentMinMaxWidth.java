@@ -0,0 +1,214 @@
+/*
+ * {{{ header & license
+ * Copyright (c) 2026 xhtmlrenderer.dev.java.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.layout;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.xhtmlrenderer.extend.CopyableFontContext;
+import org.xhtmlrenderer.render.BlockBox;
+import org.xhtmlrenderer.util.Configuration;
+import org.xhtmlrenderer.util.XRRuntimeException;
+
+/**
+ * Calculates the minimum and maximum widths of independent boxes (the cells
+ * of a table or the children of a block) on several threads.  This is only
+ * done if <code>xr.layout.concurrent-min-max-width</code> is true.
+ * <p/>
+ * Everything which depends on document order or on state shared by the
+ * whole layout is done on the layout thread first (see
+ * {@link BlockBox#prepareConcurrentMinMaxWidth(LayoutContext)}).  The
+ * remaining work, mostly measuring text, is then split between a pool of
+ * <code>xr.layout.concurrent-min-max-width.threads</code> threads, each
+ * using its own copy of the layout context.  Boxes which can't be prepared
+ * are left alone and calculated on the layout thread as usual.
+ */
+public class ConcurrentMinMaxWidth {
+    private static final int MIN_BOXES = 16;
+    private static final int TASKS_PER_THREAD = 4;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static final boolean ENABLED =
+            Configuration.isTrue("xr.layout.concurrent-min-max-width", false);
+
+    private static volatile ThreadPoolExecutor _executor;
+
+    /**
+     * Calculates the minimum and maximum widths of as many of
+     * <code>boxes</code> (a list of {@link BlockBox}es) as possible
+     * concurrently.  Afterwards <code>calcMinMaxWidth()</code> still has to
+     * be called on every box on the layout thread, but returns immediately
+     * for the boxes done here.
+     */
+    public static void calcMinMaxWidths(LayoutContext c, List boxes) {
+        if (boxes.size() < MIN_BOXES || ! isEnabled(c)) {
+            return;
+        }
+
+        calcMinMaxWidthsConcurrently(c, boxes);
+    }
+
+    /**
+     * Like {@link #calcMinMaxWidths(LayoutContext, List)}, but regardless of
+     * <code>xr.layout.concurrent-min-max-width</code>.  <code>c</code> must
+     * have a {@link CopyableFontContext}.
+     */
+    static void calcMinMaxWidthsConcurrently(LayoutContext c, List boxes) {
+        List prepared = new ArrayList(boxes.size());
+        for (Iterator i = boxes.iterator(); i.hasNext(); ) {
+            BlockBox box = (BlockBox)i.next();
+            if (box.prepareConcurrentMinMaxWidth(c)) {
+                prepared.add(box);
+            }
+        }
+
+        if (prepared.size() < MIN_BOXES) {
+            return;
+        }
+
+        ThreadPoolExecutor executor = getExecutor();
+        int taskCount = Math.min(
+                prepared.size(), executor.getMaximumPoolSize() * TASKS_PER_THREAD);
+        List tasks = new ArrayList(taskCount);
+        for (int i = 0; i < taskCount; i++) {
+            int start = prepared.size() * i / taskCount;
+            int end = prepared.size() * (i + 1) / taskCount;
+            tasks.add(new MinMaxWidthTask(c, prepared.subList(start, end)));
+        }
+
+        try {
+            List futures = executor.invokeAll(tasks);
+            for (Iterator i = futures.iterator(); i.hasNext(); ) {
+                ((Future)i.next()).get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new XRRuntimeException("Interrupted while calculating box widths", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            } else if (cause instanceof Error) {
+                throw (Error)cause;
+            } else {
+                throw new XRRuntimeException(cause.getMessage(), cause);
+            }
+        } finally {
+            for (Iterator i = tasks.iterator(); i.hasNext(); ) {
+                ((MinMaxWidthTask)i.next()).disposeIfNotStarted();
+            }
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if {@link #calcMinMaxWidths(LayoutContext, List)}
+     * may calculate widths concurrently when called with <code>c</code>.
+     */
+    public static boolean isEnabled(LayoutContext c) {
+        return ENABLED && ! c.isConcurrentMinMaxWidth() &&
+                c.getFontContext() instanceof CopyableFontContext;
+    }
+
+    private static ThreadPoolExecutor getExecutor() {
+        ThreadPoolExecutor result = _executor;
+        if (result == null) {
+            synchronized (ConcurrentMinMaxWidth.class) {
+                if (_executor == null) {
+                    int threads = Math.max(1, Configuration.valueAsInt(
+                            "xr.layout.concurrent-min-max-width.threads",
+                            Runtime.getRuntime().availableProcessors()));
+                    ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                            threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue(), new WorkerThreadFactory());
+                    executor.allowCoreThreadTimeOut(true);
+                    _executor = executor;
+                }
+                result = _executor;
+            }
+        }
+        return result;
+    }
+
+    private static class MinMaxWidthTask implements Callable {
+        private final LayoutContext _layoutContext;
+        private final List _boxes;
+        private boolean _started;
+
+        public MinMaxWidthTask(LayoutContext c, List boxes) {
+            // Created on the layout thread, used only by the worker
+            _layoutContext = c.copyForConcurrentMinMaxWidth();
+            _boxes = boxes;
+        }
+
+        public Object call() {
+            if (! start()) {
+                return null;
+            }
+            try {
+                for (Iterator i = _boxes.iterator(); i.hasNext(); ) {
+                    ((BlockBox)i.next()).calcMinMaxWidth(_layoutContext);
+                }
+            } finally {
+                dispose();
+            }
+            return null;
+        }
+
+        /**
+         * Disposes the copied font context of a task which was cancelled
+         * before it ran.  A task which did run disposes it itself.
+         */
+        public void disposeIfNotStarted() {
+            if (start()) {
+                dispose();
+            }
+        }
+
+        private synchronized boolean start() {
+            if (_started) {
+                return false;
+            }
+            _started = true;
+            return true;
+        }
+
+        private void dispose() {
+            ((CopyableFontContext)_layoutContext.getFontContext()).dispose();
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private int _counter;
+
+        public synchronized Thread newThread(Runnable r) {
+            Thread result = new Thread(r, "MinMaxWidthWorker(" + _counter++ + ")");
+            result.setDaemon(true);
+            return result;
+        }
+    }
+}
@@ -749,6 +749,8 @@ public class InlineBoxing {
                                  int maxAvailableWidth, List pendingFloats,
                                  boolean hasFirstLinePCs, List pendingInlineLayers,
                                  MarkerData markerData, int contentStart, boolean alwaysBreak) {
+        c.checkCancelled();
+
         current.setContentStart(contentStart);
         current.prunePendingInlineBoxes();
 
@@ -793,6 +795,8 @@ public class InlineBoxing {
             }
             pendingFloats.clear();
         }
+
+        c.boxCompleted();
     }
 
     private static void alignLine(final LayoutContext c, final LineBox current, final int maxAvailableWidth) {
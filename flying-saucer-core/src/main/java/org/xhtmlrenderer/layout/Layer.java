@@ -38,6 +38,7 @@ import org.xhtmlrenderer.css.newmatch.PageInfo;
 import org.xhtmlrenderer.css.style.CalculatedStyle;
 import org.xhtmlrenderer.css.style.CssContext;
 import org.xhtmlrenderer.css.style.EmptyStyle;
+import org.xhtmlrenderer.extend.ReplacedElement;
 import org.xhtmlrenderer.newtable.TableCellBox;
 import org.xhtmlrenderer.render.BlockBox;
 import org.xhtmlrenderer.render.Box;
@@ -81,9 +82,13 @@ public class Layer {
     
     private Set _pageSequences;
     private List _sortedPageSequences;
+    private int[] _pageSequenceFirstPages;
+    private int[] _pageSequenceEndPages;
     
     private Map _runningBlocks;
     
+    private Map _replacedSizes;
+    
     private Box _selectionStart;
     private Box _selectionEnd;
     
@@ -249,9 +254,9 @@ public class Layer {
             if (collapsedTableBorders != null && box instanceof TableCellBox) {
                 TableCellBox cell = (TableCellBox)box;
                 if (cell.hasCollapsedPaintingBorder()) {
-                    List borders = (List)collapsedTableBorders.get(cell);
-                    if (borders != null) {
-                        paintCollapsedTableBorders(c, borders);
+                    List cells = (List)collapsedTableBorders.get(cell);
+                    if (cells != null) {
+                        cell.getTable().paintCollapsedBorders(c, cells);
                     }
                 }
             }
@@ -406,25 +411,25 @@ public class Layer {
     // to priority so (for example) wider borders float to the top and aren't
     // overpainted by thinner borders.  This method scans the block boxes
     // we're about to draw and returns a map with the last cell in a given table
-    // we'll paint as a key and a sorted list of borders as values.  These are
-    // then painted after we've drawn the background for this cell.
+    // we'll paint as a key and the list of cells of that table we'll paint as
+    // values.  Their borders are then painted (in the order calculated by the
+    // table at layout time) after we've drawn the background for this cell.
     private Map collectCollapsedTableBorders(RenderingContext c, List blocks) {
-        Map cellBordersByTable = new HashMap();
+        Map cellsByTable = new HashMap();
         Map triggerCellsByTable = new HashMap();
         
-        Set all = new HashSet();
         for (Iterator i = blocks.iterator(); i.hasNext(); ) {
             Box b = (Box)i.next();
             if (b instanceof TableCellBox) {
                 TableCellBox cell = (TableCellBox)b;
                 if (cell.hasCollapsedPaintingBorder()) {
-                    List borders = (List)cellBordersByTable.get(cell.getTable());
-                    if (borders == null) {
-                        borders = new ArrayList();
-                        cellBordersByTable.put(cell.getTable(), borders);
+                    List cells = (List)cellsByTable.get(cell.getTable());
+                    if (cells == null) {
+                        cells = new ArrayList();
+                        cellsByTable.put(cell.getTable(), cells);
                     }
                     triggerCellsByTable.put(cell.getTable(), cell);
-                    cell.addCollapsedBorders(all, borders);
+                    cells.add(cell);
                 }
             }
         }
@@ -436,22 +441,13 @@ public class Layer {
             
             for (Iterator i = triggerCellsByTable.values().iterator(); i.hasNext(); ) {
                 TableCellBox cell = (TableCellBox)i.next();
-                List borders = (List)cellBordersByTable.get(cell.getTable());
-                Collections.sort(borders);
-                result.put(cell, borders);
+                result.put(cell, cellsByTable.get(cell.getTable()));
             }
             
             return result;
         }
     }
     
-    private void paintCollapsedTableBorders(RenderingContext c, List borders) {
-        for (Iterator i = borders.iterator(); i.hasNext(); ) {
-            CollapsedBorderSide border = (CollapsedBorderSide)i.next();
-            border.getCell().paintCollapsedBorder(c, border.getSide());
-        }
-    }
-    
     public void paintAsLayer(RenderingContext c, BlockBox startingPoint) {
         BoxRangeLists rangeLists = new BoxRangeLists();
         
@@ -744,6 +740,7 @@ public class Layer {
 
     public void setPages(List pages) {
         _pages = pages;
+        invalidatePageSequenceRanges();
     }
     
     public boolean isLastPage(PageBox pageBox) {
@@ -774,10 +771,12 @@ public class Layer {
         
         pageBox.setPageNo(pages.size());
         pages.add(pageBox);
+        invalidatePageSequenceRanges();
     }
     
     public void removeLastPage() {
         PageBox pageBox = (PageBox)_pages.remove(_pages.size()-1);
+        invalidatePageSequenceRanges();
         if (pageBox == getLastRequestedPage()) {
             setLastRequestedPage(null);
         }
@@ -891,6 +890,7 @@ public class Layer {
                     setLastRequestedPage(null);
                 }
                 pages.remove(i);
+                invalidatePageSequenceRanges();
             } else {
                 break;
             }
@@ -900,6 +900,7 @@ public class Layer {
     public void trimPageCount(int newPageCount) {
         while (_pages.size() > newPageCount) {
             PageBox pageBox = (PageBox)_pages.remove(_pages.size()-1);
+            invalidatePageSequenceRanges();
             if (pageBox == getLastRequestedPage()) {
                 setLastRequestedPage(null);
             }
@@ -926,6 +927,8 @@ public class Layer {
             }
             paintingTop = page.getPaintingBottom() + additionalClearance;
         }
+        
+        calcPageSequenceRanges(cssCtx);
     }
     
     public int getMaxPageWidth(CssContext cssCtx, int additionalClearance) {
@@ -963,6 +966,50 @@ public class Layer {
         }
     }
     
+    /**
+     * Remembers the intrinsic size the replaced element of <code>box</code>
+     * was laid out with so that a later size change (e.g. an image which
+     * has finished loading) can be detected with
+     * {@link #invalidateResizedReplacedBoxes()}.
+     */
+    public void trackReplacedSize(BlockBox box) {
+        if (_replacedSizes == null) {
+            _replacedSizes = new HashMap();
+        }
+        
+        ReplacedElement replaced = box.getReplacedElement();
+        _replacedSizes.put(box, new Dimension(
+                replaced.getIntrinsicWidth(), replaced.getIntrinsicHeight()));
+    }
+    
+    /**
+     * Invalidates the layout of all tracked replaced boxes whose replaced
+     * element has changed size since they were laid out.
+     */
+    public void invalidateResizedReplacedBoxes() {
+        if (_replacedSizes == null) {
+            return;
+        }
+        
+        for (Iterator i = _replacedSizes.entrySet().iterator(); i.hasNext(); ) {
+            Map.Entry entry = (Map.Entry)i.next();
+            BlockBox box = (BlockBox)entry.getKey();
+            ReplacedElement replaced = box.getReplacedElement();
+            if (replaced == null || ! box.isLayoutValid()) {
+                // Will be tracked again if laid out again
+                i.remove();
+                continue;
+            }
+            
+            Dimension size = (Dimension)entry.getValue();
+            if (size.width != replaced.getIntrinsicWidth() || 
+                    size.height != replaced.getIntrinsicHeight()) {
+                box.invalidateLayout();
+                i.remove();
+            }
+        }
+    }
+    
     public void addRunningBlock(BlockBox block) {
         if (_runningBlocks == null) {
             _runningBlocks = new HashMap();
@@ -970,22 +1017,13 @@ public class Layer {
         
         String identifier = block.getStyle().getRunningName();
         
-        List blocks = (List)_runningBlocks.get(identifier);
+        RunningBlocks blocks = (RunningBlocks)_runningBlocks.get(identifier);
         if (blocks == null) {
-            blocks = new ArrayList();
+            blocks = new RunningBlocks();
             _runningBlocks.put(identifier, blocks);
         }
         
         blocks.add(block);
-        
-        Collections.sort(blocks, new Comparator() {
-            public int compare(Object o1, Object o2) {
-                BlockBox b1 = (BlockBox)o1;
-                BlockBox b2 = (BlockBox)o2;
-                
-                return b1.getAbsY() - b2.getAbsY();
-            }
-        });
     }
     
     public void removeRunningBlock(BlockBox block) {
@@ -995,7 +1033,7 @@ public class Layer {
         
         String identifier = block.getStyle().getRunningName();
         
-        List blocks = (List)_runningBlocks.get(identifier);
+        RunningBlocks blocks = (RunningBlocks)_runningBlocks.get(identifier);
         if (blocks == null) {
             return;
         }
@@ -1008,61 +1046,30 @@ public class Layer {
             return null;
         }
         
-        List blocks = (List)_runningBlocks.get(identifer);
+        RunningBlocks blocks = (RunningBlocks)_runningBlocks.get(identifer);
         if (blocks == null) {
             return null;
         }
         
-        if (which == PageElementPosition.START) {
-            BlockBox prev = null;
-            for (Iterator i = blocks.iterator(); i.hasNext(); ) {
-                BlockBox b = (BlockBox)i.next();
-                if (b.getStaticEquivalent().getAbsY() >= page.getTop()) {
-                    break;
-                }
-                prev = b;
-            }
-            return prev;
-        } else if (which == PageElementPosition.FIRST) {
-            for (Iterator i = blocks.iterator(); i.hasNext(); ) {
-                BlockBox b = (BlockBox)i.next();
-                int absY = b.getStaticEquivalent().getAbsY();
-                if (absY >= page.getTop() && absY < page.getBottom()) {
-                    return b;
-                }
+        return blocks.find(page, which);
+    }
+    
+    /**
+     * Invalidates the position index of all running blocks.  The index is
+     * rebuilt lazily on the next lookup, so this is called whenever the static
+     * positions of running blocks may have moved.
+     */
+    private void invalidateRunningBlocks() {
+        if (_runningBlocks != null) {
+            for (Iterator i = _runningBlocks.values().iterator(); i.hasNext(); ) {
+                ((RunningBlocks)i.next()).invalidate();
             }
-            return getRunningBlock(identifer, page, PageElementPosition.START);
-        } else if (which == PageElementPosition.LAST) {
-            BlockBox prev = null;
-            for (Iterator i = blocks.iterator(); i.hasNext(); ) {
-                BlockBox b = (BlockBox)i.next();
-                if (b.getStaticEquivalent().getAbsY() > page.getBottom()) {
-                    break;
-                }
-                prev = b;
-            }
-            return prev;
-        } else if (which == PageElementPosition.LAST_EXCEPT) {
-            BlockBox prev = null;
-            for (Iterator i = blocks.iterator(); i.hasNext(); ) {
-                BlockBox b = (BlockBox)i.next();
-                int absY = b.getStaticEquivalent().getAbsY();
-                if (absY >= page.getTop() && absY < page.getBottom()) {
-                    return null;
-                }
-                if (absY > page.getBottom()) {
-                    break;
-                }
-                prev = b;
-            }
-            return prev;
         }
-        
-        throw new RuntimeException("bug: internal error");
     }
     
     public void layoutPages(LayoutContext c) {
         c.setRootDocumentLayer(c.getRootLayer());
+        invalidateRunningBlocks();
         for (Iterator i = _pages.iterator(); i.hasNext(); ) {
             PageBox pageBox = (PageBox)i.next();
             pageBox.layout(c);
@@ -1075,6 +1082,8 @@ public class Layer {
         }
         
         _pageSequences.add(start);
+        _sortedPageSequences = null;
+        invalidatePageSequenceRanges();
     }
     
     private List getSortedPageSequences() {
@@ -1116,17 +1125,24 @@ public class Layer {
         }
     }
     
+    /**
+     * Returns the last page sequence starting at or before <code>absY</code>
+     * (the first sequence if all of them start after it).
+     */
     private BlockBox findPageSequence(List sequences, int absY) {
-        BlockBox result = null;
+        int low = 1;
+        int high = sequences.size() - 1;
         
-        for (int i = 0; i < sequences.size(); i++) {
-            result = (BlockBox) sequences.get(i);
-            if ((i < sequences.size() - 1) && (((BlockBox) sequences.get(i + 1)).getAbsY() > absY)) {
-                break;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (((BlockBox) sequences.get(mid)).getAbsY() > absY) {
+                high = mid - 1;
+            } else {
+                low = mid + 1;
             }
         }
         
-        return result;
+        return (BlockBox) sequences.get(low - 1);
     }
     
     public int getRelativePageNo(RenderingContext c) {
@@ -1138,12 +1154,11 @@ public class Layer {
         if (sequences == null) {
             return initial + c.getPageNo();
         } else {
-            int sequenceStartIndex = getPageSequenceStart(c, sequences, c.getPage());
-            if (sequenceStartIndex == -1) {
+            int sequenceFirstPage = getPageSequenceFirstPage(c, c.getPage());
+            if (sequenceFirstPage == -1) {
                 return initial + c.getPageNo();
             } else {
-                BlockBox block = (BlockBox)sequences.get(sequenceStartIndex);
-                return c.getPageNo() - getFirstPage(c, block).getPageNo();
+                return c.getPageNo() - sequenceFirstPage;
             }
         }
     }
@@ -1157,43 +1172,130 @@ public class Layer {
         if (sequences == null) {
             return initial + c.getPageCount();
         } else {
-            int firstPage;
-            int lastPage;
-            
-            int sequenceStartIndex = getPageSequenceStart(c, sequences, c.getPage());
+            int firstPage = getPageSequenceFirstPage(c, c.getPage());
+            int lastPage = getPageSequenceEndPage(c, c.getPage());
             
-            if (sequenceStartIndex == -1) {
-                firstPage = 0;
-            } else {
-                BlockBox block = (BlockBox)sequences.get(sequenceStartIndex);
-                firstPage = getFirstPage(c, block).getPageNo();
-            }
-            
-            if (sequenceStartIndex < sequences.size() - 1) {
-                BlockBox block = (BlockBox)sequences.get(sequenceStartIndex+1);
-                lastPage = getFirstPage(c, block).getPageNo();
-            } else {
+            if (lastPage == -1) {
                 lastPage = c.getPageCount();
             }
             
-            int sequenceLength = lastPage - firstPage;
-            if (sequenceStartIndex == -1) {
-                sequenceLength += initial;
+            int sequenceLength;
+            if (firstPage == -1) {
+                sequenceLength = lastPage + initial;
+            } else {
+                sequenceLength = lastPage - firstPage;
             }
             
             return sequenceLength;
         }
     }    
     
-    private int getPageSequenceStart(RenderingContext c, List sequences, PageBox page) {
-        for (int i = sequences.size() - 1; i >= 0; i--) {
-            BlockBox start = (BlockBox)sequences.get(i);
-            if (start.getAbsY() < page.getBottom() - 1) {
-                return i;
+    /**
+     * Returns the absolute number of the first page of the page sequence
+     * containing <code>page</code> or -1 if the page precedes the first
+     * page sequence.
+     */
+    private int getPageSequenceFirstPage(CssContext c, PageBox page) {
+        if (isPageSequenceRangesValid(page)) {
+            return _pageSequenceFirstPages[page.getPageNo()];
+        }
+        
+        List sequences = getSortedPageSequences();
+        int sequenceStartIndex = getPageSequenceStart(sequences, page, sequences.size() - 1);
+        if (sequenceStartIndex == -1) {
+            return -1;
+        } else {
+            return getFirstPage(c, (BlockBox)sequences.get(sequenceStartIndex)).getPageNo();
+        }
+    }
+    
+    /**
+     * Returns the absolute number of the first page following the page
+     * sequence containing <code>page</code> or -1 if the sequence runs to the
+     * end of the document.
+     */
+    private int getPageSequenceEndPage(CssContext c, PageBox page) {
+        if (isPageSequenceRangesValid(page)) {
+            return _pageSequenceEndPages[page.getPageNo()];
+        }
+        
+        List sequences = getSortedPageSequences();
+        int sequenceStartIndex = getPageSequenceStart(sequences, page, sequences.size() - 1);
+        if (sequenceStartIndex < sequences.size() - 1) {
+            return getFirstPage(c, (BlockBox)sequences.get(sequenceStartIndex + 1)).getPageNo();
+        } else {
+            return -1;
+        }
+    }
+    
+    private boolean isPageSequenceRangesValid(PageBox page) {
+        if (_pageSequenceFirstPages == null) {
+            return false;
+        }
+        
+        int pageNo = page.getPageNo();
+        return pageNo >= 0 && pageNo < _pageSequenceFirstPages.length && getPages().get(pageNo) == page;
+    }
+    
+    private void invalidatePageSequenceRanges() {
+        _pageSequenceFirstPages = null;
+        _pageSequenceEndPages = null;
+    }
+    
+    /**
+     * Resolves, for each page, the page range of the page sequence it belongs
+     * to so <code>counter(page)</code> and <code>counter(pages)</code> are
+     * simple lookups when painting page margin boxes.  Both the pages and the
+     * sequences are sorted so this is a single merge pass.
+     */
+    private void calcPageSequenceRanges(CssContext c) {
+        List sequences = getSortedPageSequences();
+        if (sequences == null) {
+            invalidatePageSequenceRanges();
+            return;
+        }
+        
+        List pages = getPages();
+        int[] firstPages = new int[pages.size()];
+        int[] endPages = new int[pages.size()];
+        
+        int sequenceStartIndex = -1;
+        for (int i = 0; i < pages.size(); i++) {
+            PageBox page = (PageBox)pages.get(i);
+            sequenceStartIndex = getPageSequenceStart(sequences, page, sequenceStartIndex);
+            if (sequenceStartIndex == -1) {
+                firstPages[i] = -1;
+            } else {
+                firstPages[i] = getFirstPage(c, (BlockBox)sequences.get(sequenceStartIndex)).getPageNo();
             }
+            if (sequenceStartIndex < sequences.size() - 1) {
+                endPages[i] = getFirstPage(c, (BlockBox)sequences.get(sequenceStartIndex + 1)).getPageNo();
+            } else {
+                endPages[i] = -1;
+            }
+        }
+        
+        _pageSequenceFirstPages = firstPages;
+        _pageSequenceEndPages = endPages;
+    }
+    
+    /**
+     * Returns the index of the last page sequence starting before the bottom
+     * of <code>page</code>, or -1 if there is none.  The search only moves
+     * forward from <code>from</code> when <code>from</code> already satisfies
+     * that condition, which makes successive calls for increasing pages cheap.
+     */
+    private int getPageSequenceStart(List sequences, PageBox page, int from) {
+        int i = from;
+        while (i >= 0 && ((BlockBox)sequences.get(i)).getAbsY() >= page.getBottom() - 1) {
+            i--;
+        }
+        while (i + 1 < sequences.size() &&
+                ((BlockBox)sequences.get(i + 1)).getAbsY() < page.getBottom() - 1) {
+            i++;
         }
         
-        return -1;
+        return i;
     }    
 
     public Box getSelectionEnd() {
@@ -1251,4 +1353,92 @@ public class Layer {
     private void setLastRequestedPage(PageBox lastRequestedPage) {
         _lastRequestedPage = lastRequestedPage;
     }
+
+    /**
+     * The running blocks for a single running name.  Blocks are kept sorted
+     * by the absolute Y position of their static equivalent (document order
+     * for ties) so the per-page queries made while laying out the page margin
+     * boxes are binary searches instead of a scan over every running block.
+     */
+    private static class RunningBlocks {
+        private final List _blocks = new ArrayList();
+        private int[] _absYs;
+
+        public void add(BlockBox block) {
+            _blocks.add(block);
+            invalidate();
+        }
+
+        public void remove(BlockBox block) {
+            if (_blocks.remove(block)) {
+                invalidate();
+            }
+        }
+
+        public void invalidate() {
+            _absYs = null;
+        }
+
+        private void ensureSorted() {
+            if (_absYs != null) {
+                return;
+            }
+
+            Collections.sort(_blocks, new Comparator() {
+                public int compare(Object o1, Object o2) {
+                    int y1 = ((BlockBox)o1).getStaticEquivalent().getAbsY();
+                    int y2 = ((BlockBox)o2).getStaticEquivalent().getAbsY();
+
+                    return y1 < y2 ? -1 : (y1 == y2 ? 0 : 1);
+                }
+            });
+
+            int[] absYs = new int[_blocks.size()];
+            for (int i = 0; i < absYs.length; i++) {
+                absYs[i] = ((BlockBox)_blocks.get(i)).getStaticEquivalent().getAbsY();
+            }
+            _absYs = absYs;
+        }
+
+        /**
+         * Returns the index of the first block positioned at or after
+         * <code>absY</code> (or after it if <code>inclusive</code> is false).
+         */
+        private int indexOf(int absY, boolean inclusive) {
+            int low = 0;
+            int high = _absYs.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (_absYs[mid] < absY || (! inclusive && _absYs[mid] == absY)) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private BlockBox get(int index) {
+            return index >= 0 && index < _absYs.length ? (BlockBox)_blocks.get(index) : null;
+        }
+
+        public BlockBox find(PageBox page, PageElementPosition which) {
+            ensureSorted();
+
+            int first = indexOf(page.getTop(), true);
+            boolean onPage = first < _absYs.length && _absYs[first] < page.getBottom();
+
+            if (which == PageElementPosition.START) {
+                return get(first - 1);
+            } else if (which == PageElementPosition.FIRST) {
+                return onPage ? get(first) : get(first - 1);
+            } else if (which == PageElementPosition.LAST) {
+                return get(indexOf(page.getBottom(), false) - 1);
+            } else if (which == PageElementPosition.LAST_EXCEPT) {
+                return onPage ? null : get(indexOf(page.getBottom(), false) - 1);
+            }
+
+            throw new RuntimeException("bug: internal error");
+        }
+    }
 }
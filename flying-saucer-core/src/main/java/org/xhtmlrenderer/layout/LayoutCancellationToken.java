@@ -0,0 +1,41 @@
+/*
+ * {{{ header & license
+ * Copyright (c) 2026 xhtmlrenderer.dev.java.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.layout;
+
+/**
+ * Allows a layout running on another thread to be stopped.  The layout checks
+ * the token before each block and line it lays out and throws a
+ * {@link LayoutCancelledException} once {@link #cancel()} has been called.
+ * The boxes of a cancelled layout are left in an undefined state and must
+ * not be used any more.
+ *
+ * @see LayoutContext#setCancellationToken(LayoutCancellationToken)
+ */
+public class LayoutCancellationToken {
+    private volatile boolean _cancelled;
+
+    public void cancel() {
+        _cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return _cancelled;
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * {{{ header & license
+ * Copyright (c) 2026 xhtmlrenderer.dev.java.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.layout;
+
+/**
+ * Thrown by a layout whose {@link LayoutCancellationToken} was cancelled.
+ */
+public class LayoutCancelledException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public LayoutCancelledException() {
+        super("Layout was cancelled");
+    }
+}
@@ -35,6 +35,8 @@ import org.xhtmlrenderer.css.parser.CounterData;
 import org.xhtmlrenderer.css.style.CalculatedStyle;
 import org.xhtmlrenderer.css.style.CssContext;
 import org.xhtmlrenderer.css.value.FontSpecification;
+import org.xhtmlrenderer.event.LayoutProgressListener;
+import org.xhtmlrenderer.extend.CopyableFontContext;
 import org.xhtmlrenderer.extend.FSCanvas;
 import org.xhtmlrenderer.extend.FontContext;
 import org.xhtmlrenderer.extend.NamespaceHandler;
@@ -86,6 +88,17 @@ public class LayoutContext implements CssContext {
 
     private BreakAtLineContext _breakAtLineContext;
 
+    private Map _marginAreaCache;
+
+    private LineLayoutCache _lineLayoutCache;
+
+    private boolean _incrementalLayout;
+
+    private LayoutCancellationToken _cancellationToken;
+    private int _boxesCompleted;
+
+    private Object _fontLock;
+
     public TextRenderer getTextRenderer() {
         return _sharedContext.getTextRenderer();
     }
@@ -116,6 +129,33 @@ public class LayoutContext implements CssContext {
         _firstLetters = new StyleTracker();
     }
 
+    /**
+     * Returns a context for calculating the minimum and maximum widths of
+     * prepared boxes on another thread (see
+     * {@link org.xhtmlrenderer.render.BlockBox#prepareConcurrentMinMaxWidth(LayoutContext)}).
+     * The copy measures text with its own copy of the font context and
+     * serializes font lookups with the other copies.  Returns
+     * <code>null</code> if the font context can't be copied.
+     */
+    public LayoutContext copyForConcurrentMinMaxWidth() {
+        if (! (_fontContext instanceof CopyableFontContext)) {
+            return null;
+        }
+
+        LayoutContext result = new LayoutContext(_sharedContext);
+        result._fontContext = ((CopyableFontContext)_fontContext).copy();
+        result._fontLock = _sharedContext;
+        return result;
+    }
+
+    /**
+     * Returns <code>true</code> if this context was created by
+     * {@link #copyForConcurrentMinMaxWidth()}.
+     */
+    public boolean isConcurrentMinMaxWidth() {
+        return _fontLock != null;
+    }
+
     public void reInit(boolean keepLayers) {
         _firstLines = new StyleTracker();
         _firstLetters = new StyleTracker();
@@ -126,6 +166,7 @@ public class LayoutContext implements CssContext {
         if (! keepLayers) {
             _rootLayer = null;
             _layers = new LinkedList();
+            _lineLayoutCache = null;
         }
 
         _extraSpaceTop = 0;
@@ -222,6 +263,10 @@ public class LayoutContext implements CssContext {
     }
 
     public void pushLayer(Layer layer) {
+        if (_rootLayer == null) {
+            // Laying out a root box again which kept its layer
+            _rootLayer = layer;
+        }
         _layers.add(layer);
     }
 
@@ -267,15 +312,27 @@ public class LayoutContext implements CssContext {
     }
 
     public float getFontSize2D(FontSpecification font) {
-        return _sharedContext.getFont(font).getSize2D();
+        return getFont(font).getSize2D();
     }
 
     public float getXHeight(FontSpecification parentFont) {
-        return _sharedContext.getXHeight(getFontContext(), parentFont);
+        if (_fontLock != null) {
+            synchronized (_fontLock) {
+                return _sharedContext.getXHeight(getFontContext(), parentFont);
+            }
+        } else {
+            return _sharedContext.getXHeight(getFontContext(), parentFont);
+        }
     }
 
     public FSFont getFont(FontSpecification font) {
-        return _sharedContext.getFont(font);
+        if (_fontLock != null) {
+            synchronized (_fontLock) {
+                return _sharedContext.getFont(font);
+            }
+        } else {
+            return _sharedContext.getFont(font);
+        }
     }
 
     public UserAgentCallback getUac() {
@@ -286,6 +343,55 @@ public class LayoutContext implements CssContext {
         return _sharedContext.isPrint();
     }
 
+    /**
+     * Whether boxes record what their layout depended on so that boxes which
+     * are still valid can be kept on the next layout pass instead of being
+     * laid out again (see {@link org.xhtmlrenderer.render.BlockBox#reuseLayout}).
+     */
+    public boolean isIncrementalLayout() {
+        return _incrementalLayout;
+    }
+
+    public void setIncrementalLayout(boolean incrementalLayout) {
+        _incrementalLayout = incrementalLayout;
+    }
+
+    public LayoutCancellationToken getCancellationToken() {
+        return _cancellationToken;
+    }
+
+    /**
+     * Sets the token which may be used to stop this layout from another
+     * thread.
+     */
+    public void setCancellationToken(LayoutCancellationToken cancellationToken) {
+        _cancellationToken = cancellationToken;
+    }
+
+    /**
+     * Throws a {@link LayoutCancelledException} if the layout has been
+     * cancelled.
+     */
+    public void checkCancelled() {
+        if (_cancellationToken != null && _cancellationToken.isCancelled()) {
+            throw new LayoutCancelledException();
+        }
+    }
+
+    /**
+     * Notes that another block or line box has been laid out and tells the
+     * {@link LayoutProgressListener} (if any) about it.
+     */
+    public void boxCompleted() {
+        _boxesCompleted++;
+
+        LayoutProgressListener listener = _sharedContext.getLayoutProgressListener();
+        if (listener != null) {
+            int pages = isPrint() && _rootLayer != null ? _rootLayer.getPages().size() : 0;
+            listener.layoutProgress(_boxesCompleted, pages);
+        }
+    }
+
     public StyleTracker getFirstLinesTracker() {
         return _firstLines;
     }
@@ -536,4 +642,36 @@ public class LayoutContext implements CssContext {
     public void setBreakAtLineContext(BreakAtLineContext breakAtLineContext) {
         _breakAtLineContext = breakAtLineContext;
     }
+
+    /**
+     * Returns the laid out page margin areas of this layout run, keyed by
+     * everything that determines their layout.  Used by {@link PageBox} to
+     * share margin area tables between pages with identical margin content.
+     */
+    public Map getMarginAreaCache() {
+        if (_marginAreaCache == null) {
+            _marginAreaCache = new HashMap();
+        }
+        return _marginAreaCache;
+    }
+
+    /**
+     * Returns the cache of the lines laid out so far (see
+     * {@link LineLayoutCache}), or <code>null</code> if
+     * <code>xr.layout.line-layout-cache</code> is false.
+     */
+    public LineLayoutCache getLineLayoutCache() {
+        if (_lineLayoutCache == null && LineLayoutCache.isEnabled()) {
+            _lineLayoutCache = new LineLayoutCache();
+        }
+        return _lineLayoutCache;
+    }
+
+    /**
+     * Lays out with <code>cache</code> whether or not
+     * <code>xr.layout.line-layout-cache</code> is true.
+     */
+    void setLineLayoutCache(LineLayoutCache cache) {
+        _lineLayoutCache = cache;
+    }
 }
@@ -0,0 +1,332 @@
+/*
+ * {{{ header & license
+ * Copyright (c) 2026 xhtmlrenderer.dev.java.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.layout;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.w3c.dom.Element;
+import org.xhtmlrenderer.css.style.CalculatedStyle;
+import org.xhtmlrenderer.render.AnonymousBlockBox;
+import org.xhtmlrenderer.render.BlockBox;
+import org.xhtmlrenderer.render.InlineBox;
+import org.xhtmlrenderer.render.LineBox;
+import org.xhtmlrenderer.render.PageBox;
+import org.xhtmlrenderer.util.Configuration;
+
+/**
+ * Remembers how the inline content of blocks was broken into lines, so a
+ * block whose content is identical to that of a block laid out before
+ * (repeated address blocks, product descriptions, boilerplate paragraphs)
+ * gets a copy of those line boxes instead of measuring and breaking its
+ * text again.  Only used if <code>xr.layout.line-layout-cache</code> is true.
+ * <p/>
+ * Two blocks are identical if they have the same content width and the same
+ * styles (styles of identically styled siblings are shared) and their
+ * inline content consists of the same text.  Only content whose lines can't
+ * depend on anything else is cached: no floats may be nearby, there must be
+ * no replaced, inline-block, floated or positioned content, no first-line,
+ * first-letter or list marker styling and no dynamic content like page
+ * numbers.  In paged media the lines must fit on the current page, both
+ * where they were laid out and where they are copied to.
+ * <p/>
+ * A cache lives as long as the {@link LayoutContext} it belongs to.
+ */
+public class LineLayoutCache {
+    private static final int MAX_ENTRIES = 512;
+
+    private static final boolean ENABLED =
+            Configuration.isTrue("xr.layout.line-layout-cache", false);
+
+    private final LinkedHashMap _entries = new LinkedHashMap(16, 0.75f, true);
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Returns the key the lines of <code>block</code> are cached under, or
+     * <code>null</code> if they can't be cached.  Must be called before the
+     * lines are laid out.
+     */
+    public Object createKey(LayoutContext c, BlockBox block, int contentStart) {
+        if (block instanceof AnonymousBlockBox &&
+                ((AnonymousBlockBox)block).getOpenInlineBoxes() != null) {
+            return null;
+        }
+
+        if (c.getFirstLinesTracker().hasStyles() || c.getFirstLettersTracker().hasStyles() ||
+                c.getCurrentMarkerData() != null || block.isCurrentBreakAtLineContext(c) ||
+                ! BlockBox.isFloatFree(c, contentStart)) {
+            return null;
+        }
+
+        List content = block.getInlineContent();
+        if (content == null || content.isEmpty() || block.getChildCount() != 0) {
+            return null;
+        }
+
+        for (Iterator i = content.iterator(); i.hasNext(); ) {
+            Object node = i.next();
+            if (! (node instanceof InlineBox)) {
+                return null;
+            }
+            InlineBox iB = (InlineBox)node;
+            CalculatedStyle style = iB.getStyle();
+            if (iB.isDynamicFunction() || style.requiresLayer()) {
+                return null;
+            }
+            // The ids of inline elements are registered while laying out
+            if (iB.isStartsHere() && iB.getElement() != null && hasId(c, iB.getElement())) {
+                return null;
+            }
+        }
+
+        return new Key(block.getStyle(), block.getContentWidth(), contentStart, content);
+    }
+
+    /**
+     * Copies the lines cached under <code>key</code> to <code>block</code>.
+     * Returns <code>false</code> (and leaves <code>block</code> alone) if
+     * there are none or they don't fit on the current page at their new
+     * position.
+     */
+    public boolean layoutFromCache(LayoutContext c, BlockBox block, Object key) {
+        Entry entry = (Entry)_entries.get(key);
+        if (entry == null) {
+            return false;
+        }
+        if (! entry.isValid()) {
+            _entries.remove(key);
+            return false;
+        }
+
+        c.checkCancelled();
+
+        BlockBox source = entry.getBlock();
+        Map nodes = mapNodes(source, block);
+
+        // The lines may have been moved as a whole since they were laid out
+        // (e.g. by vertical-align in table cells)
+        int dy = entry.getFirstLineY() - source.getChild(0).getY();
+        int count = source.getChildCount();
+        for (int i = 0; i < count; i++) {
+            LineBox line = (LineBox)source.getChild(i);
+            block.addChildForLayout(c, line.copyLayout(c, block, line.getY() + dy, nodes));
+        }
+
+        if (! isOnOnePage(c, block)) {
+            block.removeAllChildren();
+            return false;
+        }
+
+        for (int i = 0; i < count; i++) {
+            c.boxCompleted();
+        }
+
+        LineBox last = (LineBox)block.getChild(count - 1);
+        block.setContentWidth(source.getContentWidth());
+        block.setHeight(last.getY() + last.getHeight());
+
+        return true;
+    }
+
+    /**
+     * Remembers the lines <code>block</code> has just been laid out with
+     * (if nothing but its content went into their layout).
+     */
+    public void put(LayoutContext c, BlockBox block, Object key) {
+        int count = block.getChildCount();
+        if (count == 0 || block.isNeedPageClear()) {
+            return;
+        }
+
+        // Lines which have been pushed down (to the next page or below a
+        // float) aren't directly below each other
+        int y = ((Key)key).getContentStart();
+        for (int i = 0; i < count; i++) {
+            LineBox line = (LineBox)block.getChild(i);
+            if (line.getY() != y) {
+                return;
+            }
+            y += line.getHeight();
+        }
+
+        if (! isOnOnePage(c, block)) {
+            return;
+        }
+
+        _entries.put(key, new Entry(block));
+        if (_entries.size() > MAX_ENTRIES) {
+            Iterator i = _entries.entrySet().iterator();
+            i.next();
+            i.remove();
+        }
+    }
+
+    /**
+     * Whether the lines of <code>block</code> are where laying them out would
+     * have put them, i.e. none of them would have been moved to the next
+     * page (see {@link LineBox#checkPagePosition(LayoutContext, boolean)}).
+     */
+    private static boolean isOnOnePage(LayoutContext c, BlockBox block) {
+        if (! c.isPrint() || ! c.isPageBreaksAllowed()) {
+            return true;
+        }
+
+        for (int i = 0; i < block.getChildCount(); i++) {
+            LineBox line = (LineBox)block.getChild(i);
+            PageBox page = c.getRootLayer().getFirstPage(c, line);
+            if (page != null &&
+                    (line.getAbsY() + line.getHeight() >= page.getBottom() - c.getExtraSpaceBottom() ||
+                            page.getTop() + c.getExtraSpaceTop() > line.getAbsY())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static Map mapNodes(BlockBox source, BlockBox target) {
+        Map result = new HashMap();
+        if (source.getElement() != null) {
+            result.put(source.getElement(), target.getElement());
+        }
+
+        List sourceContent = source.getInlineContent();
+        List targetContent = target.getInlineContent();
+        for (int i = 0; i < sourceContent.size(); i++) {
+            InlineBox from = (InlineBox)sourceContent.get(i);
+            InlineBox to = (InlineBox)targetContent.get(i);
+            if (from.getElement() != null) {
+                result.put(from.getElement(), to.getElement());
+            }
+            if (from.getTextNode() != null) {
+                result.put(from.getTextNode(), to.getTextNode());
+            }
+        }
+
+        return result;
+    }
+
+    private static boolean hasId(LayoutContext c, Element e) {
+        return c.getNamespaceHandler().getAnchorName(e) != null ||
+                c.getNamespaceHandler().getID(e) != null;
+    }
+
+    private static class Key {
+        private final CalculatedStyle _style;
+        private final int _contentWidth;
+        private final int _contentStart;
+        private final List _content;
+        private final int _hashCode;
+
+        public Key(CalculatedStyle style, int contentWidth, int contentStart, List content) {
+            _style = style;
+            _contentWidth = contentWidth;
+            _contentStart = contentStart;
+            _content = content;
+
+            int hashCode = System.identityHashCode(style);
+            hashCode = 31 * hashCode + contentWidth;
+            hashCode = 31 * hashCode + contentStart;
+            for (Iterator i = content.iterator(); i.hasNext(); ) {
+                InlineBox iB = (InlineBox)i.next();
+                hashCode = 31 * hashCode + System.identityHashCode(iB.getStyle());
+                hashCode = 31 * hashCode + (iB.getText() == null ? 0 : iB.getText().hashCode());
+            }
+            _hashCode = hashCode;
+        }
+
+        public int getContentStart() {
+            return _contentStart;
+        }
+
+        public int hashCode() {
+            return _hashCode;
+        }
+
+        public boolean equals(Object o) {
+            if (! (o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key)o;
+            if (_hashCode != other._hashCode || _style != other._style ||
+                    _contentWidth != other._contentWidth ||
+                    _contentStart != other._contentStart ||
+                    _content.size() != other._content.size()) {
+                return false;
+            }
+            for (int i = 0; i < _content.size(); i++) {
+                if (! isSame((InlineBox)_content.get(i), (InlineBox)other._content.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean isSame(InlineBox a, InlineBox b) {
+            return a.getStyle() == b.getStyle() &&
+                    a.isStartsHere() == b.isStartsHere() &&
+                    a.isEndsHere() == b.isEndsHere() &&
+                    (a.getElement() == null) == (b.getElement() == null) &&
+                    (a.getTextNode() == null) == (b.getTextNode() == null) &&
+                    (a.getText() == null ? b.getText() == null : a.getText().equals(b.getText()));
+        }
+    }
+
+    private static class Entry {
+        private final BlockBox _block;
+        private final LineBox _firstLine;
+        private final LineBox _lastLine;
+        private final int _lineCount;
+        private final int _firstLineY;
+
+        public Entry(BlockBox block) {
+            _block = block;
+            _lineCount = block.getChildCount();
+            _firstLine = (LineBox)block.getChild(0);
+            _lastLine = (LineBox)block.getChild(_lineCount - 1);
+            _firstLineY = _firstLine.getY();
+        }
+
+        public BlockBox getBlock() {
+            return _block;
+        }
+
+        public int getFirstLineY() {
+            return _firstLineY;
+        }
+
+        /**
+         * Whether the block still has the lines it had when it was cached
+         * (it is laid out again from scratch if it has to move to another
+         * page, for example).
+         */
+        public boolean isValid() {
+            return _block.getChildCount() == _lineCount &&
+                    _block.getChild(0) == _firstLine &&
+                    _block.getChild(_lineCount - 1) == _lastLine;
+        }
+    }
+}
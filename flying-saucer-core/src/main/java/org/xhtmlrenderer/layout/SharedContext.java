@@ -23,8 +23,12 @@ import java.awt.Font;
 import java.awt.HeadlessException;
 import java.awt.Rectangle;
 import java.awt.Toolkit;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -32,9 +36,11 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xhtmlrenderer.context.AWTFontResolver;
 import org.xhtmlrenderer.context.StyleReference;
+import org.xhtmlrenderer.css.constants.CSSName;
 import org.xhtmlrenderer.css.style.CalculatedStyle;
 import org.xhtmlrenderer.css.style.EmptyStyle;
 import org.xhtmlrenderer.css.value.FontSpecification;
+import org.xhtmlrenderer.event.LayoutProgressListener;
 import org.xhtmlrenderer.extend.FSCanvas;
 import org.xhtmlrenderer.extend.FontContext;
 import org.xhtmlrenderer.extend.FontResolver;
@@ -95,6 +101,8 @@ public class SharedContext {
     private ReplacedElementFactory replacedElementFactory;
     private Rectangle temp_canvas;
 
+    private LayoutProgressListener layoutProgressListener;
+
     public SharedContext() {
     }
 
@@ -135,6 +143,18 @@ public class SharedContext {
         replacedElementFactory.setFormSubmissionListener(fsl);
     }
 
+    public LayoutProgressListener getLayoutProgressListener() {
+        return layoutProgressListener;
+    }
+
+    /**
+     * Sets the listener which is told about the progress of each layout run
+     * with this context.
+     */
+    public void setLayoutProgressListener(LayoutProgressListener listener) {
+        this.layoutProgressListener = listener;
+    }
+
     public LayoutContext newLayoutContextInstance() {
         LayoutContext c = new LayoutContext(this);
         return c;
@@ -574,12 +594,124 @@ public class SharedContext {
         return result;
     }
 
+    /**
+     * Updates the cached styles of <code>e</code> and its descendants after a
+     * dynamic pseudo-class (:hover, :active or :focus) of <code>e</code>
+     * changed state.  Descendants are only matched again if selectors passed
+     * on to them changed, and only derived again if an inherited property
+     * changed.  If the style sheets style siblings by the state of
+     * <code>e</code> (e.g. <code>a:hover + span</code>), the following
+     * siblings of <code>e</code> are matched again as well.  The boxes of
+     * the affected elements still need to pick up the new styles (see
+     * {@link Box#restyle(LayoutContext)}).
+     *
+     * @return The {@link org.xhtmlrenderer.css.constants.CSSName}s whose
+     * values changed for <code>e</code>, its following siblings or their
+     * descendants
+     */
+    public Set restyle(Element e) {
+        Set changed = new HashSet();
+        if (styleMap != null) {
+            restyle(e, true, Collections.EMPTY_SET, changed);
+            if (getCss().isSiblingStyled(e)) {
+                for (Node n = e.getNextSibling(); n != null; n = n.getNextSibling()) {
+                    if (n.getNodeType() == Node.ELEMENT_NODE) {
+                        restyle((Element)n, true, Collections.EMPTY_SET, changed);
+                    }
+                }
+            }
+        }
+        return changed;
+    }
+
+    private void restyle(Element e, boolean rematch, Set inheritedChanges, Set changed) {
+        CalculatedStyle previous = (CalculatedStyle)styleMap.get(e);
+        if (previous == null) {
+            // Never styled (e.g. inside display: none), so there are no boxes to update
+            return;
+        }
+
+        Set ownChanges = new HashSet();
+        boolean rematchChildren = rematch && getCss().rematch(e, ownChanges);
+
+        Node parent = e.getParentNode();
+        CalculatedStyle parentStyle = parent instanceof Element ?
+                getStyle((Element)parent, false) : previous.getParent();
+        CalculatedStyle style = parentStyle.deriveStyle(getCss().getCascadedStyle(e, false));
+        if (style == previous && ! rematchChildren) {
+            return;
+        }
+        styleMap.put(e, style);
+        changed.addAll(ownChanges);
+
+        Set childChanges = new HashSet(inheritedChanges);
+        for (Iterator i = ownChanges.iterator(); i.hasNext(); ) {
+            CSSName name = (CSSName)i.next();
+            if (CSSName.propertyInherits(name)) {
+                childChanges.add(name);
+            }
+        }
+
+        if (rematchChildren || ! childChanges.isEmpty()) {
+            NodeList children = e.getChildNodes();
+            for (int i = 0; i < children.getLength(); i++) {
+                Node child = children.item(i);
+                if (child.getNodeType() == Node.ELEMENT_NODE) {
+                    restyle((Element)child, rematchChildren, childChanges, changed);
+                }
+            }
+        }
+    }
+
     public void reset() {
        styleMap = null;
        idMap = null;
        replacedElementFactory.reset();
     }
 
+    /**
+     * Returns a context for laying out the current document on another
+     * thread.  It shares the style sheets, fonts, user agent and settings of
+     * this context, but keeps the boxes by id and the styles by element in
+     * maps of its own, so the layout which is currently shown is left alone.
+     * Once the layout is finished, the maps are taken over with
+     * {@link #takeLayoutMaps(SharedContext)}.
+     *
+     * @param ref The replaced element factory used by the layout
+     */
+    public SharedContext newBackgroundLayoutContext(ReplacedElementFactory ref) {
+        SharedContext result = new SharedContext();
+        result.text_renderer = text_renderer;
+        result.media = media;
+        result.uac = uac;
+        result.interactive = interactive;
+        result.dpi = dpi;
+        result.mm_per_dot = mm_per_dot;
+        result.print = print;
+        result.dotsPerPixel = dotsPerPixel;
+        result.replacedElementFactory = ref;
+        result.temp_canvas = temp_canvas;
+        result.layoutProgressListener = layoutProgressListener;
+        result.font_resolver = font_resolver;
+        result.css = css;
+        result.debug_draw_boxes = debug_draw_boxes;
+        result.debug_draw_line_boxes = debug_draw_line_boxes;
+        result.debug_draw_inline_boxes = debug_draw_inline_boxes;
+        result.debug_draw_font_metrics = debug_draw_font_metrics;
+        result.canvas = canvas;
+        result.namespaceHandler = namespaceHandler;
+        return result;
+    }
+
+    /**
+     * Takes over the boxes by id and the styles by element of a layout done
+     * with a context returned by {@link #newBackgroundLayoutContext(ReplacedElementFactory)}.
+     */
+    public void takeLayoutMaps(SharedContext background) {
+        idMap = background.idMap;
+        styleMap = background.styleMap;
+    }
+
     public ReplacedElementFactory getReplacedElementFactory() {
         return replacedElementFactory;
     }
@@ -30,7 +30,13 @@ import java.util.List;
  * spanning cells to be inserted, rowspans will mean cells appear in more than
  * one grid row, and positions may be <code>null</code> if no cell occupies that
  * position in the grid.
+ *
+ * @deprecated {@link TableSectionBox} no longer keeps its grid as a list of
+ * rows.  Use {@link TableSectionBox#numRows()},
+ * {@link TableSectionBox#numCols()} and
+ * {@link TableSectionBox#cellAt(int, int)} instead.
  */
+@Deprecated
 public class RowData {
     private List _row = new ArrayList();
     
@@ -22,7 +22,6 @@ package org.xhtmlrenderer.newtable;
 import java.awt.Rectangle;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.logging.Level;
@@ -34,8 +33,11 @@ import org.xhtmlrenderer.css.style.CssContext;
 import org.xhtmlrenderer.css.style.Length;
 import org.xhtmlrenderer.css.style.derived.BorderPropertySet;
 import org.xhtmlrenderer.css.style.derived.RectPropertySet;
+import org.xhtmlrenderer.layout.CollapsedBorderSide;
+import org.xhtmlrenderer.layout.ConcurrentMinMaxWidth;
 import org.xhtmlrenderer.layout.LayoutContext;
 import org.xhtmlrenderer.render.BlockBox;
+import org.xhtmlrenderer.render.BorderPainter;
 import org.xhtmlrenderer.render.Box;
 import org.xhtmlrenderer.render.ContentLimit;
 import org.xhtmlrenderer.render.ContentLimitContainer;
@@ -63,6 +65,11 @@ public class TableBox extends BlockBox {
 
     private int _extraSpaceTop;
     private int _extraSpaceBottom;
+    
+    private int _collapsedBorderRankCount;
+    
+    private static final int[] COLLAPSED_BORDER_SIDES = new int[] {
+        BorderPainter.TOP, BorderPainter.RIGHT, BorderPainter.BOTTOM, BorderPainter.LEFT };
 
     public boolean isMarginAreaRoot() {
         return _marginAreaRoot;
@@ -211,6 +218,84 @@ public class TableBox extends BlockBox {
             TableSectionBox section = (TableSectionBox)i.next();
             section.calcBorders(c);
         }
+        rankCollapsedBorders();
+    }
+    
+    /**
+     * Sorts the collapsed border sides of all cells by painting priority once
+     * and stores the resulting rank with each cell, so painting the borders
+     * visible on a page doesn't need to compare them again.  Sides of equal
+     * priority share a rank.
+     */
+    private void rankCollapsedBorders() {
+        List borders = new ArrayList();
+        for (Iterator i = getChildIterator(); i.hasNext(); ) {
+            TableSectionBox section = (TableSectionBox)i.next();
+            for (Iterator j = section.getChildIterator(); j.hasNext(); ) {
+                TableRowBox row = (TableRowBox)j.next();
+                for (Iterator k = row.getChildIterator(); k.hasNext(); ) {
+                    TableCellBox cell = (TableCellBox)k.next();
+                    cell.addCollapsedBorders(borders);
+                }
+            }
+        }
+        
+        Collections.sort(borders);
+        
+        int rank = 0;
+        CollapsedBorderSide previous = null;
+        for (Iterator i = borders.iterator(); i.hasNext(); ) {
+            CollapsedBorderSide border = (CollapsedBorderSide)i.next();
+            // Only 16 bits are available per side.  Running out would
+            // require tens of thousands of different border widths.
+            if ((previous == null || border.compareTo(previous) != 0) && rank < 0xffff) {
+                rank++;
+            }
+            border.getCell().setCollapsedBorderRank(border.getSide(), rank);
+            previous = border;
+        }
+        
+        _collapsedBorderRankCount = rank;
+    }
+    
+    /**
+     * Paints the collapsed borders of <code>cells</code> (which must belong to
+     * this table) in order of priority, so wider borders are painted over
+     * narrower ones.  Sides with the same priority are painted in the order
+     * of <code>cells</code>.
+     */
+    public void paintCollapsedBorders(RenderingContext c, List cells) {
+        // A counting sort on the ranks calculated in rankCollapsedBorders()
+        int[] starts = new int[_collapsedBorderRankCount + 2];
+        for (int i = 0; i < cells.size(); i++) {
+            TableCellBox cell = (TableCellBox)cells.get(i);
+            for (int j = 0; j < COLLAPSED_BORDER_SIDES.length; j++) {
+                int rank = cell.getCollapsedBorderRank(COLLAPSED_BORDER_SIDES[j]);
+                if (rank != 0) {
+                    starts[rank + 1]++;
+                }
+            }
+        }
+        
+        for (int i = 1; i < starts.length; i++) {
+            starts[i] += starts[i - 1];
+        }
+        
+        int[] sides = new int[starts[starts.length - 1]];
+        for (int i = 0; i < cells.size(); i++) {
+            TableCellBox cell = (TableCellBox)cells.get(i);
+            for (int j = 0; j < COLLAPSED_BORDER_SIDES.length; j++) {
+                int rank = cell.getCollapsedBorderRank(COLLAPSED_BORDER_SIDES[j]);
+                if (rank != 0) {
+                    sides[starts[rank]++] = i << 2 | j;
+                }
+            }
+        }
+        
+        for (int i = 0; i < sides.length; i++) {
+            TableCellBox cell = (TableCellBox)cells.get(sides[i] >> 2);
+            cell.paintCollapsedBorder(c, COLLAPSED_BORDER_SIDES[sides[i] & 3]);
+        }
     }
 
     protected boolean isAllowHeightToShrink() {
@@ -1157,7 +1242,12 @@ public class TableBox extends BlockBox {
     private static class AutoTableLayout implements TableLayout {
         private final TableBox _table;
         private Layout[] _layoutStruct;
-        private List _spanCells;
+
+        // Cells spanning more than one column and their spans, in the order
+        // they were found
+        private TableCellBox[] _spanCells;
+        private int[] _spanCellSpans;
+        private int _numSpanCells;
 
         public AutoTableLayout(TableBox table) {
             _table = table;
@@ -1166,6 +1256,8 @@ public class TableBox extends BlockBox {
         public void reset() {
             _layoutStruct = null;
             _spanCells = null;
+            _spanCellSpans = null;
+            _numSpanCells = 0;
         }
 
         protected Layout[] getLayoutStruct() {
@@ -1180,7 +1272,9 @@ public class TableBox extends BlockBox {
                 _layoutStruct[i].setMaxWidth(getMinColWidth());
             }
 
-            _spanCells = new ArrayList();
+            _spanCells = new TableCellBox[8];
+            _spanCellSpans = new int[8];
+            _numSpanCells = 0;
 
             TableBox table = _table;
             int nEffCols = table.numEffCols();
@@ -1210,11 +1304,27 @@ public class TableBox extends BlockBox {
 
             }
 
+            if (ConcurrentMinMaxWidth.isEnabled(c)) {
+                ConcurrentMinMaxWidth.calcMinMaxWidths(c, getCells());
+            }
+
             for (int i = 0; i < nEffCols; i++) {
                 recalcColumn(c, i);
             }
         }
 
+        private List getCells() {
+            List result = new ArrayList();
+            for (Iterator i = _table.getChildIterator(); i.hasNext(); ) {
+                TableSectionBox section = (TableSectionBox) i.next();
+                for (Iterator j = section.getChildIterator(); j.hasNext(); ) {
+                    TableRowBox row = (TableRowBox) j.next();
+                    result.addAll(row.getChildren());
+                }
+            }
+            return result;
+        }
+
         protected int getMinColWidth() {
             return 1;
         }
@@ -1231,7 +1341,8 @@ public class TableBox extends BlockBox {
                     if (cell == TableCellBox.SPANNING_CELL || cell == null) {
                         continue;
                     }
-                    if (cell.getStyle().getColSpan() == 1) {
+                    int span = cell.getStyle().getColSpan();
+                    if (span == 1) {
                         // A cell originates in this column. Ensure we have
                         // a min/max width of at least 1px for this column now.
                         l.setMinWidth(Math.max(l.minWidth(), getMinColWidth()));
@@ -1277,7 +1388,7 @@ public class TableBox extends BlockBox {
                             l.setMinWidth(Math.max(l.minWidth(), getMinColWidth()));
                             l.setMaxWidth(Math.max(l.maxWidth(), getMinColWidth()));
 
-                            _spanCells.add(cell);
+                            addSpanCell(cell, span);
                         }
                     }
                 }
@@ -1286,6 +1397,50 @@ public class TableBox extends BlockBox {
             l.setMaxWidth(Math.max(l.maxWidth(), l.minWidth()));
         }
 
+        private void addSpanCell(TableCellBox cell, int span) {
+            if (_numSpanCells == _spanCells.length) {
+                TableCellBox[] cells = new TableCellBox[_numSpanCells * 2];
+                System.arraycopy(_spanCells, 0, cells, 0, _numSpanCells);
+                _spanCells = cells;
+
+                int[] spans = new int[_numSpanCells * 2];
+                System.arraycopy(_spanCellSpans, 0, spans, 0, _numSpanCells);
+                _spanCellSpans = spans;
+            }
+            _spanCells[_numSpanCells] = cell;
+            _spanCellSpans[_numSpanCells] = span;
+            _numSpanCells++;
+        }
+
+        /*
+         * Sorts the spanning cells by increasing span.  Cells with the same
+         * span keep the order they were found in.
+         */
+        private void sortSpanCells() {
+            int maxSpan = 0;
+            for (int i = 0; i < _numSpanCells; i++) {
+                maxSpan = Math.max(maxSpan, _spanCellSpans[i]);
+            }
+
+            int[] starts = new int[maxSpan + 2];
+            for (int i = 0; i < _numSpanCells; i++) {
+                starts[_spanCellSpans[i] + 1]++;
+            }
+            for (int i = 1; i < starts.length; i++) {
+                starts[i] += starts[i - 1];
+            }
+
+            TableCellBox[] cells = new TableCellBox[_spanCells.length];
+            int[] spans = new int[_spanCellSpans.length];
+            for (int i = 0; i < _numSpanCells; i++) {
+                int pos = starts[_spanCellSpans[i]]++;
+                cells[pos] = _spanCells[i];
+                spans[pos] = _spanCellSpans[i];
+            }
+            _spanCells = cells;
+            _spanCellSpans = spans;
+        }
+
         /*
          * This method takes care of colspans. effWidth is the same as width for
          * cells without colspans. If we have colspans, they get modified.
@@ -1304,21 +1459,14 @@ public class TableBox extends BlockBox {
                 layoutStruct[i].setEffMaxWidth(layoutStruct[i].maxWidth());
             }
 
-            Collections.sort(_spanCells, new Comparator() {
-                public int compare(Object o1, Object o2) {
-                    TableCellBox c1 = (TableCellBox)o1;
-                    TableCellBox c2 = (TableCellBox)o2;
-
-                    return c1.getStyle().getColSpan() - c2.getStyle().getColSpan();
-                }
-            });
+            sortSpanCells();
 
-            for (Iterator i = _spanCells.iterator(); i.hasNext(); ) {
-                TableCellBox cell = (TableCellBox)i.next();
+            for (int i = 0; i < _numSpanCells; i++) {
+                TableCellBox cell = _spanCells[i];
 
                 cell.calcMinMaxWidth(c);
 
-                int span = cell.getStyle().getColSpan();
+                int span = _spanCellSpans[i];
                 Length w = cell.getOuterStyleOrColWidth(c);
                 if (w.value() == 0) {
                     w =  new Length(); // make it Variable
@@ -21,7 +21,6 @@ package org.xhtmlrenderer.newtable;
 
 import java.awt.Rectangle;
 import java.util.List;
-import java.util.Set;
 
 import org.xhtmlrenderer.css.constants.CSSName;
 import org.xhtmlrenderer.css.constants.IdentValue;
@@ -58,6 +57,11 @@ public class TableCellBox extends BlockBox {
     private CollapsedBorderValue _collapsedBorderBottom;
     private CollapsedBorderValue _collapsedBorderLeft;
     
+    // The painting rank of each collapsed border side (see
+    // TableBox.paintCollapsedBorders()), 16 bits per side.  Zero means the
+    // side is not painted.
+    private long _collapsedBorderRanks;
+    
     // 'double', 'solid', 'dashed', 'dotted', 'ridge', 'outset', 'groove', and the lowest: 'inset'. 
     private static final int[] BORDER_PRIORITIES = new int[IdentValue.getIdentCount()];
     
@@ -119,6 +123,8 @@ public class TableCellBox extends BlockBox {
         _collapsedBorderRight = right;
         _collapsedBorderBottom = bottom;
         _collapsedBorderLeft = left;
+        
+        _collapsedBorderRanks = 0;
     }
 
     public int getCol() {
@@ -393,6 +399,14 @@ public class TableCellBox extends BlockBox {
     protected boolean isSkipWhenCollapsingMargins() {
         return true;
     } 
+    
+    protected boolean isSiblingsSkippedWhenCollapsingMargins() {
+        return true;
+    }
+    
+    protected boolean isConcurrentMinMaxWidthSupported() {
+        return true;
+    }
 
     // The following rules apply for resolving conflicts and figuring out which
     // border
@@ -810,28 +824,49 @@ public class TableCellBox extends BlockBox {
         return _collapsedBorderTop;
     }
     
-    public void addCollapsedBorders(Set all, List borders) {
-        if (_collapsedBorderTop.exists() && !all.contains(_collapsedBorderTop)) {
-            all.add(_collapsedBorderTop);
+    public void addCollapsedBorders(List borders) {
+        if (_collapsedBorderTop.exists()) {
             borders.add(new CollapsedBorderSide(this, BorderPainter.TOP));
         }
         
-        if (_collapsedBorderRight.exists() && !all.contains(_collapsedBorderRight)) {
-            all.add(_collapsedBorderRight);
+        if (_collapsedBorderRight.exists()) {
             borders.add(new CollapsedBorderSide(this, BorderPainter.RIGHT));
         }
         
-        if (_collapsedBorderBottom.exists() && !all.contains(_collapsedBorderBottom)) {
-            all.add(_collapsedBorderBottom);
+        if (_collapsedBorderBottom.exists()) {
             borders.add(new CollapsedBorderSide(this, BorderPainter.BOTTOM));
         }
         
-        if (_collapsedBorderLeft.exists() && !all.contains(_collapsedBorderLeft)) {
-            all.add(_collapsedBorderLeft);
+        if (_collapsedBorderLeft.exists()) {
             borders.add(new CollapsedBorderSide(this, BorderPainter.LEFT));
         }
     }
     
+    public int getCollapsedBorderRank(int side) {
+        return (int)(_collapsedBorderRanks >>> getCollapsedBorderRankShift(side)) & 0xffff;
+    }
+    
+    void setCollapsedBorderRank(int side, int rank) {
+        int shift = getCollapsedBorderRankShift(side);
+        _collapsedBorderRanks = (_collapsedBorderRanks & ~(0xffffL << shift)) | 
+            ((long)(rank & 0xffff) << shift);
+    }
+    
+    private static int getCollapsedBorderRankShift(int side) {
+        switch (side) {
+            case BorderPainter.TOP:
+                return 0;
+            case BorderPainter.RIGHT:
+                return 16;
+            case BorderPainter.BOTTOM:
+                return 32;
+            case BorderPainter.LEFT:
+                return 48;
+            default:
+                throw new IllegalArgumentException("Not a single side: " + side);
+        }
+    }
+    
     // Treat height as if it specifies border height (i.e. 
     // box-sizing: border-box in CSS3).  There doesn't seem to be any
     // justification in the spec for this, but everybody does it 
@@ -23,7 +23,6 @@ import java.awt.Rectangle;
 import java.io.IOException;
 import java.io.Writer;
 import java.util.Iterator;
-import java.util.List;
 import org.xhtmlrenderer.css.constants.CSSName;
 import org.xhtmlrenderer.css.constants.IdentValue;
 import org.xhtmlrenderer.css.style.CssContext;
@@ -39,6 +38,7 @@ import org.xhtmlrenderer.render.RenderingContext;
 public class TableRowBox extends BlockBox {
     private int _baseline;
     private boolean _haveBaseline = false;
+    private boolean _needCellWidthCalc;
     private int _heightOverride;
     private ContentLimitContainer _contentLimitContainer;
     
@@ -163,17 +163,17 @@ public class TableRowBox extends BlockBox {
         int maxBorderAndPadding = 0;
         
         int cRow = getIndex();
-        int totalRows = getSection().numRows();
-        List grid = getSection().getGrid();
-        if ((grid.size() > 0) && (cRow < grid.size())) {
-            List row = ((RowData)grid.get(cRow)).getRow();
-            for (int cCol = 0; cCol < row.size(); cCol++) {
-                TableCellBox cell = (TableCellBox)row.get(cCol);
+        TableSectionBox section = getSection();
+        int totalRows = section.numRows();
+        if (cRow < totalRows) {
+            int totalCols = section.numCols();
+            for (int cCol = 0; cCol < totalCols; cCol++) {
+                TableCellBox cell = section.cellAt(cRow, cCol);
                 
                 if (cell == null || cell == TableCellBox.SPANNING_CELL) {
                     continue;
                 }
-                if (cRow < totalRows - 1 && getSection().cellAt(cRow+1, cCol) == cell) {
+                if (cRow < totalRows - 1 && section.cellAt(cRow+1, cCol) == cell) {
                     continue;
                 }
                 
@@ -194,8 +194,10 @@ public class TableRowBox extends BlockBox {
         TableSectionBox section = getSection();
         if (section.isNeedCellWidthCalc()) {
             section.setCellWidths(c);
-            section.setNeedCellWidthCalc(false);
+        } else if (isNeedCellWidthCalc()) {
+            section.setCellWidths(c, this);
         }
+        setNeedCellWidthCalc(false);
         
         if (getChildrenContentType() != CONTENT_EMPTY) {
             int cCol = 0;
@@ -254,17 +256,17 @@ public class TableRowBox extends BlockBox {
         boolean needRowHeightRecalc = false;
         
         int cRow = getIndex();
-        int totalRows = getSection().numRows();
-        List grid = getSection().getGrid();
-        if ((grid.size() > 0) && (cRow < grid.size())) {
-            List row = ((RowData)grid.get(cRow)).getRow();
-            for (int cCol = 0; cCol < row.size(); cCol++) {
-                TableCellBox cell = (TableCellBox)row.get(cCol);
+        TableSectionBox section = getSection();
+        int totalRows = section.numRows();
+        if (cRow < totalRows) {
+            int totalCols = section.numCols();
+            for (int cCol = 0; cCol < totalCols; cCol++) {
+                TableCellBox cell = section.cellAt(cRow, cCol);
                 
                 if (cell == null || cell == TableCellBox.SPANNING_CELL) {
                     continue;
                 }
-                if (cRow < totalRows - 1 && getSection().cellAt(cRow+1, cCol) == cell) {
+                if (cRow < totalRows - 1 && section.cellAt(cRow+1, cCol) == cell) {
                     continue;
                 }
                 
@@ -349,17 +351,17 @@ public class TableRowBox extends BlockBox {
         }
         
         int cRow = getIndex();
-        int totalRows = getSection().numRows();
-        List grid = getSection().getGrid();
-        if ((grid.size() > 0) && (cRow < grid.size())) {
-            List row = ((RowData)grid.get(cRow)).getRow();
-            for (int cCol = 0; cCol < row.size(); cCol++) {
-                TableCellBox cell = (TableCellBox)row.get(cCol);
+        TableSectionBox section = getSection();
+        int totalRows = section.numRows();
+        if (cRow < totalRows) {
+            int totalCols = section.numCols();
+            for (int cCol = 0; cCol < totalCols; cCol++) {
+                TableCellBox cell = section.cellAt(cRow, cCol);
                 
                 if (cell == null || cell == TableCellBox.SPANNING_CELL) {
                     continue;
                 }
-                if (cRow < totalRows - 1 && getSection().cellAt(cRow+1, cCol) == cell) {
+                if (cRow < totalRows - 1 && section.cellAt(cRow+1, cCol) == cell) {
                     continue;
                 }
                 
@@ -386,17 +388,17 @@ public class TableRowBox extends BlockBox {
     private void calcDefaultBaseline(LayoutContext c) {
         int lowestCellEdge = 0;
         int cRow = getIndex();
-        int totalRows = getSection().numRows();
-        List grid = getSection().getGrid();
-        if ((grid.size() > 0) && (cRow < grid.size())) {
-            List row = ((RowData)grid.get(cRow)).getRow();
-            for (int cCol = 0; cCol < row.size(); cCol++) {
-                TableCellBox cell = (TableCellBox)row.get(cCol);
+        TableSectionBox section = getSection();
+        int totalRows = section.numRows();
+        if (cRow < totalRows) {
+            int totalCols = section.numCols();
+            for (int cCol = 0; cCol < totalCols; cCol++) {
+                TableCellBox cell = section.cellAt(cRow, cCol);
                 
                 if (cell == null || cell == TableCellBox.SPANNING_CELL) {
                     continue;
                 }
-                if (cRow < totalRows - 1 && getSection().cellAt(cRow+1, cCol) == cell) {
+                if (cRow < totalRows - 1 && section.cellAt(cRow+1, cCol) == cell) {
                     continue;
                 }
                 
@@ -415,17 +417,17 @@ public class TableRowBox extends BlockBox {
     
     private void setCellHeights(LayoutContext c) {
         int cRow = getIndex();
-        int totalRows = getSection().numRows();
-        List grid = getSection().getGrid();
-        if ((grid.size() > 0) && (cRow < grid.size())) {
-            List row = ((RowData)grid.get(cRow)).getRow();
-            for (int cCol = 0; cCol < row.size(); cCol++) {
-                TableCellBox cell = (TableCellBox)row.get(cCol);
+        TableSectionBox section = getSection();
+        int totalRows = section.numRows();
+        if (cRow < totalRows) {
+            int totalCols = section.numCols();
+            for (int cCol = 0; cCol < totalCols; cCol++) {
+                TableCellBox cell = section.cellAt(cRow, cCol);
                 
                 if (cell == null || cell == TableCellBox.SPANNING_CELL) {
                     continue;
                 }
-                if (cRow < totalRows - 1 && getSection().cellAt(cRow+1, cCol) == cell) {
+                if (cRow < totalRows - 1 && section.cellAt(cRow+1, cCol) == cell) {
                     continue;
                 }
                 
@@ -472,6 +474,10 @@ public class TableRowBox extends BlockBox {
         return true;
     }
     
+    protected boolean isSiblingsSkippedWhenCollapsingMargins() {
+        return true;
+    }
+    
     public void paintBorder(RenderingContext c) {
         // rows never have borders
     }
@@ -483,7 +489,7 @@ public class TableRowBox extends BlockBox {
     public void reset(LayoutContext c) {
         super.reset(c);
         setHaveBaseline(false);
-        getSection().setNeedCellWidthCalc(true);
+        setNeedCellWidthCalc(true);
         setContentLimitContainer(null);
     }
 
@@ -494,6 +500,14 @@ public class TableRowBox extends BlockBox {
     public void setHaveBaseline(boolean haveBaseline) {
         _haveBaseline = haveBaseline;
     }
+
+    private boolean isNeedCellWidthCalc() {
+        return _needCellWidthCalc;
+    }
+
+    private void setNeedCellWidthCalc(boolean needCellWidthCalc) {
+        _needCellWidthCalc = needCellWidthCalc;
+    }
     
     protected String getExtraBoxDescription() {
         if (isHaveBaseline()) {
@@ -20,6 +20,7 @@
 package org.xhtmlrenderer.newtable;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
@@ -28,7 +29,24 @@ import org.xhtmlrenderer.render.BlockBox;
 import org.xhtmlrenderer.render.RenderingContext;
 
 public class TableSectionBox extends BlockBox {
-    private List _grid = new ArrayList();
+    private static final int MIN_GRID_ROWS = 8;
+    private static final int MIN_GRID_COLS = 4;
+    
+    /**
+     * The table grid, stored column by column.  The cell at a grid position is
+     * <code>_cells[col * _rowCapacity + row]</code>.  The grid is always large
+     * enough to set a table cell at every position in every row.  If there
+     * are no colspans, rowspans, or missing cells, a grid row will exactly
+     * correspond to the row in the original markup.  On the other hand,
+     * colspans may force spanning cells to be inserted, rowspans will mean
+     * cells appear in more than one grid row, and positions may be
+     * <code>null</code> if no cell occupies that position in the grid.
+     */
+    private TableCellBox[] _cells;
+    private int _rowCapacity;
+    private int _colCapacity;
+    private int _numRows;
+    private int _numCols;
     
     private boolean _needCellWidthCalc;
     private boolean _needCellRecalc;
@@ -50,31 +68,80 @@ public class TableSectionBox extends BlockBox {
         return result;
     }
     
+    /**
+     * Returns a copy of the table grid as a list of {@link RowData}.  Changes
+     * to the returned rows aren't seen by this section; pass them to
+     * {@link #setGrid(List)} to replace the grid.
+     *
+     * @deprecated Use {@link #numRows()}, {@link #numCols()} and
+     * {@link #cellAt(int, int)} instead.
+     */
+    @Deprecated
     public List getGrid() {
-        return _grid;
+        List result = new ArrayList(_numRows);
+        for (int row = 0; row < _numRows; row++) {
+            RowData rowData = new RowData();
+            List cells = rowData.getRow();
+            for (int col = 0; col < _numCols; col++) {
+                cells.add(_cells[col * _rowCapacity + row]);
+            }
+            result.add(rowData);
+        }
+        return result;
     }
 
+    /**
+     * Replaces the table grid with a list of {@link RowData}.  Rows shorter
+     * than the longest one are padded with <code>null</code> positions.
+     *
+     * @deprecated The grid is built by {@link #recalcCells(LayoutContext)}.
+     */
+    @Deprecated
     public void setGrid(List grid) {
-        _grid = grid;
+        int numCols = 0;
+        for (Iterator i = grid.iterator(); i.hasNext(); ) {
+            numCols = Math.max(numCols, ((RowData)i.next()).getRow().size());
+        }
+        
+        clearGrid();
+        ensureCapacity(grid.size(), numCols);
+        _numRows = grid.size();
+        _numCols = numCols;
+        
+        int row = 0;
+        for (Iterator i = grid.iterator(); i.hasNext(); row++) {
+            List cells = ((RowData)i.next()).getRow();
+            for (int col = 0; col < cells.size(); col++) {
+                setCellAt(row, col, (TableCellBox)cells.get(col));
+            }
+        }
     }
     
     public void extendGridToColumnCount(int columnCount) {
-        for (Iterator i = _grid.iterator(); i.hasNext(); ) {
-            RowData row = (RowData)i.next();
-            row.extendToColumnCount(columnCount);
+        if (columnCount > _numCols) {
+            ensureCapacity(_numRows, columnCount);
+            _numCols = columnCount;
         }
     }
     
     public void splitColumn(int pos) {
-        for (Iterator i = _grid.iterator(); i.hasNext(); ) {
-            RowData row = (RowData)i.next();
-            row.splitColumn(pos);
+        if (pos >= _numCols) {
+            return;
+        }
+        ensureCapacity(_numRows, _numCols + 1);
+        int start = (pos + 1) * _rowCapacity;
+        System.arraycopy(
+                _cells, start, _cells, start + _rowCapacity, (_numCols - pos - 1) * _rowCapacity);
+        for (int row = 0; row < _numRows; row++) {
+            TableCellBox current = _cells[pos * _rowCapacity + row];
+            _cells[start + row] = current == null ? null : TableCellBox.SPANNING_CELL;
         }
+        _numCols++;
     }
     
     public void recalcCells(LayoutContext c) {
         int cRow = 0;
-        _grid.clear();
+        clearGrid();
         ensureChildren(c);
         for (Iterator i = getChildIterator(); i.hasNext(); cRow++) {
             TableRowBox row = (TableRowBox)i.next();
@@ -99,26 +166,66 @@ public class TableSectionBox extends BlockBox {
     }
     
     public TableCellBox cellAt(int row, int col) {
-        if (row >= _grid.size()) return null;
-        RowData rowData = (RowData)_grid.get(row);
-        if (col >= rowData.getRow().size()) return null;
-        return (TableCellBox)rowData.getRow().get(col);
+        if (row < 0 || row >= _numRows || col < 0 || col >= _numCols) return null;
+        return _cells[col * _rowCapacity + row];
     }
     
     private void setCellAt(int row, int col, TableCellBox cell) {
-        ((RowData)_grid.get(row)).getRow().set(col, cell);
+        _cells[col * _rowCapacity + row] = cell;
     }
     
     private void ensureRows(int numRows) {
-        int nRows = _grid.size();
-        int nCols = getTable().numEffCols();
+        if (numRows > _numRows) {
+            int nCols = Math.max(_numCols, getTable().numEffCols());
+            ensureCapacity(numRows, nCols);
+            _numRows = numRows;
+            _numCols = nCols;
+        }
+    }
+    
+    /**
+     * Makes room for at least <code>numRows</code> by <code>numCols</code>
+     * grid positions.  The grid grows in chunks proportional to its current
+     * size, so building a grid row by row only copies it a logarithmic
+     * number of times.
+     */
+    private void ensureCapacity(int numRows, int numCols) {
+        if (numRows <= _rowCapacity && numCols <= _colCapacity) {
+            return;
+        }
+        
+        int rowCapacity = _rowCapacity;
+        if (numRows > rowCapacity) {
+            rowCapacity = Math.max(numRows, Math.max(MIN_GRID_ROWS, rowCapacity + rowCapacity / 2));
+        }
+        int colCapacity = _colCapacity;
+        if (numCols > colCapacity) {
+            colCapacity = Math.max(numCols, Math.max(MIN_GRID_COLS, colCapacity + colCapacity / 2));
+        }
+        
+        TableCellBox[] cells = new TableCellBox[rowCapacity * colCapacity];
+        if (_cells != null) {
+            if (rowCapacity == _rowCapacity) {
+                System.arraycopy(_cells, 0, cells, 0, _numCols * _rowCapacity);
+            } else {
+                for (int col = 0; col < _numCols; col++) {
+                    System.arraycopy(
+                            _cells, col * _rowCapacity, cells, col * rowCapacity, _numRows);
+                }
+            }
+        }
         
-        while (nRows < numRows) {
-            RowData row = new RowData();
-            row.extendToColumnCount(nCols);
-            _grid.add(row);
-            nRows++;
+        _cells = cells;
+        _rowCapacity = rowCapacity;
+        _colCapacity = colCapacity;
+    }
+    
+    private void clearGrid() {
+        if (_cells != null) {
+            Arrays.fill(_cells, null);
         }
+        _numRows = 0;
+        _numCols = 0;
     }
     
     private TableBox getTable() {
@@ -133,7 +240,6 @@ public class TableSectionBox extends BlockBox {
         
         if (isNeedCellWidthCalc()) {
             setCellWidths(c);
-            setNeedCellWidthCalc(false);
         }
         
         super.layoutChildren(c, contentStart);
@@ -185,7 +291,7 @@ public class TableSectionBox extends BlockBox {
     
     public void reset(LayoutContext c) {
         super.reset(c);
-        _grid.clear();
+        clearGrid();
         setNeedCellWidthCalc(true);
         setNeedCellRecalc(true);
         setCapturedOriginalAbsY(false);
@@ -195,29 +301,50 @@ public class TableSectionBox extends BlockBox {
     {
         int[] columnPos = getTable().getColumnPos();
         
-        for (Iterator i = _grid.iterator(); i.hasNext(); ) {
-            RowData row = (RowData)i.next();
-            List cols = row.getRow();
-            int hspacing = getTable().getStyle().getBorderHSpacing(c);
-            for (int j = 0; j < cols.size(); j++) {
-                TableCellBox cell = (TableCellBox)cols.get(j);
+        int hspacing = getTable().getStyle().getBorderHSpacing(c);
+        for (int row = 0; row < _numRows; row++) {
+            for (int j = 0; j < _numCols; j++) {
+                TableCellBox cell = cellAt(row, j);
                 
                 if (cell == null || cell == TableCellBox.SPANNING_CELL) {
                     continue;
                 }
                 
-                int endCol = j;
-                int cspan = cell.getStyle().getColSpan();
-                while (cspan > 0 && endCol < cols.size()) {
-                    cspan -= getTable().spanOfEffCol(endCol);
-                    endCol++;
-                }
-                
-                int w = columnPos[endCol] - columnPos[j] - hspacing;
-                cell.setLayoutWidth(c, w);
-                cell.setX(columnPos[j] + hspacing);
+                setCellWidth(c, cell, j, columnPos, hspacing);
             }
         }
+        
+        setNeedCellWidthCalc(false);
+    }
+    
+    /**
+     * Sets the widths of the cells of a single row only.  Used when a row
+     * is laid out again (e.g. after being moved to the next page) so
+     * paginating a long table doesn't recalculate the cell widths of the
+     * whole section each time.
+     */
+    void setCellWidths(LayoutContext c, TableRowBox row) {
+        int[] columnPos = getTable().getColumnPos();
+        
+        int hspacing = getTable().getStyle().getBorderHSpacing(c);
+        for (Iterator i = row.getChildIterator(); i.hasNext(); ) {
+            TableCellBox cell = (TableCellBox)i.next();
+            setCellWidth(c, cell, getTable().colToEffCol(cell.getCol()), columnPos, hspacing);
+        }
+    }
+    
+    private void setCellWidth(
+            LayoutContext c, TableCellBox cell, int effCol, int[] columnPos, int hspacing) {
+        int endCol = effCol;
+        int cspan = cell.getStyle().getColSpan();
+        while (cspan > 0 && endCol < _numCols) {
+            cspan -= getTable().spanOfEffCol(endCol);
+            endCol++;
+        }
+        
+        int w = columnPos[endCol] - columnPos[effCol] - hspacing;
+        cell.setLayoutWidth(c, w);
+        cell.setX(columnPos[effCol] + hspacing);
     }
     
     public boolean isAutoHeight() {
@@ -226,13 +353,25 @@ public class TableSectionBox extends BlockBox {
     }
     
     public int numRows() { 
-        return _grid.size(); 
+        return _numRows; 
+    }
+    
+    /**
+     * Returns the number of columns in the table grid, which is the number of
+     * effective columns of the table once the grid has been built.
+     */
+    public int numCols() {
+        return _numCols;
     }
     
     protected boolean isSkipWhenCollapsingMargins() {
         return true;
     }
     
+    protected boolean isSiblingsSkippedWhenCollapsingMargins() {
+        return true;
+    }
+    
     public void paintBorder(RenderingContext c) {
         // row groups never have borders
     }
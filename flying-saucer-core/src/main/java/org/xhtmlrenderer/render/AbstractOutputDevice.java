@@ -123,7 +123,7 @@ public abstract class AbstractOutputDevice implements OutputDevice {
 
     public void drawTextDecoration(RenderingContext c, LineBox lineBox) {
         setColor(lineBox.getStyle().getColor());
-        Box parent = lineBox.getParent();
+        BlockBox parent = (BlockBox)lineBox.getParent();
         List decorations = lineBox.getTextDecorations();
         for (Iterator i = decorations.iterator(); i.hasNext(); ) {
             TextDecoration textDecoration = (TextDecoration)i.next();
@@ -68,6 +68,10 @@ public class AnonymousBlockBox extends BlockBox {
         _openInlineBoxes = openInlineBoxes;
     }
     
+    protected boolean isConcurrentMinMaxWidthSupported() {
+        return true;
+    }
+
     public boolean isSkipWhenCollapsingMargins() {
         // An anonymous block will already have its children provided to it
         for (Iterator i = getInlineContent().iterator(); i.hasNext(); ) {
@@ -42,11 +42,13 @@ import org.xhtmlrenderer.layout.BlockBoxing;
 import org.xhtmlrenderer.layout.BlockFormattingContext;
 import org.xhtmlrenderer.layout.BoxBuilder;
 import org.xhtmlrenderer.layout.BreakAtLineContext;
+import org.xhtmlrenderer.layout.ConcurrentMinMaxWidth;
 import org.xhtmlrenderer.layout.CounterFunction;
 import org.xhtmlrenderer.layout.FloatManager;
 import org.xhtmlrenderer.layout.InlineBoxing;
 import org.xhtmlrenderer.layout.InlinePaintable;
 import org.xhtmlrenderer.layout.LayoutContext;
+import org.xhtmlrenderer.layout.LineLayoutCache;
 import org.xhtmlrenderer.layout.PaintingInfo;
 import org.xhtmlrenderer.layout.PersistentBFC;
 import org.xhtmlrenderer.layout.Styleable;
@@ -69,18 +71,17 @@ public class BlockBox extends Box implements InlinePaintable {
 
     protected static final int NO_BASELINE = Integer.MIN_VALUE;
 
-    private MarkerData _markerData;
+    /**
+     * Keeps track of the start of childrens containing block.
+     */
+    private int _tx;
+    private int _ty;
 
-    private int _listCounter;
-
-    private PersistentBFC _persistentBFC;
-
-    private Box _staticEquivalent;
+    private int _rightMBP = 0;
+    private int _leftMBP = 0;
 
     private boolean _needPageClear;
 
-    private ReplacedElement _replacedElement;
-
     private int _childrenContentType;
 
     private List _inlineContent;
@@ -96,15 +97,8 @@ public class BlockBox extends Box implements InlinePaintable {
     private boolean _dimensionsCalculated;
     private boolean _needShrinkToFitCalculatation;
 
-    private CascadedStyle _firstLineStyle;
-    private CascadedStyle _firstLetterStyle;
-
-    private FloatedBoxData _floatedBoxData;
-
     private int _childrenHeight;
 
-    private boolean _fromCaptionedTable;
-
     public BlockBox() {
         super();
     }
@@ -287,11 +281,14 @@ public class BlockBox extends Box implements InlinePaintable {
     }
 
     public MarkerData getMarkerData() {
-        return _markerData;
+        BlockRareData data = peekBlockData();
+        return data == null ? null : data.markerData;
     }
 
     public void setMarkerData(MarkerData markerData) {
-        _markerData = markerData;
+        if (markerData != null || peekRareData() != null) {
+            getBlockData().markerData = markerData;
+        }
     }
 
     public void createMarkerData(LayoutContext c) {
@@ -379,36 +376,45 @@ public class BlockBox extends Box implements InlinePaintable {
     }
 
     public int getListCounter() {
-        return _listCounter;
+        BlockRareData data = peekBlockData();
+        return data == null ? 0 : data.listCounter;
     }
 
     public void setListCounter(int listCounter) {
-        _listCounter = listCounter;
+        if (listCounter != 0 || peekRareData() != null) {
+            getBlockData().listCounter = listCounter;
+        }
     }
 
     public PersistentBFC getPersistentBFC() {
-        return _persistentBFC;
+        BlockRareData data = peekBlockData();
+        return data == null ? null : data.persistentBFC;
     }
 
     public void setPersistentBFC(PersistentBFC persistentBFC) {
-        _persistentBFC = persistentBFC;
+        if (persistentBFC != null || peekRareData() != null) {
+            getBlockData().persistentBFC = persistentBFC;
+        }
     }
 
     public Box getStaticEquivalent() {
-        return _staticEquivalent;
+        BlockRareData data = peekBlockData();
+        return data == null ? null : data.staticEquivalent;
     }
 
     public void setStaticEquivalent(Box staticEquivalent) {
-        _staticEquivalent = staticEquivalent;
+        if (staticEquivalent != null || peekRareData() != null) {
+            getBlockData().staticEquivalent = staticEquivalent;
+        }
     }
 
     public boolean isReplaced() {
-        return _replacedElement != null;
+        return getReplacedElement() != null;
     }
 
     public void calcCanvasLocation() {
         if (isFloated()) {
-            FloatManager manager = _floatedBoxData.getManager();
+            FloatManager manager = getFloatedBoxData().getManager();
             if (manager != null) {
                 Point offset = manager.getOffset(this);
                 setAbsX(manager.getMaster().getAbsX() + getX() - offset.x);
@@ -419,9 +425,13 @@ public class BlockBox extends Box implements InlinePaintable {
         LineBox lineBox = getLineBox();
         if (lineBox == null) {
             Box parent = getParent();
-            if (parent != null) {
-                setAbsX(parent.getAbsX() + parent.getTx() + getX());
-                setAbsY(parent.getAbsY() + parent.getTy() + getY());
+            if (parent instanceof BlockBox) {
+                BlockBox block = (BlockBox)parent;
+                setAbsX(block.getAbsX() + block.getTx() + getX());
+                setAbsY(block.getAbsY() + block.getTy() + getY());
+            } else if (parent != null) {
+                setAbsX(parent.getAbsX() + getX());
+                setAbsY(parent.getAbsY() + getY());
             } else if (isStyled() && getStyle().isAbsFixedOrInlineBlockEquiv()) {
                 Box cb = getContainingBlock();
                 if (cb != null) {
@@ -452,8 +462,9 @@ public class BlockBox extends Box implements InlinePaintable {
     public void calcChildLocations() {
         super.calcChildLocations();
 
-        if (_persistentBFC != null) {
-            _persistentBFC.getFloatManager().calcFloatLocations();
+        PersistentBFC persistentBFC = getPersistentBFC();
+        if (persistentBFC != null) {
+            persistentBFC.getFloatManager().calcFloatLocations();
         }
     }
 
@@ -467,9 +478,10 @@ public class BlockBox extends Box implements InlinePaintable {
 
 
     private void alignToStaticEquivalent() {
-        if (_staticEquivalent.getAbsY() != getAbsY()) {
-            setY(_staticEquivalent.getAbsY() - getAbsY());
-            setAbsY(_staticEquivalent.getAbsY());
+        Box staticEquivalent = getStaticEquivalent();
+        if (staticEquivalent.getAbsY() != getAbsY()) {
+            setY(staticEquivalent.getAbsY() - getAbsY());
+            setAbsY(staticEquivalent.getAbsY());
         }
     }
 
@@ -539,20 +551,18 @@ public class BlockBox extends Box implements InlinePaintable {
     }
 
     public ReplacedElement getReplacedElement() {
-        return _replacedElement;
+        BlockRareData data = peekBlockData();
+        return data == null ? null : data.replacedElement;
     }
 
     public void setReplacedElement(ReplacedElement replacedElement) {
-        _replacedElement = replacedElement;
+        if (replacedElement != null || peekRareData() != null) {
+            getBlockData().replacedElement = replacedElement;
+        }
     }
 
     public void reset(LayoutContext c) {
         super.reset(c);
-        setTopMarginCalculated(false);
-        setBottomMarginCalculated(false);
-        setDimensionsCalculated(false);
-        setMinMaxCalculated(false);
-        setChildrenHeight(0);
         if (isReplaced()) {
             getReplacedElement().detach(c);
             setReplacedElement(null);
@@ -562,13 +572,379 @@ public class BlockBox extends Box implements InlinePaintable {
         }
 
         if (isFloated()) {
-            _floatedBoxData.getManager().removeFloat(this);
-            _floatedBoxData.getDrawingLayer().removeFloat(this);
+            FloatedBoxData floatedBoxData = getFloatedBoxData();
+            floatedBoxData.getManager().removeFloat(this);
+            floatedBoxData.getDrawingLayer().removeFloat(this);
         }
 
         if (getStyle().isRunning()) {
             c.getRootLayer().removeRunningBlock(this);
         }
+
+        setMinMaxCalculated(false);
+    }
+
+    protected void resetLayoutState() {
+        super.resetLayoutState();
+        setTopMarginCalculated(false);
+        setBottomMarginCalculated(false);
+        setDimensionsCalculated(false);
+        setChildrenHeight(0);
+        setLayoutReuseData(null);
+    }
+
+    protected void invalidateOwnLayout() {
+        super.invalidateOwnLayout();
+        // Min/max widths only depend on style and content so they are kept
+        // when a box is merely laid out again at a different width
+        setMinMaxCalculated(false);
+    }
+
+    /**
+     * Prepares this box for an incremental layout pass.  Boxes whose layout
+     * is still valid are left alone so {@link #reuseLayout} can keep them.
+     * An invalid box is reset.  If possible only the box itself is reset and
+     * its children are visited in turn, otherwise the whole subtree is reset.
+     */
+    public void resetInvalidLayout(LayoutContext c) {
+        if (isLayoutValid()) {
+            return;
+        }
+
+        if (! isRelayoutInPlaceSupported()) {
+            reset(c);
+            return;
+        }
+
+        resetLayoutState();
+
+        int count = getChildCount();
+        if (isMayCollapseMarginsWithChildren()) {
+            // The children our margins collapse with are picked up again
+            // when our own margins are collapsed
+            for (int i = 0; i < count; i++) {
+                BlockBox child = (BlockBox) getChild(i);
+                child.setLayoutValid(false);
+                if (! child.isSkipWhenCollapsingMargins()) {
+                    break;
+                }
+            }
+            for (int i = count - 1; i >= 0; i--) {
+                BlockBox child = (BlockBox) getChild(i);
+                child.setLayoutValid(false);
+                if (! child.isSkipWhenCollapsingMargins()) {
+                    break;
+                }
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            ((BlockBox) getChild(i)).resetInvalidLayout(c);
+        }
+    }
+
+    private boolean isRelayoutInPlaceSupported() {
+        return getClass() == BlockBox.class &&
+                getChildrenContentType() == CONTENT_BLOCK &&
+                ! isReplaced() && ! isFloated() &&
+                ! getStyle().isRunning() && ! getStyle().isAbsFixedOrInlineBlockEquiv();
+    }
+
+    /**
+     * Keeps the layout of this box from the previous layout pass and only
+     * moves it to its new position.  This is possible if nothing the layout
+     * depends on has changed: the box is still valid, the containing block
+     * has the same width, no floats intrude (then or now), the margin
+     * collapsed into our top margin is the same and the subtree does not
+     * put anything into the surrounding layout (floats, layers, running
+     * elements).
+     *
+     * @return <code>true</code> if the box has been positioned and must not be
+     * laid out again
+     */
+    public boolean reuseLayout(LayoutContext c, BlockBox parent, int childOffset) {
+        LayoutReuseData data = getLayoutReuseData();
+        if (data == null || ! isLayoutValid() || ! data.isFloatFree()) {
+            return false;
+        }
+
+        if (! data.isSameCollapseInput(_pendingCollapseCalculation)) {
+            return false;
+        }
+
+        if (! isFloatFree(c, childOffset) || ! isLayoutSelfContained()) {
+            return false;
+        }
+
+        int containingBlockWidth = getContainingBlock().getContentWidth();
+        boolean resized = data.getContainingBlockWidth() != containingBlockWidth;
+        if (resized) {
+            if (! resizeInPlace(c)) {
+                return false;
+            }
+            data.setContainingBlockWidth(containingBlockWidth);
+        }
+
+        int oldAbsX = getAbsX();
+        int oldAbsY = getAbsY();
+
+        initStaticPos(c, parent, childOffset);
+        calcCanvasLocation();
+
+        if (resized || getAbsX() != oldAbsX || getAbsY() != oldAbsY) {
+            calcChildLocations();
+            resetPaintingInfo();
+        }
+
+        return true;
+    }
+
+    /**
+     * Adapts the previous layout of this box to a new containing block
+     * width without laying out its content again.  This is possible if the
+     * content width of the box does not change (e.g. because of a fixed
+     * <code>width</code> or <code>max-width</code>).
+     *
+     * @return <code>false</code> if the box must be laid out again
+     */
+    private boolean resizeInPlace(LayoutContext c) {
+        CalculatedStyle style = getStyle();
+        if (getClass() != BlockBox.class || isReplaced() || style.isCanBeShrunkToFit() ||
+                isMBPProportional(style)) {
+            return false;
+        }
+
+        int oldContentWidth = getContentWidth();
+        int height = getHeight();
+
+        // Keep the collapsed vertical margins, only the horizontal
+        // dimensions are calculated again
+        RectPropertySet margin = getMargin(c);
+        float marginTop = margin.top();
+        float marginBottom = margin.bottom();
+
+        setDimensionsCalculated(false);
+        calcDimensions(c);
+
+        setHeight(height);
+        margin = getMargin(c);
+        margin.setTop(marginTop);
+        margin.setBottom(marginBottom);
+
+        BorderPropertySet border = getBorder(c);
+        RectPropertySet padding = getPadding(c);
+        setTx((int) margin.left() + (int) border.left() + (int) padding.left());
+
+        int contentWidth = getContentWidth();
+        if (contentWidth == oldContentWidth ||
+                getChildrenContentType() == CONTENT_EMPTY) {
+            return true;
+        }
+
+        // The content has to be laid out at the new width.  Even lines
+        // narrower than the max width from calcMinMaxWidth() may wrap
+        // differently.
+        return false;
+    }
+
+    private static boolean isMBPProportional(CalculatedStyle style) {
+        return isProportional(style, CSSName.MARGIN_TOP) ||
+                isProportional(style, CSSName.MARGIN_RIGHT) ||
+                isProportional(style, CSSName.MARGIN_BOTTOM) ||
+                isProportional(style, CSSName.MARGIN_LEFT) ||
+                isProportional(style, CSSName.PADDING_TOP) ||
+                isProportional(style, CSSName.PADDING_RIGHT) ||
+                isProportional(style, CSSName.PADDING_BOTTOM) ||
+                isProportional(style, CSSName.PADDING_LEFT);
+    }
+
+    private static boolean isProportional(CalculatedStyle style, CSSName cssName) {
+        return style.isLength(cssName) && ! style.hasAbsoluteUnit(cssName);
+    }
+
+    /**
+     * Whether no floats of the current block formatting context extend below
+     * <code>y</code> (relative to the box currently being laid out).
+     */
+    public static boolean isFloatFree(LayoutContext c, int y) {
+        BlockFormattingContext bfc = c.getBlockFormattingContext();
+        return bfc.getFloatManager().getClearDelta(c, y - bfc.getOffset().y) <= 0;
+    }
+
+    private boolean isLayoutSelfContained() {
+        LayoutReuseData data = getLayoutReuseData();
+        if (data == null) {
+            return calcLayoutSelfContained();
+        }
+        if (data.getSelfContained() == LayoutReuseData.UNKNOWN) {
+            data.setSelfContained(calcLayoutSelfContained() ?
+                    LayoutReuseData.YES : LayoutReuseData.NO);
+        }
+        return data.getSelfContained() == LayoutReuseData.YES;
+    }
+
+    private boolean calcLayoutSelfContained() {
+        if (! isStyleSelfContained(getStyle())) {
+            return false;
+        }
+
+        if (getChildrenContentType() == CONTENT_BLOCK) {
+            for (int i = 0; i < getChildCount(); i++) {
+                if (! ((BlockBox) getChild(i)).isLayoutSelfContained()) {
+                    return false;
+                }
+            }
+        } else if (getChildrenContentType() == CONTENT_INLINE && getInlineContent() != null) {
+            for (Iterator i = getInlineContent().iterator(); i.hasNext(); ) {
+                Styleable child = (Styleable) i.next();
+                if (child instanceof BlockBox) {
+                    if (! ((BlockBox) child).isLayoutSelfContained()) {
+                        return false;
+                    }
+                } else if (child.getStyle() != null && ! isStyleSelfContained(child.getStyle())) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean isStyleSelfContained(CalculatedStyle style) {
+        return ! (style.requiresLayer() || style.isFloated() ||
+                style.isRunning() || style.isFixedBackground() ||
+                isProportional(style, CSSName.HEIGHT) ||
+                isProportional(style, CSSName.MIN_HEIGHT) ||
+                isProportional(style, CSSName.MAX_HEIGHT));
+    }
+
+    /**
+     * Whether the current layout of this box could be moved to a different
+     * position in paged media instead of laying the box out again there (see
+     * {@link #moveLayout}).  This is the part of the check which doesn't
+     * depend on the new position: nothing in the subtree may depend on the
+     * page it ends up on and the box must neither start at the top of a page
+     * nor cross a page break where it is now (otherwise its layout contains
+     * adjustments for that page break).  Its margins mustn't have been
+     * collapsed with those of its parent either.
+     */
+    public boolean isLayoutMovable(LayoutContext c) {
+        return c.isPrint() && ! isNeedPageClear() && ! isMarginsCollapsedWithParent() &&
+                isLayoutPageIndependent(c) && ! isAtPageTopOrCrossesPageBreak(c);
+    }
+
+    private boolean isMarginsCollapsedWithParent() {
+        if (! (getParent() instanceof BlockBox)) {
+            return false;
+        }
+        BlockBox parent = (BlockBox) getParent();
+        if (! parent.isMayCollapseMarginsWithChildren()) {
+            return false;
+        }
+
+        int index = getIndex();
+        for (int i = 0; i < index; i++) {
+            if (! ((BlockBox) parent.getChild(i)).isSkipWhenCollapsingMargins()) {
+                for (int j = parent.getChildCount() - 1; j > index; j--) {
+                    if (! ((BlockBox) parent.getChild(j)).isSkipWhenCollapsingMargins()) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Moves the current layout of a box for which {@link #isLayoutMovable}
+     * returned <code>true</code> to its new position, if laying it out again
+     * there would give the same result.  That is the case if the box doesn't
+     * start at the top of a page or cross a page break at its new position
+     * either.  The caller must make sure no floats intrude.
+     *
+     * @return <code>true</code> if the box has been positioned and must not be
+     * laid out again
+     */
+    public boolean moveLayout(LayoutContext c, BlockBox parent, int childOffset) {
+        if (c.getExtraSpaceTop() != 0 || c.getExtraSpaceBottom() != 0 || c.getPageName() != null) {
+            return false;
+        }
+
+        int oldAbsX = getAbsX();
+        int oldAbsY = getAbsY();
+
+        initStaticPos(c, parent, childOffset);
+        calcCanvasLocation();
+
+        if (isAtPageTopOrCrossesPageBreak(c)) {
+            return false;
+        }
+
+        if (getAbsX() != oldAbsX || getAbsY() != oldAbsY) {
+            calcChildLocations();
+            resetPaintingInfo();
+        }
+
+        return true;
+    }
+
+    private boolean isAtPageTopOrCrossesPageBreak(LayoutContext c) {
+        // A box at the top of a page has its top margin reset
+        PageBox page = c.getRootLayer().getFirstPage(c, this);
+        return page == null || getAbsY() == page.getTop() || crossesPageBreak(c);
+    }
+
+    private boolean isLayoutPageIndependent(LayoutContext c) {
+        // Tables and the like keep track of the pages they are on
+        if (getClass() != BlockBox.class && getClass() != AnonymousBlockBox.class) {
+            return false;
+        }
+
+        CalculatedStyle style = getStyle();
+        if (! isStyleSelfContained(style) || ! isStylePageIndependent(style)) {
+            return false;
+        }
+
+        // Make sure the content can't stick out of the box (and so into a
+        // page break the box itself doesn't touch)
+        if (! isReplaced() && (! style.isAutoHeight() || ! style.isMaxHeightNone())) {
+            return false;
+        }
+        RectPropertySet margin = getMargin(c);
+        if (margin.top() < 0 || margin.bottom() < 0) {
+            return false;
+        }
+
+        if (getChildrenContentType() == CONTENT_BLOCK) {
+            for (int i = 0; i < getChildCount(); i++) {
+                if (! ((BlockBox) getChild(i)).isLayoutPageIndependent(c)) {
+                    return false;
+                }
+            }
+        } else if (getChildrenContentType() == CONTENT_INLINE && getInlineContent() != null) {
+            for (Iterator i = getInlineContent().iterator(); i.hasNext(); ) {
+                Styleable child = (Styleable) i.next();
+                if (child instanceof BlockBox) {
+                    if (! ((BlockBox) child).isLayoutPageIndependent(c)) {
+                        return false;
+                    }
+                } else if (child.getStyle() != null &&
+                        (! isStyleSelfContained(child.getStyle()) ||
+                                ! isStylePageIndependent(child.getStyle()))) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean isStylePageIndependent(CalculatedStyle style) {
+        return ! (style.isForcePageBreakBefore() || style.isForcePageBreakAfter() ||
+                style.isDynamicAutoWidth() ||
+                ! style.isIdent(CSSName.PAGE, IdentValue.AUTO) ||
+                style.isIdent(CSSName.FS_PAGE_SEQUENCE, IdentValue.START));
     }
 
     private int calcPinnedContentWidth(CssContext c) {
@@ -640,8 +1016,10 @@ public class BlockBox extends Box implements InlinePaintable {
         while (true) {
             CalculatedStyle style = current.getStyle();
             if (style.isAutoWidth() && ! style.isCanBeShrunkToFit()) {
-                totalLeftMBP += current.getLeftMBP();
-                totalRightMBP += current.getRightMBP();
+                if (current instanceof BlockBox) {
+                    totalLeftMBP += ((BlockBox)current).getLeftMBP();
+                    totalRightMBP += ((BlockBox)current).getRightMBP();
+                }
             } else {
                 usePageRelativeWidth = false;
                 break;
@@ -793,6 +1171,13 @@ public class BlockBox extends Box implements InlinePaintable {
             c.getRootLayer().setFixedBackground(true);
         }
 
+        if (c.isIncrementalLayout()) {
+            setLayoutReuseData(new LayoutReuseData(
+                    getContainingBlock() == null ? -1 : getContainingBlock().getContentWidth(),
+                    isRoot() || isFloatFree(c, 0),
+                    _pendingCollapseCalculation));
+        }
+
         calcClearance(c);
 
         if (isRoot() || getStyle().establishesBFC() || isMarginAreaRoot()) {
@@ -888,6 +1273,13 @@ public class BlockBox extends Box implements InlinePaintable {
         if (pushedLayer) {
             c.popLayer();
         }
+
+        if (c.isIncrementalLayout()) {
+            if (isReplaced()) {
+                c.getRootLayer().trackReplacedSize(this);
+            }
+            setLayoutValid(true);
+        }
     }
 
     protected boolean isAllowHeightToShrink() {
@@ -980,6 +1372,12 @@ public class BlockBox extends Box implements InlinePaintable {
 
     protected void layoutInlineChildren(
             LayoutContext c, int contentStart, int breakAtLine, boolean tryAgain) {
+        LineLayoutCache cache = tryAgain && breakAtLine == 0 ? c.getLineLayoutCache() : null;
+        Object cacheKey = cache == null ? null : cache.createKey(c, this, contentStart);
+        if (cacheKey != null && cache.layoutFromCache(c, this, cacheKey)) {
+            return;
+        }
+
         InlineBoxing.layoutContent(c, this, contentStart, breakAtLine);
 
         if (c.isPrint() && c.isPageBreaksAllowed() && getChildCount() > 1) {
@@ -989,6 +1387,10 @@ public class BlockBox extends Box implements InlinePaintable {
         if (tryAgain && getStyle().isTextJustify()) {
             justifyText();
         }
+
+        if (cacheKey != null) {
+            cache.put(c, this, cacheKey);
+        }
     }
 
     private void justifyText() {
@@ -1091,6 +1493,18 @@ public class BlockBox extends Box implements InlinePaintable {
         return false;
     }
 
+    /**
+     * Returns <code>true</code> if all siblings of this box are skipped when
+     * collapsing margins (table rows only ever have other rows as siblings,
+     * for example).  There is then no following sibling to pass a collapsed
+     * bottom margin to and no need to walk the remaining siblings to find
+     * that out, which would make laying out a long run of such boxes
+     * quadratic.
+     */
+    protected boolean isSiblingsSkippedWhenCollapsingMargins() {
+        return false;
+    }
+
     protected boolean isMayCollapseMarginsWithChildren() {
         return (! isRoot()) && getStyle().isMayCollapseMarginsWithChildren();
     }
@@ -1105,15 +1519,13 @@ public class BlockBox extends Box implements InlinePaintable {
 
             if (! isTopMarginCalculated() && ! isBottomMarginCalculated() && isVerticalMarginsAdjoin(c)) {
                 MarginCollapseResult collapsedMargin =
-                        _pendingCollapseCalculation != null ?
-                                _pendingCollapseCalculation : new MarginCollapseResult();
+                        new MarginCollapseResult(_pendingCollapseCalculation);
                 collapseEmptySubtreeMargins(c, collapsedMargin);
                 setCollapsedBottomMargin(c, margin, collapsedMargin);
             } else {
                 if (! isTopMarginCalculated()) {
                     MarginCollapseResult collapsedMargin =
-                            _pendingCollapseCalculation != null ?
-                                    _pendingCollapseCalculation : new MarginCollapseResult();
+                            new MarginCollapseResult(_pendingCollapseCalculation);
 
                     collapseTopMargin(c, true, collapsedMargin);
                     if ((int) margin.top() != collapsedMargin.getMargin()) {
@@ -1133,7 +1545,7 @@ public class BlockBox extends Box implements InlinePaintable {
 
     private void setCollapsedBottomMargin(LayoutContext c, RectPropertySet margin, MarginCollapseResult collapsedMargin) {
         BlockBox next = null;
-        if (! isInline()) {
+        if (! isInline() && ! isSiblingsSkippedWhenCollapsingMargins()) {
             next = getNextCollapsableSibling(collapsedMargin);
         }
         if (! (next == null || next instanceof AnonymousBlockBox) &&
@@ -1496,7 +1908,9 @@ public class BlockBox extends Box implements InlinePaintable {
             if (width == -1) {
                 if (isReplaced()) {
                     width = getReplacedElement().getIntrinsicWidth();
-                } else {
+                } else if (! c.isConcurrentMinMaxWidth()) {
+                    // (otherwise the replaced element has already been
+                    // looked for by prepareConcurrentMinMaxWidth())
                     int height = getCSSHeight(c);
                     ReplacedElement re = c.getReplacedElementFactory().createReplacedElement(
                             c, this, c.getUac(), width, height);
@@ -1563,6 +1977,103 @@ public class BlockBox extends Box implements InlinePaintable {
         }
     }
 
+    /**
+     * Does the parts of {@link #calcMinMaxWidth(LayoutContext)} for this box
+     * and its descendants which must happen on the layout thread: building
+     * the child boxes (which resolves counters in document order), creating
+     * replaced elements and resolving fonts and the style values used.  If
+     * this returns <code>true</code>, the rest of the calculation may be done
+     * on another thread with a context from
+     * {@link LayoutContext#copyForConcurrentMinMaxWidth()}.  Returns
+     * <code>false</code> if the subtree contains content which can only be
+     * measured on the layout thread (e.g. tables, inline blocks, list markers
+     * or generated content that depends on the layout).
+     */
+    public boolean prepareConcurrentMinMaxWidth(LayoutContext c) {
+        if (isMinMaxCalculated()) {
+            return true;
+        }
+
+        if (! isConcurrentMinMaxWidthSupported() || getStyle().isListItem() ||
+                getFirstLetterStyle() != null || getFirstLineStyle() != null) {
+            return false;
+        }
+
+        getMargin(c);
+        getBorder(c);
+        getPadding(c);
+        resolveConcurrentMinMaxWidthStyle(c, getStyle());
+        getCSSMinWidth(c);
+        if (! getStyle().isMaxWidthNone()) {
+            getCSSMaxWidth(c);
+        }
+
+        if (! isReplaced() && getCSSWidth(c, true) == -1) {
+            int height = getCSSHeight(c);
+            ReplacedElement re = c.getReplacedElementFactory().createReplacedElement(
+                    c, this, c.getUac(), -1, height);
+            if (re != null) {
+                setReplacedElement(fitReplacedElement(c, re));
+            }
+        }
+
+        if (isReplaced()) {
+            return true;
+        }
+
+        ensureChildren(c);
+
+        if (getChildrenContentType() == CONTENT_BLOCK) {
+            for (Iterator i = getChildIterator(); i.hasNext();) {
+                BlockBox child = (BlockBox) i.next();
+                if (! child.prepareConcurrentMinMaxWidth(c)) {
+                    return false;
+                }
+            }
+        } else if (getChildrenContentType() == CONTENT_INLINE) {
+            getStyle().getFloatPropertyProportionalWidth(
+                    CSSName.TEXT_INDENT, getContentWidth(), c);
+            for (Iterator i = _inlineContent.iterator(); i.hasNext();) {
+                Styleable child = (Styleable) i.next();
+                CalculatedStyle style = child.getStyle();
+                resolveConcurrentMinMaxWidthStyle(c, style);
+                if (child instanceof InlineBox) {
+                    if (((InlineBox) child).isDynamicFunction()) {
+                        return false;
+                    }
+                } else if (! (style.isAbsolute() || style.isFixed() || style.isRunning())) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private void resolveConcurrentMinMaxWidthStyle(LayoutContext c, CalculatedStyle style) {
+        style.getFSFont(c);
+        style.getWhitespace();
+        style.isAbsolute();
+        style.isFixed();
+        style.isRunning();
+        style.isFloated();
+        style.isCleared();
+        style.isInlineBlock();
+        style.isInlineTable();
+        style.getMarginRect(0, c);
+        style.getPaddingRect(0, c);
+        style.getBorder(c);
+    }
+
+    /**
+     * Returns <code>true</code> if the minimum and maximum widths of boxes of
+     * this type only depend on their own content and style, so they can be
+     * calculated on another thread once prepared.
+     */
+    protected boolean isConcurrentMinMaxWidthSupported() {
+        return getClass() == BlockBox.class;
+    }
+
     private ReplacedElement fitReplacedElement(LayoutContext c,
             ReplacedElement re)
     {
@@ -1608,6 +2119,8 @@ public class BlockBox extends Box implements InlinePaintable {
         int childMinWidth = 0;
         int childMaxWidth = 0;
 
+        ConcurrentMinMaxWidth.calcMinMaxWidths(c, getChildren());
+
         for (Iterator i = getChildIterator(); i.hasNext();) {
             BlockBox child = (BlockBox) i.next();
             child.calcMinMaxWidth(c);
@@ -1761,6 +2274,20 @@ public class BlockBox extends Box implements InlinePaintable {
         styleText(c, getStyle());
     }
 
+    public void restyle(LayoutContext c) {
+        super.restyle(c);
+        MarkerData markerData = getMarkerData();
+        if (markerData != null) {
+            setMarkerData(null);
+            createMarkerData(c);
+            getMarkerData().setReferenceLine(markerData.getReferenceLine());
+        }
+        if (getChildrenContentType() == CONTENT_INLINE && _inlineContent != null) {
+            // The line boxes are created from the inline content on the next layout
+            styleText(c);
+        }
+    }
+
     // FIXME Should be expanded into generic restyle facility
     public void styleText(LayoutContext c, CalculatedStyle style) {
         if (getChildrenContentType() == CONTENT_INLINE) {
@@ -1814,19 +2341,25 @@ public class BlockBox extends Box implements InlinePaintable {
     }
 
     public CascadedStyle getFirstLetterStyle() {
-        return _firstLetterStyle;
+        BlockRareData data = peekBlockData();
+        return data == null ? null : data.firstLetterStyle;
     }
 
     public void setFirstLetterStyle(CascadedStyle firstLetterStyle) {
-        _firstLetterStyle = firstLetterStyle;
+        if (firstLetterStyle != null || peekRareData() != null) {
+            getBlockData().firstLetterStyle = firstLetterStyle;
+        }
     }
 
     public CascadedStyle getFirstLineStyle() {
-        return _firstLineStyle;
+        BlockRareData data = peekBlockData();
+        return data == null ? null : data.firstLineStyle;
     }
 
     public void setFirstLineStyle(CascadedStyle firstLineStyle) {
-        _firstLineStyle = firstLineStyle;
+        if (firstLineStyle != null || peekRareData() != null) {
+            getBlockData().firstLineStyle = firstLineStyle;
+        }
     }
 
     protected boolean isMinMaxCalculated() {
@@ -2035,15 +2568,18 @@ public class BlockBox extends Box implements InlinePaintable {
     }
 
     public boolean isFloated() {
-        return _floatedBoxData != null;
+        return getFloatedBoxData() != null;
     }
 
     public FloatedBoxData getFloatedBoxData() {
-        return _floatedBoxData;
+        BlockRareData data = peekBlockData();
+        return data == null ? null : data.floatedBoxData;
     }
 
     public void setFloatedBoxData(FloatedBoxData floatedBoxData) {
-        _floatedBoxData = floatedBoxData;
+        if (floatedBoxData != null || peekRareData() != null) {
+            getBlockData().floatedBoxData = floatedBoxData;
+        }
     }
 
     public int getChildrenHeight() {
@@ -2055,11 +2591,91 @@ public class BlockBox extends Box implements InlinePaintable {
     }
 
     public boolean isFromCaptionedTable() {
-        return _fromCaptionedTable;
+        BlockRareData data = peekBlockData();
+        return data != null && data.fromCaptionedTable;
     }
 
     public void setFromCaptionedTable(boolean fromTable) {
-        _fromCaptionedTable = fromTable;
+        if (fromTable || peekRareData() != null) {
+            getBlockData().fromCaptionedTable = fromTable;
+        }
+    }
+
+    private LayoutReuseData getLayoutReuseData() {
+        BlockRareData data = peekBlockData();
+        return data == null ? null : data.layoutReuseData;
+    }
+
+    private void setLayoutReuseData(LayoutReuseData layoutReuseData) {
+        if (layoutReuseData != null || peekRareData() != null) {
+            getBlockData().layoutReuseData = layoutReuseData;
+        }
+    }
+
+    public int getWidth() {
+        return getContentWidth() + getLeftMBP() + getRightMBP();
+    }
+
+    public BoxDimensions getBoxDimensions() {
+        BoxDimensions result = new BoxDimensions();
+
+        result.setLeftMBP(getLeftMBP());
+        result.setRightMBP(getRightMBP());
+        result.setContentWidth(getContentWidth());
+        result.setHeight(getHeight());
+
+        return result;
+    }
+
+    public void setBoxDimensions(BoxDimensions dimensions) {
+        setLeftMBP(dimensions.getLeftMBP());
+        setRightMBP(dimensions.getRightMBP());
+        setContentWidth(dimensions.getContentWidth());
+        setHeight(dimensions.getHeight());
+    }
+
+    public void setTy(int ty) {
+        _ty = ty;
+    }
+
+    public int getTy() {
+        return _ty;
+    }
+
+    public void setTx(int tx) {
+        _tx = tx;
+    }
+
+    public int getTx() {
+        return _tx;
+    }
+
+    public void setRightMBP(int rightMBP) {
+        _rightMBP = rightMBP;
+    }
+
+    public int getRightMBP() {
+        return _rightMBP;
+    }
+
+    public void setLeftMBP(int leftMBP) {
+        _leftMBP = leftMBP;
+    }
+
+    public int getLeftMBP() {
+        return _leftMBP;
+    }
+
+    protected RareData createRareData() {
+        return new BlockRareData();
+    }
+
+    private BlockRareData getBlockData() {
+        return (BlockRareData) getRareData();
+    }
+
+    private BlockRareData peekBlockData() {
+        return (BlockRareData) peekRareData();
     }
 
     protected boolean isInlineBlock() {
@@ -2161,6 +2777,16 @@ public class BlockBox extends Box implements InlinePaintable {
         private int maxPositive;
         private int maxNegative;
 
+        public MarginCollapseResult() {
+        }
+
+        public MarginCollapseResult(MarginCollapseResult other) {
+            if (other != null) {
+                maxPositive = other.maxPositive;
+                maxNegative = other.maxNegative;
+            }
+        }
+
         public void update(int value) {
             if (value < 0 && value < maxNegative) {
                 maxNegative = value;
@@ -2179,6 +2805,76 @@ public class BlockBox extends Box implements InlinePaintable {
             return maxPositive != 0 || maxNegative != 0;
         }
     }
+
+    /**
+     * The fields of a block box which are only set for list items, floats,
+     * replaced elements and the like (or during incremental layout).
+     */
+    private static class BlockRareData extends RareData {
+        MarkerData markerData;
+        int listCounter;
+        PersistentBFC persistentBFC;
+        Box staticEquivalent;
+        ReplacedElement replacedElement;
+        CascadedStyle firstLineStyle;
+        CascadedStyle firstLetterStyle;
+        FloatedBoxData floatedBoxData;
+        boolean fromCaptionedTable;
+        LayoutReuseData layoutReuseData;
+    }
+
+    /**
+     * What the last layout of a box depended on, see {@link #reuseLayout}.
+     */
+    private static class LayoutReuseData {
+        public static final int UNKNOWN = 0;
+        public static final int YES = 1;
+        public static final int NO = 2;
+
+        private int _containingBlockWidth;
+        private final boolean _floatFree;
+        private final int _collapsePositive;
+        private final int _collapseNegative;
+
+        private int _selfContained = UNKNOWN;
+
+        public LayoutReuseData(
+                int containingBlockWidth, boolean floatFree, MarginCollapseResult collapseInput) {
+            _containingBlockWidth = containingBlockWidth;
+            _floatFree = floatFree;
+            _collapsePositive = collapseInput == null ? 0 : collapseInput.maxPositive;
+            _collapseNegative = collapseInput == null ? 0 : collapseInput.maxNegative;
+        }
+
+        public int getContainingBlockWidth() {
+            return _containingBlockWidth;
+        }
+
+        public void setContainingBlockWidth(int containingBlockWidth) {
+            _containingBlockWidth = containingBlockWidth;
+        }
+
+        public boolean isFloatFree() {
+            return _floatFree;
+        }
+
+        public boolean isSameCollapseInput(MarginCollapseResult collapseInput) {
+            if (collapseInput == null) {
+                return _collapsePositive == 0 && _collapseNegative == 0;
+            } else {
+                return _collapsePositive == collapseInput.maxPositive &&
+                        _collapseNegative == collapseInput.maxNegative;
+            }
+        }
+
+        public int getSelfContained() {
+            return _selfContained;
+        }
+
+        public void setSelfContained(int selfContained) {
+            _selfContained = selfContained;
+        }
+    }
 }
 
 /*
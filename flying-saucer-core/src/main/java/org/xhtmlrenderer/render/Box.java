@@ -50,6 +50,8 @@ import org.xhtmlrenderer.util.XRLog;
 public abstract class Box implements Styleable {
     protected static final String LINE_SEPARATOR = System.getProperty("line.separator");
 
+    private static final int CHILD_BOUNDS_INDEX_THRESHOLD = 16;
+
     private Element _element;
 
     private int _x;
@@ -62,8 +64,6 @@ public abstract class Box implements Styleable {
      * Box width.
      */
     private int _contentWidth;
-    private int _rightMBP = 0;
-    private int _leftMBP = 0;
 
     /**
      * Box height.
@@ -77,27 +77,21 @@ public abstract class Box implements Styleable {
 
     private List _boxes;
 
-    /**
-     * Keeps track of the start of childrens containing block.
-     */
-    private int _tx;
-    private int _ty;
-
     private CalculatedStyle _style;
     private Box _containingBlock;
 
-    private Dimension _relativeOffset;
-
     private PaintingInfo _paintingInfo;
 
     private RectPropertySet _workingMargin;
 
     private int _index;
 
-    private String _pseudoElementOrClass;
+    private RareData _rareData;
 
     private boolean _anonymous;
 
+    private boolean _layoutValid;
+
     protected Box() {
     }
 
@@ -116,7 +110,7 @@ public abstract class Box implements Styleable {
     }
 
     public int getWidth() {
-        return getContentWidth() + getLeftMBP() + getRightMBP();
+        return getContentWidth();
     }
 
     public String toString() {
@@ -517,10 +511,7 @@ public abstract class Box implements Styleable {
 
         setContainingLayer(null);
         setLayer(null);
-        setPaintingInfo(null);
-        setContentWidth(0);
-
-        _workingMargin = null;
+        resetLayoutState();
 
         String anchorName = c.getNamespaceHandler().getAnchorName(getElement());
         if (anchorName != null) {
@@ -536,6 +527,64 @@ public abstract class Box implements Styleable {
         }
     }
 
+    /**
+     * Resets the results of laying out this box without touching its
+     * children or its layer.
+     */
+    protected void resetLayoutState() {
+        setPaintingInfo(null);
+        setContentWidth(0);
+
+        _workingMargin = null;
+        _layoutValid = false;
+    }
+
+    /**
+     * Whether the layout of this box and all of its descendants is still
+     * up to date.  This is only tracked during incremental layout (see
+     * {@link LayoutContext#isIncrementalLayout()}).
+     */
+    public boolean isLayoutValid() {
+        return _layoutValid;
+    }
+
+    public void setLayoutValid(boolean layoutValid) {
+        _layoutValid = layoutValid;
+    }
+
+    /**
+     * Marks this box as needing layout on the next incremental layout pass.
+     * All ancestors are marked as well since their size and the position of
+     * their other children may change too.
+     */
+    public void invalidateLayout() {
+        Box box = this;
+        while (box != null) {
+            box.invalidateOwnLayout();
+            box = box.getParent();
+        }
+    }
+
+    /**
+     * Called for this box and each of its ancestors by
+     * {@link #invalidateLayout()}.  Subclasses drop anything here which is
+     * otherwise kept between layout passes.
+     */
+    protected void invalidateOwnLayout() {
+        _layoutValid = false;
+    }
+
+    /**
+     * Drops the painting info of this box and its descendants, e.g. after
+     * the box has been moved without being laid out again.
+     */
+    public void resetPaintingInfo() {
+        setPaintingInfo(null);
+        for (int i = 0; i < getChildCount(); i++) {
+            getChild(i).resetPaintingInfo();
+        }
+    }
+
     public void detach(LayoutContext c) {
         reset(c);
 
@@ -666,11 +715,13 @@ public abstract class Box implements Styleable {
     }
 
     public Dimension getRelativeOffset() {
-        return _relativeOffset;
+        return _rareData == null ? null : _rareData.relativeOffset;
     }
 
     public void setRelativeOffset(Dimension relativeOffset) {
-        _relativeOffset = relativeOffset;
+        if (relativeOffset != null || _rareData != null) {
+            getRareData().relativeOffset = relativeOffset;
+        }
     }
 
     public Box find(CssContext cssCtx, int absX, int absY, boolean findAnonymous) {
@@ -679,17 +730,43 @@ public abstract class Box implements Styleable {
             return null;
         }
 
-        Box result = null;
+        Box result = findChild(cssCtx, absX, absY, findAnonymous);
+        if (result != null) {
+            return result;
+        }
+
+        Rectangle edge = getContentAreaEdge(getAbsX(), getAbsY(), cssCtx);
+        return edge.contains(absX, absY) && getStyle().isVisible() ? this : null;
+    }
+
+    /**
+     * Returns the first box found below the given point among the children
+     * of this box (see {@link #find(CssContext, int, int, boolean)}).  Boxes
+     * with many children build a {@link ChildBoundsIndex} once their painting
+     * info is available so that long documents can be searched quickly.
+     */
+    protected Box findChild(CssContext cssCtx, int absX, int absY, boolean findAnonymous) {
+        if (getChildCount() >= CHILD_BOUNDS_INDEX_THRESHOLD) {
+            RareData data = getRareData();
+            ChildBoundsIndex index = data.childBoundsIndex;
+            if (index == null || ! index.isValidFor(this)) {
+                index = ChildBoundsIndex.build(this);
+                data.childBoundsIndex = index;
+            }
+            if (index != null) {
+                return index.find(cssCtx, absX, absY, findAnonymous);
+            }
+        }
+
         for (int i = 0; i < getChildCount(); i++) {
             Box child = getChild(i);
-            result = child.find(cssCtx, absX, absY, findAnonymous);
+            Box result = child.find(cssCtx, absX, absY, findAnonymous);
             if (result != null) {
                 return result;
             }
         }
 
-        Rectangle edge = getContentAreaEdge(getAbsX(), getAbsY(), cssCtx);
-        return edge.contains(absX, absY) && getStyle().isVisible() ? this : null;
+        return null;
     }
 
     public boolean isRoot() {
@@ -841,6 +918,11 @@ public abstract class Box implements Styleable {
         }
     }
 
+    /**
+     * Gives this box and its descendants the current styles of their
+     * elements.  Call {@link org.xhtmlrenderer.layout.SharedContext#restyle(Element)}
+     * first to update those after a dynamic pseudo-class changed.
+     */
     public void restyle(LayoutContext c) {
         Element e = getElement();
         CalculatedStyle style = null;
@@ -848,27 +930,31 @@ public abstract class Box implements Styleable {
         String pe = getPseudoElementOrClass();
         if (pe != null) {
             if (e != null) {
-                style = c.getSharedContext().getStyle(e, true);
+                style = c.getSharedContext().getStyle(e);
                 style = style.deriveStyle(c.getCss().getPseudoElementStyle(e, pe));
             } else {
                 BlockBox container = (BlockBox)getParent().getParent();
                 e = container.getElement();
-                style = c.getSharedContext().getStyle(e, true);
+                style = c.getSharedContext().getStyle(e);
                 style = style.deriveStyle(c.getCss().getPseudoElementStyle(e, pe));
                 style = style.createAnonymousStyle(IdentValue.INLINE);
             }
         } else {
             if (e != null) {
-                style = c.getSharedContext().getStyle(e, true);
+                style = c.getSharedContext().getStyle(e);
                 if (isAnonymous()) {
                     style = style.createAnonymousStyle(getStyle().getIdent(CSSName.DISPLAY));
                 }
             } else {
                 Box parent = getParent();
+                if (parent instanceof LineBox) {
+                    // Anonymous text directly inside a block
+                    parent = parent.getParent();
+                }
                 if (parent != null) {
                     e = parent.getElement();
                     if (e != null) {
-                        style = c.getSharedContext().getStyle(e, true);
+                        style = c.getSharedContext().getStyle(e);
                         style = style.createAnonymousStyle(IdentValue.INLINE);
                     }
                 }
@@ -902,11 +988,13 @@ public abstract class Box implements Styleable {
     }
 
     public String getPseudoElementOrClass() {
-        return _pseudoElementOrClass;
+        return _rareData == null ? null : _rareData.pseudoElementOrClass;
     }
 
     public void setPseudoElementOrClass(String pseudoElementOrClass) {
-        _pseudoElementOrClass = pseudoElementOrClass;
+        if (pseudoElementOrClass != null || _rareData != null) {
+            getRareData().pseudoElementOrClass = pseudoElementOrClass;
+        }
     }
 
     public void setX(int x) {
@@ -925,38 +1013,6 @@ public abstract class Box implements Styleable {
         return _y;
     }
 
-    public void setTy(int ty) {
-        _ty = ty;
-    }
-
-    public int getTy() {
-        return _ty;
-    }
-
-    public void setTx(int tx) {
-        _tx = tx;
-    }
-
-    public int getTx() {
-        return _tx;
-    }
-
-    public void setRightMBP(int rightMBP) {
-        _rightMBP = rightMBP;
-    }
-
-    public int getRightMBP() {
-        return _rightMBP;
-    }
-
-    public void setLeftMBP(int leftMBP) {
-        _leftMBP = leftMBP;
-    }
-
-    public int getLeftMBP() {
-        return _leftMBP;
-    }
-
     public void setHeight(int height) {
         _height = height;
     }
@@ -979,32 +1035,44 @@ public abstract class Box implements Styleable {
 
     private void setPaintingInfo(PaintingInfo paintingInfo) {
         _paintingInfo = paintingInfo;
-    }
 
-    public boolean isAnonymous() {
-        return _anonymous;
+        if (_rareData != null) {
+            _rareData.childBoundsIndex = null;
+        }
+        if (_parent != null && _parent._rareData != null) {
+            _parent._rareData.childBoundsIndex = null;
+        }
     }
 
-    public void setAnonymous(boolean anonymous) {
-        _anonymous = anonymous;
+    /**
+     * Returns the record holding the fields which most boxes never set,
+     * creating it on first use.
+     */
+    protected RareData getRareData() {
+        if (_rareData == null) {
+            _rareData = createRareData();
+        }
+        return _rareData;
     }
 
-    public BoxDimensions getBoxDimensions() {
-        BoxDimensions result = new BoxDimensions();
+    /**
+     * Returns the record holding the fields which most boxes never set or
+     * <code>null</code> if none of them has been set yet.
+     */
+    protected RareData peekRareData() {
+        return _rareData;
+    }
 
-        result.setLeftMBP(getLeftMBP());
-        result.setRightMBP(getRightMBP());
-        result.setContentWidth(getContentWidth());
-        result.setHeight(getHeight());
+    protected RareData createRareData() {
+        return new RareData();
+    }
 
-        return result;
+    public boolean isAnonymous() {
+        return _anonymous;
     }
 
-    public void setBoxDimensions(BoxDimensions dimensions) {
-        setLeftMBP(dimensions.getLeftMBP());
-        setRightMBP(dimensions.getRightMBP());
-        setContentWidth(dimensions.getContentWidth());
-        setHeight(dimensions.getHeight());
+    public void setAnonymous(boolean anonymous) {
+        _anonymous = anonymous;
     }
 
     public void collectText(RenderingContext c, StringBuffer buffer) throws IOException {
@@ -1124,6 +1192,19 @@ public abstract class Box implements Styleable {
     protected boolean isInitialContainingBlock() {
         return false;
     }
+
+    /**
+     * The fields of a box which are only set for a few boxes in a typical
+     * document.  Keeping them out of the box itself makes the box tree of
+     * large documents considerably smaller.  Subclasses with rarely used
+     * fields of their own extend this class and override
+     * {@link Box#createRareData()}.
+     */
+    protected static class RareData {
+        Dimension relativeOffset;
+        ChildBoundsIndex childBoundsIndex;
+        String pseudoElementOrClass;
+    }
 }
 
 /*
@@ -0,0 +1,150 @@
+/*
+ * {{{ header & license
+ * Copyright (c) 2026 xhtmlrenderer.dev.java.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.render;
+
+import java.awt.Rectangle;
+
+import org.xhtmlrenderer.css.style.CssContext;
+import org.xhtmlrenderer.layout.PaintingInfo;
+
+/**
+ * A bounding box tree over the children of a box which lets
+ * {@link Box#find(CssContext, int, int, boolean)} skip runs of children which
+ * cannot contain a point.  The children are grouped in document order, which
+ * keeps the groups small for normal flow content, and are visited in the same
+ * order as a plain scan would visit them.  The index is built from the
+ * aggregate bounds of the children and is dropped whenever the painting info
+ * of the box or one of its children changes.
+ */
+class ChildBoundsIndex {
+    private static final int LEAF_SIZE = 8;
+
+    private final Box[] _children;
+    private final int _leafCount;
+
+    // Implicit binary tree, node 1 is the root and the leaves start at _leafCount
+    private final int[] _minX;
+    private final int[] _minY;
+    private final int[] _maxX;
+    private final int[] _maxY;
+
+    private ChildBoundsIndex(Box[] children, int leafCount) {
+        _children = children;
+        _leafCount = leafCount;
+        _minX = new int[leafCount * 2];
+        _minY = new int[leafCount * 2];
+        _maxX = new int[leafCount * 2];
+        _maxY = new int[leafCount * 2];
+    }
+
+    /**
+     * Returns an index over the children of <code>box</code> or
+     * <code>null</code> if one of them doesn't have its painting info
+     * calculated (in which case the children must be searched one by one).
+     */
+    public static ChildBoundsIndex build(Box box) {
+        int count = box.getChildCount();
+        int leaves = 1;
+        while (leaves * LEAF_SIZE < count) {
+            leaves *= 2;
+        }
+
+        Box[] children = new Box[count];
+        ChildBoundsIndex result = new ChildBoundsIndex(children, leaves);
+        for (int i = 0; i < leaves * 2; i++) {
+            result.clear(i);
+        }
+
+        for (int i = 0; i < count; i++) {
+            Box child = box.getChild(i);
+            PaintingInfo info = child.getPaintingInfo();
+            if (info == null) {
+                return null;
+            }
+            children[i] = child;
+
+            Rectangle bounds = info.getAggregateBounds();
+            if (bounds.width > 0 && bounds.height > 0) {
+                result.add(leaves + i / LEAF_SIZE, bounds);
+            }
+        }
+
+        for (int i = leaves - 1; i > 0; i--) {
+            result.merge(i, i * 2);
+            result.merge(i, i * 2 + 1);
+        }
+
+        return result;
+    }
+
+    public boolean isValidFor(Box box) {
+        return box.getChildCount() == _children.length;
+    }
+
+    public Box find(CssContext cssCtx, int absX, int absY, boolean findAnonymous) {
+        return find(1, cssCtx, absX, absY, findAnonymous);
+    }
+
+    private Box find(int node, CssContext cssCtx, int absX, int absY, boolean findAnonymous) {
+        if (absX < _minX[node] || absX >= _maxX[node] ||
+                absY < _minY[node] || absY >= _maxY[node]) {
+            return null;
+        }
+
+        if (node >= _leafCount) {
+            int start = (node - _leafCount) * LEAF_SIZE;
+            int end = Math.min(start + LEAF_SIZE, _children.length);
+            for (int i = start; i < end; i++) {
+                Box result = _children[i].find(cssCtx, absX, absY, findAnonymous);
+                if (result != null) {
+                    return result;
+                }
+            }
+            return null;
+        }
+
+        Box result = find(node * 2, cssCtx, absX, absY, findAnonymous);
+        if (result != null) {
+            return result;
+        }
+        return find(node * 2 + 1, cssCtx, absX, absY, findAnonymous);
+    }
+
+    private void clear(int node) {
+        _minX[node] = Integer.MAX_VALUE;
+        _minY[node] = Integer.MAX_VALUE;
+        _maxX[node] = Integer.MIN_VALUE;
+        _maxY[node] = Integer.MIN_VALUE;
+    }
+
+    private void add(int node, Rectangle bounds) {
+        _minX[node] = Math.min(_minX[node], bounds.x);
+        _minY[node] = Math.min(_minY[node], bounds.y);
+        _maxX[node] = Math.max(_maxX[node], bounds.x + bounds.width);
+        _maxY[node] = Math.max(_maxY[node], bounds.y + bounds.height);
+    }
+
+    private void merge(int node, int child) {
+        _minX[node] = Math.min(_minX[node], _minX[child]);
+        _minY[node] = Math.min(_minY[node], _minY[child]);
+        _maxX[node] = Math.max(_maxX[node], _maxX[child]);
+        _maxY[node] = Math.max(_maxY[node], _maxY[child]);
+    }
+}
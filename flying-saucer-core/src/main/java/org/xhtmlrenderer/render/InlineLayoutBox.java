@@ -28,8 +28,10 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.w3c.dom.Element;
+import org.w3c.dom.Text;
 import org.xhtmlrenderer.css.constants.IdentValue;
 import org.xhtmlrenderer.css.parser.FSRGBColor;
 import org.xhtmlrenderer.css.style.CalculatedStyle;
@@ -98,6 +100,48 @@ public class InlineLayoutBox extends Box implements InlinePaintable {
         return result;
     }
     
+    /**
+     * Adds a copy of this box (as laid out) and its content to
+     * <code>parent</code>, which must be a {@link LineBox} or another
+     * <code>InlineLayoutBox</code>.  The copy refers to the elements and text
+     * nodes <code>nodes</code> maps ours to.
+     */
+    public InlineLayoutBox copyLayout(LayoutContext c, Box parent, Map nodes) {
+        InlineLayoutBox result = new InlineLayoutBox();
+        result.setElement((Element)nodes.get(getElement()));
+        result.setStyle(getStyle());
+        result.setContainingBlockWidth(_containingBlockWidth);
+        result.setMarginTop(c, 0);
+        result.setMarginBottom(c, 0);
+        result.setX(getX());
+        result.setY(getY());
+        result.setHeight(getHeight());
+        result._baseline = _baseline;
+        result._startsHere = _startsHere;
+        result._endsHere = _endsHere;
+        result._pending = _pending;
+        result._inlineWidth = _inlineWidth;
+        result._textDecorations = _textDecorations;
+
+        if (parent instanceof LineBox) {
+            parent.addChildForLayout(c, result);
+        } else {
+            ((InlineLayoutBox)parent).addInlineChild(c, result, false);
+        }
+
+        for (int i = 0; i < getInlineChildCount(); i++) {
+            Object child = getInlineChild(i);
+            if (child instanceof InlineLayoutBox) {
+                ((InlineLayoutBox)child).copyLayout(c, result, nodes);
+            } else {
+                InlineText text = (InlineText)child;
+                result.addInlineChild(c, text.copyLayout((Text)nodes.get(text.getTextNode())), false);
+            }
+        }
+
+        return result;
+    }
+
     public void calculateHeight(LayoutContext c) {
         BorderPropertySet border = getBorder(c);
         RectPropertySet padding = getPadding(c);
@@ -674,7 +718,17 @@ public class InlineLayoutBox extends Box implements InlinePaintable {
             }
         }
     }
-    
+
+    public void resetPaintingInfo() {
+        super.resetPaintingInfo();
+        for (int i = 0; i < getInlineChildCount(); i++) {
+            Object obj = getInlineChild(i);
+            if (obj instanceof Box) {
+                ((Box)obj).resetPaintingInfo();
+            }
+        }
+    }
+
     public void clearSelection(List modified) {
         boolean changed = false;
         for (int i = 0; i < getInlineChildCount(); i++) {
@@ -341,6 +341,24 @@ public class InlineText {
         _selectionEnd = s;
     }
 
+    /**
+     * Returns a copy of this text (as laid out) for an identical text node
+     * elsewhere in the document.
+     */
+    public InlineText copyLayout(Text textNode) {
+        InlineText result = new InlineText();
+        result._x = _x;
+        result._masterText = _masterText;
+        result._start = _start;
+        result._end = _end;
+        result._width = _width;
+        result._containedLF = _containedLF;
+        result._trimmedLeadingSpace = _trimmedLeadingSpace;
+        result._trimmedTrailingSpace = _trimmedTrailingSpace;
+        result._textNode = textNode;
+        return result;
+    }
+
     public Text getTextNode() {
         return this._textNode;
     }
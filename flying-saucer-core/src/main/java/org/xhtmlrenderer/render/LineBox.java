@@ -28,6 +28,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import org.w3c.dom.Element;
 import org.xhtmlrenderer.css.constants.CSSName;
 import org.xhtmlrenderer.css.constants.IdentValue;
@@ -76,6 +77,40 @@ public class LineBox extends Box implements InlinePaintable {
     public LineBox() {
     }
     
+    /**
+     * Returns a copy of this line (as laid out) for <code>parent</code>,
+     * whose inline content only differs from that of our parent in the DOM
+     * nodes it was created from (see
+     * {@link org.xhtmlrenderer.layout.LineLayoutCache}).  <code>nodes</code>
+     * maps our elements and text nodes to those of <code>parent</code>.
+     */
+    public LineBox copyLayout(LayoutContext c, BlockBox parent, int y, Map nodes) {
+        LineBox result = new LineBox();
+        result.setStyle(getStyle());
+        result.setParent(parent);
+        result.initContainingLayer(c);
+        result.setX(getX());
+        result.setY(y);
+        result.setContentWidth(getContentWidth());
+        result.setHeight(getHeight());
+        result._containsContent = _containsContent;
+        result._floatDistances = _floatDistances;
+        result._textDecorations = _textDecorations;
+        result._paintingTop = _paintingTop;
+        result._paintingHeight = _paintingHeight;
+        result._contentStart = _contentStart;
+        result._baseline = _baseline;
+        result._justificationInfo = _justificationInfo;
+        result.calcCanvasLocation();
+
+        for (int i = 0; i < getChildCount(); i++) {
+            ((InlineLayoutBox)getChild(i)).copyLayout(c, result, nodes);
+        }
+        result.calcChildLocations();
+
+        return result;
+    }
+
     public String dump(LayoutContext c, String indent, int which) {
         if (which != Box.DUMP_RENDER) {
             throw new IllegalArgumentException();
@@ -303,7 +338,7 @@ public class LineBox extends Box implements InlinePaintable {
     }
 
     public Rectangle getPaintingClipEdge(CssContext cssCtx) {
-        Box parent = getParent();
+        BlockBox parent = (BlockBox)getParent();
         Rectangle result = null;
         if (parent.getStyle().isIdent(
                 CSSName.FS_TEXT_DECORATION_EXTENT, IdentValue.BLOCK) || 
@@ -400,7 +435,7 @@ public class LineBox extends Box implements InlinePaintable {
     }
     
     public void calcCanvasLocation() {
-        Box parent = getParent();
+        BlockBox parent = (BlockBox)getParent();
         if (parent == null) {
             throw new XRRuntimeException("calcCanvasLocation() called with no parent");
         }
@@ -485,16 +520,7 @@ public class LineBox extends Box implements InlinePaintable {
             return null;
         }
         
-        Box result = null;
-        for (int i = 0; i < getChildCount(); i++) {
-            Box child = getChild(i);
-            result = child.find(cssCtx, absX, absY, findAnonymous);
-            if (result != null) {
-                return result;
-            }
-        }
-        
-        return null;
+        return findChild(cssCtx, absX, absY, findAnonymous);
     }
 
     public int getBaseline() {
@@ -528,7 +554,7 @@ public class LineBox extends Box implements InlinePaintable {
         Box parent = getParent();
         Element e = parent.getElement();
         if (e != null) {
-            CalculatedStyle style = c.getSharedContext().getStyle(e, true);
+            CalculatedStyle style = c.getSharedContext().getStyle(e);
             setStyle(style.createAnonymousStyle(IdentValue.BLOCK));
         }
         
@@ -27,12 +27,14 @@ import java.io.Writer;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 import org.w3c.dom.Element;
 import org.w3c.dom.css.CSSPrimitiveValue;
 import org.xhtmlrenderer.css.constants.CSSName;
 import org.xhtmlrenderer.css.constants.IdentValue;
 import org.xhtmlrenderer.css.constants.MarginBoxName;
+import org.xhtmlrenderer.css.extend.ContentFunction;
 import org.xhtmlrenderer.css.newmatch.PageInfo;
 import org.xhtmlrenderer.css.parser.FSFunction;
 import org.xhtmlrenderer.css.parser.PropertyValue;
@@ -404,6 +406,20 @@ public class PageBox {
             MarginArea area = MARGIN_AREA_DEFS[i];
             
             Dimension dim = area.getLayoutDimension(c, this, margin);
+            
+            // Margin areas whose content does not depend on the page (counter(page)
+            // and counter(pages) are only resolved when painting) are laid out once
+            // and shared by every page with the same page style and dimensions
+            MarginAreaKey key = null;
+            if (isPageIndependent(c, area.getMarginBoxNames())) {
+                key = new MarginAreaKey(i, _pageInfo, dim);
+                MarginAreaContainer cached = (MarginAreaContainer)c.getMarginAreaCache().get(key);
+                if (cached != null) {
+                    _marginAreas[i] = cached;
+                    continue;
+                }
+            }
+            
             TableBox table = BoxBuilder.createMarginTable(
                     c, _pageInfo, 
                     area.getMarginBoxNames(),
@@ -425,8 +441,55 @@ public class PageBox {
                     c.setNoPageBreak(0);
                 }
                 _marginAreas[i] = new MarginAreaContainer(area, table);
+                if (key != null) {
+                    c.getMarginAreaCache().put(key, _marginAreas[i]);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Returns <code>true</code> if the margin boxes use no content that is
+     * resolved against the current page during layout, i.e. running elements
+     * or custom static content functions.
+     */
+    private boolean isPageIndependent(LayoutContext c, MarginBoxName[] names) {
+        for (int i = 0; i < names.length; i++) {
+            List props = (List)_pageInfo.getMarginBoxes().get(names[i]);
+            if (props == null) {
+                continue;
+            }
+            for (Iterator j = props.iterator(); j.hasNext(); ) {
+                PropertyDeclaration decl = (PropertyDeclaration)j.next();
+                if (decl.getCSSName() == CSSName.CONTENT) {
+                    PropertyValue value = (PropertyValue)decl.getValue();
+                    if (! isPageIndependent(c, value)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+    
+    private boolean isPageIndependent(LayoutContext c, PropertyValue value) {
+        if (value.getPropertyValueType() == PropertyValue.VALUE_TYPE_LIST) {
+            for (Iterator i = value.getValues().iterator(); i.hasNext(); ) {
+                if (! isPageIndependent(c, (PropertyValue)i.next())) {
+                    return false;
+                }
+            }
+        } else if (value.getPropertyValueType() == PropertyValue.VALUE_TYPE_FUNCTION) {
+            FSFunction func = value.getFunction();
+            if (BoxBuilder.isElementFunction(func)) {
+                return false;
+            }
+            ContentFunction contentFunction = c.getContentFunctionFactory().lookupFunction(c, func);
+            if (contentFunction != null && contentFunction.isStatic()) {
+                return false;
             }
         }
+        return true;
     }
     
     public boolean isLeftPage() {
@@ -494,6 +557,47 @@ public class PageBox {
         }
     }
     
+    private static final class MarginAreaKey {
+        private final int _areaIndex;
+        private final List _pageProperties;
+        private final Map _marginBoxes;
+        private final int _width;
+        private final int _height;
+        
+        public MarginAreaKey(int areaIndex, PageInfo pageInfo, Dimension dim) {
+            _areaIndex = areaIndex;
+            _pageProperties = pageInfo.getProperties();
+            _marginBoxes = pageInfo.getMarginBoxes();
+            _width = (int)dim.getWidth();
+            _height = (int)dim.getHeight();
+        }
+        
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (! (o instanceof MarginAreaKey)) {
+                return false;
+            }
+            
+            MarginAreaKey other = (MarginAreaKey)o;
+            return _areaIndex == other._areaIndex &&
+                    _width == other._width &&
+                    _height == other._height &&
+                    _pageProperties.equals(other._pageProperties) &&
+                    _marginBoxes.equals(other._marginBoxes);
+        }
+        
+        public int hashCode() {
+            int result = _areaIndex;
+            result = 31 * result + _width;
+            result = 31 * result + _height;
+            result = 31 * result + _pageProperties.hashCode();
+            result = 31 * result + _marginBoxes.hashCode();
+            return result;
+        }
+    }
+    
     private static abstract class MarginArea {
         private final MarginBoxName[] _marginBoxNames;
         private TableBox _table;
@@ -56,7 +56,7 @@ public class FSEntityResolver implements EntityResolver {
     /**
      * Singleton instance, use {@link #instance()} to retrieve.
      */
-    private static FSEntityResolver instance;
+    private static volatile FSEntityResolver instance;
 
     private final Map entities = new HashMap();
 
@@ -132,11 +132,18 @@ public class FSEntityResolver implements EntityResolver {
      *
      * @return An instance of .
      */
-    public static synchronized FSEntityResolver instance() {
-        if (instance == null) {
-            instance = new FSEntityResolver();
+    public static FSEntityResolver instance() {
+        // Only lock while creating it; every document parsed needs it
+        FSEntityResolver result = instance;
+        if (result == null) {
+            synchronized (FSEntityResolver.class) {
+                if (instance == null) {
+                    instance = new FSEntityResolver();
+                }
+                result = instance;
+            }
         }
-        return instance;
+        return result;
     }
 
     /**
@@ -64,6 +64,8 @@ public class Graphics2DRenderer {
     public Graphics2DRenderer() {
         panel = new XHTMLPanel();
         panel.setInteractive(false);
+        // layout() and render() have to be done when they return
+        panel.setAsyncLayout(false);
     }
 
     // ASK maybe we could change the graphics2d to be a font rendering context?
@@ -50,8 +50,8 @@ public class XhtmlCssOnlyNamespaceHandler extends NoNamespaceHandler {
      */
     final static String _namespace = "http://www.w3.org/1999/xhtml";
 
-    private static StylesheetInfo _defaultStylesheet;
-    private static boolean _defaultStylesheetError = false;
+    private static volatile StylesheetInfo _defaultStylesheet;
+    private static volatile boolean _defaultStylesheetError = false;
 
     private final Map _metadata = null;
 
@@ -362,6 +362,13 @@ public class XhtmlCssOnlyNamespaceHandler extends NoNamespaceHandler {
     }
 
     public StylesheetInfo getDefaultStylesheet(StylesheetFactory factory) {
+        // Only lock while the stylesheet hasn't been loaded yet; every
+        // document asks for it
+        StylesheetInfo result = _defaultStylesheet;
+        if (result != null) {
+            return result;
+        }
+
         synchronized (XhtmlCssOnlyNamespaceHandler.class) {
             if (_defaultStylesheet != null) {
                 return _defaultStylesheet;
@@ -23,11 +23,14 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
 import java.awt.Insets;
 import java.awt.LayoutManager;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.Shape;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
 import java.awt.print.PrinterGraphics;
 import java.io.BufferedReader;
 import java.io.InputStream;
@@ -74,6 +77,10 @@ public abstract class BasicPanel extends RootPanel implements FormSubmissionList
 
     private boolean explicitlyOpaque;
 
+    private final TileCache tileCache = Configuration.isTrue("xr.renderer.tile-cache", false) ?
+            new TileCache(Configuration.valueAsInt("xr.renderer.tile-cache.memory-limit", 32) * 1024L * 1024L) :
+            null;
+
     private final MouseTracker mouseTracker;
     private boolean centeredPagedView;
     protected FormSubmissionListener formSubmissionListener;
@@ -134,9 +141,13 @@ public abstract class BasicPanel extends RootPanel implements FormSubmissionList
 
         // if this is the first time painting this document, then calc layout
         Layer root = getRootLayer();
-        if (root == null || isNeedRelayout()) {
-            doDocumentLayout(g.create());
+        boolean laidOut = root == null || isNeedRelayout();
+        if (laidOut) {
+            doPaintLayout(g.create());
             root = getRootLayer();
+            if (tileCache != null) {
+                tileCache.clear();
+            }
         }
         setNeedRelayout(false);
         if (root == null) {
@@ -149,6 +160,8 @@ public abstract class BasicPanel extends RootPanel implements FormSubmissionList
             doRender(c, root);
             long end = System.currentTimeMillis();
             XRLog.render(Level.FINE, "RENDERING TOOK " + (end - start) + " ms");
+
+            updateImageLoading(root, laidOut);
         }
     }
 
@@ -167,7 +180,11 @@ public abstract class BasicPanel extends RootPanel implements FormSubmissionList
 
             long start = System.currentTimeMillis();
             if (!c.isPrint()) {
-                root.paint(c);
+                if (tileCache != null && ! root.containsFixedContent()) {
+                    paintTiles((Graphics2D)g, root);
+                } else {
+                    root.paint(c);
+                }
             } else {
                 paintPagedView(c, root);
             }
@@ -194,6 +211,106 @@ public abstract class BasicPanel extends RootPanel implements FormSubmissionList
         }
     }
 
+    /**
+     * Paints the document from the tile cache.  The tiles which intersect the
+     * clip, but haven't been rendered yet or were invalidated by a repaint
+     * request since, are rendered together so the layer tree is only painted
+     * once.
+     */
+    private void paintTiles(Graphics2D g, Layer root) {
+        tileCache.setOwner(root);
+
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        if (clip.isEmpty()) {
+            return;
+        }
+
+        int size = TileCache.TILE_SIZE;
+        int firstCol = TileCache.toTile(clip.x);
+        int lastCol = TileCache.toTile(clip.x + clip.width - 1);
+        int firstRow = TileCache.toTile(clip.y);
+        int lastRow = TileCache.toTile(clip.y + clip.height - 1);
+
+        Rectangle missing = null;
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int col = firstCol; col <= lastCol; col++) {
+                BufferedImage tile = tileCache.get(col, row);
+                if (tile != null) {
+                    g.drawImage(tile, col * size, row * size, null);
+                } else if (missing == null) {
+                    missing = new Rectangle(col * size, row * size, size, size);
+                } else {
+                    missing.add(new Rectangle(col * size, row * size, size, size));
+                }
+            }
+        }
+
+        if (missing != null) {
+            BufferedImage rendered = renderArea(g, root, missing);
+            g.drawImage(rendered, missing.x, missing.y, null);
+
+            for (int y = missing.y; y < missing.y + missing.height; y += size) {
+                for (int x = missing.x; x < missing.x + missing.width; x += size) {
+                    BufferedImage tile = createTileImage(size, size);
+                    Graphics2D tileGraphics = tile.createGraphics();
+                    tileGraphics.drawImage(rendered, missing.x - x, missing.y - y, null);
+                    tileGraphics.dispose();
+                    tileCache.put(TileCache.toTile(x), TileCache.toTile(y), tile);
+                }
+            }
+        }
+    }
+
+    private BufferedImage renderArea(Graphics2D g, Layer root, Rectangle area) {
+        BufferedImage result = createTileImage(area.width, area.height);
+
+        Graphics2D areaGraphics = result.createGraphics();
+        try {
+            areaGraphics.setRenderingHints(g.getRenderingHints());
+            areaGraphics.translate(-area.x, -area.y);
+            areaGraphics.setClip(area.x, area.y, area.width, area.height);
+            if (explicitlyOpaque) {
+                areaGraphics.setColor(getBackground());
+                areaGraphics.fillRect(area.x, area.y, area.width, area.height);
+            }
+            root.paint(newRenderingContext(areaGraphics));
+        } finally {
+            areaGraphics.dispose();
+        }
+
+        return result;
+    }
+
+    private BufferedImage createTileImage(int width, int height) {
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        if (gc != null) {
+            return gc.createCompatibleImage(
+                    width, height, explicitlyOpaque ? Transparency.OPAQUE : Transparency.TRANSLUCENT);
+        } else {
+            return new BufferedImage(
+                    width, height, explicitlyOpaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        }
+    }
+
+    /**
+     * Drops the cached tiles in the area to repaint, if the tile cache is
+     * enabled, before scheduling the repaint.
+     */
+    public void repaint(long tm, int x, int y, int width, int height) {
+        if (tileCache != null) {
+            Rectangle area = new Rectangle(x, y, width, height);
+            if (enclosingScrollPane == null) {
+                Insets insets = getInsets();
+                area.translate(-insets.left, -insets.top);
+            }
+            tileCache.invalidate(area);
+        }
+        super.repaint(tm, x, y, width, height);
+    }
+
     private void paintDefaultBackground(Graphics g) {
         if (!(g instanceof PrinterGraphics) && explicitlyOpaque) {
             g.setColor(getBackground());
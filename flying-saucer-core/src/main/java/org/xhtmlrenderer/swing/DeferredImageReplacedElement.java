@@ -23,6 +23,7 @@ import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.util.logging.Level;
 
+import org.xhtmlrenderer.extend.FSImage;
 import org.xhtmlrenderer.layout.LayoutContext;
 import org.xhtmlrenderer.util.ImageUtil;
 import org.xhtmlrenderer.util.Configuration;
@@ -49,6 +50,9 @@ public class DeferredImageReplacedElement extends ImageReplacedElement {
 
     private boolean _doScaleImage;
     private boolean _loaded;
+    private boolean _evicted;
+    private int _evictedWidth;
+    private int _evictedHeight;
     private final ImageResource _imageResource;
 
 
@@ -84,11 +88,17 @@ public class DeferredImageReplacedElement extends ImageReplacedElement {
 
     /** {@inheritDoc} */
     public int getIntrinsicHeight() {
+        if (_evicted) {
+            return _evictedHeight;
+        }
         return  _loaded ? _image.getHeight(null) : _targetHeight;
     }
 
     /** {@inheritDoc} */
     public int getIntrinsicWidth() {
+        if (_evicted) {
+            return _evictedWidth;
+        }
         return _loaded ? _image.getWidth(null) : _targetWidth;
     }
 
@@ -112,6 +122,10 @@ public class DeferredImageReplacedElement extends ImageReplacedElement {
      * @return see desc
      */
     public Image getImage() {
+        if (!_loaded && !_imageResource.isLoaded() && _imageResource.getImage() instanceof MutableFSImage) {
+            // Being painted so it is visible
+            ((MutableFSImage) _imageResource.getImage()).prioritizeLoad();
+        }
         if (!_loaded && _imageResource.isLoaded()) {
             Image image = ((AWTFSImage) _imageResource.getImage()).getImage();
             if (_doScaleImage && (_targetWidth > 0 || _targetHeight > 0)) {
@@ -149,18 +163,69 @@ public class DeferredImageReplacedElement extends ImageReplacedElement {
                 _image = image;
             }
             _loaded = true;
-            XRLog.load(Level.FINE, "Icon: replaced image " + _imageResource.getImageUri() + ", repaint requested");
-            SwingUtilities.invokeLater(new Runnable() {
-                public void run() {
-                    repaintListener.repaintRequested(_doScaleImage);
-                }
-            });
+            if (_evicted) {
+                // Reloaded with the same size, we are being painted already
+                _evicted = false;
+            } else {
+                XRLog.load(Level.FINE, "Icon: replaced image " + _imageResource.getImageUri() + ", repaint requested");
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        repaintListener.repaintRequested(_doScaleImage);
+                    }
+                });
+            }
 
         }
 
         return _image;
     }
 
+    /**
+     * Returns the image loaded in the background for this element, or null if the image was not loaded in
+     * the background.
+     */
+    public MutableFSImage getMutableImage() {
+        FSImage image = _imageResource.getImage();
+        return image instanceof MutableFSImage ? (MutableFSImage) image : null;
+    }
+
+    /**
+     * Returns the approximate number of bytes used by the image of this element (assuming 4 bytes per pixel)
+     * which are not already counted by {@link MutableFSImage#getLoadedSize()}.
+     */
+    public long getLoadedSize() {
+        if (! _loaded || _image == null || _image == ((AWTFSImage) _imageResource.getImage()).getImage()) {
+            return 0;
+        }
+        return 4L * _image.getWidth(null) * _image.getHeight(null);
+    }
+
+    /**
+     * Drops the image of this element. It keeps its size and the image is picked up again once the
+     * {@link MutableFSImage} has been loaded again.
+     */
+    public void evict() {
+        if (_loaded) {
+            _evictedWidth = _image.getWidth(null);
+            _evictedHeight = _image.getHeight(null);
+            _evicted = true;
+            _loaded = false;
+            _image = null;
+        }
+    }
+
+    /**
+     * Returns the distance between this image and <code>rect</code> (both in document coordinates), 0 if they
+     * intersect.
+     */
+    public int getDistance(Rectangle rect) {
+        int x = (int) _location.getX();
+        int y = (int) _location.getY();
+        int dx = Math.max(0, Math.max(rect.x - (x + getIntrinsicWidth()), x - (rect.x + rect.width)));
+        int dy = Math.max(0, Math.max(rect.y - (y + getIntrinsicHeight()), y - (rect.y + rect.height)));
+        return Math.max(dx, dy);
+    }
+
 	public int getBaseline() {
 		return 0;
 	}
@@ -20,17 +20,23 @@
 package org.xhtmlrenderer.swing;
 
 import java.awt.Rectangle;
+import java.util.Iterator;
+import java.util.Set;
+
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.xhtmlrenderer.context.StyleReference;
+import org.xhtmlrenderer.css.constants.CSSName;
 import org.xhtmlrenderer.layout.LayoutContext;
 import org.xhtmlrenderer.layout.PaintingInfo;
 import org.xhtmlrenderer.render.Box;
+import org.xhtmlrenderer.render.InlineLayoutBox;
 
 /**
  * A HoverListener is used to respond to a mouse hovering over a Box in a {@link org.xhtmlrenderer.swing.BasicPanel}.
  * In particular, it applies any :hover selectors that apply to the Box in question, and resets those styles
- * as the mouse exits the Box.
+ * as the mouse exits the Box.  Only the styles which depend on the hover state are computed again.  If
+ * just colors or backgrounds changed the affected boxes are repainted, otherwise they are laid out again.
  */
 public class HoverListener extends DefaultFSMouseListener {
     private Box _previouslyHovered;
@@ -54,58 +60,80 @@ public class HoverListener extends DefaultFSMouseListener {
             return;
         }
 
-        boolean needRepaint = false;
-
         Element currentlyHovered = getHoveredElement(c.getCss(), box);
 
         if (currentlyHovered == panel.hovered_element) {
             return;
         }
 
+        Element previouslyHovered = panel.hovered_element;
         panel.hovered_element = currentlyHovered;
 
+        boolean needRepaint = false;
+        boolean needLayout = false;
+
         boolean targetedRepaint = true;
         Rectangle repaintRegion = null;
 
-        // If we moved out of the old block then unstyle it
+        // If we moved out of the old element then unstyle it
         if (_previouslyHovered != null) {
-            needRepaint = true;
-            _previouslyHovered.restyle(c);
-
-            PaintingInfo paintInfo = _previouslyHovered.getPaintingInfo();
-
-            if (paintInfo == null) {
-                targetedRepaint = false;
-            } else {
-                repaintRegion = new Rectangle(paintInfo.getAggregateBounds());
+            Set changed = c.getSharedContext().restyle(previouslyHovered);
+            if (! changed.isEmpty()) {
+                needRepaint = true;
+                boolean siblings = c.getCss().isSiblingStyled(previouslyHovered);
+
+                Box target = getRestyleTarget(_previouslyHovered, siblings);
+                target.restyle(c);
+
+                needLayout = ! isPaintOnly(changed, siblings ? target : _previouslyHovered);
+                repaintRegion = siblings ?
+                        getPaintedBounds(target) : getRepaintBounds(target, previouslyHovered);
+                if (repaintRegion == null) {
+                    targetedRepaint = false;
+                }
+                if (needLayout) {
+                    target.invalidateLayout();
+                }
             }
 
             _previouslyHovered = null;
         }
 
         if (currentlyHovered != null) {
-            needRepaint = true;
-            Box target = box.getRestyleTarget();
-            target.restyle(c);
-
-            if (targetedRepaint) {
-                PaintingInfo paintInfo = target.getPaintingInfo();
-
-                if (paintInfo == null) {
-                    targetedRepaint = false;
-                } else {
-                    if (repaintRegion == null) {
-                        repaintRegion = new Rectangle(paintInfo.getAggregateBounds());
+            Box hovered = getHoveredBox(box, currentlyHovered);
+            Set changed = c.getSharedContext().restyle(currentlyHovered);
+            if (! changed.isEmpty()) {
+                needRepaint = true;
+                boolean siblings = c.getCss().isSiblingStyled(currentlyHovered);
+
+                Box target = getRestyleTarget(hovered, siblings);
+                target.restyle(c);
+
+                boolean layout = ! isPaintOnly(changed, siblings ? target : hovered);
+                needLayout = needLayout || layout;
+
+                if (targetedRepaint) {
+                    Rectangle bounds = siblings ?
+                            getPaintedBounds(target) : getRepaintBounds(target, currentlyHovered);
+                    if (bounds == null) {
+                        targetedRepaint = false;
+                    } else if (repaintRegion == null) {
+                        repaintRegion = bounds;
                     } else {
-                        repaintRegion.add(paintInfo.getAggregateBounds());
+                        repaintRegion.add(bounds);
                     }
                 }
+                if (layout) {
+                    target.invalidateLayout();
+                }
             }
 
-            _previouslyHovered = target;
+            _previouslyHovered = hovered;
         }
 
-        if (needRepaint) {
+        if (needLayout) {
+            panel.requestRelayout();
+        } else if (needRepaint) {
             if (targetedRepaint) {
                 panel.repaint(repaintRegion);
             } else {
@@ -113,7 +141,88 @@ public class HoverListener extends DefaultFSMouseListener {
             }
         }
     }
-    
+
+    // Text decorations are recalculated when inline boxes are restyled, but
+    // the decorations of line boxes are only calculated during layout
+    private boolean isPaintOnly(Set changed, Box hovered) {
+        for (Iterator i = changed.iterator(); i.hasNext(); ) {
+            CSSName name = (CSSName)i.next();
+            if (! CSSName.isPaintOnly(name) &&
+                    ! (name == CSSName.TEXT_DECORATION && hovered instanceof InlineLayoutBox)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // the box to restyle, which must contain the following siblings if they're styled by the hovered element too
+    private Box getRestyleTarget(Box hovered, boolean siblings) {
+        Box result = hovered.getRestyleTarget();
+        if (siblings && result.getParent() != null) {
+            result = result.getParent();
+        }
+        return result;
+    }
+
+    // look up the Box of the hovered Element, the Box under the mouse may belong to a descendant
+    private Box getHoveredBox(Box box, Element hovered) {
+        Box result = box;
+        while (result != null && result.getElement() != hovered) {
+            result = result.getParent();
+        }
+        return result == null ? box : result;
+    }
+
+    // the painted area of the boxes of an element within target or null if it isn't known
+    private Rectangle getRepaintBounds(Box target, Element element) {
+        Rectangle result = new Rectangle();
+        if (! addBounds(target, element, result)) {
+            return null;
+        } else if (result.isEmpty()) {
+            return getPaintedBounds(target);
+        } else {
+            return result;
+        }
+    }
+
+    // the painted area of target and its descendants or null if it isn't known
+    private Rectangle getPaintedBounds(Box target) {
+        PaintingInfo paintInfo = target.getPaintingInfo();
+        return paintInfo == null ? null : new Rectangle(paintInfo.getAggregateBounds());
+    }
+
+    private boolean addBounds(Box box, Element element, Rectangle result) {
+        if (box.getElement() == element) {
+            PaintingInfo paintInfo = box.getPaintingInfo();
+            if (paintInfo == null) {
+                return false;
+            } else if (result.isEmpty()) {
+                result.setBounds(paintInfo.getAggregateBounds());
+            } else {
+                result.add(paintInfo.getAggregateBounds());
+            }
+            return true;
+        }
+
+        if (box instanceof InlineLayoutBox) {
+            InlineLayoutBox iB = (InlineLayoutBox)box;
+            for (int i = 0; i < iB.getInlineChildCount(); i++) {
+                Object child = iB.getInlineChild(i);
+                if (child instanceof Box && ! addBounds((Box)child, element, result)) {
+                    return false;
+                }
+            }
+        } else {
+            for (int i = 0; i < box.getChildCount(); i++) {
+                if (! addBounds(box.getChild(i), element, result)) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
     // look up the Element that corresponds to the Box we are hovering over
     private Element getHoveredElement(StyleReference style, Box ib) {
         if (ib == null) {
@@ -22,8 +22,8 @@ package org.xhtmlrenderer.swing;
 
 
 /**
- * Denotes a URI pointing to an image that needs to be loaded. BackgroundImageLoaderItem are queued inside a
- * BackgroundImageLoader and loaded by a BackgroundImageLoaderThread.
+ * Denotes a URI pointing to an image that needs to be loaded. ImageLoadItems are queued inside the shared
+ * ImageLoadQueue and loaded by an ImageLoadWorker.
  */
 class ImageLoadItem {
     final ImageResourceLoader _imageResourceLoader;
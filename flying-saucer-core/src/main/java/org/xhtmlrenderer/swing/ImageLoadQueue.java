@@ -19,44 +19,55 @@
  */
 package org.xhtmlrenderer.swing;
 
+import org.xhtmlrenderer.util.Configuration;
 import org.xhtmlrenderer.util.XRLog;
 
-import java.util.LinkedList;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 
 
 /**
- * A thread-safe queue containing BackgroundImageLoaderItem, each of which represents one image (identified by a URI)
- * which needs to be loaded.
+ * A thread-safe queue containing ImageLoadItems, each of which represents one image (identified by a URI)
+ * which needs to be loaded. There is a single queue shared by all {@link ImageResourceLoader}s; items are loaded
+ * by a pool of at most <code>xr.image.background.workers</code> threads which are only kept alive while there
+ * is something to load. Images closer to the visible area of their panel are loaded first, otherwise items are
+ * loaded in FIFO order.
  */
 class ImageLoadQueue {
-    // marker queue item which, if read, means the reading threads should simply stop their polling
-    // introduced by kill()
-    private static final ImageLoadItem KILL_SWITCH = new ImageLoadItem(null, null, null, -1, -1);
+    private static final long KEEP_ALIVE_SECONDS = 30;
 
-    // list of items to be loaded
-    private final java.util.LinkedList _loadQueue;
+    private static ImageLoadQueue _instance;
+
+    private final ThreadPoolExecutor _executor;
+
+    private long _sequence;
 
     /**
      * Intantiates a new queue.
+     *
+     * @param workerCount maximum number of threads loading images at the same time
      */
-    public ImageLoadQueue() {
-        this._loadQueue = new LinkedList();
+    ImageLoadQueue(int workerCount) {
+        this._executor = new ThreadPoolExecutor(
+                workerCount, workerCount, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new PriorityBlockingQueue(), new WorkerThreadFactory());
+        this._executor.allowCoreThreadTimeOut(true);
     }
 
     /**
-     * Queues a new item to be loaded. Thread-safe.
-     *
-     * @param uri URI of the item to be loaded. As there is no good way of reporting failures, you should ensure
-     *            the URI is a proper URL before calling this method.
-     * @param re  container for the image to be loaded; will be updated via
-     *            {@link MutableFSImage#setImage(String,java.awt.Image,boolean)} once image is loaded
-    public synchronized void addToQueue(String uri, MutableFSImage re) {
-        this.addToQueue(uri, re, -1, -1);
-    }
+     * Returns the queue shared by all image loaders, sized by <code>xr.image.background.workers</code>.
      */
-
+    public static synchronized ImageLoadQueue getInstance() {
+        if (_instance == null) {
+            _instance = new ImageLoadQueue(
+                    Math.max(1, Configuration.valueAsInt("xr.image.background.workers", 5)));
+        }
+        return _instance;
+    }
 
     /**
      * Queues a new item to be loaded. Thread-safe.
@@ -65,65 +76,75 @@ class ImageLoadQueue {
      * @param uri URI of the item to be loaded. As there is no good way of reporting failures, you should ensure
      *            the URI is a proper URL before calling this method.
      */
-    public synchronized void addToQueue(final ImageResourceLoader imageResourceLoader, final String uri, final MutableFSImage mfsi, final int width, final int height) {
-        XRLog.general(Level.FINE, "Queueing load for image uri " + uri);
-        _loadQueue.addLast(new ImageLoadItem(imageResourceLoader, uri, mfsi, width, height));
-        notifyAll();
+    public void addToQueue(final ImageResourceLoader imageResourceLoader, final String uri, final MutableFSImage mfsi, final int width, final int height) {
+        addToQueue(new ImageLoadItem(imageResourceLoader, uri, mfsi, width, height), Integer.MAX_VALUE);
     }
 
     /**
-     * Returns the next available task from the queue, or blocks if there are no more; items are returned in FIFO order.
-     * If none are available, the method will block until the next items is pushed into the queue.
+     * Queues an item to be loaded (again). Thread-safe.
      *
-     * @return an ImageLoadItem
-     * @throws InterruptedException if the wait (block) was interrupted externally
+     * @param distance the distance of the image from the visible area, see {@link ImageLoadWorker#getDistance()}
      */
-    public synchronized ImageLoadItem getTask() throws InterruptedException {
-        while (_loadQueue.isEmpty()) {
-            wait();
-        }
-        if (_loadQueue.getLast() == KILL_SWITCH) {
-            XRLog.general(Level.FINE, "Thread " + Thread.currentThread().getName() +
-                    " requested item, but queue is shutting down; returning kill switch.");
-            return KILL_SWITCH;
-        } else {
-            ImageLoadItem item = (ImageLoadItem) _loadQueue.removeLast();
-
-            XRLog.general(Level.FINE, "Thread " + Thread.currentThread().getName() +
-                    " pulled item " + item._uri + " from queue, " + (_loadQueue.size() - 1) + " remaining");
-            return item;
+    public void addToQueue(ImageLoadItem item, int distance) {
+        XRLog.general(Level.FINE, "Queueing load for image uri " + item._uri);
+        ImageLoadWorker task;
+        synchronized (this) {
+            task = new ImageLoadWorker(item, _sequence++);
         }
+        task.setDistance(distance);
+        // Not while holding our lock, the image may call back into the queue while holding its own lock
+        item._mfsImage.setPendingLoad(task);
+        _executor.execute(task);
     }
 
     /**
-     * Removes all items currently in the queue.
+     * Updates the distance of an item from the visible area if it has not been picked up by a worker yet, moving
+     * it ahead of items further away (or behind items closer to the visible area).
      */
-    public synchronized void reset() {
-        _loadQueue.clear();
+    public synchronized void setDistance(ImageLoadWorker task, int distance) {
+        if (task.getDistance() != distance && _executor.remove(task)) {
+            XRLog.general(Level.FINE, "Image uri " + task.getItem()._uri + " now at distance " + distance);
+            task.setDistance(distance);
+            _executor.execute(task);
+        }
     }
 
     /**
-     * Indicates that no more items will be added to the queue, no more items currently in the queue will be loaded,
-     * and that worker threads polling this queue should shut down.
+     * Removes all items queued by <code>imageResourceLoader</code> which have not been picked up by a worker yet.
      */
-    public synchronized void kill() {
-        _loadQueue.addLast(KILL_SWITCH);
-        notifyAll();
+    public synchronized void reset(ImageResourceLoader imageResourceLoader) {
+        Object[] tasks = _executor.getQueue().toArray();
+        for (int i = 0; i < tasks.length; i++) {
+            ImageLoadWorker task = (ImageLoadWorker) tasks[i];
+            if (task.getItem()._imageResourceLoader == imageResourceLoader) {
+                _executor.remove(task);
+            }
+        }
     }
 
     /**
-     * Returns true if the item, retrieved from the queue via {@link #getTask()}, is a kill switch, meaning the worker
-     * that retrieved it should stop polling.
-     *
-     * @param queueItem an item retrieved from the queue.
-     * @return true if the item, retrieved from the queue via {@link #getTask()}, is a kill switch, meaning the worker
-     *         that retrieved it should stop polling.
+     * Returns the number of items queued by <code>imageResourceLoader</code> which have not been picked up
+     * by a worker yet.
      */
-    public static boolean isKillSwitch(Object queueItem) {
-        return queueItem == KILL_SWITCH;
+    public int size(ImageResourceLoader imageResourceLoader) {
+        int result = 0;
+        Object[] tasks = _executor.getQueue().toArray();
+        for (int i = 0; i < tasks.length; i++) {
+            if (((ImageLoadWorker) tasks[i]).getItem()._imageResourceLoader == imageResourceLoader) {
+                result++;
+            }
+        }
+        return result;
     }
 
-    public int size() {
-        return _loadQueue.size();
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private int _counter;
+
+        public synchronized Thread newThread(Runnable r) {
+            Thread result = new Thread(r, "ImageLoadWorker(" + _counter++ + ")");
+            result.setDaemon(true);
+            result.setPriority(Thread.MIN_PRIORITY);
+            return result;
+        }
     }
 }
@@ -30,58 +30,72 @@ import java.util.logging.Level;
 
 
 /**
- * A background thread (daemon, low priority) which reads BackgroundImageLoaderItem from a BackgroundImageQueue
- * and loads the images into memory. Once images have loaded, the item's MutableFSImage will receive the newly loaded
- * image via setImage(newImage). Images, once loaded, are always BufferedImages and will always be compatible with
- * the current screen's graphics configuration. If an image cannot be loaded (network failure), a 1 x 1 pixel image
- * will be returned instead and the problem will be logged.
+ * Loads the image of one ImageLoadItem on one of the threads of the shared ImageLoadQueue. Once the image has
+ * loaded, the item's MutableFSImage will receive the newly loaded image via setImage(newImage). Images, once
+ * loaded, are always BufferedImages and will always be compatible with the current screen's graphics
+ * configuration. If an image cannot be loaded (network failure), a 1 x 1 pixel image will be returned instead and
+ * the problem will be logged.
  */
-class ImageLoadWorker extends Thread {
-    private static volatile int counter = 0;
-    private final ImageLoadQueue queue;
+class ImageLoadWorker implements Runnable, Comparable {
+    private final ImageLoadItem loadItem;
+    private final long sequence;
+    private volatile int distance = Integer.MAX_VALUE;
 
-    public ImageLoadWorker(ImageLoadQueue queue) {
-        this.queue = queue;
-        setDaemon(true);
-        setPriority(Thread.MIN_PRIORITY);
-        setName("ImageLoadWorker(" + counter++ + ")");
+    public ImageLoadWorker(ImageLoadItem loadItem, long sequence) {
+        this.loadItem = loadItem;
+        this.sequence = sequence;
+    }
+
+    public ImageLoadItem getItem() {
+        return loadItem;
+    }
+
+    /**
+     * The distance of the image from the visible area of the panel, <code>Integer.MAX_VALUE</code> if it
+     * is not known yet. Closer images are loaded first.
+     */
+    public int getDistance() {
+        return distance;
+    }
+
+    public void setDistance(int distance) {
+        this.distance = distance;
+    }
+
+    public int compareTo(Object o) {
+        ImageLoadWorker other = (ImageLoadWorker) o;
+        if (distance != other.distance) {
+            return distance < other.distance ? -1 : 1;
+        }
+        return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
     }
 
     public void run() {
-        try {
-            while (true) {
-                final ImageLoadItem loadItem = queue.getTask();
+        loadItem._mfsImage.setPendingLoad(null);
 
-                if (ImageLoadQueue.isKillSwitch(loadItem)) {
-                    break;
-                }
-                final ImageResource ir = ImageResourceLoader.loadImageResourceFromUri(loadItem._uri);
-                FSImage awtfsImage = ir.getImage();
-                BufferedImage newImg = (BufferedImage) ((AWTFSImage) awtfsImage).getImage();
-                XRLog.load(Level.FINE, this + ", loaded " + loadItem._uri);
+        final ImageResource ir = ImageResourceLoader.loadImageResourceFromUri(loadItem._uri);
+        FSImage awtfsImage = ir.getImage();
+        BufferedImage newImg = (BufferedImage) ((AWTFSImage) awtfsImage).getImage();
+        XRLog.load(Level.FINE, Thread.currentThread().getName() + ", loaded " + loadItem._uri);
 
-                loadItem._imageResourceLoader.loaded(ir, newImg.getWidth(), newImg.getHeight());
-                final boolean wasScaled;
-                if (loadItem.haveTargetDimensions() && !ir.hasDimensions(loadItem._targetWidth, loadItem._targetHeight)) {
-                    XRLog.load(Level.FINE, this + ", scaling " + loadItem._uri + " to " + loadItem._targetWidth + ", " + loadItem._targetHeight);
-                    newImg = ImageUtil.getScaledInstance(newImg, loadItem._targetWidth, loadItem._targetHeight);
-                    ImageResource sir = new ImageResource(ir.getImageUri(), AWTFSImage.createImage(newImg));
-                    loadItem._imageResourceLoader.loaded(sir, newImg.getWidth(), newImg.getHeight());
-                    wasScaled = true;
-                } else {
-                    wasScaled = false;
-                }
+        loadItem._imageResourceLoader.loaded(ir, newImg.getWidth(), newImg.getHeight());
+        final boolean wasScaled;
+        if (loadItem.haveTargetDimensions() && !ir.hasDimensions(loadItem._targetWidth, loadItem._targetHeight)) {
+            XRLog.load(Level.FINE, Thread.currentThread().getName() + ", scaling " + loadItem._uri + " to " + loadItem._targetWidth + ", " + loadItem._targetHeight);
+            newImg = ImageUtil.getScaledInstance(newImg, loadItem._targetWidth, loadItem._targetHeight);
+            ImageResource sir = new ImageResource(ir.getImageUri(), AWTFSImage.createImage(newImg));
+            loadItem._imageResourceLoader.loaded(sir, newImg.getWidth(), newImg.getHeight());
+            wasScaled = true;
+        } else {
+            wasScaled = false;
+        }
 
-                // msfImage belongs to the Swing AWT thread
-                final BufferedImage newImg1 = newImg;
-                EventQueue.invokeLater(new Runnable() {
-                    public void run() {
-                        loadItem._mfsImage.setImage(loadItem._uri, newImg1, wasScaled);
-                    }
-                });
+        // msfImage belongs to the Swing AWT thread
+        final BufferedImage newImg1 = newImg;
+        EventQueue.invokeLater(new Runnable() {
+            public void run() {
+                loadItem._mfsImage.setImage(loadItem._uri, newImg1, wasScaled);
             }
-        } catch (InterruptedException e) {
-            //
-        }
+        });
     }
 }
@@ -44,18 +44,18 @@ public class ImageResourceLoader {
     }
 
     public ImageResourceLoader(int cacheSize) {
-        this._imageCacheCapacity = cacheSize;
-        this._useBackgroundImageLoading = Configuration.isTrue("xr.image.background.loading.enable", false);
+        this(cacheSize, Configuration.isTrue("xr.image.background.loading.enable", false) ?
+                ImageLoadQueue.getInstance() : null);
+    }
 
-        if (_useBackgroundImageLoading) {
-            this._loadQueue = new ImageLoadQueue();
-            final int workerCount = Configuration.valueAsInt("xr.image.background.workers", 5);
-            for (int i = 0; i < workerCount; i++) {
-                new ImageLoadWorker(_loadQueue).start();
-            }
-        } else {
-            this._loadQueue = null;
-        }
+    /**
+     * @param loadQueue The queue images are loaded with in the background,
+     * <code>null</code> to load them right away
+     */
+    ImageResourceLoader(int cacheSize, ImageLoadQueue loadQueue) {
+        this._imageCacheCapacity = cacheSize;
+        this._useBackgroundImageLoading = loadQueue != null;
+        this._loadQueue = loadQueue;
 
         this._repaintListener = NO_OP_REPAINT_LISTENER;
 
@@ -161,7 +161,7 @@ public class ImageResourceLoader {
                     }
 
                     _imageCache.put(key, ir);
-                } else {
+                } else if (width > -1 && height > -1) {
                     // loaded at base size, need to scale
                     XRLog.load(Level.FINE, this + ", scaling " + uri + " to " + width + ", " + height);
                     FSImage awtfsImage = ir.getImage();
@@ -180,6 +180,19 @@ public class ImageResourceLoader {
         return ! _useBackgroundImageLoading || uri.startsWith("jar:file:") || uri.startsWith("file:");
     }
 
+    /**
+     * Removes all cached versions of the image at <code>uri</code>, e.g. because the image has been evicted from
+     * memory.
+     */
+    public synchronized void evict(final String uri) {
+        for (Iterator i = _imageCache.keySet().iterator(); i.hasNext(); ) {
+            CacheKey key = (CacheKey) i.next();
+            if (key.uri.equals(uri)) {
+                i.remove();
+            }
+        }
+    }
+
     public synchronized void loaded(final ImageResource ir, final int width, final int height) {
         String imageUri = ir.getImageUri();
         if (imageUri != null) {
@@ -199,10 +212,14 @@ public class ImageResourceLoader {
         _repaintListener = repaintListener;
     }
 
+    ImageLoadQueue getLoadQueue() {
+        return _loadQueue;
+    }
+
     public void stopLoading() {
         if (_loadQueue != null) {
-            XRLog.load("By request, clearing pending items from load queue: " + _loadQueue.size());
-            _loadQueue.reset();
+            XRLog.load("By request, clearing pending items from load queue: " + _loadQueue.size(this));
+            _loadQueue.reset(this);
         }
     }
 
@@ -21,16 +21,35 @@ package org.xhtmlrenderer.swing;
 
 import java.awt.Graphics2D;
 
-import org.xhtmlrenderer.extend.FontContext;
+import org.xhtmlrenderer.extend.CopyableFontContext;
 
-public class Java2DFontContext implements FontContext {
+public class Java2DFontContext implements CopyableFontContext {
     private Graphics2D _graphics;
+    private final boolean _copy;
     
     public Java2DFontContext(Graphics2D graphics) {
+        this(graphics, false);
+    }
+    
+    private Java2DFontContext(Graphics2D graphics, boolean copy) {
         _graphics = graphics;
+        _copy = copy;
     }
     
     public Graphics2D getGraphics() {
         return _graphics;
     }
+    
+    public CopyableFontContext copy() {
+        // Text measurement changes rendering hints, so each copy needs its
+        // own graphics state
+        return new Java2DFontContext((Graphics2D)_graphics.create(), true);
+    }
+    
+    public void dispose() {
+        // The graphics of the original belong to whoever created it
+        if (_copy) {
+            _graphics.dispose();
+        }
+    }
 }
@@ -187,6 +187,10 @@ public class Java2DOutputDevice extends AbstractOutputDevice implements OutputDe
             pane.paintComponent(_graphics, component, canvas, contentBounds.x,  contentBounds.y, contentBounds.width, contentBounds.height,true);
         } else if (replaced instanceof ImageReplacedElement) {
             Image image = ((ImageReplacedElement)replaced).getImage();
+            if (image == null) {
+                // An evicted image which is being loaded again
+                return;
+            }
             
             Point location = replaced.getLocation();
             _graphics.drawImage(
@@ -272,6 +276,9 @@ public class Java2DOutputDevice extends AbstractOutputDevice implements OutputDe
     }
     
     public void drawImage(FSImage image, int x, int y) {
+        if (image instanceof MutableFSImage && ! ((MutableFSImage)image).isLoaded()) {
+            ((MutableFSImage)image).prioritizeLoad();
+        }
         _graphics.drawImage(((AWTFSImage)image).getImage(), x, y, null);
     }
     
@@ -0,0 +1,415 @@
+/*
+ * {{{ header & license
+ * Copyright (c) 2026 xhtmlrenderer.dev.java.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.swing;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xhtmlrenderer.css.style.CalculatedStyle;
+import org.xhtmlrenderer.extend.NamespaceHandler;
+import org.xhtmlrenderer.extend.UserAgentCallback;
+import org.xhtmlrenderer.extend.UserInterface;
+import org.xhtmlrenderer.layout.BoxBuilder;
+import org.xhtmlrenderer.layout.Layer;
+import org.xhtmlrenderer.layout.LayoutContext;
+import org.xhtmlrenderer.layout.SharedContext;
+import org.xhtmlrenderer.render.BlockBox;
+import org.xhtmlrenderer.render.PageBox;
+import org.xhtmlrenderer.render.RenderingContext;
+import org.xhtmlrenderer.render.ViewportBox;
+import org.xhtmlrenderer.simple.extend.XhtmlNamespaceHandler;
+import org.xhtmlrenderer.util.Configuration;
+import org.xhtmlrenderer.util.FSImageWriter;
+import org.xhtmlrenderer.util.ImageUtil;
+
+/**
+ * <p>Renders an XML document, formatted with CSS, as a sequence of page images. The document is laid out in
+ * print mode, exactly as it would be for PDF output, and each {@link PageBox} is then painted into its own
+ * BufferedImage at the requested resolution. Only one page image is held at a time, so previews of long documents
+ * can be streamed out without going through a PDF first.</p>
+ *
+ * <pre>
+ * Java2DPagedRenderer rend = new Java2DPagedRenderer(url, 150f);
+ * for (int i = 0; i &lt; rend.getPageCount(); i++) {
+ *     BufferedImage page = rend.renderPage(i);
+ *     ...
+ * }
+ * </pre>
+ *
+ * <p>Layout takes place on the first call to {@link #getPageCount()} or {@link #renderPage(int)}. The layout is
+ * always done at 96 dots per inch (one dot per CSS pixel); the requested resolution is applied as a scale when
+ * each page is painted, so the page breaks do not depend on the output resolution.</p>
+ *
+ * <p>Not thread-safe.</p>
+ *
+ * @see Java2DRenderer
+ */
+public class Java2DPagedRenderer {
+    private static final float LAYOUT_DPI = 96f;
+    private static final int DEFAULT_DOTS_PER_PIXEL = 1;
+    private static final int DEFAULT_IMAGE_TYPE = BufferedImage.TYPE_INT_RGB;
+
+    private final SharedContext sharedContext;
+    private final Graphics2D layoutGraphics;
+
+    private Document doc;
+    private String sourceDocument;
+    private String sourceDocumentBase;
+    private BlockBox root;
+    private RenderingContext layoutRenderingContext;
+
+    private final float dpi;
+    private int bufferedImageType;
+    private Map renderingHints;
+
+    /**
+     * Creates a new instance for a given URL (which is also used as the base). Does not lay out until the
+     * page count or the first page is requested.
+     *
+     * @param url The location of the document to be rendered.
+     * @param dpi Resolution of the generated page images, in dots per inch.
+     */
+    public Java2DPagedRenderer(String url, float dpi) {
+        this(url, url, dpi);
+    }
+
+    /**
+     * Creates a new instance for a given URL. Does not lay out until the page count or the first page is
+     * requested.
+     *
+     * @param url The location of the document to be rendered.
+     * @param baseUrl The base url for the document, against which relative paths are resolved.
+     * @param dpi Resolution of the generated page images, in dots per inch.
+     */
+    public Java2DPagedRenderer(String url, String baseUrl, float dpi) {
+        this(dpi);
+        this.sourceDocument = url;
+        this.sourceDocumentBase = baseUrl;
+    }
+
+    /**
+     * Creates a new instance for a given File.
+     *
+     * @param file The file to be rendered.
+     * @param dpi Resolution of the generated page images, in dots per inch.
+     */
+    public Java2DPagedRenderer(File file, float dpi) throws IOException {
+        this(file.toURI().toURL().toExternalForm(), dpi);
+    }
+
+    /**
+     * Creates a new instance pointing to the given Document.
+     *
+     * @param doc The document to be rendered.
+     * @param baseUrl The base url for the document, against which relative paths are resolved.
+     * @param dpi Resolution of the generated page images, in dots per inch.
+     */
+    public Java2DPagedRenderer(Document doc, String baseUrl, float dpi) {
+        this(dpi);
+        this.doc = doc;
+        this.sourceDocumentBase = baseUrl;
+    }
+
+    private Java2DPagedRenderer(float dpi) {
+        if (dpi <= 0) {
+            throw new IllegalArgumentException("Resolution must be positive, was " + dpi);
+        }
+        this.dpi = dpi;
+        this.bufferedImageType = DEFAULT_IMAGE_TYPE;
+        this.layoutGraphics = ImageUtil.createCompatibleBufferedImage(1, 1).createGraphics();
+
+        UserAgentCallback userAgent = new NaiveUserAgent();
+        sharedContext = new SharedContext(userAgent);
+        sharedContext.setFontResolver(new AWTFontResolver());
+        sharedContext.setReplacedElementFactory(new SwingReplacedElementFactory());
+        sharedContext.setTextRenderer(new Java2DTextRenderer());
+        sharedContext.setDPI(LAYOUT_DPI);
+        sharedContext.setDotsPerPixel(DEFAULT_DOTS_PER_PIXEL);
+        sharedContext.setPrint(true);
+        sharedContext.setInteractive(false);
+    }
+
+    /**
+     * Returns the SharedContext to be used by renderer; can be accessed before layout to tune the rendering
+     * process.
+     *
+     * @return the SharedContext instance that will be used by this renderer
+     */
+    public SharedContext getSharedContext() {
+        return sharedContext;
+    }
+
+    /**
+     * Sets the rendering hints to apply to the Graphics2D instance used for each page; see
+     * {@link Java2DRenderer#setRenderingHints(java.util.Map)}.
+     *
+     * @param hints values to override in default rendering hints for Graphics2D we are rendering to
+     */
+    public void setRenderingHints(Map hints) {
+        renderingHints = hints;
+    }
+
+    /**
+     * Sets the type for the BufferedImages created for each page; see
+     * {@link Java2DRenderer#setBufferedImageType(int)}.
+     *
+     * @param bufferedImageType the BufferedImage type used for page images
+     */
+    public void setBufferedImageType(int bufferedImageType) {
+        this.bufferedImageType = bufferedImageType;
+    }
+
+    /**
+     * @return the resolution, in dots per inch, of the generated page images
+     */
+    public float getDPI() {
+        return dpi;
+    }
+
+    /**
+     * Lays out the document if necessary and returns the number of pages.
+     *
+     * @return number of pages in the paged layout
+     */
+    public int getPageCount() {
+        return getPages().size();
+    }
+
+    /**
+     * Lays out the document if necessary and returns the size, in output pixels, of the image that
+     * {@link #renderPage(int)} will generate for the given page.
+     *
+     * @param pageNo zero-based page index
+     * @return size of the page image
+     */
+    public Dimension getPageSize(int pageNo) {
+        PageBox page = getPage(pageNo);
+        RenderingContext c = layoutRenderingContext;
+        return new Dimension(toOutput(page.getWidth(c)), toOutput(page.getHeight(c)));
+    }
+
+    /**
+     * Renders a single page into a new image. Pages may be requested in any order; each call creates and
+     * paints a fresh image, so callers streaming a long document only keep the pages they hold on to.
+     *
+     * @param pageNo zero-based page index
+     * @return the page rendered at the resolution given to the constructor
+     */
+    public BufferedImage renderPage(int pageNo) {
+        PageBox page = getPage(pageNo);
+
+        Dimension size = getPageSize(pageNo);
+        BufferedImage image = createBufferedImage(size.width, size.height);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+            if (renderingHints != null) {
+                g.addRenderingHints(renderingHints);
+            }
+            double scale = dpi / LAYOUT_DPI;
+            g.scale(scale, scale);
+
+            paintPage(g, pageNo, page);
+        } finally {
+            g.dispose();
+        }
+
+        return image;
+    }
+
+    /**
+     * Renders every page and writes each one out with the given writer, one page at a time. The path
+     * pattern is passed to {@link String#format(String, Object[])} with the one-based page number, e.g.
+     * <code>"preview-%03d.png"</code>.
+     *
+     * @param writer writer used for each page image
+     * @param pathPattern format pattern for the per-page output path
+     * @throws IOException if a page image could not be written
+     */
+    public void writePages(FSImageWriter writer, String pathPattern) throws IOException {
+        int pageCount = getPageCount();
+        for (int i = 0; i < pageCount; i++) {
+            BufferedImage image = renderPage(i);
+            OutputStream os = new BufferedOutputStream(
+                    new FileOutputStream(String.format(pathPattern, Integer.valueOf(i + 1))));
+            try {
+                writer.write(image, os);
+            } finally {
+                try {
+                    os.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a BufferedImage of the specified size for a page. By default this returns an image of the type
+     * set with {@link #setBufferedImageType(int)}, cleared to white.
+     *
+     * @param width target width
+     * @param height target height
+     * @return new BI
+     */
+    protected BufferedImage createBufferedImage(int width, int height) {
+        BufferedImage image = ImageUtil.createCompatibleBufferedImage(width, height, this.bufferedImageType);
+        ImageUtil.clearImage(image);
+        return image;
+    }
+
+    private void paintPage(Graphics2D g, int pageNo, PageBox page) {
+        RenderingContext c = newRenderingContext(g);
+        c.setPageCount(getPageCount());
+        c.setPage(pageNo, page);
+
+        page.paintBackground(c, 0, Layer.PAGED_MODE_PRINT);
+        page.paintMarginAreas(c, 0, Layer.PAGED_MODE_PRINT);
+        page.paintBorder(c, 0, Layer.PAGED_MODE_PRINT);
+
+        Shape working = g.getClip();
+
+        Rectangle content = page.getPrintClippingBounds(c);
+        g.clip(content);
+
+        int top = -page.getPaintingTop() + page.getMarginBorderPadding(c, CalculatedStyle.TOP);
+        int left = page.getMarginBorderPadding(c, CalculatedStyle.LEFT);
+
+        g.translate(left, top);
+        root.getLayer().paint(c);
+        g.translate(-left, -top);
+
+        g.setClip(working);
+    }
+
+    private int toOutput(int dots) {
+        return (int) Math.ceil(dots * dpi / LAYOUT_DPI);
+    }
+
+    private PageBox getPage(int pageNo) {
+        List pages = getPages();
+        if (pageNo < 0 || pageNo >= pages.size()) {
+            throw new IllegalArgumentException("Page " + pageNo + " is not between 0 " +
+                    "and " + pages.size());
+        }
+        return (PageBox) pages.get(pageNo);
+    }
+
+    private List getPages() {
+        if (root == null) {
+            setDocument((doc == null ? loadDocument(sourceDocument) : doc), sourceDocumentBase,
+                    new XhtmlNamespaceHandler());
+            layout();
+        }
+        return root.getLayer().getPages();
+    }
+
+    private void setDocument(Document doc, String url, NamespaceHandler nsh) {
+        this.doc = doc;
+
+        sharedContext.reset();
+        if (Configuration.isTrue("xr.cache.stylesheets", true)) {
+            sharedContext.getCss().flushStyleSheets();
+        } else {
+            sharedContext.getCss().flushAllStyleSheets();
+        }
+        sharedContext.setBaseURL(url);
+        sharedContext.setNamespaceHandler(nsh);
+        sharedContext.getCss().setDocumentContext(
+                sharedContext,
+                sharedContext.getNamespaceHandler(),
+                doc,
+                new NullUserInterface()
+        );
+    }
+
+    private void layout() {
+        LayoutContext c = newLayoutContext();
+        BlockBox root = BoxBuilder.createRootBox(c, doc);
+        PageBox first = Layer.createPageBox(c, "first");
+        root.setContainingBlock(new ViewportBox(
+                new Rectangle(0, 0, first.getContentWidth(c), first.getContentHeight(c))));
+        root.layout(c);
+        Dimension dim = root.getLayer().getPaintingDimension(c);
+        root.getLayer().trimEmptyPages(c, dim.height);
+        root.getLayer().layoutPages(c);
+        this.root = root;
+
+        layoutRenderingContext = newRenderingContext(layoutGraphics);
+        root.getLayer().assignPagePaintingPositions(layoutRenderingContext, Layer.PAGED_MODE_PRINT);
+    }
+
+    private Document loadDocument(final String uri) {
+        return sharedContext.getUac().getXMLResource(uri).getDocument();
+    }
+
+    private LayoutContext newLayoutContext() {
+        LayoutContext result = sharedContext.newLayoutContextInstance();
+        result.setFontContext(new Java2DFontContext(layoutGraphics));
+
+        sharedContext.getTextRenderer().setup(result.getFontContext());
+
+        return result;
+    }
+
+    private RenderingContext newRenderingContext(Graphics2D g) {
+        RenderingContext result = sharedContext.newRenderingContextInstance();
+        result.setFontContext(new Java2DFontContext(g));
+        result.setOutputDevice(new Java2DOutputDevice(g));
+
+        sharedContext.getTextRenderer().setup(result.getFontContext());
+
+        if (root != null) {
+            result.setRootLayer(root.getLayer());
+        }
+
+        return result;
+    }
+
+    private static final class NullUserInterface implements UserInterface {
+
+        public boolean isHover(Element e) {
+            return false;
+        }
+
+        public boolean isActive(Element e) {
+            return false;
+        }
+
+        public boolean isFocus(Element e) {
+            return false;
+        }
+    }
+}
@@ -31,12 +31,16 @@ import java.util.logging.Level;
  * An FSImage containing a java.awt.Image which can be replaced at runtime by calling setImage(). When setImage() is
  * called, the RepaintListener passed to this class in its constructor will have repaintRequested() invoked on the
  * Swing event dispatch thread. The method isLoaded() will return true once the image load has completed. Before the
- * image has loaded, a 1x1 transparent pixel will be returned from getImage().
+ * image has loaded, a 1x1 transparent pixel will be returned from getImage(). A loaded image can be dropped again
+ * with evict(); it is then loaded again the next time its distance from the visible area is set.
  */
 public class MutableFSImage extends AWTFSImage {
     private volatile BufferedImage img;
     private final RepaintListener repaintListener;
     private volatile boolean loaded;
+    private volatile ImageLoadWorker pendingLoad;
+    private ImageLoadItem loadItem;
+    private boolean evicted;
 
     public MutableFSImage(RepaintListener repaintListener) {
         this.repaintListener = repaintListener;
@@ -62,13 +66,74 @@ public class MutableFSImage extends AWTFSImage {
     public synchronized void setImage(String uri, BufferedImage newImg, final boolean wasScaled) {
         assert EventQueue.isDispatchThread() : "setImage() must be called on EDT";
         
+        boolean reloaded = evicted;
         img = newImg;
         loaded = true;
+        evicted = false;
         XRLog.general(Level.FINE, "Mutable image " + uri + " loaded, repaint requested");
-        repaintListener.repaintRequested(wasScaled);
+        // A reloaded image has the same size as before
+        repaintListener.repaintRequested(wasScaled && ! reloaded);
     }
 
     public boolean isLoaded() {
         return loaded;
     }
+
+    /**
+     * Called when the placeholder of this image is painted, see {@link #setLoadDistance(int)}.
+     */
+    public void prioritizeLoad() {
+        setLoadDistance(0);
+    }
+
+    /**
+     * Sets the distance of this image from the visible area of the panel showing it. If the image is still waiting
+     * to be loaded, closer images are loaded first. An evicted image is queued to be loaded again.
+     */
+    public synchronized void setLoadDistance(int distance) {
+        ImageLoadWorker task = pendingLoad;
+        if (task != null) {
+            task.getItem()._imageResourceLoader.getLoadQueue().setDistance(task, distance);
+        } else if (evicted && ! loaded && loadItem != null) {
+            XRLog.general(Level.FINE, "Reloading evicted image " + loadItem._uri);
+            loadItem._imageResourceLoader.getLoadQueue().addToQueue(loadItem, distance);
+        }
+    }
+
+    /**
+     * Drops the loaded image to free its memory, e.g. because it is far outside of the visible area. Only images
+     * loaded in the background can be evicted since only those can be loaded again.
+     *
+     * @return <code>true</code> if the image was evicted
+     */
+    public synchronized boolean evict() {
+        if (! loaded || loadItem == null) {
+            return false;
+        }
+        XRLog.general(Level.FINE, "Evicting image " + loadItem._uri);
+        loadItem._imageResourceLoader.evict(loadItem._uri);
+        img = ImageUtil.createTransparentImage(10, 10);
+        loaded = false;
+        evicted = true;
+        return true;
+    }
+
+    public synchronized boolean isEvicted() {
+        return evicted;
+    }
+
+    /**
+     * Returns the approximate number of bytes used by the loaded image (assuming 4 bytes per pixel), 0 if it has
+     * not been loaded.
+     */
+    public synchronized long getLoadedSize() {
+        return loaded ? 4L * img.getWidth() * img.getHeight() : 0;
+    }
+
+    synchronized void setPendingLoad(ImageLoadWorker pendingLoad) {
+        this.pendingLoad = pendingLoad;
+        if (pendingLoad != null) {
+            this.loadItem = pendingLoad.getItem();
+        }
+    }
 }
@@ -20,6 +20,7 @@
 package org.xhtmlrenderer.swing;
 
 import java.awt.Color;
+import java.awt.Component;
 import java.awt.Container;
 import java.awt.Dimension;
 import java.awt.EventQueue;
@@ -27,9 +28,14 @@ import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Insets;
 import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 
@@ -39,6 +45,7 @@ import javax.swing.JScrollPane;
 import javax.swing.JViewport;
 import javax.swing.Scrollable;
 import javax.swing.SwingConstants;
+import javax.swing.Timer;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -54,9 +61,13 @@ import org.xhtmlrenderer.css.style.derived.StringValue;
 import org.xhtmlrenderer.event.DocumentListener;
 import org.xhtmlrenderer.extend.FSCanvas;
 import org.xhtmlrenderer.extend.NamespaceHandler;
+import org.xhtmlrenderer.extend.ReplacedElement;
+import org.xhtmlrenderer.extend.ReplacedElementFactory;
+import org.xhtmlrenderer.extend.UserAgentCallback;
 import org.xhtmlrenderer.extend.UserInterface;
 import org.xhtmlrenderer.layout.BoxBuilder;
 import org.xhtmlrenderer.layout.Layer;
+import org.xhtmlrenderer.layout.LayoutCancellationToken;
 import org.xhtmlrenderer.layout.LayoutContext;
 import org.xhtmlrenderer.layout.SharedContext;
 import org.xhtmlrenderer.render.BlockBox;
@@ -64,8 +75,10 @@ import org.xhtmlrenderer.render.Box;
 import org.xhtmlrenderer.render.PageBox;
 import org.xhtmlrenderer.render.RenderingContext;
 import org.xhtmlrenderer.render.ViewportBox;
+import org.xhtmlrenderer.simple.extend.FormSubmissionListener;
 import org.xhtmlrenderer.util.Configuration;
 import org.xhtmlrenderer.util.XRLog;
+import org.xhtmlrenderer.util.XRRuntimeException;
 
 
 public class RootPanel extends JPanel implements Scrollable, UserInterface, FSCanvas, RepaintListener {
@@ -78,6 +91,12 @@ public class RootPanel extends JPanel implements Scrollable, UserInterface, FSCa
 
     private boolean defaultFontFromComponent;
 
+    private boolean asyncLayout = Configuration.isTrue("xr.layout.async", false);
+    private boolean incrementalLayout = Configuration.isTrue("xr.layout.incremental", false);
+    private boolean needFullRelayout = false;
+    private volatile LayoutThread layoutThread;
+    private LayoutThread collectingLayoutThread;
+
     public RootPanel() {
     }
 
@@ -94,6 +113,7 @@ public class RootPanel extends JPanel implements Scrollable, UserInterface, FSCa
     private volatile LayoutContext layoutContext;
 
     public void setDocument(Document doc, String url, NamespaceHandler nsh) {
+		cancelAsyncLayout();
 		fireDocumentStarted();
 		resetScrollPosition();
         setRootBox(null);
@@ -237,19 +257,23 @@ public class RootPanel extends JPanel implements Scrollable, UserInterface, FSCa
     }
 
     protected LayoutContext newLayoutContext(Graphics2D g) {
+        return newLayoutContext(getSharedContext(), g);
+    }
+
+    private LayoutContext newLayoutContext(SharedContext sharedContext, Graphics2D g) {
         XRLog.layout(Level.FINEST, "new context begin");
 
-        getSharedContext().setCanvas(this);
+        sharedContext.setCanvas(this);
 
         XRLog.layout(Level.FINEST, "new context end");
 
-        LayoutContext result = getSharedContext().newLayoutContextInstance();
+        LayoutContext result = sharedContext.newLayoutContextInstance();
 
         Graphics2D layoutGraphics =
             g.getDeviceConfiguration().createCompatibleImage(1, 1).createGraphics();
         result.setFontContext(new Java2DFontContext(layoutGraphics));
 
-        getSharedContext().getTextRenderer().setup(result.getFontContext());
+        sharedContext.getTextRenderer().setup(result.getFontContext());
 
         return result;
     }
@@ -286,9 +310,30 @@ public class RootPanel extends JPanel implements Scrollable, UserInterface, FSCa
         return extents;
     }
 
+    /**
+     * Lays out the document before it is painted.  With background layout
+     * (see {@link #isAsyncLayout()}) the layout is only started here and the
+     * previous layout, if any, is painted until the new one is complete.
+     */
+    protected void doPaintLayout(Graphics g) {
+        if (isAsyncLayout() && EventQueue.isDispatchThread()) {
+            startAsyncLayout(g);
+        } else {
+            doDocumentLayout(g);
+        }
+    }
+
     public void doDocumentLayout(Graphics g) {
+        cancelAsyncLayout();
         try {
-            this.removeAll();
+            boolean incremental = isIncrementalLayout() && ! getSharedContext().isPrint();
+            BlockBox root = (BlockBox)getRootBox();
+            boolean incrementalRelayout = incremental && root != null && isNeedRelayout() && ! isNeedFullRelayout();
+            setNeedFullRelayout(false);
+
+            if (! incrementalRelayout) {
+                this.removeAll();
+            }
             if (g == null) {
                 return;
             }
@@ -297,14 +342,18 @@ public class RootPanel extends JPanel implements Scrollable, UserInterface, FSCa
             }
 
             LayoutContext c = newLayoutContext((Graphics2D) g);
+            c.setIncrementalLayout(incremental);
             synchronized (this) {
                 this.layoutContext = c;
             }
 
             long start = System.currentTimeMillis();
 
-            BlockBox root = (BlockBox)getRootBox();
-            if (root != null && isNeedRelayout()) {
+            if (incrementalRelayout) {
+                root.getLayer().invalidateResizedReplacedBoxes();
+                root.invalidateLayout();
+                root.resetInvalidLayout(c);
+            } else if (root != null && isNeedRelayout()) {
                 root.reset(c);
             } else {
                 root = BoxBuilder.createRootBox(c, doc);
@@ -326,15 +375,6 @@ public class RootPanel extends JPanel implements Scrollable, UserInterface, FSCa
             System.out.println(root.dump(c, "", BlockBox.DUMP_LAYOUT));
             */
 
-    // if there is a fixed child then we need to set opaque to false
-    // so that the entire viewport will be repainted. this is slower
-    // but that's the hit you get from using fixed layout
-            if (root.getLayer().containsFixedContent()) {
-                super.setOpaque(false);
-            } else {
-                super.setOpaque(true);
-            }
-
             XRLog.layout(Level.FINEST, "after layout: " + root);
 
             Dimension intrinsic_size = root.getLayer().getPaintingDimension(c);
@@ -344,54 +384,172 @@ public class RootPanel extends JPanel implements Scrollable, UserInterface, FSCa
                 root.getLayer().layoutPages(c);
             }
 
-            // If the initial size we fed into the layout matches the width
-            // of the layout generated then we can set the scrollable property
-            // that matches width of the view pane to the width of this panel.
-            // Otherwise, if the intrinsic width is different then we can't
-            // couple the width of the view pane to the width of this panel
-            // (we hit the minimum size threshold).
-            viewportMatchWidth = (initialExtents.width == intrinsic_size.width);
-
-            setPreferredSize(intrinsic_size);
-            revalidate();
-
-            if (enclosingScrollPane != null) {
-                // turn on simple scrolling mode if there's any fixed elements
-                if (root.getLayer().containsFixedContent()) {
-                    // Uu.p("is fixed");
-                    enclosingScrollPane.getViewport().setScrollMode(JViewport.SIMPLE_SCROLL_MODE);
-                } else {
-                    // Uu.p("is not fixed");
-                    enclosingScrollPane.getViewport().setScrollMode(default_scroll_mode);
-                }
-            }
-
-            this.fireDocumentLoaded();
-            /* FIXME
-            if (Configuration.isTrue("xr.image.background.greedy", false)) {
-                EventQueue.invokeLater(new Runnable() {
-                    public void run() {
-                        XRLog.load("loading images in document and css greedily");
-                        requestBGImages(getRootBox());
-                    }
-                });
-            }*/
+            documentLayoutCompleted(root, initialExtents, intrinsic_size);
         } catch (ThreadDeath t) {
             throw t;
         } catch (Throwable t) {
-            if (documentListeners.size() > 0) {
-                fireOnLayoutException(t);
+            handleLayoutException(t);
+        }
+    }
+
+    private void documentLayoutCompleted(BlockBox root, Rectangle initialExtents, Dimension intrinsic_size) {
+    // if there is a fixed child then we need to set opaque to false
+    // so that the entire viewport will be repainted. this is slower
+    // but that's the hit you get from using fixed layout
+        if (root.getLayer().containsFixedContent()) {
+            super.setOpaque(false);
+        } else {
+            super.setOpaque(true);
+        }
+
+        // If the initial size we fed into the layout matches the width
+        // of the layout generated then we can set the scrollable property
+        // that matches width of the view pane to the width of this panel.
+        // Otherwise, if the intrinsic width is different then we can't
+        // couple the width of the view pane to the width of this panel
+        // (we hit the minimum size threshold).
+        viewportMatchWidth = (initialExtents.width == intrinsic_size.width);
+
+        setPreferredSize(intrinsic_size);
+        revalidate();
+
+        if (enclosingScrollPane != null) {
+            // turn on simple scrolling mode if there's any fixed elements
+            if (root.getLayer().containsFixedContent()) {
+                // Uu.p("is fixed");
+                enclosingScrollPane.getViewport().setScrollMode(JViewport.SIMPLE_SCROLL_MODE);
             } else {
-                if (t instanceof Error) {
-                    throw (Error)t;
-                }
-                if (t instanceof RuntimeException) {
-                    throw (RuntimeException)t;
+                // Uu.p("is not fixed");
+                enclosingScrollPane.getViewport().setScrollMode(default_scroll_mode);
+            }
+        }
+
+        this.fireDocumentLoaded();
+        /* FIXME
+        if (Configuration.isTrue("xr.image.background.greedy", false)) {
+            EventQueue.invokeLater(new Runnable() {
+                public void run() {
+                    XRLog.load("loading images in document and css greedily");
+                    requestBGImages(getRootBox());
                 }
+            });
+        }*/
+    }
 
-                // "Shouldn't" happen
-                XRLog.exception(t.getMessage(), t);
+    private void handleLayoutException(Throwable t) {
+        if (documentListeners.size() > 0) {
+            fireOnLayoutException(t);
+        } else {
+            if (t instanceof Error) {
+                throw (Error)t;
+            }
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException)t;
             }
+
+            // "Shouldn't" happen
+            XRLog.exception(t.getMessage(), t);
+        }
+    }
+
+    /**
+     * Whether the layout needed to paint the panel is performed on a
+     * background thread. {@link #doDocumentLayout(Graphics)} always lays out
+     * the document right away. Defaults to the value of the
+     * <tt>xr.layout.async</tt> configuration property.
+     */
+    public boolean isAsyncLayout() {
+        return asyncLayout;
+    }
+
+    /**
+     * Enables or disables background layout. When enabled, a layout needed
+     * to paint the panel builds and lays out a new box tree on a worker
+     * thread. The previously laid out tree, if any, stays visible until the
+     * new one is complete and then both are swapped in one step. Setting a
+     * new document cancels a layout that is still running.
+     */
+    public void setAsyncLayout(boolean asyncLayout) {
+        this.asyncLayout = asyncLayout;
+        if (! asyncLayout) {
+            cancelAsyncLayout();
+        }
+    }
+
+    /**
+     * Whether relayouts caused by a resize or by images which have finished
+     * loading only lay out the boxes which are affected. Boxes whose
+     * layout is still valid are moved to their new position instead. An
+     * explicit {@link #relayout()} always lays out the whole document.
+     * Defaults to the value of the <tt>xr.layout.incremental</tt>
+     * configuration property.
+     */
+    public boolean isIncrementalLayout() {
+        return incrementalLayout;
+    }
+
+    public void setIncrementalLayout(boolean incrementalLayout) {
+        this.incrementalLayout = incrementalLayout;
+    }
+
+    private void startAsyncLayout(Graphics g) {
+        if (g == null || doc == null) {
+            return;
+        }
+
+        LayoutThread pending = layoutThread;
+        if (pending != null) {
+            if (pending.getDocument() == doc && ! isNeedRelayout()) {
+                // still working on it
+                return;
+            }
+            pending.cancel();
+        }
+
+        LayoutThread thread = new LayoutThread((Graphics2D) g, doc);
+        layoutThread = thread;
+        thread.start();
+    }
+
+    private void cancelAsyncLayout() {
+        LayoutThread pending = layoutThread;
+        if (pending != null) {
+            pending.cancel();
+            layoutThread = null;
+        }
+    }
+
+    private void publishAsyncLayout(LayoutThread thread, BlockBox root, Dimension intrinsic_size) {
+        if (thread.isCancelled() || layoutThread != thread) {
+            return;
+        }
+        layoutThread = null;
+
+        this.removeAll();
+        for (Iterator i = thread.getComponents().iterator(); i.hasNext(); ) {
+            add((Component) i.next());
+        }
+
+        getSharedContext().takeLayoutMaps(thread.getLayoutContext().getSharedContext());
+        synchronized (this) {
+            this.layoutContext = thread.getLayoutContext();
+        }
+        setRootBox(root);
+
+        documentLayoutCompleted(root, thread.getInitialExtents(), intrinsic_size);
+        repaint();
+    }
+
+    /**
+     * Form controls are added to the canvas as they are laid out. For a
+     * background layout they are only collected and get added when the
+     * finished layout is published.
+     */
+    protected void addImpl(Component comp, Object constraints, int index) {
+        if (collectingLayoutThread != null) {
+            collectingLayoutThread.getComponents().add(comp);
+        } else {
+            super.addImpl(comp, constraints, index);
         }
     }
 
@@ -512,6 +670,7 @@ public class RootPanel extends JPanel implements Scrollable, UserInterface, FSCa
 
     protected void relayout() {
         if (doc != null) {
+            setNeedFullRelayout(true);
             setNeedRelayout(true);
             repaint();
         }
@@ -589,49 +748,102 @@ public class RootPanel extends JPanel implements Scrollable, UserInterface, FSCa
         this.needRelayout = needRelayout;
     }
 
+    private synchronized boolean isNeedFullRelayout() {
+        return needFullRelayout;
+    }
+
+    private synchronized void setNeedFullRelayout(boolean needFullRelayout) {
+        this.needFullRelayout = needFullRelayout;
+    }
+
     // On-demand repaint requests for async image loading
-    private long lastRepaintRunAt = System.currentTimeMillis();
-    private final long maxRepaintRequestWaitMs = 50;
-    private boolean repaintRequestPending = false;
-    private long pendingRepaintCount = 0;
+    private final int maxRepaintRequestWaitMs = 50;
+    private Timer repaintTimer;
+    private boolean pendingRepaintLayout = false;
+
+    // Background image loading, see updateImageLoading()
+    private Layer imageLoadingLayer;
+    private Rectangle imageLoadingView;
+    private boolean imagesChanged = false;
 
+    /**
+     * Schedules a repaint, and a relayout if <code>doLayout</code> is true. Requests arriving within
+     * a short time of each other (e.g. as several images finish loading) are coalesced into a single
+     * repaint or relayout which is run by a single timer on the event dispatch thread.
+     */
     public void repaintRequested(final boolean doLayout) {
-        final long now = System.currentTimeMillis();
-        final long el = now - lastRepaintRunAt;
-        if (!doLayout || el > maxRepaintRequestWaitMs || pendingRepaintCount > 5) {
-            XRLog.general(Level.FINE, "*** Repainting panel, by request, el: " + el + " pending " + pendingRepaintCount);
-            if (doLayout) {
-                relayout();
-            } else {
-                repaint();
-            }
-            lastRepaintRunAt = System.currentTimeMillis();
-            repaintRequestPending = false;
-            pendingRepaintCount = 0;
+        if (! EventQueue.isDispatchThread()) {
+            EventQueue.invokeLater(new Runnable() {
+                public void run() {
+                    repaintRequested(doLayout);
+                }
+            });
+            return;
+        }
+
+        pendingRepaintLayout |= doLayout;
+        if (repaintTimer == null) {
+            repaintTimer = new Timer(maxRepaintRequestWaitMs, new ActionListener() {
+                public void actionPerformed(ActionEvent e) {
+                    runRepaintRequest();
+                }
+            });
+            repaintTimer.setRepeats(false);
+        }
+        if (! repaintTimer.isRunning()) {
+            XRLog.general(Level.FINE, "... Queueing new repaint request, layout: " + doLayout);
+            repaintTimer.start();
+        }
+    }
+
+    private void runRepaintRequest() {
+        boolean doLayout = pendingRepaintLayout;
+        pendingRepaintLayout = false;
+        imagesChanged = true;
+
+        XRLog.general(Level.FINE, "*** Repainting panel, by request, layout: " + doLayout);
+        if (doLayout) {
+            requestRelayout();
         } else {
-            if (!repaintRequestPending) {
-                XRLog.general(Level.FINE, "... Queueing new repaint request, el: " + el + " < " + maxRepaintRequestWaitMs);
-                repaintRequestPending = true;
-                new Thread(new Runnable() {
-                    public void run() {
-                        try {
-                            Thread.currentThread().sleep(Math.min(maxRepaintRequestWaitMs, Math.abs(maxRepaintRequestWaitMs - el)));
-                            EventQueue.invokeLater(new Runnable() {
-                                public void run() {
-                                    XRLog.general(Level.FINE, "--> running queued repaint request");
-                                    repaintRequested(doLayout);
-                                    repaintRequestPending = false;
-                                }
-                            });
-                        } catch (InterruptedException e) {
-                            // swallow
-                        }
-                    }
-                }).start();
-            } else {
-                pendingRepaintCount++;
-                XRLog.general("hmm... repaint request, but already have one");
-            }
+            repaint();
+        }
+    }
+
+    /**
+     * Lays out the document again before it is painted next.  With incremental
+     * layout only boxes whose layout has been invalidated (see
+     * {@link Box#invalidateLayout()}) are laid out again.
+     */
+    protected void requestRelayout() {
+        if (isIncrementalLayout()) {
+            setNeedRelayout(true);
+            repaint();
+        } else {
+            relayout();
+        }
+    }
+
+    /**
+     * Lets background image loading know which part of the document is visible after a layout or when
+     * the panel has been scrolled or images have been loaded (see {@link SwingReplacedElementFactory#updateImageLoading(Rectangle)}).
+     */
+    protected void updateImageLoading(Layer root, boolean laidOut) {
+        if (! (getSharedContext().getReplacedElementFactory() instanceof SwingReplacedElementFactory) ||
+                getSharedContext().isPaged()) {
+            return;
+        }
+
+        Rectangle view = getVisibleRect();
+        if (enclosingScrollPane == null) {
+            Insets insets = getInsets();
+            view.translate(-insets.left, -insets.top);
+        }
+
+        if (laidOut || imagesChanged || root != imageLoadingLayer || ! view.equals(imageLoadingView)) {
+            imageLoadingLayer = root;
+            imageLoadingView = view;
+            imagesChanged = false;
+            ((SwingReplacedElementFactory) getSharedContext().getReplacedElementFactory()).updateImageLoading(view);
         }
     }
 
@@ -643,6 +855,191 @@ public class RootPanel extends JPanel implements Scrollable, UserInterface, FSCa
         this.defaultFontFromComponent = defaultFontFromComponent;
     }
 
+    /**
+     * Lays out a document on a background thread.  It has its own
+     * {@link SharedContext} maps (see
+     * {@link SharedContext#newBackgroundLayoutContext(ReplacedElementFactory)})
+     * and creates replaced elements on the event dispatch thread, where the
+     * replaced element factory and the Swing components of form controls
+     * are used otherwise.
+     */
+    private final class LayoutThread extends Thread {
+        private final LayoutContext _layoutContext;
+        private final Document _document;
+        private final Rectangle _initialExtents;
+        private final List _components = new ArrayList();
+        private final LayoutCancellationToken _cancellationToken = new LayoutCancellationToken();
+
+        public LayoutThread(Graphics2D g, Document document) {
+            super("FS layout");
+            setDaemon(true);
+            SharedContext sharedContext = getSharedContext().newBackgroundLayoutContext(
+                    new EventQueueReplacedElementFactory(this, getSharedContext().getReplacedElementFactory()));
+            _layoutContext = newLayoutContext(sharedContext, g);
+            _layoutContext.setCancellationToken(_cancellationToken);
+            _document = document;
+            _initialExtents = RootPanel.this.getInitialExtents(_layoutContext);
+        }
+
+        public void run() {
+            try {
+                LayoutContext c = _layoutContext;
+
+                long start = System.currentTimeMillis();
+
+                final BlockBox root = BoxBuilder.createRootBox(c, _document);
+                if (isCancelled()) {
+                    return;
+                }
+
+                initFontFromComponent(root);
+                root.setContainingBlock(new ViewportBox(_initialExtents));
+
+                root.layout(c);
+                if (isCancelled()) {
+                    return;
+                }
+
+                final Dimension intrinsic_size = root.getLayer().getPaintingDimension(c);
+
+                if (c.isPrint()) {
+                    root.getLayer().trimEmptyPages(c, intrinsic_size.height);
+                    root.getLayer().layoutPages(c);
+                }
+
+                long end = System.currentTimeMillis();
+
+                XRLog.layout(Level.INFO, "Background layout took " + (end - start) + "ms");
+
+                EventQueue.invokeLater(new Runnable() {
+                    public void run() {
+                        publishAsyncLayout(LayoutThread.this, root, intrinsic_size);
+                    }
+                });
+            } catch (ThreadDeath t) {
+                throw t;
+            } catch (final Throwable t) {
+                if (! isCancelled()) {
+                    EventQueue.invokeLater(new Runnable() {
+                        public void run() {
+                            if (layoutThread == LayoutThread.this) {
+                                layoutThread = null;
+                                handleLayoutException(t);
+                            }
+                        }
+                    });
+                }
+            }
+        }
+
+        public void cancel() {
+            _cancellationToken.cancel();
+        }
+
+        public boolean isCancelled() {
+            return _cancellationToken.isCancelled();
+        }
+
+        public LayoutContext getLayoutContext() {
+            return _layoutContext;
+        }
+
+        public Document getDocument() {
+            return _document;
+        }
+
+        public Rectangle getInitialExtents() {
+            return _initialExtents;
+        }
+
+        public List getComponents() {
+            return _components;
+        }
+    }
+
+    /**
+     * Creates replaced elements with the panel's factory on the event
+     * dispatch thread.  Form controls added to the panel meanwhile are
+     * collected by the layout thread.
+     */
+    private final class EventQueueReplacedElementFactory implements ReplacedElementFactory {
+        private final LayoutThread _layoutThread;
+        private final ReplacedElementFactory _factory;
+
+        public EventQueueReplacedElementFactory(LayoutThread layoutThread, ReplacedElementFactory factory) {
+            _layoutThread = layoutThread;
+            _factory = factory;
+        }
+
+        public ReplacedElement createReplacedElement(
+                final LayoutContext c, final BlockBox box,
+                final UserAgentCallback uac, final int cssWidth, final int cssHeight) {
+            final ReplacedElement[] result = new ReplacedElement[1];
+            invokeAndWait(new Runnable() {
+                public void run() {
+                    // The factory may have been reset for another document
+                    if (_layoutThread.isCancelled()) {
+                        return;
+                    }
+                    collectingLayoutThread = _layoutThread;
+                    try {
+                        result[0] = _factory.createReplacedElement(c, box, uac, cssWidth, cssHeight);
+                    } finally {
+                        collectingLayoutThread = null;
+                    }
+                }
+            });
+            return result[0];
+        }
+
+        public void reset() {
+            invokeAndWait(new Runnable() {
+                public void run() {
+                    _factory.reset();
+                }
+            });
+        }
+
+        public void remove(final Element e) {
+            invokeAndWait(new Runnable() {
+                public void run() {
+                    _factory.remove(e);
+                }
+            });
+        }
+
+        public void setFormSubmissionListener(final FormSubmissionListener listener) {
+            invokeAndWait(new Runnable() {
+                public void run() {
+                    _factory.setFormSubmissionListener(listener);
+                }
+            });
+        }
+
+        private void invokeAndWait(Runnable runnable) {
+            if (EventQueue.isDispatchThread()) {
+                runnable.run();
+                return;
+            }
+
+            try {
+                EventQueue.invokeAndWait(runnable);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new XRRuntimeException("Interrupted while creating a replaced element", e);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else {
+                    throw new XRRuntimeException(cause.getMessage(), cause);
+                }
+            }
+        }
+    }
+
     // ----- Scrollable interface -----
 
     public Dimension getPreferredScrollableViewportSize() {
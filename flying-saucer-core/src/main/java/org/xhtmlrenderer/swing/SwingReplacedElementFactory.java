@@ -30,6 +30,7 @@ import org.xhtmlrenderer.simple.extend.DefaultFormSubmissionListener;
 import org.xhtmlrenderer.simple.extend.FormSubmissionListener;
 import org.xhtmlrenderer.simple.extend.XhtmlForm;
 import org.xhtmlrenderer.simple.extend.form.FormField;
+import org.xhtmlrenderer.util.Configuration;
 import org.xhtmlrenderer.util.ImageUtil;
 import org.xhtmlrenderer.util.XRLog;
 import org.xhtmlrenderer.resource.ImageResource;
@@ -37,8 +38,13 @@ import org.xhtmlrenderer.resource.ImageResource;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 
@@ -61,6 +67,9 @@ public class SwingReplacedElementFactory implements ReplacedElementFactory {
 
     private ImageResourceLoader imageResourceLoader;
 
+    private final long imageMemoryLimit =
+            Configuration.valueAsInt("xr.image.background.memory-limit", 64) * 1024L * 1024L;
+
 
     public SwingReplacedElementFactory() {
         this(ImageResourceLoader.NO_OP_REPAINT_LISTENER);
@@ -286,6 +295,96 @@ public class SwingReplacedElementFactory implements ReplacedElementFactory {
         //imageComponents = null;
     }
 
+    /**
+     * Orders the pending background loads of images by their distance from <code>viewRect</code> (the visible
+     * area of the panel in document coordinates) so that visible images are loaded first. If the loaded images
+     * take up more than <code>xr.image.background.memory-limit</code> megabytes, images which are more than
+     * a screen away from <code>viewRect</code> are evicted, starting with the most distant ones. Evicted images
+     * are loaded again once they come within a screen of the visible area.
+     *
+     * @param viewRect the visible area of the panel
+     */
+    public void updateImageLoading(Rectangle viewRect) {
+        if (imageComponents == null) {
+            return;
+        }
+
+        // An image may be shown by several elements
+        Map distances = new HashMap();
+        Map elements = new HashMap();
+        for (Iterator i = imageComponents.values().iterator(); i.hasNext(); ) {
+            Object re = i.next();
+            if (! (re instanceof DeferredImageReplacedElement)) {
+                continue;
+            }
+            DeferredImageReplacedElement dre = (DeferredImageReplacedElement) re;
+            MutableFSImage image = dre.getMutableImage();
+            if (image == null) {
+                continue;
+            }
+
+            int distance = dre.getDistance(viewRect);
+            Integer current = (Integer) distances.get(image);
+            if (current == null || distance < current.intValue()) {
+                distances.put(image, Integer.valueOf(distance));
+            }
+
+            List l = (List) elements.get(image);
+            if (l == null) {
+                l = new ArrayList();
+                elements.put(image, l);
+            }
+            l.add(dre);
+        }
+
+        int farDistance = Math.max(viewRect.width, viewRect.height);
+        long used = 0;
+        List loaded = new ArrayList();
+        for (Iterator i = distances.entrySet().iterator(); i.hasNext(); ) {
+            Map.Entry entry = (Map.Entry) i.next();
+            MutableFSImage image = (MutableFSImage) entry.getKey();
+            int distance = ((Integer) entry.getValue()).intValue();
+            if (image.isLoaded()) {
+                used += image.getLoadedSize();
+                for (Iterator j = ((List) elements.get(image)).iterator(); j.hasNext(); ) {
+                    used += ((DeferredImageReplacedElement) j.next()).getLoadedSize();
+                }
+                if (distance > farDistance) {
+                    loaded.add(entry);
+                }
+            } else if (distance <= farDistance || ! image.isEvicted()) {
+                // Evicted images are only loaded again once they come close
+                image.setLoadDistance(distance);
+            }
+        }
+
+        if (imageMemoryLimit <= 0 || used <= imageMemoryLimit) {
+            return;
+        }
+
+        Collections.sort(loaded, new Comparator() {
+            public int compare(Object o1, Object o2) {
+                int d1 = ((Integer) ((Map.Entry) o1).getValue()).intValue();
+                int d2 = ((Integer) ((Map.Entry) o2).getValue()).intValue();
+                return d1 > d2 ? -1 : (d1 == d2 ? 0 : 1);
+            }
+        });
+
+        for (Iterator i = loaded.iterator(); i.hasNext() && used > imageMemoryLimit; ) {
+            Map.Entry entry = (Map.Entry) i.next();
+            MutableFSImage image = (MutableFSImage) entry.getKey();
+            long size = image.getLoadedSize();
+            if (image.evict()) {
+                used -= size;
+                for (Iterator j = ((List) elements.get(image)).iterator(); j.hasNext(); ) {
+                    DeferredImageReplacedElement dre = (DeferredImageReplacedElement) j.next();
+                    used -= dre.getLoadedSize();
+                    dre.evict();
+                }
+            }
+        }
+    }
+
     public void remove(Element e) {
         if (forms != null) {
             forms.remove(e);
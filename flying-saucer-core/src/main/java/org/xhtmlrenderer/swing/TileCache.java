@@ -0,0 +1,124 @@
+/*
+ * {{{ header & license
+ * Copyright (c) 2026 xhtmlrenderer.dev.java.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.swing;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps rendered parts of a document in memory.  The document is split into
+ * square tiles (in document coordinates) which are rendered when they first
+ * need to be painted and are drawn from memory afterwards, until the area
+ * they cover is invalidated.  The least recently painted tiles are dropped
+ * once the memory limit is reached.
+ * <p/>
+ * Tiles are requested and stored on the event dispatch thread, but may be
+ * invalidated from any thread which calls <code>repaint()</code>.
+ */
+class TileCache {
+    public static final int TILE_SIZE = 256;
+
+    private static final int BYTES_PER_TILE = TILE_SIZE * TILE_SIZE * 4;
+
+    private final LinkedHashMap _tiles = new LinkedHashMap(16, 0.75f, true);
+    private final int _maxTiles;
+
+    private Object _owner;
+
+    public TileCache(long memoryLimit) {
+        _maxTiles = (int)Math.min(Integer.MAX_VALUE, Math.max(1, memoryLimit / BYTES_PER_TILE));
+    }
+
+    /**
+     * Drops all tiles if they were rendered from a different root layer (or
+     * other object identifying the current layout) than <code>owner</code>.
+     */
+    public synchronized void setOwner(Object owner) {
+        if (owner != _owner) {
+            _tiles.clear();
+            _owner = owner;
+        }
+    }
+
+    public synchronized BufferedImage get(int col, int row) {
+        return (BufferedImage)_tiles.get(key(col, row));
+    }
+
+    public synchronized void put(int col, int row, BufferedImage tile) {
+        _tiles.put(key(col, row), tile);
+        if (_tiles.size() > _maxTiles) {
+            Iterator i = _tiles.entrySet().iterator();
+            i.next();
+            i.remove();
+        }
+    }
+
+    /**
+     * Drops the tiles which intersect <code>area</code> (in document
+     * coordinates).
+     */
+    public synchronized void invalidate(Rectangle area) {
+        if (_tiles.isEmpty() || area.width <= 0 || area.height <= 0) {
+            return;
+        }
+
+        int firstCol = toTile(area.x);
+        int lastCol = toTile(area.x + area.width - 1);
+        int firstRow = toTile(area.y);
+        int lastRow = toTile(area.y + area.height - 1);
+
+        if ((long)(lastCol - firstCol + 1) * (lastRow - firstRow + 1) > _tiles.size()) {
+            for (Iterator i = _tiles.entrySet().iterator(); i.hasNext(); ) {
+                Map.Entry entry = (Map.Entry)i.next();
+                long key = ((Long)entry.getKey()).longValue();
+                int col = (int)(key >> 32);
+                int row = (int)key;
+                if (col >= firstCol && col <= lastCol && row >= firstRow && row <= lastRow) {
+                    i.remove();
+                }
+            }
+        } else {
+            for (int col = firstCol; col <= lastCol; col++) {
+                for (int row = firstRow; row <= lastRow; row++) {
+                    _tiles.remove(key(col, row));
+                }
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        _tiles.clear();
+    }
+
+    /**
+     * Returns the column or row of the tile containing the document
+     * coordinate <code>pos</code>.
+     */
+    public static int toTile(int pos) {
+        return (int)Math.floor((double)pos / TILE_SIZE);
+    }
+
+    private static Long key(int col, int row) {
+        return Long.valueOf(((long)col << 32) | (row & 0xffffffffL));
+    }
+}
@@ -0,0 +1,84 @@
+package org.xhtmlrenderer.test;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xhtmlrenderer.render.BlockBox;
+import org.xhtmlrenderer.render.Box;
+import org.xhtmlrenderer.render.InlineLayoutBox;
+import org.xhtmlrenderer.simple.Graphics2DRenderer;
+
+/**
+ * Measures how much heap the box tree of a document takes.  The document is
+ * laid out several times and the box trees are kept, so the memory shared
+ * between layouts (style sheets, calculated styles, fonts) is only counted
+ * once.
+ */
+public class BoxMemoryTest {
+    private static final int TREES = 5;
+
+    public static void main(String[] args) throws Exception {
+        String file = args.length > 0 ? args[0] : "demos/browser/xhtml/old/hamlet.xhtml";
+
+        BufferedImage image = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        Dimension size = new Dimension(700, 700);
+
+        Graphics2DRenderer renderer = new Graphics2DRenderer();
+        renderer.setDocument(new File(file).toURL().toExternalForm());
+
+        List trees = new ArrayList();
+        renderer.layout(g, size);
+        trees.add(renderer.getPanel().getRootBox());
+        long before = usedMemory();
+
+        for (int i = 0; i < TREES; i++) {
+            renderer.layout(g, size);
+            trees.add(renderer.getPanel().getRootBox());
+        }
+        long after = usedMemory();
+
+        int[] counts = new int[2];
+        count((Box) trees.get(0), counts);
+
+        long perTree = (after - before) / TREES;
+        System.out.println("boxes: " + counts[0] + " (" + counts[1] + " block boxes)");
+        System.out.println("bytes per tree: " + perTree);
+        System.out.println("bytes per box: " + (perTree / counts[0]));
+
+        // keep the trees reachable until here
+        System.out.println("trees: " + trees.size());
+    }
+
+    private static long usedMemory() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void count(Box box, int[] counts) {
+        counts[0]++;
+        if (box instanceof BlockBox) {
+            counts[1]++;
+        }
+        for (int i = 0; i < box.getChildCount(); i++) {
+            count(box.getChild(i), counts);
+        }
+        if (box instanceof InlineLayoutBox) {
+            InlineLayoutBox iB = (InlineLayoutBox) box;
+            for (int i = 0; i < iB.getInlineChildCount(); i++) {
+                Object child = iB.getInlineChild(i);
+                if (child instanceof Box) {
+                    count((Box) child, counts);
+                }
+            }
+        }
+    }
+}
@@ -85,7 +85,7 @@ public class Configuration {
     /**
      * The Singleton instance of the class.
      */
-    private static Configuration sInstance;
+    private static volatile Configuration sInstance;
 
     /**
      * List of LogRecords for messages from Configuration startup; used to hold these
@@ -171,14 +171,16 @@ public class Configuration {
      */
     public static void setConfigLogger(Logger logger) {
         Configuration config = instance();
-        config.configLogger = logger;
-        if (config.startupLogRecords != null) {
-            Iterator iter = config.startupLogRecords.iterator();
-            while (iter.hasNext()) {
-                LogRecord lr = (LogRecord) iter.next();
-                logger.log(lr.getLevel(), lr.getMessage());
+        synchronized (config) {
+            config.configLogger = logger;
+            if (config.startupLogRecords != null) {
+                Iterator iter = config.startupLogRecords.iterator();
+                while (iter.hasNext()) {
+                    LogRecord lr = (LogRecord) iter.next();
+                    logger.log(lr.getLevel(), lr.getMessage());
+                }
+                config.startupLogRecords = null;
             }
-            config.startupLogRecords = null;
         }
     }
 
@@ -190,10 +192,12 @@ public class Configuration {
      */
     private void println(Level level, String msg) {
         if (logLevel != Level.OFF) {
-            if (configLogger == null) {
-                startupLogRecords.add(new LogRecord(level, msg));
-            } else {
-                configLogger.log(level, msg);
+            synchronized (this) {
+                if (configLogger == null) {
+                    startupLogRecords.add(new LogRecord(level, msg));
+                } else {
+                    configLogger.log(level, msg);
+                }
             }
         }
     }
@@ -762,11 +766,18 @@ public class Configuration {
     /**
      * @return The singleton instance of the class.
      */
-    private static synchronized Configuration instance() {
-        if (Configuration.sInstance == null) {
-            Configuration.sInstance = new Configuration();
+    private static Configuration instance() {
+        // Only lock while loading; values are looked up by every renderer
+        Configuration result = Configuration.sInstance;
+        if (result == null) {
+            synchronized (Configuration.class) {
+                if (Configuration.sInstance == null) {
+                    Configuration.sInstance = new Configuration();
+                }
+                result = Configuration.sInstance;
+            }
         }
-        return Configuration.sInstance;
+        return result;
     }// end main()
 
     /**
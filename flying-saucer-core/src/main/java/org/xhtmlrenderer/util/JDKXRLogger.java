@@ -40,10 +40,14 @@ import java.util.ArrayList;
  */
 public class JDKXRLogger implements XRLogger {
     private static boolean initPending = true;
+
+    // Set once init() has finished, so logging threads only take the lock
+    // until then
+    private static volatile boolean initDone = false;
     
     /** {@inheritdoc} */
     public void log(String where, Level level, String msg) {
-        if (initPending) {
+        if (! initDone) {
             init();
         }
 
@@ -52,7 +56,7 @@ public class JDKXRLogger implements XRLogger {
 
     /** {@inheritdoc} */
     public void log(String where, Level level, String msg, Throwable th) {
-        if (initPending) {
+        if (! initDone) {
             init();
         }
 
@@ -99,6 +103,8 @@ public class JDKXRLogger implements XRLogger {
                 throw new XRRuntimeException("Could not initialize logs. " + e.getLocalizedMessage(), e);
             } catch (IOException e) {
                 throw new XRRuntimeException("Could not initialize logs. " + e.getLocalizedMessage(), e);
+            } finally {
+                initDone = true;
             }
         }
     }
@@ -52,10 +52,12 @@ public class XRLog {
         return loggerName;
     }
 
-    private static boolean initPending = true;
-    private static XRLogger loggerImpl;
+    // Volatile so logging, which happens on every rendering thread, only
+    // needs the lock while initializing
+    private static volatile boolean initPending = true;
+    private static volatile XRLogger loggerImpl;
 
-    private static boolean loggingEnabled = true;
+    private static volatile boolean loggingEnabled = true;
 
     /**
      * Returns a list of all loggers that will be accessed by XRLog. Each entry is a String with a logger
@@ -198,7 +200,7 @@ public class XRLog {
         log(RENDER, level, msg, th);
     }
 
-    public static synchronized void log(String where, Level level, String msg) {
+    public static void log(String where, Level level, String msg) {
         if (initPending) {
             init();
         }
@@ -207,7 +209,7 @@ public class XRLog {
         }
     }
 
-    public static synchronized void log(String where, Level level, String msg, Throwable th) {
+    public static void log(String where, Level level, String msg, Throwable th) {
         if (initPending) {
             init();
         }
@@ -268,7 +270,7 @@ public class XRLog {
      * to configuration file property xr.util-logging.loggingEnabled, or to
      * value passed to setLoggingEnabled(bool).
      */
-    public static synchronized boolean isLoggingEnabled() {
+    public static boolean isLoggingEnabled() {
         return loggingEnabled;
     }
 
@@ -283,7 +285,7 @@ public class XRLog {
         XRLog.loggingEnabled = loggingEnabled;
     }
 
-    public static synchronized XRLogger getLoggerImpl() {
+    public static XRLogger getLoggerImpl() {
         return loggerImpl;
     }
 
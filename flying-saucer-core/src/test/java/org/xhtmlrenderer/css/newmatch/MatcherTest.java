@@ -0,0 +1,76 @@
+package org.xhtmlrenderer.css.newmatch;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.xhtmlrenderer.css.parser.CSSErrorHandler;
+import org.xhtmlrenderer.css.parser.CSSParser;
+import org.xhtmlrenderer.css.sheet.MediaRule;
+import org.xhtmlrenderer.css.sheet.PageRule;
+import org.xhtmlrenderer.css.sheet.Ruleset;
+import org.xhtmlrenderer.css.sheet.Stylesheet;
+import org.xhtmlrenderer.css.sheet.StylesheetInfo;
+
+import junit.framework.TestCase;
+
+public class MatcherTest extends TestCase {
+    private static final String CSS =
+            "p { color: red; }\n" +
+            "@media print { h1 { color: black; } div p { color: gray; } }\n" +
+            "@media screen { h1 { color: blue; } }\n" +
+            "@page { margin: 1cm; }\n" +
+            "@page :first { margin: 2cm; }\n" +
+            "div.note p em { color: green; }\n" +
+            "h2 + p { color: navy; }\n";
+
+    /**
+     * Style sheets (like the default user agent style sheet) are shared by
+     * the matchers of all documents, which may be created on different
+     * threads and for different media, so creating one mustn't change them.
+     */
+    public void testMatcherDoesNotChangeStylesheets() throws Exception {
+        Stylesheet sheet = parse(CSS);
+        List before = collectOrders(sheet);
+
+        new Matcher(null, null, null, Collections.singletonList(sheet), "print");
+        assertEquals(before, collectOrders(sheet));
+
+        new Matcher(null, null, null, Collections.singletonList(sheet), "screen");
+        assertEquals(before, collectOrders(sheet));
+    }
+
+    private static Stylesheet parse(String css) throws Exception {
+        CSSParser parser = new CSSParser(new CSSErrorHandler() {
+            public void error(String uri, String message) {
+                fail(message);
+            }
+        });
+        return parser.parseStylesheet("test.css", StylesheetInfo.AUTHOR, new StringReader(css));
+    }
+
+    private static List collectOrders(Stylesheet sheet) {
+        List result = new ArrayList();
+        for (Iterator i = sheet.getContents().iterator(); i.hasNext(); ) {
+            Object obj = i.next();
+            if (obj instanceof Ruleset) {
+                addOrders((Ruleset)obj, result);
+            } else if (obj instanceof MediaRule) {
+                for (Iterator j = ((MediaRule)obj).getContents().iterator(); j.hasNext(); ) {
+                    addOrders((Ruleset)j.next(), result);
+                }
+            } else if (obj instanceof PageRule) {
+                result.add(Long.valueOf(((PageRule)obj).getOrder()));
+            }
+        }
+        return result;
+    }
+
+    private static void addOrders(Ruleset ruleset, List result) {
+        for (Iterator i = ruleset.getFSSelectors().iterator(); i.hasNext(); ) {
+            result.add(((Selector)i.next()).getOrder());
+        }
+    }
+}
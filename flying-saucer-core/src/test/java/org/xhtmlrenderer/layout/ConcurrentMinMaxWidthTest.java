@@ -0,0 +1,195 @@
+package org.xhtmlrenderer.layout;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.io.StringReader;
+import java.util.List;
+
+import org.w3c.dom.Element;
+import org.xhtmlrenderer.extend.CopyableFontContext;
+import org.xhtmlrenderer.extend.UserInterface;
+import org.xhtmlrenderer.render.BlockBox;
+import org.xhtmlrenderer.render.ViewportBox;
+import org.xhtmlrenderer.resource.XMLResource;
+import org.xhtmlrenderer.simple.extend.XhtmlNamespaceHandler;
+import org.xhtmlrenderer.swing.AWTFontResolver;
+import org.xhtmlrenderer.swing.Java2DFontContext;
+import org.xhtmlrenderer.swing.Java2DTextRenderer;
+import org.xhtmlrenderer.swing.NaiveUserAgent;
+import org.xhtmlrenderer.swing.SwingReplacedElementFactory;
+import org.xhtmlrenderer.util.ImageUtil;
+
+import junit.framework.TestCase;
+
+public class ConcurrentMinMaxWidthTest extends TestCase {
+    private static final int RUNS = 10;
+    private static final int PARAGRAPHS = 200;
+
+    private static final String[] WORDS = new String[] {
+        "lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipiscing",
+        "elit", "sed", "do", "eiusmod", "tempor", "incididunt", "ut", "labore",
+        "et", "dolore", "magna", "aliqua", "exercitationemullamco"
+    };
+
+    /**
+     * The boxes share a handful of styles, whose lazily resolved values
+     * (fonts, line heights, margins, ...) are first needed by the worker
+     * threads.  Every run must give the same widths as calculating them one
+     * after the other, and every copied font context must be disposed.
+     */
+    public void testSameWidthsAsSequentialCalculation() {
+        String document = createDocument();
+
+        Context sequential = new Context(document);
+        List expected = sequential.getBoxes();
+        for (int i = 0; i < expected.size(); i++) {
+            ((BlockBox)expected.get(i)).calcMinMaxWidth(sequential.layoutContext);
+        }
+
+        for (int run = 0; run < RUNS; run++) {
+            Context concurrent = new Context(document);
+            List boxes = concurrent.getBoxes();
+            ConcurrentMinMaxWidth.calcMinMaxWidthsConcurrently(concurrent.layoutContext, boxes);
+
+            assertTrue(concurrent.fontContext.getCopies() > 0);
+            assertEquals(concurrent.fontContext.getCopies(), concurrent.fontContext.getDisposed());
+
+            assertEquals(expected.size(), boxes.size());
+            for (int i = 0; i < boxes.size(); i++) {
+                BlockBox expectedBox = (BlockBox)expected.get(i);
+                BlockBox box = (BlockBox)boxes.get(i);
+                // Returns right away for the boxes calculated concurrently
+                box.calcMinMaxWidth(concurrent.layoutContext);
+                assertEquals("min width of box " + i, expectedBox.getMinWidth(), box.getMinWidth());
+                assertEquals("max width of box " + i, expectedBox.getMaxWidth(), box.getMaxWidth());
+            }
+        }
+    }
+
+    private static String createDocument() {
+        StringBuffer result = new StringBuffer();
+        result.append("<html><head><style type='text/css'>\n");
+        result.append("p { margin: 0.5em 1em; padding: 0 2%; border: 0.1em solid; text-indent: 1.5em; }\n");
+        result.append("p.a { font-size: 120%; line-height: 1.4; min-width: 5em; }\n");
+        result.append("p.b { font-weight: bold; letter-spacing: 1px; max-width: 20em; }\n");
+        result.append("p.c { font-family: monospace; white-space: pre; }\n");
+        result.append("em { font-size: larger; padding: 0 0.2em; }\n");
+        result.append("</style></head><body>\n");
+        String[] classes = new String[] { "", "a", "b", "c" };
+        for (int i = 0; i < PARAGRAPHS; i++) {
+            result.append("<p class='").append(classes[i % classes.length]).append("'>");
+            for (int j = 0; j < 5 + i % 13; j++) {
+                String word = WORDS[(i * 7 + j * 3) % WORDS.length];
+                if (j % 4 == 3) {
+                    result.append("<em>").append(word).append("</em> ");
+                } else {
+                    result.append(word).append(' ');
+                }
+            }
+            result.append("</p>\n");
+        }
+        result.append("</body></html>");
+        return result.toString();
+    }
+
+    private static class Context {
+        private final CountingFontContext fontContext;
+        private final LayoutContext layoutContext;
+        private final BlockBox root;
+
+        public Context(String document) {
+            SharedContext sharedContext = new SharedContext(new NaiveUserAgent());
+            sharedContext.setFontResolver(new AWTFontResolver());
+            sharedContext.setReplacedElementFactory(new SwingReplacedElementFactory());
+            sharedContext.setTextRenderer(new Java2DTextRenderer());
+            sharedContext.setDPI(96f);
+            sharedContext.setDotsPerPixel(1);
+            sharedContext.setPrint(false);
+            sharedContext.setInteractive(false);
+            sharedContext.setNamespaceHandler(new XhtmlNamespaceHandler());
+
+            org.w3c.dom.Document doc = XMLResource.load(new StringReader(document)).getDocument();
+            sharedContext.getCss().setDocumentContext(
+                    sharedContext, sharedContext.getNamespaceHandler(), doc, new NullUserInterface());
+
+            fontContext = new CountingFontContext(
+                    ImageUtil.createCompatibleBufferedImage(1, 1).createGraphics(), new int[2]);
+            layoutContext = sharedContext.newLayoutContextInstance();
+            layoutContext.setFontContext(fontContext);
+            sharedContext.getTextRenderer().setup(fontContext);
+
+            root = BoxBuilder.createRootBox(layoutContext, doc);
+            root.setContainingBlock(new ViewportBox(new Rectangle(0, 0, 800, 600)));
+        }
+
+        public List getBoxes() {
+            root.ensureChildren(layoutContext);
+            BlockBox body = (BlockBox)root.getChild(0);
+            body.ensureChildren(layoutContext);
+            return body.getChildren();
+        }
+    }
+
+    /**
+     * Counts the copies made for the worker threads and how many of them
+     * were disposed.
+     */
+    private static class CountingFontContext extends Java2DFontContext {
+        private final int[] _counts;
+        private final CopyableFontContext _copy;
+
+        public CountingFontContext(Graphics2D graphics, int[] counts) {
+            super(graphics);
+            _counts = counts;
+            _copy = null;
+        }
+
+        private CountingFontContext(Java2DFontContext copy, int[] counts) {
+            super(copy.getGraphics());
+            _counts = counts;
+            _copy = copy;
+        }
+
+        public CopyableFontContext copy() {
+            synchronized (_counts) {
+                _counts[0]++;
+            }
+            return new CountingFontContext((Java2DFontContext)super.copy(), _counts);
+        }
+
+        public void dispose() {
+            if (_copy != null) {
+                synchronized (_counts) {
+                    _counts[1]++;
+                }
+                _copy.dispose();
+            }
+        }
+
+        public int getCopies() {
+            synchronized (_counts) {
+                return _counts[0];
+            }
+        }
+
+        public int getDisposed() {
+            synchronized (_counts) {
+                return _counts[1];
+            }
+        }
+    }
+
+    private static class NullUserInterface implements UserInterface {
+        public boolean isHover(Element e) {
+            return false;
+        }
+
+        public boolean isActive(Element e) {
+            return false;
+        }
+
+        public boolean isFocus(Element e) {
+            return false;
+        }
+    }
+}
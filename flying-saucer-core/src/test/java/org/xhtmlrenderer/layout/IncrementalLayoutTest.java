@@ -0,0 +1,341 @@
+package org.xhtmlrenderer.layout;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xhtmlrenderer.extend.ReplacedElement;
+import org.xhtmlrenderer.extend.UserAgentCallback;
+import org.xhtmlrenderer.extend.UserInterface;
+import org.xhtmlrenderer.render.BlockBox;
+import org.xhtmlrenderer.render.Box;
+import org.xhtmlrenderer.render.InlineLayoutBox;
+import org.xhtmlrenderer.render.InlineText;
+import org.xhtmlrenderer.render.ViewportBox;
+import org.xhtmlrenderer.resource.XMLResource;
+import org.xhtmlrenderer.simple.extend.XhtmlNamespaceHandler;
+import org.xhtmlrenderer.swing.AWTFontResolver;
+import org.xhtmlrenderer.swing.Java2DFontContext;
+import org.xhtmlrenderer.swing.Java2DTextRenderer;
+import org.xhtmlrenderer.swing.NaiveUserAgent;
+import org.xhtmlrenderer.swing.SwingReplacedElementFactory;
+import org.xhtmlrenderer.util.ImageUtil;
+
+import junit.framework.TestCase;
+
+/**
+ * Lays out the regression documents again incrementally, as RootPanel does
+ * with <code>xr.layout.incremental</code>, and checks that the result is
+ * the same as laying them out from scratch.
+ */
+public class IncrementalLayoutTest extends TestCase {
+    private static final int HEIGHT = 768;
+    private static final int INVALIDATE_EVERY = 3;
+
+    public void testResize() {
+        List failed = new ArrayList();
+        File[] documents = getRegressionDocuments();
+        for (int i = 0; i < documents.length; i++) {
+            File document = documents[i];
+
+            TestLayout incremental = new TestLayout(document);
+            String fresh1024 = incremental.layout(1024);
+            incremental.relayout(700);
+            if (! new TestLayout(document).layout(700).equals(incremental.dump())) {
+                failed.add(document.getName() + " at 700px");
+            }
+
+            incremental.relayout(1024);
+            if (! fresh1024.equals(incremental.dump())) {
+                failed.add(document.getName() + " at 1024px");
+            }
+        }
+        assertEquals("Different after resize", Collections.EMPTY_LIST, failed);
+    }
+
+    /**
+     * Invalidates some of the blocks (e.g. because an image in them has
+     * been loaded) and lays out the document again at the same width.  The
+     * other blocks are kept and only moved.
+     */
+    public void testInvalidate() {
+        List failed = new ArrayList();
+        File[] documents = getRegressionDocuments();
+        for (int i = 0; i < documents.length; i++) {
+            File document = documents[i];
+
+            TestLayout incremental = new TestLayout(document);
+            String fresh = incremental.layout(1024);
+            for (int offset = 0; offset < INVALIDATE_EVERY; offset++) {
+                List blocks = incremental.getBlocks();
+                for (int j = offset; j < blocks.size(); j += INVALIDATE_EVERY) {
+                    ((BlockBox) blocks.get(j)).invalidateLayout();
+                }
+                incremental.relayout(1024);
+                if (! fresh.equals(incremental.dump())) {
+                    failed.add(document.getName() + " with every " + INVALIDATE_EVERY +
+                            ". block from " + offset + " invalid");
+                    break;
+                }
+            }
+        }
+        assertEquals("Different after invalidation", Collections.EMPTY_LIST, failed);
+    }
+
+    /**
+     * Lays out the documents with images which have not been loaded yet,
+     * then "loads" them, changing their size, and lays the documents out
+     * again.  The blocks after an image are moved.
+     */
+    public void testImagesLoaded() {
+        List failed = new ArrayList();
+        File[] documents = getRegressionDocuments();
+        for (int i = 0; i < documents.length; i++) {
+            File document = documents[i];
+
+            LateImageFactory factory = new LateImageFactory();
+            TestLayout incremental = new TestLayout(document, factory);
+            incremental.layout(1024);
+            if (! factory.hasImages()) {
+                continue;
+            }
+            factory.load();
+            incremental.relayout(1024);
+
+            LateImageFactory loaded = new LateImageFactory();
+            loaded.load();
+            if (! new TestLayout(document, loaded).layout(1024).equals(incremental.dump())) {
+                failed.add(document.getName());
+            }
+        }
+        assertEquals("Different after loading images", Collections.EMPTY_LIST, failed);
+    }
+
+    private static File[] getRegressionDocuments() {
+        File dir = new File(System.getProperty("basedir", "."), "../tests/regress/xhtml");
+        assertTrue(dir + " not found", dir.isDirectory());
+        File[] result = dir.listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(".xhtml");
+            }
+        });
+        Arrays.sort(result);
+        return result;
+    }
+
+    private static class TestLayout {
+        private final SharedContext _sharedContext;
+        private final Document _doc;
+        private BlockBox _root;
+
+        public TestLayout(File file) {
+            this(file, new SwingReplacedElementFactory());
+        }
+
+        public TestLayout(File file, SwingReplacedElementFactory replacedElementFactory) {
+            _sharedContext = new SharedContext(new NaiveUserAgent());
+            _sharedContext.setFontResolver(new AWTFontResolver());
+            _sharedContext.setReplacedElementFactory(replacedElementFactory);
+            _sharedContext.setTextRenderer(new Java2DTextRenderer());
+            _sharedContext.setDPI(96f);
+            _sharedContext.setDotsPerPixel(1);
+            _sharedContext.setPrint(false);
+            _sharedContext.setInteractive(false);
+
+            String url = file.toURI().toString();
+            _doc = XMLResource.load(new org.xml.sax.InputSource(url)).getDocument();
+            _sharedContext.setBaseURL(url);
+            _sharedContext.setNamespaceHandler(new XhtmlNamespaceHandler());
+            _sharedContext.getCss().setDocumentContext(
+                    _sharedContext, _sharedContext.getNamespaceHandler(), _doc, new NullUserInterface());
+        }
+
+        /**
+         * Lays out the document from scratch and returns the dump of the
+         * box tree.
+         */
+        public String layout(int width) {
+            LayoutContext c = newLayoutContext();
+            _root = BoxBuilder.createRootBox(c, _doc);
+            layout(c, width);
+            return dump();
+        }
+
+        /**
+         * Lays out the document again after a resize, like RootPanel does
+         * with incremental layout.
+         */
+        public void relayout(int width) {
+            LayoutContext c = newLayoutContext();
+            _root.getLayer().invalidateResizedReplacedBoxes();
+            _root.invalidateLayout();
+            _root.resetInvalidLayout(c);
+            layout(c, width);
+        }
+
+        private void layout(LayoutContext c, int width) {
+            _root.setContainingBlock(new ViewportBox(new Rectangle(0, 0, width, HEIGHT)));
+            _root.layout(c);
+        }
+
+        private LayoutContext newLayoutContext() {
+            LayoutContext result = _sharedContext.newLayoutContextInstance();
+            result.setFontContext(new Java2DFontContext(
+                    ImageUtil.createCompatibleBufferedImage(1, 1).createGraphics()));
+            _sharedContext.getTextRenderer().setup(result.getFontContext());
+            result.setIncrementalLayout(true);
+            return result;
+        }
+
+        /**
+         * Returns all block boxes laid out as children of other block
+         * boxes, in document order.
+         */
+        public List getBlocks() {
+            List result = new ArrayList();
+            collectBlocks(_root, result);
+            return result;
+        }
+
+        private static void collectBlocks(Box box, List result) {
+            for (int i = 0; i < box.getChildCount(); i++) {
+                Box child = box.getChild(i);
+                if (child instanceof BlockBox) {
+                    result.add(child);
+                }
+                collectBlocks(child, result);
+            }
+        }
+
+        public String dump() {
+            StringBuffer result = new StringBuffer();
+            dump(_root, result);
+            return result.toString();
+        }
+
+        private static void dump(Box box, StringBuffer result) {
+            result.append(box.getClass().getName()).append(' ');
+            result.append(box.getAbsX()).append(',').append(box.getAbsY()).append(' ');
+            result.append(box.getWidth()).append('x').append(box.getHeight()).append('\n');
+            for (int i = 0; i < box.getChildCount(); i++) {
+                dump(box.getChild(i), result);
+            }
+            if (box instanceof InlineLayoutBox) {
+                InlineLayoutBox inline = (InlineLayoutBox) box;
+                for (int i = 0; i < inline.getInlineChildCount(); i++) {
+                    Object child = inline.getInlineChild(i);
+                    if (child instanceof Box) {
+                        dump((Box) child, result);
+                    } else if (child instanceof InlineText) {
+                        InlineText text = (InlineText) child;
+                        result.append("text ").append(text.getX()).append(' ');
+                        result.append(text.getWidth()).append('\n');
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates images which have the size given in CSS (or 1px) until
+     * {@link #load()} is called, like images which are loaded in the
+     * background.
+     */
+    private static class LateImageFactory extends SwingReplacedElementFactory {
+        private final List _images = new ArrayList();
+        private boolean _loaded;
+
+        protected ReplacedElement replaceImage(
+                UserAgentCallback uac, LayoutContext context, Element elem, int cssWidth, int cssHeight) {
+            ReplacedElement result = super.replaceImage(uac, context, elem, cssWidth, cssHeight);
+            if (_loaded || result == null) {
+                return result;
+            }
+
+            LateImage image = new LateImage(result, cssWidth, cssHeight);
+            _images.add(image);
+            return image;
+        }
+
+        public boolean hasImages() {
+            return ! _images.isEmpty();
+        }
+
+        public void load() {
+            _loaded = true;
+            for (int i = 0; i < _images.size(); i++) {
+                ((LateImage) _images.get(i)).load();
+            }
+        }
+    }
+
+    private static class LateImage implements ReplacedElement {
+        private final ReplacedElement _image;
+        private final int _width;
+        private final int _height;
+        private boolean _loaded;
+
+        public LateImage(ReplacedElement image, int cssWidth, int cssHeight) {
+            _image = image;
+            _width = cssWidth == -1 ? 1 : cssWidth;
+            _height = cssHeight == -1 ? 1 : cssHeight;
+        }
+
+        public void load() {
+            _loaded = true;
+        }
+
+        public int getIntrinsicWidth() {
+            return _loaded ? _image.getIntrinsicWidth() : _width;
+        }
+
+        public int getIntrinsicHeight() {
+            return _loaded ? _image.getIntrinsicHeight() : _height;
+        }
+
+        public Point getLocation() {
+            return _image.getLocation();
+        }
+
+        public void setLocation(int x, int y) {
+            _image.setLocation(x, y);
+        }
+
+        public void detach(LayoutContext c) {
+            _image.detach(c);
+        }
+
+        public boolean isRequiresInteractivePaint() {
+            return _image.isRequiresInteractivePaint();
+        }
+
+        public boolean hasBaseline() {
+            return _image.hasBaseline();
+        }
+
+        public int getBaseline() {
+            return _image.getBaseline();
+        }
+    }
+
+    private static class NullUserInterface implements UserInterface {
+        public boolean isHover(Element e) {
+            return false;
+        }
+
+        public boolean isActive(Element e) {
+            return false;
+        }
+
+        public boolean isFocus(Element e) {
+            return false;
+        }
+    }
+}
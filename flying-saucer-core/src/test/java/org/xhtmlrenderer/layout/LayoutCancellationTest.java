@@ -0,0 +1,200 @@
+package org.xhtmlrenderer.layout;
+
+import java.awt.Rectangle;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xhtmlrenderer.event.LayoutProgressListener;
+import org.xhtmlrenderer.extend.UserInterface;
+import org.xhtmlrenderer.render.BlockBox;
+import org.xhtmlrenderer.render.ViewportBox;
+import org.xhtmlrenderer.resource.XMLResource;
+import org.xhtmlrenderer.simple.extend.XhtmlNamespaceHandler;
+import org.xhtmlrenderer.swing.AWTFontResolver;
+import org.xhtmlrenderer.swing.Java2DFontContext;
+import org.xhtmlrenderer.swing.Java2DPagedRenderer;
+import org.xhtmlrenderer.swing.Java2DTextRenderer;
+import org.xhtmlrenderer.swing.NaiveUserAgent;
+import org.xhtmlrenderer.swing.SwingReplacedElementFactory;
+import org.xhtmlrenderer.util.ImageUtil;
+
+import junit.framework.TestCase;
+
+public class LayoutCancellationTest extends TestCase {
+    private static final int PARAGRAPHS = 50;
+
+    private Document _doc;
+
+    protected void setUp() {
+        StringBuffer xhtml = new StringBuffer(
+                "<html xmlns='http://www.w3.org/1999/xhtml'><head><style type='text/css'>\n" +
+                "@page { size: 4in 3in; margin: 0.5in; }\n" +
+                "</style></head><body>\n");
+        for (int i = 0; i < PARAGRAPHS; i++) {
+            xhtml.append("<div><p>Paragraph ").append(i).append("</p><p>Line one<br/>Line two</p></div>\n");
+        }
+        xhtml.append("</body></html>");
+        _doc = XMLResource.load(new StringReader(xhtml.toString())).getDocument();
+    }
+
+    public void testProgress() {
+        RecordingListener listener = new RecordingListener();
+        layout(listener, null);
+
+        int count = listener.boxes.size();
+        // At least a line and a block per paragraph, and a block per div
+        assertTrue(count >= PARAGRAPHS * 5);
+        for (int i = 0; i < count; i++) {
+            assertEquals(i + 1, listener.getBoxes(i));
+            assertEquals(0, listener.getPages(i));
+        }
+    }
+
+    public void testCancel() {
+        final LayoutCancellationToken token = new LayoutCancellationToken();
+        final int cancelAt = 30;
+        RecordingListener listener = new RecordingListener() {
+            public void layoutProgress(int boxesCompleted, int pagesCompleted) {
+                super.layoutProgress(boxesCompleted, pagesCompleted);
+                if (boxesCompleted == cancelAt) {
+                    token.cancel();
+                }
+            }
+        };
+
+        try {
+            layout(listener, token);
+            fail("Layout not cancelled");
+        } catch (LayoutCancelledException e) {
+            // expected
+        }
+
+        // The layout stops at the next block or line, at most the blocks
+        // which were completed with the last box are reported after it
+        int count = listener.boxes.size();
+        assertTrue(count >= cancelAt);
+        assertTrue("Reported " + count + " boxes", count <= cancelAt + 3);
+        for (int i = 0; i < count; i++) {
+            assertEquals(i + 1, listener.getBoxes(i));
+        }
+    }
+
+    public void testCancelBeforeLayout() {
+        LayoutCancellationToken token = new LayoutCancellationToken();
+        token.cancel();
+        RecordingListener listener = new RecordingListener();
+        try {
+            layout(listener, token);
+            fail("Layout not cancelled");
+        } catch (LayoutCancelledException e) {
+            // expected
+        }
+        assertEquals(0, listener.boxes.size());
+    }
+
+    public void testCancelFromAnotherThread() throws Exception {
+        final LayoutCancellationToken token = new LayoutCancellationToken();
+        final Thread canceller = new Thread() {
+            public void run() {
+                token.cancel();
+            }
+        };
+        RecordingListener listener = new RecordingListener() {
+            public void layoutProgress(int boxesCompleted, int pagesCompleted) {
+                super.layoutProgress(boxesCompleted, pagesCompleted);
+                if (boxesCompleted == 10) {
+                    canceller.start();
+                    try {
+                        canceller.join();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        };
+
+        try {
+            layout(listener, token);
+            fail("Layout not cancelled");
+        } catch (LayoutCancelledException e) {
+            // expected
+        }
+        assertTrue(listener.boxes.size() < PARAGRAPHS);
+    }
+
+    public void testPagesReported() {
+        RecordingListener listener = new RecordingListener();
+        Java2DPagedRenderer renderer = new Java2DPagedRenderer(_doc, null, 72f);
+        renderer.getSharedContext().setLayoutProgressListener(listener);
+        int pages = renderer.getPageCount();
+        assertTrue(pages > 1);
+
+        int count = listener.boxes.size();
+        assertTrue(count > 0);
+        assertEquals(1, listener.getPages(0));
+        for (int i = 1; i < count; i++) {
+            assertTrue(listener.getPages(i) >= listener.getPages(i - 1));
+        }
+        assertEquals(pages, listener.getPages(count - 1));
+    }
+
+    private void layout(LayoutProgressListener listener, LayoutCancellationToken token) {
+        SharedContext sharedContext = new SharedContext(new NaiveUserAgent());
+        sharedContext.setFontResolver(new AWTFontResolver());
+        sharedContext.setReplacedElementFactory(new SwingReplacedElementFactory());
+        sharedContext.setTextRenderer(new Java2DTextRenderer());
+        sharedContext.setDPI(96f);
+        sharedContext.setDotsPerPixel(1);
+        sharedContext.setPrint(false);
+        sharedContext.setInteractive(false);
+        sharedContext.setLayoutProgressListener(listener);
+        sharedContext.setNamespaceHandler(new XhtmlNamespaceHandler());
+        sharedContext.getCss().setDocumentContext(
+                sharedContext, sharedContext.getNamespaceHandler(), _doc, new NullUserInterface());
+
+        LayoutContext c = sharedContext.newLayoutContextInstance();
+        c.setFontContext(new Java2DFontContext(
+                ImageUtil.createCompatibleBufferedImage(1, 1).createGraphics()));
+        sharedContext.getTextRenderer().setup(c.getFontContext());
+        c.setCancellationToken(token);
+
+        BlockBox root = BoxBuilder.createRootBox(c, _doc);
+        root.setContainingBlock(new ViewportBox(new Rectangle(0, 0, 800, 600)));
+        root.layout(c);
+    }
+
+    private static class RecordingListener implements LayoutProgressListener {
+        final List boxes = new ArrayList();
+        final List pages = new ArrayList();
+
+        public void layoutProgress(int boxesCompleted, int pagesCompleted) {
+            boxes.add(Integer.valueOf(boxesCompleted));
+            pages.add(Integer.valueOf(pagesCompleted));
+        }
+
+        int getBoxes(int i) {
+            return ((Integer)boxes.get(i)).intValue();
+        }
+
+        int getPages(int i) {
+            return ((Integer)pages.get(i)).intValue();
+        }
+    }
+
+    private static class NullUserInterface implements UserInterface {
+        public boolean isHover(Element e) {
+            return false;
+        }
+
+        public boolean isActive(Element e) {
+            return false;
+        }
+
+        public boolean isFocus(Element e) {
+            return false;
+        }
+    }
+}
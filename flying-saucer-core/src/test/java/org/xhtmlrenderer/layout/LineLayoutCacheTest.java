@@ -0,0 +1,178 @@
+package org.xhtmlrenderer.layout;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xhtmlrenderer.extend.UserInterface;
+import org.xhtmlrenderer.render.BlockBox;
+import org.xhtmlrenderer.render.Box;
+import org.xhtmlrenderer.render.InlineLayoutBox;
+import org.xhtmlrenderer.render.InlineText;
+import org.xhtmlrenderer.render.ViewportBox;
+import org.xhtmlrenderer.resource.XMLResource;
+import org.xhtmlrenderer.simple.extend.XhtmlNamespaceHandler;
+import org.xhtmlrenderer.swing.AWTFontResolver;
+import org.xhtmlrenderer.swing.Java2DFontContext;
+import org.xhtmlrenderer.swing.Java2DTextRenderer;
+import org.xhtmlrenderer.swing.NaiveUserAgent;
+import org.xhtmlrenderer.swing.SwingReplacedElementFactory;
+import org.xhtmlrenderer.util.ImageUtil;
+
+import junit.framework.TestCase;
+
+/**
+ * Lays out documents with and without a {@link LineLayoutCache} and checks
+ * that the lines copied from the cache are the ones a fresh layout creates.
+ */
+public class LineLayoutCacheTest extends TestCase {
+    private static final String TEXT =
+            "Identical paragraphs are <em>laid out</em> only once, the others get a copy of their " +
+            "lines.  This one is long enough to be broken into <b>several lines</b> at both widths.";
+
+    public void testRepeatedParagraphs() {
+        StringBuffer body = new StringBuffer();
+        for (int i = 0; i < 5; i++) {
+            body.append("<p>").append(TEXT).append("</p>\n");
+            body.append("<div style='width: 300px'><p>").append(TEXT).append("</p></div>\n");
+            body.append("<p style='text-align: justify'>").append(TEXT).append("</p>\n");
+        }
+        Document doc = load(body.toString());
+
+        String fresh = layout(doc, null);
+        CountingCache cache = new CountingCache();
+        assertEquals(fresh, layout(doc, cache));
+        // Each kind of paragraph is laid out once and copied four times
+        assertEquals(12, cache.hits);
+    }
+
+    public void testDifferentContent() {
+        Document doc = load(
+                "<p>Some text</p><p>Some <em>text</em></p><p>Some text </p>" +
+                "<p style='font-size: 20px'>Some text</p><p id='p'>Some text</p>" +
+                "<div style='float: left; width: 50px; height: 50px'></div><p>Some text</p>" +
+                "<p>Some text<span id='s'>!</span></p><p>Some text<span id='t'>!</span></p>");
+
+        CountingCache cache = new CountingCache();
+        assertEquals(layout(doc, null), layout(doc, cache));
+        // Only the paragraph with an id (of the block, not of inline content) gets the lines of the first one
+        assertEquals(1, cache.hits);
+    }
+
+    public void testRegressionDocuments() {
+        List failed = new ArrayList();
+        File[] documents = getRegressionDocuments();
+        for (int i = 0; i < documents.length; i++) {
+            Document doc = XMLResource.load(
+                    new org.xml.sax.InputSource(documents[i].toURI().toString())).getDocument();
+            if (! layout(doc, null).equals(layout(doc, new LineLayoutCache()))) {
+                failed.add(documents[i].getName());
+            }
+        }
+        assertEquals("Different with cached lines", Collections.EMPTY_LIST, failed);
+    }
+
+    private static File[] getRegressionDocuments() {
+        File dir = new File(System.getProperty("basedir", "."), "../tests/regress/xhtml");
+        assertTrue(dir + " not found", dir.isDirectory());
+        File[] result = dir.listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(".xhtml");
+            }
+        });
+        Arrays.sort(result);
+        return result;
+    }
+
+    private static Document load(String body) {
+        return XMLResource.load(new StringReader(
+                "<html xmlns='http://www.w3.org/1999/xhtml'><body>" + body + "</body></html>")).getDocument();
+    }
+
+    /**
+     * Lays out <code>doc</code> and returns a dump of the box tree.
+     */
+    private static String layout(Document doc, LineLayoutCache cache) {
+        SharedContext sharedContext = new SharedContext(new NaiveUserAgent());
+        sharedContext.setFontResolver(new AWTFontResolver());
+        sharedContext.setReplacedElementFactory(new SwingReplacedElementFactory());
+        sharedContext.setTextRenderer(new Java2DTextRenderer());
+        sharedContext.setDPI(96f);
+        sharedContext.setDotsPerPixel(1);
+        sharedContext.setPrint(false);
+        sharedContext.setInteractive(false);
+        sharedContext.setNamespaceHandler(new XhtmlNamespaceHandler());
+        sharedContext.getCss().setDocumentContext(
+                sharedContext, sharedContext.getNamespaceHandler(), doc, new NullUserInterface());
+
+        LayoutContext c = sharedContext.newLayoutContextInstance();
+        c.setFontContext(new Java2DFontContext(
+                ImageUtil.createCompatibleBufferedImage(1, 1).createGraphics()));
+        sharedContext.getTextRenderer().setup(c.getFontContext());
+        c.setLineLayoutCache(cache);
+
+        BlockBox root = BoxBuilder.createRootBox(c, doc);
+        root.setContainingBlock(new ViewportBox(new Rectangle(0, 0, 1024, 768)));
+        root.layout(c);
+
+        StringBuffer result = new StringBuffer();
+        dump(root, result);
+        return result.toString();
+    }
+
+    private static void dump(Box box, StringBuffer result) {
+        result.append(box.getClass().getName()).append(' ');
+        result.append(System.identityHashCode(box.getElement())).append(' ');
+        result.append(box.getAbsX()).append(',').append(box.getAbsY()).append(' ');
+        result.append(box.getWidth()).append('x').append(box.getHeight()).append('\n');
+        for (int i = 0; i < box.getChildCount(); i++) {
+            dump(box.getChild(i), result);
+        }
+        if (box instanceof InlineLayoutBox) {
+            InlineLayoutBox inline = (InlineLayoutBox) box;
+            for (int i = 0; i < inline.getInlineChildCount(); i++) {
+                Object child = inline.getInlineChild(i);
+                if (child instanceof Box) {
+                    dump((Box) child, result);
+                } else if (child instanceof InlineText) {
+                    InlineText text = (InlineText) child;
+                    result.append("text '").append(text.getSubstring()).append("' ");
+                    result.append(text.getX()).append(' ').append(text.getWidth()).append('\n');
+                }
+            }
+        }
+    }
+
+    private static class CountingCache extends LineLayoutCache {
+        int hits;
+
+        public boolean layoutFromCache(LayoutContext c, BlockBox block, Object key) {
+            boolean result = super.layoutFromCache(c, block, key);
+            if (result) {
+                hits++;
+            }
+            return result;
+        }
+    }
+
+    private static class NullUserInterface implements UserInterface {
+        public boolean isHover(Element e) {
+            return false;
+        }
+
+        public boolean isActive(Element e) {
+            return false;
+        }
+
+        public boolean isFocus(Element e) {
+            return false;
+        }
+    }
+}
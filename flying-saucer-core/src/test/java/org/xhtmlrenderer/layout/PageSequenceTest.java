@@ -0,0 +1,170 @@
+package org.xhtmlrenderer.layout;
+
+import java.awt.Rectangle;
+import java.io.StringReader;
+import java.util.List;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xhtmlrenderer.extend.UserInterface;
+import org.xhtmlrenderer.render.BlockBox;
+import org.xhtmlrenderer.render.PageBox;
+import org.xhtmlrenderer.render.RenderingContext;
+import org.xhtmlrenderer.render.ViewportBox;
+import org.xhtmlrenderer.resource.XMLResource;
+import org.xhtmlrenderer.simple.extend.XhtmlNamespaceHandler;
+import org.xhtmlrenderer.swing.AWTFontResolver;
+import org.xhtmlrenderer.swing.Java2DFontContext;
+import org.xhtmlrenderer.swing.Java2DTextRenderer;
+import org.xhtmlrenderer.swing.NaiveUserAgent;
+import org.xhtmlrenderer.swing.SwingReplacedElementFactory;
+import org.xhtmlrenderer.util.ImageUtil;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the page numbers and counts <code>counter(page)</code> and
+ * <code>counter(pages)</code> show in documents with page sequences.
+ */
+public class PageSequenceTest extends TestCase {
+    private static final String STYLE =
+            "@page { size: 4in 3in; margin: 0.5in; }\n" +
+            ".sequence { page-break-before: always; -fs-page-sequence: start; }\n" +
+            ".page + .page { page-break-before: always; }\n";
+
+    private SharedContext _sharedContext;
+    private Layer _layer;
+
+    public void testSequences() {
+        // A page before the first sequence, then sequences of two, three and one pages
+        layout("<p>Preamble</p>" + sequence("a", 2) + sequence("b", 3) + sequence("c", 1));
+        assertEquals(7, _layer.getPages().size());
+
+        int[] pageNos = { 1, 1, 2, 1, 2, 3, 1 };
+        int[] pageCounts = { 1, 2, 2, 3, 3, 3, 1 };
+        assertPages(pageNos, pageCounts, 0);
+
+        // Dropping the precomputed ranges falls back to computing them for each page
+        _layer.setPages(_layer.getPages());
+        assertPages(pageNos, pageCounts, 0);
+
+        assertFirstPage("a");
+        assertFirstPage("b");
+        assertFirstPage("c");
+    }
+
+    public void testFirstPageStartsSequence() {
+        // A page break before the first block would add an empty page
+        layout(sequence("a", 3).replaceFirst("class='sequence'", "class='sequence' style='page-break-before: auto'") +
+                sequence("b", 2));
+        assertEquals(5, _layer.getPages().size());
+
+        assertPages(new int[] { 1, 2, 3, 1, 2 }, new int[] { 3, 3, 3, 2, 2 }, 0);
+        // The initial page number only applies before the first sequence
+        assertPages(new int[] { 1, 2, 3, 1, 2 }, new int[] { 3, 3, 3, 2, 2 }, 10);
+    }
+
+    public void testNoSequences() {
+        layout("<div class='page'>One</div><div class='page'>Two</div><div class='page'>Three</div>");
+        assertEquals(3, _layer.getPages().size());
+
+        assertPages(new int[] { 1, 2, 3 }, new int[] { 3, 3, 3 }, 0);
+        assertPages(new int[] { 5, 6, 7 }, new int[] { 7, 7, 7 }, 5);
+    }
+
+    public void testInitialPageNoBeforeSequence() {
+        layout("<p>Preamble</p>" + sequence("a", 2));
+
+        assertPages(new int[] { 4, 1, 2 }, new int[] { 4, 2, 2 }, 4);
+    }
+
+    private static String sequence(String id, int pages) {
+        StringBuffer result = new StringBuffer();
+        result.append("<div class='sequence' id='").append(id).append("'>");
+        for (int i = 0; i < pages; i++) {
+            result.append("<div class='page'>Page ").append(i + 1).append("</div>");
+        }
+        result.append("</div>");
+        return result.toString();
+    }
+
+    /**
+     * Checks the values of <code>counter(page)</code> and
+     * <code>counter(pages)</code> on each page.
+     */
+    private void assertPages(int[] pageNos, int[] pageCounts, int initialPageNo) {
+        List pages = _layer.getPages();
+        assertEquals(pageNos.length, pages.size());
+
+        RenderingContext c = _sharedContext.newRenderingContextInstance();
+        c.setInitialPageNo(initialPageNo);
+        c.setPageCount(pages.size());
+        for (int i = 0; i < pages.size(); i++) {
+            c.setPage(i, (PageBox)pages.get(i));
+            assertEquals("page " + i, pageNos[i], _layer.getRelativePageNo(c) + 1);
+            assertEquals("pages " + i, pageCounts[i], _layer.getRelativePageCount(c));
+        }
+    }
+
+    /**
+     * Checks that <code>target-counter(..., page)</code> is 1 for the start
+     * of a sequence.
+     */
+    private void assertFirstPage(String id) {
+        BlockBox start = (BlockBox)_sharedContext.getBoxById(id);
+        assertNotNull(id, start);
+        RenderingContext c = _sharedContext.newRenderingContextInstance();
+        c.setPageCount(_layer.getPages().size());
+        assertEquals(id, 0, _layer.getRelativePageNo(c, start.getAbsY()));
+    }
+
+    private void layout(String body) {
+        Document doc = XMLResource.load(new StringReader(
+                "<html xmlns='http://www.w3.org/1999/xhtml'><head><style type='text/css'>\n" + STYLE +
+                "</style></head><body>" + body + "</body></html>")).getDocument();
+
+        SharedContext sharedContext = new SharedContext(new NaiveUserAgent());
+        sharedContext.setFontResolver(new AWTFontResolver());
+        sharedContext.setReplacedElementFactory(new SwingReplacedElementFactory());
+        sharedContext.setTextRenderer(new Java2DTextRenderer());
+        sharedContext.setDPI(72f);
+        sharedContext.setDotsPerPixel(1);
+        sharedContext.setPrint(true);
+        sharedContext.setInteractive(false);
+        sharedContext.setNamespaceHandler(new XhtmlNamespaceHandler());
+        sharedContext.getCss().setDocumentContext(
+                sharedContext, sharedContext.getNamespaceHandler(), doc, new NullUserInterface());
+
+        LayoutContext c = sharedContext.newLayoutContextInstance();
+        c.setFontContext(new Java2DFontContext(
+                ImageUtil.createCompatibleBufferedImage(1, 1).createGraphics()));
+        sharedContext.getTextRenderer().setup(c.getFontContext());
+
+        BlockBox root = BoxBuilder.createRootBox(c, doc);
+        PageBox first = Layer.createPageBox(c, "first");
+        root.setContainingBlock(new ViewportBox(
+                new Rectangle(0, 0, first.getContentWidth(c), first.getContentHeight(c))));
+        root.layout(c);
+        Layer layer = root.getLayer();
+        layer.trimEmptyPages(c, layer.getPaintingDimension(c).height);
+        layer.layoutPages(c);
+        layer.assignPagePaintingPositions(c, Layer.PAGED_MODE_PRINT);
+
+        _sharedContext = sharedContext;
+        _layer = layer;
+    }
+
+    private static class NullUserInterface implements UserInterface {
+        public boolean isHover(Element e) {
+            return false;
+        }
+
+        public boolean isActive(Element e) {
+            return false;
+        }
+
+        public boolean isFocus(Element e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package org.xhtmlrenderer.layout;
+
+import java.awt.Rectangle;
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xhtmlrenderer.css.constants.PageElementPosition;
+import org.xhtmlrenderer.extend.UserInterface;
+import org.xhtmlrenderer.render.BlockBox;
+import org.xhtmlrenderer.render.PageBox;
+import org.xhtmlrenderer.render.ViewportBox;
+import org.xhtmlrenderer.resource.XMLResource;
+import org.xhtmlrenderer.simple.extend.XhtmlNamespaceHandler;
+import org.xhtmlrenderer.swing.AWTFontResolver;
+import org.xhtmlrenderer.swing.Java2DFontContext;
+import org.xhtmlrenderer.swing.Java2DTextRenderer;
+import org.xhtmlrenderer.swing.NaiveUserAgent;
+import org.xhtmlrenderer.swing.SwingReplacedElementFactory;
+import org.xhtmlrenderer.util.ImageUtil;
+
+import junit.framework.TestCase;
+
+/**
+ * Compares the running blocks {@link Layer#getRunningBlock} finds for each
+ * page to searching all running blocks one by one.
+ */
+public class RunningBlocksTest extends TestCase {
+    private static final PageElementPosition[] POSITIONS = {
+            PageElementPosition.START, PageElementPosition.FIRST,
+            PageElementPosition.LAST, PageElementPosition.LAST_EXCEPT };
+
+    private static final String STYLE =
+            "@page { size: 4in 3in; margin: 0.75in 0.5in;\n" +
+            "  @top-left { content: element(header, start) }\n" +
+            "  @top-center { content: element(header, first) }\n" +
+            "  @top-right { content: element(header, last) }\n" +
+            "  @bottom-center { content: element(header, last-except) } }\n" +
+            ".header { position: running(header) }\n" +
+            ".break { page-break-before: always }\n";
+
+    public void testHeaders() throws Exception {
+        // Sections with no, one or several headers spanning zero to three page breaks
+        int[] headers = { 1, 0, 3, 1, 0, 0, 2, 1, 4, 0, 1, 1 };
+        int[] paragraphs = { 2, 9, 1, 14, 3, 0, 6, 25, 2, 7, 0, 4 };
+
+        StringBuffer body = new StringBuffer();
+        int id = 0;
+        for (int i = 0; i < headers.length; i++) {
+            body.append(i % 4 == 3 ? "<div class='break'>" : "<div>");
+            for (int j = 0; j < headers[i]; j++) {
+                body.append("<div class='header' id='h").append(id++).append("'>Header</div>");
+                if (j % 2 == 1) {
+                    body.append("<p>Between headers</p>");
+                }
+            }
+            for (int j = 0; j < paragraphs[i]; j++) {
+                body.append("<p>Section ").append(i).append(", paragraph ").append(j).append("</p>");
+            }
+            body.append("</div>\n");
+        }
+
+        Layer layer = layout(body.toString());
+        List blocks = getHeaders(layer);
+        assertEquals(id, blocks.size());
+        List pages = layer.getPages();
+        assertTrue(pages.size() > 5);
+
+        int found = 0;
+        int missing = 0;
+        for (int i = 0; i < pages.size(); i++) {
+            PageBox page = (PageBox)pages.get(i);
+            for (int j = 0; j < POSITIONS.length; j++) {
+                BlockBox expected = scan(blocks, page, POSITIONS[j]);
+                assertSame("page " + i + ", " + POSITIONS[j],
+                        expected, layer.getRunningBlock("header", page, POSITIONS[j]));
+                if (expected == null) {
+                    missing++;
+                } else {
+                    found++;
+                }
+            }
+        }
+        assertTrue(found > 0);
+        assertTrue(missing > 0);
+        assertNull(layer.getRunningBlock("footer", (PageBox)pages.get(0), PageElementPosition.FIRST));
+    }
+
+    public void testNoHeaders() {
+        Layer layer = layout("<p>No headers</p>");
+        PageBox page = (PageBox)layer.getPages().get(0);
+        for (int i = 0; i < POSITIONS.length; i++) {
+            assertNull(layer.getRunningBlock("header", page, POSITIONS[i]));
+        }
+    }
+
+    /**
+     * Finds the running block for <code>page</code> like the original
+     * implementation, by scanning <code>blocks</code> in document order.
+     */
+    private static BlockBox scan(List blocks, PageBox page, PageElementPosition which) {
+        BlockBox prev = null;
+        if (which == PageElementPosition.START) {
+            for (int i = 0; i < blocks.size(); i++) {
+                BlockBox b = (BlockBox)blocks.get(i);
+                if (b.getStaticEquivalent().getAbsY() >= page.getTop()) {
+                    break;
+                }
+                prev = b;
+            }
+        } else if (which == PageElementPosition.FIRST) {
+            for (int i = 0; i < blocks.size(); i++) {
+                BlockBox b = (BlockBox)blocks.get(i);
+                int absY = b.getStaticEquivalent().getAbsY();
+                if (absY >= page.getTop() && absY < page.getBottom()) {
+                    return b;
+                }
+            }
+            return scan(blocks, page, PageElementPosition.START);
+        } else {
+            for (int i = 0; i < blocks.size(); i++) {
+                BlockBox b = (BlockBox)blocks.get(i);
+                int absY = b.getStaticEquivalent().getAbsY();
+                if (which == PageElementPosition.LAST_EXCEPT &&
+                        absY >= page.getTop() && absY < page.getBottom()) {
+                    return null;
+                }
+                if (absY > page.getBottom()) {
+                    break;
+                }
+                prev = b;
+            }
+        }
+        return prev;
+    }
+
+    /**
+     * Returns the running blocks of <code>layer</code> in document order.
+     * They are only referenced by the layer (and by the copies in the page
+     * margins once the pages are laid out), so they are read from there.
+     */
+    private static List getHeaders(Layer layer) throws Exception {
+        Field runningBlocks = Layer.class.getDeclaredField("_runningBlocks");
+        runningBlocks.setAccessible(true);
+        Map map = (Map)runningBlocks.get(layer);
+        assertNotNull(map);
+        Object blocks = map.get("header");
+        Field list = blocks.getClass().getDeclaredField("_blocks");
+        list.setAccessible(true);
+
+        List result = new ArrayList((List)list.get(blocks));
+        Collections.sort(result, new Comparator() {
+            public int compare(Object o1, Object o2) {
+                return getIndex((BlockBox)o1) - getIndex((BlockBox)o2);
+            }
+        });
+        for (int i = 0; i < result.size(); i++) {
+            assertEquals(i, getIndex((BlockBox)result.get(i)));
+            assertNotNull(((BlockBox)result.get(i)).getStaticEquivalent());
+        }
+        return result;
+    }
+
+    private static int getIndex(BlockBox header) {
+        return Integer.parseInt(header.getElement().getAttribute("id").substring(1));
+    }
+
+    /**
+     * Lays out <code>body</code> on pages and returns the root layer.
+     */
+    private static Layer layout(String body) {
+        Document doc = XMLResource.load(new StringReader(
+                "<html xmlns='http://www.w3.org/1999/xhtml'><head><style type='text/css'>\n" + STYLE +
+                "</style></head><body>" + body + "</body></html>")).getDocument();
+
+        SharedContext sharedContext = new SharedContext(new NaiveUserAgent());
+        sharedContext.setFontResolver(new AWTFontResolver());
+        sharedContext.setReplacedElementFactory(new SwingReplacedElementFactory());
+        sharedContext.setTextRenderer(new Java2DTextRenderer());
+        sharedContext.setDPI(72f);
+        sharedContext.setDotsPerPixel(1);
+        sharedContext.setPrint(true);
+        sharedContext.setInteractive(false);
+        sharedContext.setNamespaceHandler(new XhtmlNamespaceHandler());
+        sharedContext.getCss().setDocumentContext(
+                sharedContext, sharedContext.getNamespaceHandler(), doc, new NullUserInterface());
+
+        LayoutContext c = sharedContext.newLayoutContextInstance();
+        c.setFontContext(new Java2DFontContext(
+                ImageUtil.createCompatibleBufferedImage(1, 1).createGraphics()));
+        sharedContext.getTextRenderer().setup(c.getFontContext());
+
+        BlockBox root = BoxBuilder.createRootBox(c, doc);
+        PageBox first = Layer.createPageBox(c, "first");
+        root.setContainingBlock(new ViewportBox(
+                new Rectangle(0, 0, first.getContentWidth(c), first.getContentHeight(c))));
+        root.layout(c);
+        Layer layer = root.getLayer();
+        layer.trimEmptyPages(c, layer.getPaintingDimension(c).height);
+        layer.layoutPages(c);
+
+        return layer;
+    }
+
+    private static class NullUserInterface implements UserInterface {
+        public boolean isHover(Element e) {
+            return false;
+        }
+
+        public boolean isActive(Element e) {
+            return false;
+        }
+
+        public boolean isFocus(Element e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package org.xhtmlrenderer.newtable;
+
+import java.awt.Rectangle;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xhtmlrenderer.extend.UserInterface;
+import org.xhtmlrenderer.layout.BoxBuilder;
+import org.xhtmlrenderer.layout.LayoutContext;
+import org.xhtmlrenderer.layout.SharedContext;
+import org.xhtmlrenderer.render.BlockBox;
+import org.xhtmlrenderer.render.Box;
+import org.xhtmlrenderer.render.ViewportBox;
+import org.xhtmlrenderer.resource.XMLResource;
+import org.xhtmlrenderer.simple.extend.XhtmlNamespaceHandler;
+import org.xhtmlrenderer.swing.AWTFontResolver;
+import org.xhtmlrenderer.swing.Java2DFontContext;
+import org.xhtmlrenderer.swing.Java2DTextRenderer;
+import org.xhtmlrenderer.swing.NaiveUserAgent;
+import org.xhtmlrenderer.swing.SwingReplacedElementFactory;
+import org.xhtmlrenderer.util.ImageUtil;
+
+import junit.framework.TestCase;
+
+public class TableSectionBoxTest extends TestCase {
+    private static final TableCellBox SPAN = TableCellBox.SPANNING_CELL;
+
+    public void testDeprecatedGridAccessors() {
+        TableCellBox a = new TableCellBox();
+        TableCellBox b = new TableCellBox();
+        TableCellBox c = new TableCellBox();
+
+        List grid = new ArrayList();
+        grid.add(row(new TableCellBox[] { a, TableCellBox.SPANNING_CELL, b }));
+        grid.add(row(new TableCellBox[] { c }));
+
+        TableSectionBox section = new TableSectionBox();
+        section.setGrid(grid);
+        assertEquals(2, section.numRows());
+        assertEquals(3, section.numCols());
+        assertSame(a, section.cellAt(0, 0));
+        assertSame(TableCellBox.SPANNING_CELL, section.cellAt(0, 1));
+        assertSame(b, section.cellAt(0, 2));
+        assertSame(c, section.cellAt(1, 0));
+        assertNull(section.cellAt(1, 2));
+
+        List copy = section.getGrid();
+        assertEquals(2, copy.size());
+        List second = ((RowData)copy.get(1)).getRow();
+        assertEquals(3, second.size());
+        assertSame(c, second.get(0));
+        assertNull(second.get(1));
+
+        second.set(1, a);
+        assertNull(section.cellAt(1, 1));
+    }
+
+    public void testSplitColumn() {
+        TableCellBox a = new TableCellBox();
+        TableCellBox b = new TableCellBox();
+        TableCellBox c = new TableCellBox();
+        TableCellBox d = new TableCellBox();
+
+        // Exactly fills the initial capacity, so splitting has to grow the grid
+        List grid = new ArrayList();
+        grid.add(row(new TableCellBox[] { a, b, c, d }));
+        grid.add(row(new TableCellBox[] { null, c, null, a }));
+        grid.add(row(new TableCellBox[] { d, SPAN, SPAN, b }));
+
+        TableSectionBox section = new TableSectionBox();
+        section.setGrid(grid);
+        section.splitColumn(1);
+        assertGrid(new TableCellBox[][] {
+                { a, b, SPAN, c, d },
+                { null, c, SPAN, null, a },
+                { d, SPAN, SPAN, SPAN, b } }, section);
+
+        section.splitColumn(4);
+        assertGrid(new TableCellBox[][] {
+                { a, b, SPAN, c, d, SPAN },
+                { null, c, SPAN, null, a, SPAN },
+                { d, SPAN, SPAN, SPAN, b, SPAN } }, section);
+
+        // Columns past the end of the grid aren't split
+        section.splitColumn(6);
+        assertEquals(6, section.numCols());
+    }
+
+    public void testGridGrows() {
+        TableCellBox a = new TableCellBox();
+        TableCellBox b = new TableCellBox();
+
+        List grid = new ArrayList();
+        grid.add(row(new TableCellBox[] { a }));
+        grid.add(row(new TableCellBox[] { null }));
+        grid.add(row(new TableCellBox[] { b }));
+
+        TableSectionBox section = new TableSectionBox();
+        section.setGrid(grid);
+        for (int cols = 2; cols <= 50; cols++) {
+            section.extendGridToColumnCount(cols);
+            assertEquals(cols, section.numCols());
+            assertSame(a, section.cellAt(0, 0));
+            assertNull(section.cellAt(1, 0));
+            assertSame(b, section.cellAt(2, 0));
+            assertNull(section.cellAt(2, cols - 1));
+        }
+
+        // Shrinking isn't possible
+        section.extendGridToColumnCount(3);
+        assertEquals(50, section.numCols());
+    }
+
+    public void testLargeTable() {
+        StringBuffer html = new StringBuffer("<table>");
+        for (int row = 0; row < 40; row++) {
+            html.append("<tr>");
+            for (int col = 0; col < 15; col++) {
+                html.append("<td id='c").append(row).append('-').append(col).append("'>x</td>");
+            }
+            html.append("</tr>");
+        }
+        html.append("</table>");
+
+        TableSectionBox section = layout(html.toString());
+        assertEquals(40, section.numRows());
+        assertEquals(15, section.numCols());
+        for (int row = 0; row < 40; row++) {
+            for (int col = 0; col < 15; col++) {
+                assertEquals("c" + row + "-" + col, id(section.cellAt(row, col)));
+            }
+        }
+    }
+
+    public void testSpans() {
+        TableSectionBox section = layout(
+                "<table>" +
+                "<tr><td id='a' rowspan='2'>A</td><td id='b' colspan='2'>B</td></tr>" +
+                "<tr><td id='c'>C</td><td id='d'>D</td></tr>" +
+                "<tr><td id='e' colspan='3'>E</td></tr>" +
+                "<tr><td id='f'>F</td><td id='g' rowspan='3'>G</td></tr>" +
+                "</table>");
+        assertGrid(new String[][] {
+                { "a", "b", "span" },
+                { "a", "c", "d" },
+                { "e", "span", "span" },
+                { "f", "g", null },
+                { null, "g", null },
+                { null, "g", null } }, section);
+
+        TableCellBox g = section.cellAt(3, 1);
+        assertEquals(3, g.getRow());
+        assertEquals(1, g.getCol());
+    }
+
+    public void testSplitColumnDuringLayout() {
+        // The column spans three columns until the second row splits it
+        TableSectionBox section = layout(
+                "<table><col span='3'/>" +
+                "<tr><td id='a' colspan='3'>A</td></tr>" +
+                "<tr><td id='b'>B</td><td id='c' colspan='2'>C</td></tr>" +
+                "<tr><td id='d' colspan='2'>D</td><td id='e'>E</td></tr>" +
+                "</table>");
+        assertGrid(new String[][] {
+                { "a", "span", "span" },
+                { "b", "c", "span" },
+                { "d", "span", "e" } }, section);
+    }
+
+    private static void assertGrid(TableCellBox[][] expected, TableSectionBox section) {
+        assertEquals(expected.length, section.numRows());
+        for (int row = 0; row < expected.length; row++) {
+            assertEquals(expected[row].length, section.numCols());
+            for (int col = 0; col < expected[row].length; col++) {
+                assertSame("cell " + row + "," + col, expected[row][col], section.cellAt(row, col));
+            }
+        }
+    }
+
+    private static void assertGrid(String[][] expected, TableSectionBox section) {
+        assertEquals(expected.length, section.numRows());
+        for (int row = 0; row < expected.length; row++) {
+            assertEquals(expected[row].length, section.numCols());
+            for (int col = 0; col < expected[row].length; col++) {
+                assertEquals("cell " + row + "," + col, expected[row][col], id(section.cellAt(row, col)));
+            }
+        }
+    }
+
+    private static String id(TableCellBox cell) {
+        if (cell == null) {
+            return null;
+        } else if (cell == SPAN) {
+            return "span";
+        } else {
+            return ((Element)cell.getElement()).getAttribute("id");
+        }
+    }
+
+    private static RowData row(TableCellBox[] cells) {
+        RowData result = new RowData();
+        for (int i = 0; i < cells.length; i++) {
+            result.getRow().add(cells[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Lays out <code>body</code> and returns the first table section in it.
+     */
+    private static TableSectionBox layout(String body) {
+        SharedContext sharedContext = new SharedContext(new NaiveUserAgent());
+        sharedContext.setFontResolver(new AWTFontResolver());
+        sharedContext.setReplacedElementFactory(new SwingReplacedElementFactory());
+        sharedContext.setTextRenderer(new Java2DTextRenderer());
+        sharedContext.setDPI(96f);
+        sharedContext.setDotsPerPixel(1);
+        sharedContext.setPrint(false);
+        sharedContext.setInteractive(false);
+
+        Document doc = XMLResource.load(new StringReader(
+                "<html xmlns='http://www.w3.org/1999/xhtml'><body>" + body + "</body></html>")).getDocument();
+        sharedContext.setNamespaceHandler(new XhtmlNamespaceHandler());
+        sharedContext.getCss().setDocumentContext(
+                sharedContext, sharedContext.getNamespaceHandler(), doc, new NullUserInterface());
+
+        LayoutContext c = sharedContext.newLayoutContextInstance();
+        c.setFontContext(new Java2DFontContext(
+                ImageUtil.createCompatibleBufferedImage(1, 1).createGraphics()));
+        sharedContext.getTextRenderer().setup(c.getFontContext());
+
+        BlockBox root = BoxBuilder.createRootBox(c, doc);
+        root.setContainingBlock(new ViewportBox(new Rectangle(0, 0, 800, 600)));
+        root.layout(c);
+
+        TableSectionBox result = findSection(root);
+        assertNotNull("No table section", result);
+        return result;
+    }
+
+    private static TableSectionBox findSection(Box box) {
+        if (box instanceof TableSectionBox) {
+            return (TableSectionBox)box;
+        }
+        for (int i = 0; i < box.getChildCount(); i++) {
+            TableSectionBox result = findSection(box.getChild(i));
+            if (result != null) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    private static class NullUserInterface implements UserInterface {
+        public boolean isHover(Element e) {
+            return false;
+        }
+
+        public boolean isActive(Element e) {
+            return false;
+        }
+
+        public boolean isFocus(Element e) {
+            return false;
+        }
+    }
+}
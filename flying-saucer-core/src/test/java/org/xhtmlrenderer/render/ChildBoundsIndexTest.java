@@ -0,0 +1,192 @@
+package org.xhtmlrenderer.render;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xhtmlrenderer.css.style.CssContext;
+import org.xhtmlrenderer.extend.UserInterface;
+import org.xhtmlrenderer.layout.BoxBuilder;
+import org.xhtmlrenderer.layout.LayoutContext;
+import org.xhtmlrenderer.layout.PaintingInfo;
+import org.xhtmlrenderer.layout.SharedContext;
+import org.xhtmlrenderer.resource.XMLResource;
+import org.xhtmlrenderer.simple.extend.XhtmlNamespaceHandler;
+import org.xhtmlrenderer.swing.AWTFontResolver;
+import org.xhtmlrenderer.swing.Java2DFontContext;
+import org.xhtmlrenderer.swing.Java2DTextRenderer;
+import org.xhtmlrenderer.swing.NaiveUserAgent;
+import org.xhtmlrenderer.swing.SwingReplacedElementFactory;
+import org.xhtmlrenderer.util.ImageUtil;
+
+import junit.framework.TestCase;
+
+/**
+ * Compares hit testing with a {@link ChildBoundsIndex} to searching the
+ * children of a box one by one.
+ */
+public class ChildBoundsIndexTest extends TestCase {
+    private static final int MAX_POINTS = 2500;
+
+    private LayoutContext _layoutContext;
+
+    public void testOverlappingChildren() {
+        StringBuffer body = new StringBuffer();
+        for (int i = 0; i < 60; i++) {
+            switch (i % 6) {
+                case 0:
+                    body.append("<p>Paragraph ").append(i).append("</p>");
+                    break;
+                case 1:
+                    // Overlaps the previous paragraph, which comes first in a scan
+                    body.append("<p style='margin-top: -30px; margin-left: 20px'>Pulled up</p>");
+                    break;
+                case 2:
+                    body.append("<div style='float: left; width: 40px; height: 90px'>Float</div>");
+                    break;
+                case 3:
+                    body.append("<div></div>");
+                    break;
+                case 4:
+                    body.append("<p style='white-space: nowrap'>A line which overflows its block ")
+                            .append("and the viewport a long way to the right of it</p>");
+                    break;
+                default:
+                    body.append("<p style='width: 100px; margin-left: 500px'>Narrow and indented</p>");
+            }
+        }
+
+        Box root = layout(load(body.toString()), 400);
+        assertTrue(compareWithScan(root) > 0);
+    }
+
+    public void testRegressionDocuments() {
+        List failed = new ArrayList();
+        int indexed = 0;
+        File[] documents = getRegressionDocuments();
+        for (int i = 0; i < documents.length; i++) {
+            Document doc = XMLResource.load(
+                    new org.xml.sax.InputSource(documents[i].toURI().toString())).getDocument();
+            try {
+                indexed += compareWithScan(layout(doc, 1024));
+            } catch (junit.framework.AssertionFailedError e) {
+                failed.add(documents[i].getName() + ": " + e.getMessage());
+            }
+        }
+        assertEquals("Different with index", Collections.EMPTY_LIST, failed);
+        assertTrue(indexed > 0);
+    }
+
+    /**
+     * Checks all boxes with an index below <code>box</code> and returns the
+     * number of them.
+     */
+    private int compareWithScan(Box box) {
+        int result = 0;
+        if (box.getChildCount() > 0 && box.getPaintingInfo() != null) {
+            ChildBoundsIndex index = ChildBoundsIndex.build(box);
+            if (index != null) {
+                compareWithScan(box, index);
+                result++;
+            }
+        }
+        for (int i = 0; i < box.getChildCount(); i++) {
+            result += compareWithScan(box.getChild(i));
+        }
+        return result;
+    }
+
+    private void compareWithScan(Box box, ChildBoundsIndex index) {
+        assertTrue(index.isValidFor(box));
+
+        Rectangle bounds = box.getPaintingInfo().getAggregateBounds();
+        int step = 1;
+        while ((long)(bounds.width / step + 3) * (bounds.height / step + 3) > MAX_POINTS) {
+            step++;
+        }
+
+        CssContext c = _layoutContext;
+        for (int x = bounds.x - 1; x <= bounds.x + bounds.width + 1; x += step) {
+            for (int y = bounds.y - 1; y <= bounds.y + bounds.height + 1; y += step) {
+                assertSame(box + " at " + x + "," + y, scan(box, x, y, false), index.find(c, x, y, false));
+                assertSame(box + " at " + x + "," + y, scan(box, x, y, true), index.find(c, x, y, true));
+            }
+        }
+    }
+
+    private Box scan(Box box, int x, int y, boolean findAnonymous) {
+        for (int i = 0; i < box.getChildCount(); i++) {
+            Box result = box.getChild(i).find(_layoutContext, x, y, findAnonymous);
+            if (result != null) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    private static File[] getRegressionDocuments() {
+        File dir = new File(System.getProperty("basedir", "."), "../tests/regress/xhtml");
+        assertTrue(dir + " not found", dir.isDirectory());
+        File[] result = dir.listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(".xhtml");
+            }
+        });
+        Arrays.sort(result);
+        return result;
+    }
+
+    private static Document load(String body) {
+        return XMLResource.load(new StringReader(
+                "<html xmlns='http://www.w3.org/1999/xhtml'><body>" + body + "</body></html>")).getDocument();
+    }
+
+    private Box layout(Document doc, int width) {
+        SharedContext sharedContext = new SharedContext(new NaiveUserAgent());
+        sharedContext.setFontResolver(new AWTFontResolver());
+        sharedContext.setReplacedElementFactory(new SwingReplacedElementFactory());
+        sharedContext.setTextRenderer(new Java2DTextRenderer());
+        sharedContext.setDPI(96f);
+        sharedContext.setDotsPerPixel(1);
+        sharedContext.setPrint(false);
+        sharedContext.setInteractive(false);
+        sharedContext.setNamespaceHandler(new XhtmlNamespaceHandler());
+        sharedContext.getCss().setDocumentContext(
+                sharedContext, sharedContext.getNamespaceHandler(), doc, new NullUserInterface());
+
+        LayoutContext c = sharedContext.newLayoutContextInstance();
+        c.setFontContext(new Java2DFontContext(
+                ImageUtil.createCompatibleBufferedImage(1, 1).createGraphics()));
+        sharedContext.getTextRenderer().setup(c.getFontContext());
+
+        BlockBox root = BoxBuilder.createRootBox(c, doc);
+        root.setContainingBlock(new ViewportBox(new Rectangle(0, 0, width, 768)));
+        root.layout(c);
+        PaintingInfo info = root.calcPaintingInfo(c, false);
+        assertNotNull(info);
+
+        _layoutContext = c;
+        return root;
+    }
+
+    private static class NullUserInterface implements UserInterface {
+        public boolean isHover(Element e) {
+            return false;
+        }
+
+        public boolean isActive(Element e) {
+            return false;
+        }
+
+        public boolean isFocus(Element e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package org.xhtmlrenderer.swing;
+
+import java.awt.EventQueue;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xhtmlrenderer.css.parser.FSRGBColor;
+import org.xhtmlrenderer.render.Box;
+import org.xhtmlrenderer.render.InlineLayoutBox;
+import org.xhtmlrenderer.resource.XMLResource;
+import org.xhtmlrenderer.simple.XHTMLPanel;
+
+import junit.framework.TestCase;
+
+public class HoverListenerTest extends TestCase {
+    private static final String DOCUMENT =
+            "<html xmlns='http://www.w3.org/1999/xhtml'><head><style>\n" +
+            "em { font-style: normal }\n" +
+            "#color:hover { color: red }\n" +
+            "#size:hover { font-size: 40px }\n" +
+            "#link:hover { color: blue }\n" +
+            "#link:hover + span { color: green }\n" +
+            "#item:hover + li + li { color: green }\n" +
+            "</style></head><body>\n" +
+            "<p><em id='color'>Color</em></p>\n" +
+            "<p><em id='size'>Size</em></p>\n" +
+            "<p><em id='link'>Link</em> <span id='next'>Next</span> <span id='other'>Other</span></p>\n" +
+            "<ul><li id='item'>One</li><li>Two</li><li id='third'>Three</li></ul>\n" +
+            "</body></html>";
+
+    private static final FSRGBColor BLACK = new FSRGBColor(0, 0, 0);
+    private static final FSRGBColor RED = new FSRGBColor(255, 0, 0);
+    private static final FSRGBColor GREEN = new FSRGBColor(0, 128, 0);
+    private static final FSRGBColor BLUE = new FSRGBColor(0, 0, 255);
+
+    private RecordingPanel _panel;
+    private HoverListener _listener;
+
+    protected void setUp() throws Exception {
+        EventQueue.invokeAndWait(new Runnable() {
+            public void run() {
+                _panel = new RecordingPanel();
+                _panel.setSize(400, 300);
+                _panel.setDocument(XMLResource.load(new StringReader(DOCUMENT)).getDocument(), null);
+                _panel.doDocumentLayout(new BufferedImage(400, 300, BufferedImage.TYPE_INT_ARGB).createGraphics());
+                _listener = new HoverListener();
+            }
+        });
+    }
+
+    /**
+     * A change of color is shown by repainting the hovered element only.
+     */
+    public void testRepaintOnly() throws Exception {
+        EventQueue.invokeAndWait(new Runnable() {
+            public void run() {
+                Box color = getBox("color");
+                assertTrue(color instanceof InlineLayoutBox);
+                assertEquals(BLACK, color.getStyle().getColor());
+
+                hover(color);
+                assertEquals(RED, getBox("color").getStyle().getColor());
+                assertEquals(0, _panel.relayouts);
+                assertEquals(1, _panel.repaints.size());
+                assertTrue(_panel.repaints.get(0).equals(getBounds("color")));
+
+                hover(null);
+                assertEquals(BLACK, getBox("color").getStyle().getColor());
+                assertEquals(0, _panel.relayouts);
+            }
+        });
+    }
+
+    public void testLayout() throws Exception {
+        EventQueue.invokeAndWait(new Runnable() {
+            public void run() {
+                hover(getBox("size"));
+                assertEquals(1, _panel.relayouts);
+                assertEquals(40f, getBox("size").getStyle().getFont(_panel.getLayoutContext()).size, 0f);
+            }
+        });
+    }
+
+    public void testSiblings() throws Exception {
+        EventQueue.invokeAndWait(new Runnable() {
+            public void run() {
+                hover(getBox("link"));
+                assertEquals(BLUE, getBox("link").getStyle().getColor());
+                assertEquals(GREEN, getBox("next").getStyle().getColor());
+                assertEquals(BLACK, getBox("other").getStyle().getColor());
+                assertEquals(0, _panel.relayouts);
+                Rectangle repainted = (Rectangle)_panel.repaints.get(0);
+                assertTrue(repainted.contains(getBounds("link")));
+                assertTrue(repainted.contains(getBounds("next")));
+
+                hover(getBox("item"));
+                assertEquals(BLACK, getBox("link").getStyle().getColor());
+                assertEquals(BLACK, getBox("next").getStyle().getColor());
+                assertEquals(GREEN, getBox("third").getStyle().getColor());
+
+                hover(null);
+                assertEquals(BLACK, getBox("third").getStyle().getColor());
+            }
+        });
+    }
+
+    private void hover(Box box) {
+        _panel.repaints.clear();
+        _listener.onMouseOver(_panel, box);
+    }
+
+    private Box getBox(String id) {
+        Box result = findBox(_panel.getRootBox(), id);
+        assertNotNull(id, result);
+        return result;
+    }
+
+    private Rectangle getBounds(String id) {
+        return getBox(id).getPaintingInfo().getAggregateBounds();
+    }
+
+    private static Box findBox(Box box, String id) {
+        if (box.getElement() != null && id.equals(box.getElement().getAttribute("id"))) {
+            return box;
+        }
+        for (int i = 0; i < box.getChildCount(); i++) {
+            Box result = findBox(box.getChild(i), id);
+            if (result != null) {
+                return result;
+            }
+        }
+        if (box instanceof InlineLayoutBox) {
+            InlineLayoutBox iB = (InlineLayoutBox)box;
+            for (int i = 0; i < iB.getInlineChildCount(); i++) {
+                Object child = iB.getInlineChild(i);
+                if (child instanceof Box) {
+                    Box result = findBox((Box)child, id);
+                    if (result != null) {
+                        return result;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private static class RecordingPanel extends XHTMLPanel {
+        int relayouts;
+        final List repaints = new ArrayList();
+
+        protected void requestRelayout() {
+            relayouts++;
+        }
+
+        public void repaint(long tm, int x, int y, int width, int height) {
+            if (repaints != null) {
+                repaints.add(new Rectangle(x, y, width, height));
+            }
+            super.repaint(tm, x, y, width, height);
+        }
+    }
+}
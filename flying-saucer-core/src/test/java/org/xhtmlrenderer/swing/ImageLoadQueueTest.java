@@ -0,0 +1,152 @@
+package org.xhtmlrenderer.swing;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.w3c.dom.Document;
+import org.xhtmlrenderer.resource.ImageResource;
+import org.xhtmlrenderer.resource.XMLResource;
+
+import junit.framework.TestCase;
+
+public class ImageLoadQueueTest extends TestCase {
+    private static final long TIMEOUT = 30;
+
+    private File _dir;
+    private ImageLoadQueue _queue;
+    private RecordingLoader _loader;
+    private String _blocker;
+
+    protected void setUp() throws Exception {
+        _dir = File.createTempFile("images", "");
+        _dir.delete();
+        _dir.mkdir();
+
+        // A single worker which is kept busy until everything is queued
+        _queue = new ImageLoadQueue(1);
+        _loader = new RecordingLoader(_queue);
+        _blocker = createImage("blocker");
+        _queue.addToQueue(_loader, _blocker, new MutableFSImage(ImageResourceLoader.NO_OP_REPAINT_LISTENER), -1, -1);
+        assertTrue(_loader.blockerStarted.await(TIMEOUT, TimeUnit.SECONDS));
+    }
+
+    protected void tearDown() {
+        _loader.releaseBlocker.countDown();
+        File[] files = _dir.listFiles();
+        for (int i = 0; i < files.length; i++) {
+            files[i].delete();
+        }
+        _dir.delete();
+    }
+
+    /**
+     * Images requested during layout are loaded from the top of the
+     * document down as long as their distance isn't known.
+     */
+    public void testRequestOrder() throws Exception {
+        List requested = new ArrayList();
+        for (int i = 0; i < 5; i++) {
+            String uri = createImage("image" + i);
+            assertFalse(_loader.get(uri, -1, -1).isLoaded());
+            requested.add(uri);
+        }
+
+        assertEquals(requested, load(requested.size()));
+    }
+
+    public void testNearerImagesLoadedFirst() throws Exception {
+        String far = createImage("far");
+        String visible = createImage("visible");
+        String below = createImage("below");
+        String near = createImage("near");
+
+        SwingReplacedElementFactory factory =
+                new SwingReplacedElementFactory(ImageResourceLoader.NO_OP_REPAINT_LISTENER, _loader);
+        Document doc = XMLResource.load(new StringReader("<html/>")).getDocument();
+        addImage(factory, doc, far, 3000);
+        addImage(factory, doc, visible, 100);
+        addImage(factory, doc, below, 1200);
+        addImage(factory, doc, near, 600);
+
+        factory.updateImageLoading(new Rectangle(0, 0, 800, 500));
+
+        assertEquals(Arrays.asList(new String[] { visible, near, below, far }), load(4));
+    }
+
+    private void addImage(SwingReplacedElementFactory factory, Document doc, String uri, int y) {
+        ImageResource resource = _loader.get(uri, -1, -1);
+        assertFalse(resource.isLoaded());
+        DeferredImageReplacedElement image = new DeferredImageReplacedElement(
+                resource, ImageResourceLoader.NO_OP_REPAINT_LISTENER, -1, -1);
+        image.setLocation(0, y);
+        factory.storeImageReplacedElement(doc.createElement("img"), image, uri, -1, -1);
+    }
+
+    /**
+     * Lets the worker go on and returns the URIs of the next
+     * <code>count</code> images in the order they were loaded.
+     */
+    private List load(int count) throws InterruptedException {
+        _loader.expect(count);
+        _loader.releaseBlocker.countDown();
+        assertTrue("Images not loaded", _loader.done.await(TIMEOUT, TimeUnit.SECONDS));
+        return _loader.getLoaded();
+    }
+
+    private String createImage(String name) throws Exception {
+        File file = new File(_dir, name + ".png");
+        ImageIO.write(new BufferedImage(2, 2, BufferedImage.TYPE_INT_RGB), "png", file);
+        return file.toURI().toString();
+    }
+
+    private class RecordingLoader extends ImageResourceLoader {
+        final CountDownLatch blockerStarted = new CountDownLatch(1);
+        final CountDownLatch releaseBlocker = new CountDownLatch(1);
+        volatile CountDownLatch done;
+        private final List _loaded = new ArrayList();
+
+        public RecordingLoader(ImageLoadQueue queue) {
+            super(16, queue);
+        }
+
+        public boolean isImmediateLoadUri(String uri) {
+            return false;
+        }
+
+        public void loaded(ImageResource ir, int width, int height) {
+            super.loaded(ir, width, height);
+            if (ir.getImageUri().equals(_blocker)) {
+                blockerStarted.countDown();
+                try {
+                    releaseBlocker.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            } else {
+                synchronized (_loaded) {
+                    _loaded.add(ir.getImageUri());
+                }
+                done.countDown();
+            }
+        }
+
+        public void expect(int count) {
+            done = new CountDownLatch(count);
+        }
+
+        public List getLoaded() {
+            synchronized (_loaded) {
+                return new ArrayList(_loaded);
+            }
+        }
+    }
+}
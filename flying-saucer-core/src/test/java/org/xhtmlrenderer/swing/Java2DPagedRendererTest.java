@@ -0,0 +1,60 @@
+package org.xhtmlrenderer.swing;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.StringReader;
+
+import org.w3c.dom.Document;
+import org.xhtmlrenderer.resource.XMLResource;
+
+import junit.framework.TestCase;
+
+public class Java2DPagedRendererTest extends TestCase {
+    private static final String DOCUMENT =
+            "<html xmlns='http://www.w3.org/1999/xhtml'><head><style type='text/css'>\n" +
+            "@page { size: 4in 3in; margin: 0.5in; }\n" +
+            "@page :first { size: 3in 2in; }\n" +
+            "div { page-break-after: always; }\n" +
+            "</style></head><body>\n" +
+            "<div>One</div><div>Two</div><div>Three</div><p>Four</p>\n" +
+            "</body></html>";
+
+    public void testPagesAtHigherResolution() {
+        Java2DPagedRenderer renderer = new Java2DPagedRenderer(load(DOCUMENT), null, 150f);
+
+        assertEquals(4, renderer.getPageCount());
+        assertPage(renderer, 0, new Dimension(450, 300));
+        for (int i = 1; i < 4; i++) {
+            assertPage(renderer, i, new Dimension(600, 450));
+        }
+    }
+
+    public void testPagesAtLowerResolution() {
+        Java2DPagedRenderer renderer = new Java2DPagedRenderer(load(DOCUMENT), null, 72f);
+
+        assertEquals(4, renderer.getPageCount());
+        assertPage(renderer, 0, new Dimension(216, 144));
+        assertPage(renderer, 3, new Dimension(288, 216));
+    }
+
+    public void testPageOutOfRange() {
+        Java2DPagedRenderer renderer = new Java2DPagedRenderer(load(DOCUMENT), null, 150f);
+        try {
+            renderer.renderPage(4);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static void assertPage(Java2DPagedRenderer renderer, int pageNo, Dimension expected) {
+        assertEquals("page " + pageNo, expected, renderer.getPageSize(pageNo));
+
+        BufferedImage image = renderer.renderPage(pageNo);
+        assertEquals("page " + pageNo, expected, new Dimension(image.getWidth(), image.getHeight()));
+    }
+
+    private static Document load(String xhtml) {
+        return XMLResource.load(new StringReader(xhtml)).getDocument();
+    }
+}
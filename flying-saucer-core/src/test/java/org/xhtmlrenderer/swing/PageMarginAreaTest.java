@@ -0,0 +1,99 @@
+package org.xhtmlrenderer.swing;
+
+import java.awt.image.BufferedImage;
+import java.io.StringReader;
+
+import org.xhtmlrenderer.resource.XMLResource;
+
+import junit.framework.TestCase;
+
+/**
+ * Renders page margin boxes with page dependent content and compares them
+ * with the same pages using a named page style for each page.  Margin areas
+ * with only counters are laid out once and shared by the pages, the rules
+ * of different named pages are never shared.
+ */
+public class PageMarginAreaTest extends TestCase {
+    private static final int PAGES = 3;
+
+    public void testCounters() {
+        String margins = "@bottom-center { content: 'Page ' counter(page) ' of ' counter(pages) }";
+
+        assertSamePages(render(margins, false), render(margins, true));
+    }
+
+    public void testRunningElements() {
+        String margins = "@top-center { content: element(title) } " +
+                "@bottom-left { content: counter(page) } @bottom-right { content: 'Footer' }";
+
+        assertSamePages(render(margins, false), render(margins, true));
+    }
+
+    private static void assertSamePages(BufferedImage[] actual, BufferedImage[] expected) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i].getWidth(), actual[i].getWidth());
+            assertEquals(expected[i].getHeight(), actual[i].getHeight());
+            for (int x = 0; x < expected[i].getWidth(); x++) {
+                for (int y = 0; y < expected[i].getHeight(); y++) {
+                    if (expected[i].getRGB(x, y) != actual[i].getRGB(x, y)) {
+                        fail("Page " + (i + 1) + " differs at " + x + "," + y);
+                    }
+                }
+            }
+        }
+        // The pages must differ or the margin boxes aren't tested
+        assertFalse(sameImage(expected[0], expected[1]));
+    }
+
+    private static boolean sameImage(BufferedImage a, BufferedImage b) {
+        for (int x = 0; x < a.getWidth(); x++) {
+            for (int y = 0; y < a.getHeight(); y++) {
+                if (a.getRGB(x, y) != b.getRGB(x, y)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Renders three pages with <code>margins</code> in the default page
+     * style or in the style of a named page for each page.
+     */
+    private static BufferedImage[] render(String margins, boolean namedPages) {
+        StringBuffer xhtml = new StringBuffer(
+                "<html xmlns='http://www.w3.org/1999/xhtml'><head><style type='text/css'>\n" +
+                "@page { size: 4in 3in; margin: 0.75in 0.5in; }\n");
+        if (namedPages) {
+            for (int i = 1; i <= PAGES; i++) {
+                xhtml.append("@page p").append(i).append(" { ").append(margins).append(" }\n");
+            }
+        } else {
+            xhtml.append("@page { ").append(margins).append(" }\n");
+        }
+        xhtml.append(
+                ".title { position: running(title) }\n" +
+                ".page + .page { page-break-before: always }\n" +
+                "</style></head>\n");
+        // The first page takes its name from the body, a change of name inside it would break the page
+        xhtml.append(namedPages ? "<body style='page: p1'>" : "<body>");
+        for (int i = 1; i <= PAGES; i++) {
+            xhtml.append("<div class='page'");
+            if (namedPages && i > 1) {
+                xhtml.append(" style='page: p").append(i).append("'");
+            }
+            xhtml.append("><div class='title'>Title ").append(i).append("</div><p>Content</p></div>\n");
+        }
+        xhtml.append("</body></html>");
+
+        Java2DPagedRenderer renderer = new Java2DPagedRenderer(
+                XMLResource.load(new StringReader(xhtml.toString())).getDocument(), null, 72f);
+        assertEquals(PAGES, renderer.getPageCount());
+        BufferedImage[] result = new BufferedImage[PAGES];
+        for (int i = 0; i < PAGES; i++) {
+            result[i] = renderer.renderPage(i);
+        }
+        return result;
+    }
+}
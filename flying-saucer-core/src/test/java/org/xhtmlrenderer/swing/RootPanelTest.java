@@ -0,0 +1,120 @@
+package org.xhtmlrenderer.swing;
+
+import java.awt.EventQueue;
+import java.awt.image.BufferedImage;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.w3c.dom.Document;
+import org.xhtmlrenderer.extend.ReplacedElement;
+import org.xhtmlrenderer.extend.UserAgentCallback;
+import org.xhtmlrenderer.layout.LayoutContext;
+import org.xhtmlrenderer.render.BlockBox;
+import org.xhtmlrenderer.resource.XMLResource;
+import org.xhtmlrenderer.simple.XHTMLPanel;
+
+import junit.framework.TestCase;
+
+public class RootPanelTest extends TestCase {
+    private static final String DOCUMENT =
+            "<html xmlns='http://www.w3.org/1999/xhtml'><body>\n" +
+            "<p id='first'>One</p>\n" +
+            "<form><p><input type='text' name='name' value='Two'/></p></form>\n" +
+            "</body></html>";
+
+    private static final long TIMEOUT = 30000;
+
+    private XHTMLPanel _panel;
+    private BufferedImage _image;
+    private final List _onEventQueue = Collections.synchronizedList(new ArrayList());
+
+    protected void setUp() {
+        _panel = new XHTMLPanel();
+        _panel.getSharedContext().setReplacedElementFactory(new SwingReplacedElementFactory() {
+            public ReplacedElement createReplacedElement(
+                    LayoutContext context, BlockBox box, UserAgentCallback uac, int cssWidth, int cssHeight) {
+                _onEventQueue.add(Boolean.valueOf(EventQueue.isDispatchThread()));
+                return super.createReplacedElement(context, box, uac, cssWidth, cssHeight);
+            }
+        });
+        _panel.setAsyncLayout(true);
+        _panel.setSize(400, 300);
+        _panel.setDocument(load(DOCUMENT), null);
+        _image = new BufferedImage(400, 300, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    /**
+     * doDocumentLayout() is called directly e.g. by Graphics2DRenderer, which
+     * paints the panel right after it.
+     */
+    public void testDocumentLayoutIsSynchronous() throws Exception {
+        onEventQueue(new Runnable() {
+            public void run() {
+                _panel.doDocumentLayout(_image.createGraphics());
+                assertNotNull(_panel.getRootBox());
+                assertNotNull(_panel.getSharedContext().getBoxById("first"));
+                assertEquals(1, _panel.getComponentCount());
+            }
+        });
+    }
+
+    public void testBackgroundLayout() throws Exception {
+        onEventQueue(new Runnable() {
+            public void run() {
+                _panel.paintComponent(_image.createGraphics());
+                // Published on the event dispatch thread later
+                assertNull(_panel.getRootBox());
+                assertEquals(0, _panel.getComponentCount());
+            }
+        });
+
+        long end = System.currentTimeMillis() + TIMEOUT;
+        final boolean[] done = new boolean[1];
+        while (! done[0]) {
+            assertTrue("Layout not published", System.currentTimeMillis() < end);
+            Thread.sleep(10);
+            onEventQueue(new Runnable() {
+                public void run() {
+                    done[0] = _panel.getRootBox() != null;
+                }
+            });
+        }
+
+        onEventQueue(new Runnable() {
+            public void run() {
+                assertNotNull(_panel.getSharedContext().getBoxById("first"));
+                assertEquals(1, _panel.getComponentCount());
+            }
+        });
+
+        // Replaced elements and form controls are only created on the
+        // event dispatch thread
+        assertFalse(_onEventQueue.isEmpty());
+        assertFalse(_onEventQueue.contains(Boolean.FALSE));
+    }
+
+    private static void onEventQueue(Runnable runnable) throws Exception {
+        final Throwable[] failure = new Throwable[1];
+        final Runnable task = runnable;
+        EventQueue.invokeAndWait(new Runnable() {
+            public void run() {
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    failure[0] = t;
+                }
+            }
+        });
+        if (failure[0] instanceof Error) {
+            throw (Error) failure[0];
+        } else if (failure[0] != null) {
+            throw (Exception) failure[0];
+        }
+    }
+
+    private static Document load(String xhtml) {
+        return XMLResource.load(new StringReader(xhtml)).getDocument();
+    }
+}
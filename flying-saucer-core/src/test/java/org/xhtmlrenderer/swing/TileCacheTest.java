@@ -0,0 +1,94 @@
+package org.xhtmlrenderer.swing;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class TileCacheTest extends TestCase {
+    private static final int SIZE = TileCache.TILE_SIZE;
+
+    private TileCache _cache;
+
+    protected void setUp() {
+        _cache = new TileCache(Long.MAX_VALUE);
+        _cache.setOwner(this);
+        // Tiles -1 to 3 in both directions
+        for (int col = -1; col < 4; col++) {
+            for (int row = -1; row < 4; row++) {
+                _cache.put(col, row, new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB));
+            }
+        }
+    }
+
+    public void testInvalidateWithinTiles() {
+        _cache.invalidate(new Rectangle(SIZE + 44, SIZE + 4, SIZE, 10));
+        assertMissing(new int[][] { { 1, 1 }, { 2, 1 } });
+    }
+
+    public void testInvalidateTileBoundaries() {
+        // Touches, but doesn't overlap, the tiles around it
+        _cache.invalidate(new Rectangle(SIZE, 0, SIZE, SIZE));
+        assertMissing(new int[][] { { 1, 0 } });
+    }
+
+    public void testInvalidateOneScreenPixel() {
+        _cache.invalidate(new Rectangle(-1, 2 * SIZE - 1, 1, 1));
+        assertMissing(new int[][] { { -1, 1 } });
+    }
+
+    public void testInvalidateMoreThanCached() {
+        // More tiles than there are in the cache, so the cached ones are checked
+        _cache.invalidate(new Rectangle(-SIZE, SIZE, 100 * SIZE, SIZE + 1));
+        List expected = new ArrayList();
+        for (int col = -1; col < 4; col++) {
+            expected.add(new int[] { col, 1 });
+            expected.add(new int[] { col, 2 });
+        }
+        assertMissing((int[][]) expected.toArray(new int[0][]));
+    }
+
+    public void testInvalidateEmptyArea() {
+        _cache.invalidate(new Rectangle(0, 0, 0, 1000));
+        assertMissing(new int[0][]);
+    }
+
+    public void testNewLayout() {
+        _cache.setOwner(this);
+        assertMissing(new int[0][]);
+
+        // Tiles of another layout aren't used
+        _cache.setOwner(new Object());
+        assertNull(_cache.get(0, 0));
+    }
+
+    public void testMemoryLimit() {
+        TileCache cache = new TileCache(2L * SIZE * SIZE * 4);
+        cache.put(0, 0, new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB));
+        cache.put(0, 1, new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB));
+        cache.get(0, 0);
+        cache.put(0, 2, new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB));
+
+        // The least recently used tile is dropped
+        assertNotNull(cache.get(0, 0));
+        assertNull(cache.get(0, 1));
+        assertNotNull(cache.get(0, 2));
+    }
+
+    private void assertMissing(int[][] missing) {
+        for (int col = -1; col < 4; col++) {
+            for (int row = -1; row < 4; row++) {
+                boolean expectMissing = false;
+                for (int i = 0; i < missing.length; i++) {
+                    if (Arrays.equals(missing[i], new int[] { col, row })) {
+                        expectMissing = true;
+                    }
+                }
+                assertEquals("tile " + col + "," + row, expectMissing, _cache.get(col, row) == null);
+            }
+        }
+    }
+}
@@ -19,8 +19,13 @@
  */
 package org.xhtmlrenderer.pdf;
 
-import org.xhtmlrenderer.extend.FontContext;
+import org.xhtmlrenderer.extend.CopyableFontContext;
 
-public class ITextFontContext implements FontContext {
+public class ITextFontContext implements CopyableFontContext {
+    public CopyableFontContext copy() {
+        return this;
+    }
 
+    public void dispose() {
+    }
 }
@@ -177,6 +177,29 @@ public class ITextRenderer {
         getFontResolver().importFontFaces(_sharedContext.getCss().getFontFaceRules());
     }
 
+    /**
+     * Forgets the current document and the settings made for it (encryption,
+     * PDF version and listener), so the renderer can be used for another
+     * document as if it was new.  Fonts added to the font resolver and the
+     * style sheets and images cached by the user agent are kept.
+     *
+     * @see ITextRendererPool
+     */
+    public void reset() {
+        _doc = null;
+        _root = null;
+        _pdfDoc = null;
+        _writer = null;
+
+        _pdfEncryption = null;
+        _pdfVersion = null;
+        _listener = null;
+
+        getFontResolver().flushFontFaceFonts();
+        _sharedContext.reset();
+        _outputDevice.reset();
+    }
+
     public PDFEncryption getPDFEncryption() {
         return _pdfEncryption;
     }
@@ -0,0 +1,188 @@
+/*
+ * {{{ header & license
+ * Copyright (c) 2026 xhtmlrenderer.dev.java.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.pdf;
+
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.xhtmlrenderer.extend.ReplacedElementFactory;
+import org.xhtmlrenderer.extend.TextRenderer;
+import org.xhtmlrenderer.layout.SharedContext;
+
+/**
+ * A pool of {@link ITextRenderer}s for applications which create many PDFs,
+ * possibly on several threads at once.  Setting up a renderer (font resolver,
+ * user agent, style sheet factory) is expensive, and a renderer which is
+ * used again keeps the fonts added to it and the style sheets and images
+ * its user agent has cached.
+ * <p/>
+ * The renderers of a pool also share the fonts they load (see
+ * {@link #getLoadedFonts()}): a font file added to each new renderer or a
+ * font of an <code>@font-face</code> rule is read and parsed by the first
+ * renderer using it only.  The default style sheet is parsed once for all
+ * renderers anyway.
+ * <p/>
+ * A renderer is used by one thread at a time: get one with {@link #acquire()}
+ * and give it back with {@link #release(ITextRenderer)} once the PDF has been
+ * written, e.g.
+ * <pre>
+ * ITextRenderer renderer = pool.acquire();
+ * try {
+ *     renderer.setDocument(url);
+ *     renderer.layout();
+ *     renderer.createPDF(os);
+ * } finally {
+ *     pool.release(renderer);
+ * }
+ * </pre>
+ * Override {@link #createRenderer()} to set up new renderers, e.g. to add
+ * fonts to them.  The media, replaced element factory, text renderer, font
+ * scale and resolution of a new renderer are restored when it is given
+ * back, so changing them for one document doesn't affect the next one.
+ */
+public class ITextRendererPool {
+    private final int _maxIdle;
+    private final LinkedList _idle = new LinkedList();
+    private final Map _settings = new WeakHashMap();
+    private final ITextFontCache _loadedFonts = new ITextFontCache();
+
+    /**
+     * @param maxIdle The number of renderers kept for reuse.  Renderers given
+     * back while as many are waiting to be used are dropped.
+     */
+    public ITextRendererPool(int maxIdle) {
+        if (maxIdle < 0) {
+            throw new IllegalArgumentException("maxIdle may not be negative");
+        }
+        _maxIdle = maxIdle;
+    }
+
+    /**
+     * Returns a renderer no other thread is using, creating one if none is
+     * waiting to be reused.
+     */
+    public ITextRenderer acquire() {
+        synchronized (_idle) {
+            if (! _idle.isEmpty()) {
+                return (ITextRenderer) _idle.removeFirst();
+            }
+        }
+
+        ITextRenderer result = createRenderer();
+        if (result.getFontResolver().getLoadedFonts() == null) {
+            result.getFontResolver().setLoadedFonts(_loadedFonts);
+        }
+        Settings settings = new Settings(result.getSharedContext());
+        synchronized (_idle) {
+            _settings.put(result, settings);
+        }
+        return result;
+    }
+
+    /**
+     * Gives back a renderer acquired from this pool.  It is reset (see
+     * {@link ITextRenderer#reset()}), gets back the settings it had when it
+     * was created and mustn't be used by the caller anymore.
+     */
+    public void release(ITextRenderer renderer) {
+        renderer.reset();
+        Settings settings;
+        synchronized (_idle) {
+            settings = (Settings) _settings.get(renderer);
+        }
+        if (settings != null) {
+            settings.restore(renderer.getSharedContext());
+        }
+        synchronized (_idle) {
+            if (_idle.size() < _maxIdle) {
+                _idle.addFirst(renderer);
+            }
+        }
+    }
+
+    /**
+     * Drops all renderers waiting to be reused.
+     */
+    public void clear() {
+        synchronized (_idle) {
+            _idle.clear();
+        }
+    }
+
+    /**
+     * Returns the number of renderers waiting to be reused.
+     */
+    public int getIdleCount() {
+        synchronized (_idle) {
+            return _idle.size();
+        }
+    }
+
+    /**
+     * Returns the fonts loaded by the renderers of this pool.
+     */
+    public ITextFontCache getLoadedFonts() {
+        return _loadedFonts;
+    }
+
+    /**
+     * Creates a new renderer.  Called outside of any lock.  Subclasses adding
+     * fonts should add them to the renderer returned by this method, which
+     * loads them with the fonts of the pool.
+     */
+    protected ITextRenderer createRenderer() {
+        ITextRenderer result = new ITextRenderer();
+        result.getFontResolver().setLoadedFonts(_loadedFonts);
+        return result;
+    }
+
+    /**
+     * The settings of a new renderer which can be changed for a document.
+     */
+    private static final class Settings {
+        private final String _media;
+        private final ReplacedElementFactory _replacedElementFactory;
+        private final TextRenderer _textRenderer;
+        private final float _fontScale;
+        private final float _dpi;
+        private final int _dotsPerPixel;
+
+        Settings(SharedContext sharedContext) {
+            _media = sharedContext.getMedia();
+            _replacedElementFactory = sharedContext.getReplacedElementFactory();
+            _textRenderer = sharedContext.getTextRenderer();
+            _fontScale = _textRenderer.getFontScale();
+            _dpi = sharedContext.getDPI();
+            _dotsPerPixel = sharedContext.getDotsPerPixel();
+        }
+
+        void restore(SharedContext sharedContext) {
+            sharedContext.setMedia(_media);
+            if (sharedContext.getReplacedElementFactory() != _replacedElementFactory) {
+                sharedContext.setReplacedElementFactory(_replacedElementFactory);
+            }
+            sharedContext.setTextRenderer(_textRenderer);
+            _textRenderer.setFontScale(_fontScale);
+            sharedContext.setDPI(_dpi);
+            sharedContext.setDotsPerPixel(_dotsPerPixel);
+        }
+    }
+}
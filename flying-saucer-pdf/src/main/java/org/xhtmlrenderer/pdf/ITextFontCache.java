@@ -0,0 +1,61 @@
+/*
+ * {{{ header & license
+ * Copyright (c) 2026 xhtmlrenderer.dev.java.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.pdf;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.xhtmlrenderer.pdf.ITextFontResolver.FontDescription;
+
+/**
+ * Fonts loaded by {@link ITextFontResolver}s which share them (see
+ * {@link ITextFontResolver#setLoadedFonts(ITextFontCache)}), keyed by font
+ * file or <code>@font-face</code> source, encoding and embedding.  The
+ * parsed fonts can be used by several PDF writers at once.  Resolvers only
+ * get copies of the descriptions kept here.
+ * <p/>
+ * Fonts are kept until the cache is cleared, so a changed font file or
+ * <code>@font-face</code> source isn't read again until then.
+ */
+public class ITextFontCache {
+    private final Map _fonts = new HashMap();
+
+    synchronized FontDescription get(String key) {
+        return (FontDescription) _fonts.get(key);
+    }
+
+    synchronized void put(String key, FontDescription descr) {
+        _fonts.put(key, descr);
+    }
+
+    /**
+     * Returns the number of fonts loaded.
+     */
+    public synchronized int size() {
+        return _fonts.size();
+    }
+
+    /**
+     * Drops all fonts.  Resolvers keep the fonts they have already added.
+     */
+    public synchronized void clear() {
+        _fonts.clear();
+    }
+}
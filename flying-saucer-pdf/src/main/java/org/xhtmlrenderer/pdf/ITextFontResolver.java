@@ -42,6 +42,8 @@ public class ITextFontResolver implements FontResolver {
 
     private final SharedContext _sharedContext;
 
+    private ITextFontCache _loadedFonts;
+
     public ITextFontResolver(SharedContext sharedContext) {
         _sharedContext = sharedContext;
     }
@@ -75,6 +77,24 @@ public class ITextFontResolver implements FontResolver {
         }
     }
 
+    /**
+     * Returns the cache of loaded fonts this resolver shares with others, if
+     * any.
+     */
+    public ITextFontCache getLoadedFonts() {
+        return _loadedFonts;
+    }
+
+    /**
+     * Shares the fonts this resolver loads with other resolvers using
+     * <code>loadedFonts</code>: a font file or <code>@font-face</code> source
+     * which is in the cache isn't read and parsed again.  Only fonts added or
+     * imported afterwards use the cache.
+     */
+    public void setLoadedFonts(ITextFontCache loadedFonts) {
+        _loadedFonts = loadedFonts;
+    }
+
     public FSFont resolveFont(SharedContext renderingContext, FontSpecification spec) {
         return resolveFont(renderingContext, spec.families, spec.size, spec.fontWeight, spec.fontStyle, spec.variant);
     }
@@ -111,30 +131,48 @@ public class ITextFontResolver implements FontResolver {
                 continue;
             }
 
-            byte[] font1 = _sharedContext.getUac().getBinaryResource(src.asString());
-            if (font1 == null) {
-                XRLog.exception("Could not load font " + src.asString());
-                continue;
-            }
-
-            byte[] font2 = null;
             FSDerivedValue metricsSrc = style.valueByName(CSSName.FS_FONT_METRIC_SRC);
-            if (metricsSrc != IdentValue.NONE) {
-                font2 = _sharedContext.getUac().getBinaryResource(metricsSrc.asString());
-                if (font2 == null) {
-                    XRLog.exception("Could not load font metric data " + src.asString());
+            boolean embedded = style.isIdent(CSSName.FS_PDF_FONT_EMBED, IdentValue.EMBED);
+            String encoding = style.getStringProperty(CSSName.FS_PDF_FONT_ENCODING);
+
+            String key = "@font-face\n" + src.asString() + "\n" +
+                    (metricsSrc == IdentValue.NONE ? "" : metricsSrc.asString()) + "\n" +
+                    encoding + "\n" + embedded;
+            FontDescription loaded = getLoadedFont(key);
+            if (loaded == null) {
+                byte[] font1 = _sharedContext.getUac().getBinaryResource(src.asString());
+                if (font1 == null) {
+                    XRLog.exception("Could not load font " + src.asString());
                     continue;
                 }
-            }
 
-            if (font2 != null) {
-                byte[] t = font1;
-                font1 = font2;
-                font2 = t;
+                byte[] font2 = null;
+                if (metricsSrc != IdentValue.NONE) {
+                    font2 = _sharedContext.getUac().getBinaryResource(metricsSrc.asString());
+                    if (font2 == null) {
+                        XRLog.exception("Could not load font metric data " + src.asString());
+                        continue;
+                    }
+                }
+
+                if (font2 != null) {
+                    byte[] t = font1;
+                    font1 = font2;
+                    font2 = t;
+                }
+
+                try {
+                    loaded = loadFontFaceFont(src.asString(), encoding, embedded, font1, font2);
+                } catch (DocumentException e) {
+                    XRLog.exception("Could not load font " + src.asString(), e);
+                    continue;
+                } catch (IOException e) {
+                    XRLog.exception("Could not load font " + src.asString(), e);
+                    continue;
+                }
+                putLoadedFont(key, loaded);
             }
 
-            boolean embedded = style.isIdent(CSSName.FS_PDF_FONT_EMBED, IdentValue.EMBED);
-            String encoding = style.getStringProperty(CSSName.FS_PDF_FONT_ENCODING);
             String fontFamily = null;
             IdentValue fontWeight = null;
             IdentValue fontStyle = null;
@@ -151,14 +189,7 @@ public class ITextFontResolver implements FontResolver {
                 fontStyle = style.getIdent(CSSName.FONT_STYLE);
             }
 
-            try {
-                addFontFaceFont(fontFamily, fontWeight, fontStyle, src.asString(), encoding, embedded, font1, font2);
-            } catch (DocumentException e) {
-                XRLog.exception("Could not load font " + src.asString(), e);
-                continue;
-            } catch (IOException e) {
-                XRLog.exception("Could not load font " + src.asString(), e);
-            }
+            addFontFaceFont(fontFamily, fontWeight, fontStyle, src.asString(), loaded);
         }
     }
 
@@ -198,27 +229,32 @@ public class ITextFontResolver implements FontResolver {
             throws DocumentException, IOException {
         String lower = path.toLowerCase();
         if (lower.endsWith(".otf") || lower.endsWith(".ttf") || lower.indexOf(".ttc,") != -1) {
-            BaseFont font = BaseFont.createFont(path, encoding, embedded);
+            String key = path + "\n" + encoding + "\n" + embedded;
+            FontDescription loaded = getLoadedFont(key);
+            if (loaded == null) {
+                BaseFont font = BaseFont.createFont(path, encoding, embedded);
+
+                loaded = new FontDescription(font);
+                try {
+                    TrueTypeUtil.populateDescription(path, font, loaded);
+                } catch (Exception e) {
+                    throw new XRRuntimeException(e.getMessage(), e);
+                }
+                putLoadedFont(key, loaded);
+            }
 
             String[] fontFamilyNames;
             if (fontFamilyNameOverride != null) {
                 fontFamilyNames = new String[] { fontFamilyNameOverride };
             } else {
-                fontFamilyNames = TrueTypeUtil.getFamilyNames(font);
+                fontFamilyNames = TrueTypeUtil.getFamilyNames(loaded.getFont());
             }
 
             for (int i = 0; i < fontFamilyNames.length; i++) {
                 String fontFamilyName = fontFamilyNames[i];
                 FontFamily fontFamily = getFontFamily(fontFamilyName);
 
-                FontDescription descr = new FontDescription(font);
-                try {
-                    TrueTypeUtil.populateDescription(path, font, descr);
-                } catch (Exception e) {
-                    throw new XRRuntimeException(e.getMessage(), e);
-                }
-
-                fontFamily.addFontDescription(descr);
+                fontFamily.addFontDescription(copyOf(loaded));
             }
         } else if (lower.endsWith(".ttc")) {
             String[] names = BaseFont.enumerateTTCNames(path);
@@ -230,52 +266,86 @@ public class ITextFontResolver implements FontResolver {
                 throw new IOException("When embedding a font, path to PFB/PFA file must be specified");
             }
 
-            BaseFont font = BaseFont.createFont(
-                    path, encoding, embedded, false, null, readFile(pathToPFB));
+            String key = path + "\n" + pathToPFB + "\n" + encoding + "\n" + embedded;
+            FontDescription loaded = getLoadedFont(key);
+            if (loaded == null) {
+                BaseFont font = BaseFont.createFont(
+                        path, encoding, embedded, false, null, readFile(pathToPFB));
+
+                // XXX Need to set weight, underline position, etc.  This information
+                // is contained in the AFM file (and even parsed by Type1Font), but
+                // unfortunately it isn't exposed to the caller.
+                loaded = new FontDescription(font);
+                putLoadedFont(key, loaded);
+            }
 
             String fontFamilyName;
             if (fontFamilyNameOverride != null) {
                 fontFamilyName = fontFamilyNameOverride;
             } else {
-                fontFamilyName = font.getFamilyFontName()[0][3];
+                fontFamilyName = loaded.getFont().getFamilyFontName()[0][3];
             }
 
             FontFamily fontFamily = getFontFamily(fontFamilyName);
 
-            FontDescription descr = new FontDescription(font);
+            fontFamily.addFontDescription(copyOf(loaded));
+        } else {
+            throw new IOException("Unsupported font type");
+        }
+    }
+
+    /**
+     * Reads the font of an <code>@font-face</code> rule.  The description
+     * returned has the metrics of the font, but isn't added to a family.
+     */
+    private FontDescription loadFontFaceFont(
+            String uri, String encoding, boolean embedded, byte[] afmttf, byte[] pfb)
+            throws DocumentException, IOException {
+        String lower = uri.toLowerCase();
+        if (lower.endsWith(".otf") || lower.endsWith(".ttf") || lower.indexOf(".ttc,") != -1) {
+            BaseFont font = BaseFont.createFont(uri, encoding, embedded, false, afmttf, pfb);
+
+            FontDescription result = new FontDescription(font);
+            try {
+                TrueTypeUtil.populateDescription(uri, afmttf, font, result);
+            } catch (Exception e) {
+                throw new XRRuntimeException(e.getMessage(), e);
+            }
+            return result;
+        } else if (lower.endsWith(".afm") || lower.endsWith(".pfm") || lower.endsWith(".pfb") || lower.endsWith(".pfa")) {
+            if (embedded && pfb == null) {
+                throw new IOException("When embedding a font, path to PFB/PFA file must be specified");
+            }
+
+            String name = uri.substring(0, uri.length()-4) + ".afm";
+            BaseFont font = BaseFont.createFont(
+                    name, encoding, embedded, false, afmttf, pfb);
+
             // XXX Need to set weight, underline position, etc.  This information
             // is contained in the AFM file (and even parsed by Type1Font), but
             // unfortunately it isn't exposed to the caller.
-            fontFamily.addFontDescription(descr);
+            return new FontDescription(font);
         } else {
             throw new IOException("Unsupported font type");
         }
     }
 
     private void addFontFaceFont(
-            String fontFamilyNameOverride, IdentValue fontWeightOverride, IdentValue fontStyleOverride, String uri, String encoding, boolean embedded, byte[] afmttf, byte[] pfb)
-            throws DocumentException, IOException {
+            String fontFamilyNameOverride, IdentValue fontWeightOverride, IdentValue fontStyleOverride,
+            String uri, FontDescription loaded) {
         String lower = uri.toLowerCase();
         if (lower.endsWith(".otf") || lower.endsWith(".ttf") || lower.indexOf(".ttc,") != -1) {
-            BaseFont font = BaseFont.createFont(uri, encoding, embedded, false, afmttf, pfb);
-
             String[] fontFamilyNames;
             if (fontFamilyNameOverride != null) {
                 fontFamilyNames = new String[] { fontFamilyNameOverride };
             } else {
-                fontFamilyNames = TrueTypeUtil.getFamilyNames(font);
+                fontFamilyNames = TrueTypeUtil.getFamilyNames(loaded.getFont());
             }
 
             for (int i = 0; i < fontFamilyNames.length; i++) {
                 FontFamily fontFamily = getFontFamily(fontFamilyNames[i]);
 
-                FontDescription descr = new FontDescription(font);
-                try {
-                    TrueTypeUtil.populateDescription(uri, afmttf, font, descr);
-                } catch (Exception e) {
-                    throw new XRRuntimeException(e.getMessage(), e);
-                }
-
+                FontDescription descr = copyOf(loaded);
                 descr.setFromFontFace(true);
 
                 if (fontWeightOverride != null) {
@@ -288,29 +358,43 @@ public class ITextFontResolver implements FontResolver {
 
                 fontFamily.addFontDescription(descr);
             }
-        } else if (lower.endsWith(".afm") || lower.endsWith(".pfm") || lower.endsWith(".pfb") || lower.endsWith(".pfa")) {
-            if (embedded && pfb == null) {
-                throw new IOException("When embedding a font, path to PFB/PFA file must be specified");
-            }
-
-            String name = uri.substring(0, uri.length()-4) + ".afm";
-            BaseFont font = BaseFont.createFont(
-                    name, encoding, embedded, false, afmttf, pfb);
-
-            String fontFamilyName = font.getFamilyFontName()[0][3];
+        } else {
+            String fontFamilyName = loaded.getFont().getFamilyFontName()[0][3];
             FontFamily fontFamily = getFontFamily(fontFamilyName);
 
-            FontDescription descr = new FontDescription(font);
+            FontDescription descr = copyOf(loaded);
             descr.setFromFontFace(true);
-            // XXX Need to set weight, underline position, etc.  This information
-            // is contained in the AFM file (and even parsed by Type1Font), but
-            // unfortunately it isn't exposed to the caller.
             fontFamily.addFontDescription(descr);
-        } else {
-            throw new IOException("Unsupported font type");
         }
     }
 
+    private FontDescription getLoadedFont(String key) {
+        return _loadedFonts == null ? null : _loadedFonts.get(key);
+    }
+
+    private void putLoadedFont(String key, FontDescription descr) {
+        if (_loadedFonts != null) {
+            _loadedFonts.put(key, descr);
+        }
+    }
+
+    /**
+     * Returns a copy of a loaded font's description, which a font family can
+     * change without affecting other families or resolvers using the font.
+     */
+    private static FontDescription copyOf(FontDescription descr) {
+        FontDescription result = new FontDescription();
+        result.setFont(descr.getFont());
+        result.setStyle(descr.getStyle());
+        result.setWeight(descr.getWeight());
+        result.setUnderlinePosition(descr.getUnderlinePosition());
+        result.setUnderlineThickness(descr.getUnderlineThickness());
+        result.setYStrikeoutPosition(descr.getYStrikeoutPosition());
+        result.setYStrikeoutSize(descr.getYStrikeoutSize());
+        result.setFromFontFace(descr.isFromFontFace());
+        return result;
+    }
+
     private byte[] readFile(String path) throws IOException {
         File f = new File(path);
         if (f.exists()) {
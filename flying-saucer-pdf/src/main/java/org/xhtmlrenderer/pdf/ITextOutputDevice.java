@@ -113,6 +113,8 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
 
     private static final BasicStroke STROKE_ONE = new BasicStroke(1);
 
+    private static final Object NO_LINK = new Object();
+
     private static final boolean ROUND_RECT_DIMENSIONS_DOWN = Configuration.isTrue("xr.pdf.round.rect.dimensions.down", false);
 
     private PdfContentByte _currentPage;
@@ -154,6 +156,8 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
 
     private Set _linkTargetAreas;
 
+    private Map _linkActions = new HashMap();
+
     public ITextOutputDevice(float dotsPerPoint) {
         _dotsPerPoint = dotsPerPoint;
     }
@@ -240,74 +244,77 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
         return new com.lowagie.text.Rectangle(llx, lly, urx, ury);
     }
 
-    private String createRectKey(com.lowagie.text.Rectangle rect) {
-        return rect.getLeft() + ":" + rect.getBottom() + ":" + rect.getRight() + ":" + rect.getTop();
-    }
-
     private com.lowagie.text.Rectangle checkLinkArea(RenderingContext c, Box box) {
         com.lowagie.text.Rectangle targetArea = calcTotalLinkArea(c, box);
-        String key = createRectKey(targetArea);
-        if (_linkTargetAreas.contains(key)) {
+        if (! _linkTargetAreas.add(new LinkArea(targetArea))) {
             return null;
         }
-        _linkTargetAreas.add(key);
         return targetArea;
     }
 
     private void processLink(RenderingContext c, Box box) {
         Element elem = box.getElement();
         if (elem != null) {
-            NamespaceHandler handler = _sharedContext.getNamespaceHandler();
-            String uri = handler.getLinkUri(elem);
-            if (uri != null) {
-                if (uri.length() > 1 && uri.charAt(0) == '#') {
-                    String anchor = uri.substring(1);
-                    Box target = _sharedContext.getBoxById(anchor);
-                    if (target != null) {
-                        PdfDestination dest = createDestination(c, target);
+            PdfAction action = getLinkAction(c, elem);
+            if (action != null) {
+                com.lowagie.text.Rectangle targetArea = checkLinkArea(c, box);
+                if (targetArea == null) {
+                    return;
+                }
 
-                        if (dest != null) {
-                            PdfAction action = new PdfAction();
-                            if (!"".equals(handler.getAttributeValue(elem, "onclick"))) {
-                                action = PdfAction.javaScript(handler.getAttributeValue(elem, "onclick"), _writer);
-                            } else {
-                                action.put(PdfName.S, PdfName.GOTO);
-                                action.put(PdfName.D, dest);
-                            }
-
-                            com.lowagie.text.Rectangle targetArea = checkLinkArea(c, box);
-                            if (targetArea == null) {
-                                return;
-                            }
-
-                            targetArea.setBorder(0);
-                            targetArea.setBorderWidth(0);
-
-                            PdfAnnotation annot = new PdfAnnotation(_writer, targetArea.getLeft(), targetArea.getBottom(),
-                                    targetArea.getRight(), targetArea.getTop(), action);
-                            annot.put(PdfName.SUBTYPE, PdfName.LINK);
-                            annot.setBorderStyle(new PdfBorderDictionary(0.0f, 0));
-                            annot.setBorder(new PdfBorderArray(0.0f, 0.0f, 0));
-                            _writer.addAnnotation(annot);
-                        }
-                    }
-                } else if (uri.indexOf("://") != -1) {
-                    PdfAction action = new PdfAction(uri);
+                PdfAnnotation annot = new PdfAnnotation(_writer, targetArea.getLeft(), targetArea.getBottom(),
+                        targetArea.getRight(), targetArea.getTop(), action);
+                annot.put(PdfName.SUBTYPE, PdfName.LINK);
+                annot.setBorderStyle(new PdfBorderDictionary(0.0f, 0));
+                annot.setBorder(new PdfBorderArray(0.0f, 0.0f, 0));
+                _writer.addAnnotation(annot);
+            }
+        }
+    }
 
-                    com.lowagie.text.Rectangle targetArea = checkLinkArea(c, box);
-                    if (targetArea == null) {
-                        return;
-                    }
-                    PdfAnnotation annot = new PdfAnnotation(_writer, targetArea.getLeft(), targetArea.getBottom(), targetArea.getRight(),
-                            targetArea.getTop(), action);
-                    annot.put(PdfName.SUBTYPE, PdfName.LINK);
+    /**
+     * Returns the link action of an element or <code>null</code> if the element is not a link. The link URI and
+     * its destination are resolved once per element and document; every box painted for the element afterwards
+     * only costs a map lookup.
+     */
+    private PdfAction getLinkAction(RenderingContext c, Element elem) {
+        Object action = _linkActions.get(elem);
+        if (action == null) {
+            action = createLinkAction(c, elem);
+            if (action == null) {
+                action = NO_LINK;
+            }
+            _linkActions.put(elem, action);
+        }
+        return action == NO_LINK ? null : (PdfAction) action;
+    }
+
+    private PdfAction createLinkAction(RenderingContext c, Element elem) {
+        NamespaceHandler handler = _sharedContext.getNamespaceHandler();
+        String uri = handler.getLinkUri(elem);
+        if (uri != null) {
+            if (uri.length() > 1 && uri.charAt(0) == '#') {
+                String anchor = uri.substring(1);
+                Box target = _sharedContext.getBoxById(anchor);
+                if (target != null) {
+                    PdfDestination dest = createDestination(c, target);
 
-                    annot.setBorderStyle(new PdfBorderDictionary(0.0f, 0));
-                    annot.setBorder(new PdfBorderArray(0.0f, 0.0f, 0));
-                    _writer.addAnnotation(annot);
+                    if (dest != null) {
+                        PdfAction action = new PdfAction();
+                        if (!"".equals(handler.getAttributeValue(elem, "onclick"))) {
+                            action = PdfAction.javaScript(handler.getAttributeValue(elem, "onclick"), _writer);
+                        } else {
+                            action.put(PdfName.S, PdfName.GOTO);
+                            action.put(PdfName.D, dest);
+                        }
+                        return action;
+                    }
                 }
+            } else if (uri.indexOf("://") != -1) {
+                return new PdfAction(uri);
             }
         }
+        return null;
     }
 
     public com.lowagie.text.Rectangle createLocalTargetArea(RenderingContext c, Box box) {
@@ -900,6 +907,7 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
     }
 
     public void start(Document doc) {
+        _linkActions = new HashMap();
         loadBookmarks(doc);
         loadMetadata(doc);
     }
@@ -909,6 +917,31 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
         writeNamedDestinations(c);
     }
 
+    /**
+     * Forgets the PDF written last (its writer, bookmarks, metadata, links and
+     * imported PDFs), so the device can be used to write another one.
+     */
+    public void reset() {
+        _writer = null;
+        _currentPage = null;
+        _root = null;
+        _startPageNo = 0;
+        _nextFormFieldIndex = 0;
+        _defaultDestination = null;
+
+        _bookmarks = new ArrayList();
+        _metadata = new ArrayList();
+        _linkTargetAreas = null;
+        _linkActions = new HashMap();
+        _readerCache = new HashMap();
+
+        _font = null;
+        _color = Color.BLACK;
+        _fillColor = null;
+        _strokeColor = null;
+        _clip = null;
+    }
+
     private void writeOutline(RenderingContext c, Box root) {
         if (_bookmarks.size() > 0) {
             _writer.setViewerPreferences(PdfWriter.PageModeUseOutlines);
@@ -1024,6 +1057,47 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
         }
     }
 
+    /**
+     * Identifies a link annotation area on the current page so each link is only annotated once even though all
+     * of its boxes are painted.
+     */
+    private static final class LinkArea {
+        private final float _left;
+        private final float _bottom;
+        private final float _right;
+        private final float _top;
+
+        public LinkArea(com.lowagie.text.Rectangle rect) {
+            _left = rect.getLeft();
+            _bottom = rect.getBottom();
+            _right = rect.getRight();
+            _top = rect.getTop();
+        }
+
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (! (o instanceof LinkArea)) {
+                return false;
+            }
+
+            LinkArea other = (LinkArea) o;
+            return Float.floatToIntBits(_left) == Float.floatToIntBits(other._left)
+                    && Float.floatToIntBits(_bottom) == Float.floatToIntBits(other._bottom)
+                    && Float.floatToIntBits(_right) == Float.floatToIntBits(other._right)
+                    && Float.floatToIntBits(_top) == Float.floatToIntBits(other._top);
+        }
+
+        public int hashCode() {
+            int result = Float.floatToIntBits(_left);
+            result = 31 * result + Float.floatToIntBits(_bottom);
+            result = 31 * result + Float.floatToIntBits(_right);
+            result = 31 * result + Float.floatToIntBits(_top);
+            return result;
+        }
+    }
+
     private static class Bookmark {
         private String _name;
         private String _HRef;
@@ -0,0 +1,164 @@
+package org.xhtmlrenderer.pdf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+
+import org.xhtmlrenderer.extend.ReplacedElementFactory;
+import org.xhtmlrenderer.layout.SharedContext;
+
+import junit.framework.TestCase;
+
+public class ITextRendererPoolTest extends TestCase {
+	private static final String FIRST =
+			"<html><head><title>First title</title>" +
+			"<meta name='author' content='First author'/>" +
+			"<meta name='subject' content='First subject'/>" +
+			"<bookmarks><bookmark name='First bookmark' href='#target'/></bookmarks>" +
+			"</head><body>" +
+			"<p><a href='http://www.example.com/first'>External link</a></p>" +
+			"<p><a href='#target'>Internal link</a></p>" +
+			"<h1 id='target' style='page-break-before: always'>Target</h1>" +
+			"</body></html>";
+
+	private static final String SECOND =
+			"<html><head><title>Second title</title></head><body>" +
+			"<p>No bookmarks, metadata or links</p>" +
+			"</body></html>";
+
+	/**
+	 * A renderer given back to the pool and used again must write the same
+	 * PDF as a new one, without bookmarks, metadata or links of the document
+	 * it rendered before.
+	 */
+	public void testReusedRendererForgetsPreviousDocument() throws Exception {
+		String expected = render(new ITextRenderer(), SECOND);
+
+		ITextRendererPool pool = new ITextRendererPool(1);
+		ITextRenderer renderer = pool.acquire();
+		String first = render(renderer, FIRST);
+		assertTrue(first.indexOf("First author") != -1);
+		assertTrue(first.indexOf("First bookmark") != -1);
+		assertTrue(first.indexOf("http://www.example.com/first") != -1);
+		pool.release(renderer);
+
+		ITextRenderer reused = pool.acquire();
+		assertSame(renderer, reused);
+		String second = render(reused, SECOND);
+		assertTrue(second.indexOf("First") == -1);
+		assertTrue(second.indexOf("http://www.example.com/first") == -1);
+		assertEquals(expected, second);
+	}
+
+	public void testIdleRenderers() {
+		ITextRendererPool pool = new ITextRendererPool(1);
+		ITextRenderer first = pool.acquire();
+		ITextRenderer second = pool.acquire();
+		assertNotSame(first, second);
+		assertEquals(0, pool.getIdleCount());
+
+		pool.release(first);
+		pool.release(second);
+		assertEquals(1, pool.getIdleCount());
+		assertSame(first, pool.acquire());
+		assertEquals(0, pool.getIdleCount());
+
+		pool.release(first);
+		pool.clear();
+		assertEquals(0, pool.getIdleCount());
+		assertNotSame(first, pool.acquire());
+	}
+
+	/**
+	 * An <code>@font-face</code> font is read by the first renderer of a pool
+	 * using it only.
+	 */
+	public void testFontFaceLoadedOnce() throws Exception {
+		File font = new File(System.getProperty("basedir", "."),
+				"../flying-saucer-examples/src/main/resources/demos/fonts/fuzz.ttf");
+		assertTrue(font + " not found", font.isFile());
+		String content =
+				"<html><head><style type='text/css'>" +
+				"@font-face { font-family: Fuzz; src: url('" + font.toURI() + "'); -fs-pdf-font-embed: embed; }" +
+				"body { font-family: Fuzz; }" +
+				"</style></head><body><p>Fuzzy text</p></body></html>";
+
+		final int[] reads = new int[1];
+		ITextRendererPool pool = new ITextRendererPool(2) {
+			protected ITextRenderer createRenderer() {
+				float dotsPerPoint = 20f * 4f / 3f;
+				ITextOutputDevice outputDevice = new ITextOutputDevice(dotsPerPoint);
+				return new ITextRenderer(dotsPerPoint, 20, outputDevice, new ITextUserAgent(outputDevice) {
+					public byte[] getBinaryResource(String uri) {
+						reads[0]++;
+						return super.getBinaryResource(uri);
+					}
+				});
+			}
+		};
+
+		ITextRenderer first = pool.acquire();
+		ITextRenderer second = pool.acquire();
+		assertNotSame(first, second);
+		String expected = renderWithSubset(first, content);
+		assertEquals(1, reads[0]);
+		assertEquals(1, pool.getLoadedFonts().size());
+
+		assertEquals(expected, renderWithSubset(second, content));
+		assertEquals(1, reads[0]);
+		pool.release(first);
+		pool.release(second);
+
+		ITextRenderer reused = pool.acquire();
+		assertEquals(expected, renderWithSubset(reused, content));
+		assertEquals(1, reads[0]);
+	}
+
+	/**
+	 * Settings changed for one document are undone when the renderer is
+	 * given back.
+	 */
+	public void testSettingsRestored() throws Exception {
+		String expected = render(new ITextRenderer(), SECOND);
+
+		ITextRendererPool pool = new ITextRendererPool(1);
+		ITextRenderer renderer = pool.acquire();
+		SharedContext sharedContext = renderer.getSharedContext();
+		String media = sharedContext.getMedia();
+		ReplacedElementFactory factory = sharedContext.getReplacedElementFactory();
+		float fontScale = sharedContext.getTextRenderer().getFontScale();
+		float dpi = sharedContext.getDPI();
+
+		sharedContext.setMedia("screen");
+		sharedContext.setReplacedElementFactory(new ITextReplacedElementFactory(renderer.getOutputDevice()));
+		sharedContext.getTextRenderer().setFontScale(fontScale * 2);
+		sharedContext.setDPI(dpi * 2);
+		assertFalse(expected.equals(render(renderer, SECOND)));
+		pool.release(renderer);
+
+		ITextRenderer reused = pool.acquire();
+		assertSame(renderer, reused);
+		assertEquals(media, sharedContext.getMedia());
+		assertSame(factory, sharedContext.getReplacedElementFactory());
+		assertEquals(fontScale, sharedContext.getTextRenderer().getFontScale(), 0f);
+		assertEquals(dpi, sharedContext.getDPI(), 0f);
+		assertEquals(expected, render(reused, SECOND));
+	}
+
+	private static String renderWithSubset(ITextRenderer renderer, String content) throws Exception {
+		// The prefix of the name of an embedded subset is random
+		return render(renderer, content).replaceAll("/[A-Z]{6}\\+", "/");
+	}
+
+	private static String render(ITextRenderer renderer, String content) throws Exception {
+		renderer.setDocumentFromString(content);
+		renderer.layout();
+
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		renderer.createPDF(bos);
+
+		// The creation date and the document id differ every time
+		return new String(bos.toByteArray(), "ISO-8859-1")
+				.replaceAll("\\(D:[^)]*\\)", "")
+				.replaceAll("<[0-9a-fA-F]{32}>", "");
+	}
+}
@@ -0,0 +1,76 @@
+package org.xhtmlrenderer.pdf.concurrent;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.xhtmlrenderer.pdf.ITextRenderer;
+import org.xhtmlrenderer.pdf.ITextRendererPool;
+
+import junit.framework.TestCase;
+
+public class ConcurrentRenderingTest extends TestCase {
+	private static final int THREADS = 8;
+	private static final int DOCUMENTS_PER_THREAD = 4;
+
+	private static final String[] MEDIA = new String[] { "print", "screen" };
+
+	/**
+	 * Renders a document on several threads at once, for print and screen
+	 * media, with renderers reused through a pool. Every PDF must be the same
+	 * as the one rendered on its own.
+	 */
+	public void testConcurrentRendering() throws Exception {
+		final String url = getClass().getResource("concurrentRendering.html").toString();
+
+		String[] expected = new String[MEDIA.length];
+		for (int i = 0; i < MEDIA.length; i++) {
+			expected[i] = render(new ITextRenderer(), url, MEDIA[i]);
+		}
+		assertFalse(expected[0].equals(expected[1]));
+
+		final ITextRendererPool pool = new ITextRendererPool(THREADS / 2);
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List results = new ArrayList();
+			for (int i = 0; i < THREADS * DOCUMENTS_PER_THREAD; i++) {
+				final String medium = MEDIA[i % MEDIA.length];
+				results.add(executor.submit(new Callable() {
+					public Object call() throws Exception {
+						ITextRenderer renderer = pool.acquire();
+						try {
+							return render(renderer, url, medium);
+						} finally {
+							pool.release(renderer);
+						}
+					}
+				}));
+			}
+
+			for (int i = 0; i < results.size(); i++) {
+				Object result = ((Future) results.get(i)).get();
+				assertTrue("PDF " + i + " differs", expected[i % MEDIA.length].equals(result));
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static String render(ITextRenderer renderer, String url, String medium) throws Exception {
+		renderer.getSharedContext().setMedia(medium);
+		renderer.setDocument(url);
+		renderer.layout();
+
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		renderer.createPDF(bos);
+
+		// The creation date and the document id differ every time
+		return new String(bos.toByteArray(), "ISO-8859-1")
+				.replaceAll("\\(D:[^)]*\\)", "")
+				.replaceAll("<[0-9a-fA-F]{32}>", "");
+	}
+}
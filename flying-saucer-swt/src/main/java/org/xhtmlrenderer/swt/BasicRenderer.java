@@ -32,6 +32,7 @@ import java.util.Set;
 import java.util.logging.Level;
 
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.SWTException;
 import org.eclipse.swt.events.*;
 import org.eclipse.swt.graphics.Color;
 import org.eclipse.swt.graphics.GC;
@@ -43,19 +44,24 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.xhtmlrenderer.css.style.CalculatedStyle;
 import org.xhtmlrenderer.css.style.derived.RectPropertySet;
+import org.xhtmlrenderer.css.value.FontSpecification;
 import org.xhtmlrenderer.event.DocumentListener;
 import org.xhtmlrenderer.extend.*;
 import org.xhtmlrenderer.layout.BoxBuilder;
 import org.xhtmlrenderer.layout.Layer;
+import org.xhtmlrenderer.layout.LayoutCancellationToken;
+import org.xhtmlrenderer.layout.LayoutCancelledException;
 import org.xhtmlrenderer.layout.LayoutContext;
 import org.xhtmlrenderer.layout.SharedContext;
 import org.xhtmlrenderer.render.BlockBox;
 import org.xhtmlrenderer.render.Box;
+import org.xhtmlrenderer.render.FSFont;
 import org.xhtmlrenderer.render.PageBox;
 import org.xhtmlrenderer.render.RenderingContext;
 import org.xhtmlrenderer.render.ViewportBox;
 import org.xhtmlrenderer.resource.XMLResource;
 import org.xhtmlrenderer.simple.NoNamespaceHandler;
+import org.xhtmlrenderer.simple.extend.FormSubmissionListener;
 import org.xhtmlrenderer.util.Configuration;
 import org.xhtmlrenderer.util.Uu;
 import org.xhtmlrenderer.util.XRLog;
@@ -101,10 +107,19 @@ public class BasicRenderer extends Canvas implements PaintListener, UserInterfac
 
     private Point _drawnSize = new Point(0, 0);
 
+    // Offscreen buffers only grow, so they may be larger than the view
     private Image _offscreen = null;
 
+    private Image _spareOffscreen = null; // swapped with _offscreen when scrolling
+
+    private boolean _offscreenValid = false;
+
     private SpecialRedraw _specialRedraw = null;
 
+    private boolean _asyncLayout = Configuration.isTrue("xr.layout.async", false);
+
+    private LayoutThread _layoutThread = null;
+
     private static int checkStyle(int style) {
         final int mask = SWT.BORDER;
         return (style & mask) | SWT.NO_REDRAW_RESIZE | SWT.NO_BACKGROUND | SWT.V_SCROLL
@@ -161,10 +176,14 @@ public class BasicRenderer extends Canvas implements PaintListener, UserInterfac
                 if (uac instanceof NaiveUserAgent) {
                     ((NaiveUserAgent) uac).disposeCache();
                 }
-                // dispose offscreen image
+                cancelAsyncLayout();
+                // dispose offscreen images
                 if (_offscreen != null) {
                     _offscreen.dispose();
                 }
+                if (_spareOffscreen != null) {
+                    _spareOffscreen.dispose();
+                }
                 // dispose temp Image/GC
                 if (_layout_image != null) {
                     _layout_gc.dispose();
@@ -185,7 +204,7 @@ public class BasicRenderer extends Canvas implements PaintListener, UserInterfac
                         // Else, don't relayout, but update scrollbars
                         if (updateScrollBars()) {
                             relayout();
-                        } else if (_offscreen != null) {
+                        } else if (_offscreenValid) {
                             redrawSpecial(new RedrawNewSize(_previousSize));
                         }
                     }
@@ -278,10 +297,7 @@ public class BasicRenderer extends Canvas implements PaintListener, UserInterfac
      * Invalidate the whole view. Redraw everything.
      */
     public void invalidate() {
-        if (_offscreen != null) {
-            _offscreen.dispose();
-            _offscreen = null;
-        }
+        _offscreenValid = false;
         redraw();
     }
 
@@ -315,15 +331,27 @@ public class BasicRenderer extends Canvas implements PaintListener, UserInterfac
      * @return a new {@link LayoutContext}
      */
     protected LayoutContext newLayoutcontext() {
-        LayoutContext result = _sharedContext.newLayoutContextInstance();
-
         if (_layout_gc == null) {
             _layout_image = new Image(getDisplay(), 1, 1);
             _layout_gc = new GC(_layout_image);
         }
 
-        result.setFontContext(new SWTFontContext(_layout_gc));
-        _sharedContext.getTextRenderer().setup(result.getFontContext());
+        return newLayoutcontext(_layout_gc);
+    }
+
+    /**
+     * @param gc
+     * @return a new {@link LayoutContext} measuring text with gc
+     */
+    protected LayoutContext newLayoutcontext(GC gc) {
+        return newLayoutcontext(_sharedContext, gc);
+    }
+
+    private LayoutContext newLayoutcontext(SharedContext sharedContext, GC gc) {
+        LayoutContext result = sharedContext.newLayoutContextInstance();
+
+        result.setFontContext(new SWTFontContext(gc));
+        sharedContext.getTextRenderer().setup(result.getFontContext());
 
         return result;
     }
@@ -432,7 +460,7 @@ public class BasicRenderer extends Canvas implements PaintListener, UserInterfac
             return;
         }
 
-        if (_offscreen != null) {
+        if (_offscreenValid) {
             redrawSpecial(new RedrawNewOrigin(_origin));
         }
 
@@ -499,28 +527,30 @@ public class BasicRenderer extends Canvas implements PaintListener, UserInterfac
         // if this is the first time painting this document, then calc layout
         Layer root = getRootLayer();
         if (root == null || _needRelayout) {
-            doLayout();
-            root = getRootLayer();
-            if (_offscreen != null) {
-                // invalidate offscreen image
-                _offscreen.dispose();
-                _offscreen = null;
+            if (_asyncLayout) {
+                // keep drawing the previous layout (if any) until the new one is done
+                startAsyncLayout();
+            } else {
+                doLayout();
+                root = getRootLayer();
             }
+            // invalidate offscreen image
+            _offscreenValid = false;
         }
         _needRelayout = false;
         if (root == null) {
             XRLog.render(Level.FINE, "skipping the actual painting");
+            e.gc.fillRectangle(getClientArea());
         } else {
             Point size = getScreenSize();
             // make sure origin is within the bounds
             Point origin = checkOrigin(_origin);
             if (!origin.equals(_origin)) {
                 // the origin has been corrected
-                if (_offscreen != null) {
+                if (_offscreenValid) {
                     if (_hasFixedContent
                             || (_specialRedraw != null && !(_specialRedraw instanceof RedrawNewOrigin))) {
-                        _offscreen.dispose();
-                        _offscreen = null;
+                        _offscreenValid = false;
                     } else if (_specialRedraw == null) {
                         _specialRedraw = new RedrawNewOrigin(_origin);
                     }
@@ -528,13 +558,16 @@ public class BasicRenderer extends Canvas implements PaintListener, UserInterfac
             }
             _origin = origin;
             // redraw offscreen if needed
-            if (_offscreen == null) { // full redraw
-                _offscreen = new Image(getDisplay(), size.x, size.y);
+            if (!_offscreenValid) { // full redraw
+                _offscreen = ensureCapacity(_offscreen, size);
                 GC gc = new GC(_offscreen);
+                gc.setBackground(getBackground());
+                gc.fillRectangle(0, 0, size.x, size.y);
                 RenderingContext c = newRenderingContext(gc);
                 c.getOutputDevice().setClip(new java.awt.Rectangle(0, 0, size.x, size.y));
                 doRender(c);
                 gc.dispose();
+                _offscreenValid = true;
             } else if (_specialRedraw instanceof RedrawTarget) { // targetted
                 Rectangle target = ((RedrawTarget) _specialRedraw)._target;
                 GC gc = new GC(_offscreen);
@@ -544,62 +577,101 @@ public class BasicRenderer extends Canvas implements PaintListener, UserInterfac
                 gc.dispose();
             } else if (_specialRedraw instanceof RedrawNewOrigin) { // scroll
                 Point previousOrigin = ((RedrawNewOrigin) _specialRedraw)._previousOrigin;
-                Image img = new Image(getDisplay(), size.x, size.y);
-                GC gc = new GC(img);
+                _spareOffscreen = ensureCapacity(_spareOffscreen, size);
+                GC gc = new GC(_spareOffscreen);
                 gc.drawImage(_offscreen, previousOrigin.x - _origin.x, previousOrigin.y
                                 - _origin.y);
+                gc.setBackground(getBackground());
                 Area a = new Area();
                 if (_origin.x < previousOrigin.x) {
                     int width = Math.min(size.x, previousOrigin.x - _origin.x);
-                    a.add(new Area(new java.awt.Rectangle(0, 0, width, size.y)));
+                    addExposed(gc, a, new java.awt.Rectangle(0, 0, width, size.y));
                 } else if (_origin.x > previousOrigin.x) {
                     int width = Math.min(size.x, _origin.x - previousOrigin.x);
-                    a.add(new Area(new java.awt.Rectangle(size.x - width, 0, width, size.y)));
+                    addExposed(gc, a, new java.awt.Rectangle(size.x - width, 0, width, size.y));
                 }
                 if (_origin.y < previousOrigin.y) {
                     int height = Math.min(size.y, previousOrigin.y - _origin.y);
-                    a.add(new Area(new java.awt.Rectangle(0, 0, size.x, height)));
+                    addExposed(gc, a, new java.awt.Rectangle(0, 0, size.x, height));
                 } else if (_origin.y > previousOrigin.y) {
                     int height = Math.min(size.y, _origin.y - previousOrigin.y);
-                    a.add(new Area(new java.awt.Rectangle(0, size.y - height, size.x, height)));
+                    addExposed(gc, a, new java.awt.Rectangle(0, size.y - height, size.x, height));
                 }
                 RenderingContext c = newRenderingContext(gc);
                 c.getOutputDevice().setClip(a);
                 doRender(c);
                 gc.dispose();
-                _offscreen.dispose();
-                _offscreen = img;
+                Image previous = _offscreen;
+                _offscreen = _spareOffscreen;
+                _spareOffscreen = previous;
             } else if (_specialRedraw instanceof RedrawNewSize) { // adjust
                 // size
                 Point previousSize = ((RedrawNewSize) _specialRedraw)._previousSize;
-                Image img = new Image(getDisplay(), size.x, size.y);
-                GC gc = new GC(img);
-                gc.drawImage(_offscreen, 0, 0);
+                Rectangle bounds = _offscreen.getBounds();
+                if (size.x > bounds.width || size.y > bounds.height) {
+                    Image img = new Image(getDisplay(), Math.max(size.x, bounds.width),
+                            Math.max(size.y, bounds.height));
+                    GC gc = new GC(img);
+                    gc.drawImage(_offscreen, 0, 0);
+                    gc.dispose();
+                    _offscreen.dispose();
+                    _offscreen = img;
+                }
                 if (size.x > previousSize.x || size.y > previousSize.y) {
+                    GC gc = new GC(_offscreen);
+                    gc.setBackground(getBackground());
                     Area a = new Area();
                     if (size.x > previousSize.x) {
-                        a.add(new Area(new java.awt.Rectangle(previousSize.x, 0, size.x
-                                - previousSize.x, size.y)));
+                        addExposed(gc, a, new java.awt.Rectangle(previousSize.x, 0, size.x
+                                - previousSize.x, size.y));
                     }
                     if (size.y > previousSize.y) {
-                        a.add(new Area(new java.awt.Rectangle(0, previousSize.y, size.x, size.y
-                                - previousSize.y)));
+                        addExposed(gc, a, new java.awt.Rectangle(0, previousSize.y, size.x, size.y
+                                - previousSize.y));
                     }
                     RenderingContext c = newRenderingContext(gc);
                     c.getOutputDevice().setClip(a);
                     doRender(c);
-                    gc.setClipping((Rectangle) null);
+                    gc.dispose();
                 }
-                gc.dispose();
-                _offscreen.dispose();
-                _offscreen = img;
             }
             // draw on screen
-            e.gc.drawImage(_offscreen, 0, 0);
+            if (size.x > 0 && size.y > 0) {
+                e.gc.drawImage(_offscreen, 0, 0, size.x, size.y, 0, 0, size.x, size.y);
+            }
         }
         _specialRedraw = null;
     }
 
+    /**
+     * Returns an offscreen image at least as large as size, which is image
+     * itself if it is large enough already.  Images are only ever replaced by
+     * larger ones so resizing back and forth doesn't create new images.
+     */
+    private Image ensureCapacity(Image image, Point size) {
+        int width = Math.max(size.x, 1);
+        int height = Math.max(size.y, 1);
+        if (image != null) {
+            Rectangle bounds = image.getBounds();
+            if (bounds.width >= width && bounds.height >= height) {
+                return image;
+            }
+            width = Math.max(width, bounds.width);
+            height = Math.max(height, bounds.height);
+            image.dispose();
+        }
+        return new Image(getDisplay(), width, height);
+    }
+
+    /**
+     * Clears an area of a reused offscreen image which is going to be drawn
+     * again and adds it to the clip.
+     */
+    private static void addExposed(GC gc, Area clip, java.awt.Rectangle rect) {
+        gc.fillRectangle(rect.x, rect.y, rect.width, rect.height);
+        clip.add(new Area(rect));
+    }
+
     protected void doLayout() {
         if (_doc == null) {
             return;
@@ -626,6 +698,22 @@ public class BasicRenderer extends Canvas implements PaintListener, UserInterfac
             e.printStackTrace();
         }
 
+        layoutFinished();
+
+        _noResize = true;
+        if (updateScrollBars()) {
+            doLayout();
+        }
+        _noResize = false;
+
+        // TODO call only once? in display.asyncExec?
+        fireDocumentLoaded();
+    }
+
+    /**
+     * Picks up the size and fixed content of a newly laid out box tree.
+     */
+    private void layoutFinished() {
         Layer rootLayer = _rootBox.getLayer();
         _hasFixedContent = rootLayer.containsFixedContent();
 
@@ -647,15 +735,98 @@ public class BasicRenderer extends Canvas implements PaintListener, UserInterfac
         } else {
             _drawnSize = new Point(intrinsic_size.width, intrinsic_size.height);
         }
+    }
+
+    /**
+     * Whether the document is laid out on a background thread.  Defaults to
+     * the value of the <tt>xr.layout.async</tt> configuration property.
+     */
+    public boolean isAsyncLayout() {
+        return _asyncLayout;
+    }
+
+    /**
+     * Enables or disables background layout.  When enabled, a new box tree is
+     * built and laid out on a worker thread and handed to the UI thread with
+     * {@link Display#asyncExec(Runnable)} when it is complete.  The previous
+     * layout, if any, is drawn until then.  Setting a new document cancels a
+     * layout that is still running.
+     */
+    public void setAsyncLayout(boolean asyncLayout) {
+        _asyncLayout = asyncLayout;
+        if (!asyncLayout) {
+            cancelAsyncLayout();
+        }
+    }
+
+    private void startAsyncLayout() {
+        if (_doc == null) {
+            return;
+        }
+
+        LayoutThread pending = _layoutThread;
+        if (pending != null) {
+            if (pending._document == _doc && !_needRelayout) {
+                // still working on it
+                return;
+            }
+            pending.cancel();
+        }
+
+        // text is measured with a GC of the layout thread's own, which
+        // replaces _layout_gc once the layout is published
+        Image image = new Image(getDisplay(), 1, 1);
+        GC gc = new GC(image);
+        LayoutThread thread = new LayoutThread(image, gc, _doc);
+        _layoutThread = thread;
+        thread.start();
+    }
+
+    private void cancelAsyncLayout() {
+        LayoutThread pending = _layoutThread;
+        if (pending != null) {
+            pending.cancel();
+            _layoutThread = null;
+        }
+    }
+
+    private void publishAsyncLayout(LayoutThread thread) {
+        if (isDisposed() || thread.isCancelled() || _layoutThread != thread) {
+            thread.disposeGC();
+            return;
+        }
+        _layoutThread = null;
+
+        if (_layout_image != null) {
+            _layout_gc.dispose();
+            _layout_image.dispose();
+        }
+        _layout_image = thread._image;
+        _layout_gc = thread._gc;
+        _sharedContext.takeLayoutMaps(thread._layoutContext.getSharedContext());
+        _layout_context = thread._layoutContext;
+        _rootBox = thread._root;
+
+        layoutFinished();
 
         _noResize = true;
         if (updateScrollBars()) {
-            doLayout();
+            relayout();
         }
         _noResize = false;
 
-        // TODO call only once? in display.asyncExec?
         fireDocumentLoaded();
+        invalidate();
+    }
+
+    private void asyncLayoutFailed(LayoutThread thread, Throwable t) {
+        thread.disposeGC();
+        if (isDisposed() || _layoutThread != thread) {
+            return;
+        }
+        _layoutThread = null;
+        XRLog.exception(t.getMessage(), t);
+        fireOnLayoutException(t);
     }
 
     protected void doRender(RenderingContext c) {
@@ -752,12 +923,10 @@ public class BasicRenderer extends Canvas implements PaintListener, UserInterfac
             _sharedContext.getCss().flushAllStyleSheets();
         }
 
+        cancelAsyncLayout();
         setCursor(null);
         _sharedContext.reset();
-        if (_offscreen != null) {
-            _offscreen.dispose();
-            _offscreen = null;
-        }
+        _offscreenValid = false;
         _origin = new Point(0, 0);
         getHorizontalBar().setSelection(0);
         getVerticalBar().setSelection(0);
@@ -779,12 +948,10 @@ public class BasicRenderer extends Canvas implements PaintListener, UserInterfac
             _sharedContext.getCss().flushAllStyleSheets();
         }
 
+        cancelAsyncLayout();
         setCursor(null);
         _sharedContext.reset();
-        if (_offscreen != null) {
-            _offscreen.dispose();
-            _offscreen = null;
-        }
+        _offscreenValid = false;
         _origin = new Point(0, 0);
         getHorizontalBar().setSelection(0);
         getVerticalBar().setSelection(0);
@@ -1066,6 +1233,207 @@ public class BasicRenderer extends Canvas implements PaintListener, UserInterfac
         _minFontScale = f;
     }
 
+    /**
+     * Lays out a new box tree for a document.  The result is handed to the UI
+     * thread, which also disposes the GC used to measure text when the
+     * layout is discarded.
+     * <p>
+     * The layout uses a copy of the shared context (see
+     * {@link SharedContext#newBackgroundLayoutContext(ReplacedElementFactory)})
+     * which creates replaced elements and resolves fonts on the UI thread:
+     * form controls are SWT widgets and fonts are looked up with the
+     * display, both of which may only be used from the UI thread.  The GC
+     * measuring text belongs to the layout thread alone.
+     */
+    private final class LayoutThread extends Thread {
+        final LayoutContext _layoutContext;
+        final Image _image;
+        final GC _gc;
+        final Document _document;
+        final java.awt.Rectangle _initialExtents;
+        final Display _display;
+        final LayoutCancellationToken _cancellationToken = new LayoutCancellationToken();
+
+        BlockBox _root;
+
+        LayoutThread(Image image, GC gc, Document document) {
+            super("FS layout");
+            setDaemon(true);
+            _display = getDisplay();
+            SharedContext sharedContext = _sharedContext.newBackgroundLayoutContext(
+                    new DisplayReplacedElementFactory(this, _sharedContext.getReplacedElementFactory()));
+            sharedContext.setFontResolver(new DisplayFontResolver(this, _sharedContext.getFontResolver()));
+            _layoutContext = newLayoutcontext(sharedContext, gc);
+            _layoutContext.setCancellationToken(_cancellationToken);
+            _image = image;
+            _gc = gc;
+            _document = document;
+            _initialExtents = getInitialExtents(_layoutContext);
+        }
+
+        public void run() {
+            try {
+                long start = System.currentTimeMillis();
+
+                BlockBox root = BoxBuilder.createRootBox(_layoutContext, _document);
+                root.setContainingBlock(new ViewportBox(_initialExtents));
+                root.layout(_layoutContext);
+                _root = root;
+
+                long end = System.currentTimeMillis();
+                XRLog.layout(Level.INFO, "Background layout took " + (end - start) + "ms");
+
+                handOff(new Runnable() {
+                    public void run() {
+                        publishAsyncLayout(LayoutThread.this);
+                    }
+                });
+            } catch (ThreadDeath t) {
+                throw t;
+            } catch (final Throwable t) {
+                handOff(new Runnable() {
+                    public void run() {
+                        if (t instanceof LayoutCancelledException) {
+                            disposeGC();
+                        } else {
+                            asyncLayoutFailed(LayoutThread.this, t);
+                        }
+                    }
+                });
+            }
+        }
+
+        private void handOff(Runnable r) {
+            if (!_display.isDisposed()) {
+                try {
+                    _display.asyncExec(r);
+                } catch (SWTException e) {
+                    // the display was disposed in the meantime
+                }
+            }
+        }
+
+        void cancel() {
+            _cancellationToken.cancel();
+        }
+
+        boolean isCancelled() {
+            return _cancellationToken.isCancelled();
+        }
+
+        void disposeGC() {
+            _gc.dispose();
+            _image.dispose();
+        }
+
+        /**
+         * Runs <code>runnable</code> on the UI thread and waits for it.  A
+         * runtime exception thrown by it is rethrown on the calling thread.
+         */
+        void syncExec(final Runnable runnable) {
+            if (Display.getCurrent() == _display) {
+                runnable.run();
+                return;
+            }
+
+            final RuntimeException[] failure = new RuntimeException[1];
+            _display.syncExec(new Runnable() {
+                public void run() {
+                    try {
+                        runnable.run();
+                    } catch (RuntimeException e) {
+                        failure[0] = e;
+                    }
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+        }
+    }
+
+    /**
+     * Creates replaced elements with the renderer's factory on the UI thread.
+     */
+    private final class DisplayReplacedElementFactory implements ReplacedElementFactory {
+        private final LayoutThread _layoutThread;
+        private final ReplacedElementFactory _factory;
+
+        DisplayReplacedElementFactory(LayoutThread layoutThread, ReplacedElementFactory factory) {
+            _layoutThread = layoutThread;
+            _factory = factory;
+        }
+
+        public ReplacedElement createReplacedElement(final LayoutContext c, final BlockBox box,
+                final UserAgentCallback uac, final int cssWidth, final int cssHeight) {
+            final ReplacedElement[] result = new ReplacedElement[1];
+            _layoutThread.syncExec(new Runnable() {
+                public void run() {
+                    // The factory may have been reset for another document
+                    if (!_layoutThread.isCancelled()) {
+                        result[0] = _factory.createReplacedElement(c, box, uac, cssWidth, cssHeight);
+                    }
+                }
+            });
+            return result[0];
+        }
+
+        public void reset() {
+            _layoutThread.syncExec(new Runnable() {
+                public void run() {
+                    _factory.reset();
+                }
+            });
+        }
+
+        public void remove(final Element e) {
+            _layoutThread.syncExec(new Runnable() {
+                public void run() {
+                    _factory.remove(e);
+                }
+            });
+        }
+
+        public void setFormSubmissionListener(final FormSubmissionListener listener) {
+            _layoutThread.syncExec(new Runnable() {
+                public void run() {
+                    _factory.setFormSubmissionListener(listener);
+                }
+            });
+        }
+    }
+
+    /**
+     * Resolves fonts with the renderer's font resolver on the UI thread.
+     */
+    private final class DisplayFontResolver implements FontResolver {
+        private final LayoutThread _layoutThread;
+        private final FontResolver _resolver;
+
+        DisplayFontResolver(LayoutThread layoutThread, FontResolver resolver) {
+            _layoutThread = layoutThread;
+            _resolver = resolver;
+        }
+
+        public FSFont resolveFont(final SharedContext renderingContext, final FontSpecification spec) {
+            final FSFont[] result = new FSFont[1];
+            _layoutThread.syncExec(new Runnable() {
+                public void run() {
+                    result[0] = _resolver.resolveFont(renderingContext, spec);
+                }
+            });
+            return result[0];
+        }
+
+        public void flushCache() {
+            _layoutThread.syncExec(new Runnable() {
+                public void run() {
+                    _resolver.flushCache();
+                }
+            });
+        }
+    }
+
     /**
      * Information about a special way of redrawing.
      */
@@ -19,6 +19,9 @@
  */
 package org.xhtmlrenderer.swt;
 
+import java.util.Iterator;
+import java.util.Set;
+
 import org.eclipse.swt.events.MouseEvent;
 import org.eclipse.swt.events.MouseMoveListener;
 import org.eclipse.swt.graphics.Point;
@@ -26,6 +29,7 @@ import org.eclipse.swt.graphics.Rectangle;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.xhtmlrenderer.context.StyleReference;
+import org.xhtmlrenderer.css.constants.CSSName;
 import org.xhtmlrenderer.layout.LayoutContext;
 import org.xhtmlrenderer.layout.PaintingInfo;
 import org.xhtmlrenderer.render.Box;
@@ -70,8 +74,11 @@ public class HoverListener implements MouseMoveListener {
         boolean targetedRepaint = true;
         Rectangle repaintTarget = null;
 
+        boolean needLayout = false;
+
         if (previous != null) {
             needRepaint = true;
+            needLayout = ! isPaintOnly(c.getSharedContext().restyle(previous));
             _previousBox.restyle(c);
 
             PaintingInfo paintInfo = _previousBox.getPaintingInfo();
@@ -88,6 +95,7 @@ public class HoverListener implements MouseMoveListener {
 
         if (current != null) {
             needRepaint = true;
+            needLayout = ! isPaintOnly(c.getSharedContext().restyle(current)) || needLayout;
             Box target = box.getRestyleTarget();
             target.restyle(c);
 
@@ -114,7 +122,9 @@ public class HoverListener implements MouseMoveListener {
             _previousBox = box;
         }
 
-        if (needRepaint) {
+        if (needLayout) {
+            _parent.relayout();
+        } else if (needRepaint) {
             if (targetedRepaint) {
                 Point origin = _parent.getOrigin();
                 repaintTarget.x -= origin.x;
@@ -126,6 +136,15 @@ public class HoverListener implements MouseMoveListener {
         }
     }
 
+    private boolean isPaintOnly(Set changed) {
+        for (Iterator i = changed.iterator(); i.hasNext();) {
+            if (!CSSName.isPaintOnly((CSSName) i.next())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private Element getHoveredElement(StyleReference style, Box ib) {
         if (ib == null) {
             return null;